@@ -0,0 +1,79 @@
+package net.jfabricationgames.notifier.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures encoding and decoding the messages of the binary protocol (and of the legacy protocol for comparison).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameCodecBenchmark {
+	
+	@Param({"64", "1024", "16384"})
+	private int payloadSize;
+	
+	private byte[] payload;
+	private String message;
+	private ByteBuffer encodedFrame;
+	private ByteBuffer encodedLegacyMessage;
+	
+	private FrameCodec frameDecoder;
+	private SentinelCodec sentinelDecoder;
+	
+	@Setup
+	public void setUp() {
+		char[] chars = new char[payloadSize];
+		Arrays.fill(chars, 'x');
+		message = new String(chars);
+		payload = message.getBytes(StandardCharsets.UTF_8);
+		encodedFrame = FrameCodec.encode(FrameType.DATA, (byte) 0, payload);
+		encodedLegacyMessage = ByteBuffer.wrap(SentinelCodec.encode(message, StandardCharsets.UTF_8));
+		frameDecoder = new FrameCodec();
+		sentinelDecoder = new SentinelCodec(StandardCharsets.UTF_8);
+	}
+	
+	@Benchmark
+	public ByteBuffer encodeFrame() {
+		return FrameCodec.encode(FrameType.DATA, (byte) 0, payload);
+	}
+	
+	@Benchmark
+	public Frame decodeFrame() throws IOException {
+		return frameDecoder.decode(encodedFrame.duplicate());
+	}
+	
+	@Benchmark
+	public ByteBuffer[] encodeSharedMessage() {
+		return new EncodedMessage(message).getBuffers(Protocol.BINARY);
+	}
+	
+	@Benchmark
+	public byte[] encodeLegacyMessage() {
+		return SentinelCodec.encode(message, StandardCharsets.UTF_8);
+	}
+	
+	@Benchmark
+	public byte[] decodeLegacyMessage() {
+		return sentinelDecoder.decode(encodedLegacyMessage.duplicate());
+	}
+}
\ No newline at end of file
@@ -0,0 +1,35 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import net.jfabricationgames.notifier.protocol.EncodedMessage;
+import net.jfabricationgames.notifier.protocol.Protocol;
+
+/**
+ * An in-memory subscriber for the benchmarks. The messages are queued like for a connected subscriber and then taken from the queue like the
+ * event loop would do, but they are not written to a socket.
+ */
+public class FakeSubscriber extends Subscriber {
+	
+	private OutboundQueue queue;
+	private long receivedBytes;
+	
+	public FakeSubscriber(String name, Protocol protocol) {
+		super(name, protocol);
+		queue = new OutboundQueue(1024, OverflowPolicy.DROP_OLDEST);
+	}
+	
+	@Override
+	public void sendMessageToSubscriber(EncodedMessage message) {
+		queue.offer(new OutboundMessage(message, message.getBuffers(getProtocol())));
+		OutboundMessage outbound = queue.poll();
+		receivedBytes += outbound.getLength();
+	}
+	
+	@Override
+	public boolean isConnected() {
+		return true;
+	}
+	
+	public long getReceivedBytes() {
+		return receivedBytes;
+	}
+}
\ No newline at end of file
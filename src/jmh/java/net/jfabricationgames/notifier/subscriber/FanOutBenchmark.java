@@ -0,0 +1,62 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.protocol.Protocol;
+
+/**
+ * Measures {@link SubscriberManager#sendNotification(Notification)} (matching the receivers and queueing the message) for a number of in-memory
+ * subscribers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+	
+	@Param({"10", "1000", "10000"})
+	private int subscriberCount;
+	
+	/**
+	 * The receiver of the notification: a single user (literal), all users of one project (prefix), every user (broadcast) or a regular
+	 * expression that matches every tenth user (regex)
+	 */
+	@Param({"literal", "prefix", "broadcast", "regex"})
+	private String receiver;
+	
+	private SubscriberManager manager;
+	private Notification notification;
+	
+	@Setup
+	public void setUp() throws IOException {
+		manager = new SubscriberManager(false);
+		for (int i = 0; i < subscriberCount; i++) {
+			//half of the subscribers use the binary protocol and half of them the legacy protocol
+			Protocol protocol = i % 2 == 0 ? Protocol.BINARY : Protocol.LEGACY;
+			manager.addSubscriber(new FakeSubscriber(ReceiverMatchingBenchmark.subscriberName(i), protocol));
+		}
+		notification = new Notification("a notification message for the fan out benchmark", "benchmark",
+				ReceiverMatchingBenchmark.receiver(receiver));
+	}
+	
+	@Benchmark
+	public int sendNotification() {
+		return manager.sendNotification(notification);
+	}
+}
\ No newline at end of file
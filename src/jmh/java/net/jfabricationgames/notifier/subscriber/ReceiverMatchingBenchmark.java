@@ -0,0 +1,93 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link SubscriberManager#matchesAnyUsernameRegex(List, String)} for all subscriber names and different mixes of receivers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiverMatchingBenchmark {
+	
+	/**
+	 * The number of projects the subscribers are split into
+	 */
+	private static final int PROJECTS = 10;
+	
+	@Param({"100", "10000"})
+	private int subscriberCount;
+	
+	@Param({"literal", "prefix", "broadcast", "regex", "mixed"})
+	private String patternMix;
+	
+	private String[] names;
+	private List<String> receivers;
+	
+	/**
+	 * Get the name of the i-th subscriber (like "project_3.user_42")
+	 */
+	static String subscriberName(int i) {
+		return "project_" + (i % PROJECTS) + ".user_" + i;
+	}
+	
+	/**
+	 * Get a receiver of the given type (literal, prefix, broadcast or regex)
+	 */
+	static String receiver(String type) {
+		switch (type) {
+			case "literal":
+				return "project_1\\.user_1";
+			case "prefix":
+				return "project_1\\..*";
+			case "broadcast":
+				return ".*";
+			case "regex":
+				return "project_\\d\\.user_\\d*0";
+			default:
+				throw new IllegalArgumentException("unknown receiver type: " + type);
+		}
+	}
+	
+	@Setup
+	public void setUp() {
+		names = new String[subscriberCount];
+		for (int i = 0; i < subscriberCount; i++) {
+			names[i] = subscriberName(i);
+		}
+		if (patternMix.equals("mixed")) {
+			receivers = Arrays.asList(receiver("literal"), receiver("prefix"), receiver("regex"));
+		}
+		else {
+			receivers = Arrays.asList(receiver(patternMix));
+		}
+	}
+	
+	@Benchmark
+	public int matchesAnyUsernameRegex() {
+		int matched = 0;
+		for (String name : names) {
+			if (SubscriberManager.matchesAnyUsernameRegex(receivers, name)) {
+				matched++;
+			}
+		}
+		return matched;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,449 @@
+package net.jfabricationgames.notifier.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import net.jfabricationgames.notifier.metrics.Histogram;
+import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.notification.Priority;
+import net.jfabricationgames.notifier.subscriber.SubscriberClient;
+
+/**
+ * An end-to-end load test of a running notifier service.<br>
+ * Opens many {@link SubscriberClient}s with generated usernames (prefix + "g" + group + "_u" + index), sends notifications via
+ * <code>POST /notifier/notify</code> at a fixed rate (to a single username, to the prefix of a group or to ".*") and reports the latency from
+ * the REST request to the delivery, the number of lost deliveries and the CPU and memory usage of the service (from its metrics).
+ * 
+ * The settings are passed as arguments like <code>subscribers=5000 rate=500</code> (see {@link #DEFAULT_SETTINGS}).
+ */
+public class LoadGenerator {
+	
+	private static final Logger LOGGER = LogManager.getLogger(LoadGenerator.class);
+	
+	/**
+	 * The settings of the load test and their default values
+	 */
+	private static final String[][] DEFAULT_SETTINGS = new String[][] {//
+			{"host", "localhost"}, //the host of the service
+			{"port.rest", "5714"}, //the port of the REST interface
+			{"rest.path", "/notifier/notifier/notifier"}, //the path of the REST resources (context path, servlet mapping and resource path)
+			{"port.socket", "5716"}, //the port of the subscriber sockets
+			{"protocol", "binary"}, //the protocol of the subscribers: legacy or binary
+			{"compression", "none"}, //the compression that the subscribers request: none or deflate
+			{"subscribers", "1000"}, //the number of subscribers
+			{"groups", "10"}, //the number of groups of subscribers (that are addressed by a prefix)
+			{"username.prefix", "loadtest_"}, //the prefix of the generated usernames
+			{"rate", "100"}, //the number of notifications per second
+			{"duration.seconds", "30"}, //the time during which the notifications are sent
+			{"drain.seconds", "10"}, //the maximum time to wait for the remaining deliveries after the last notification was sent
+			{"weight.direct", "80"}, //the share of the notifications that are sent to a single username
+			{"weight.prefix", "15"}, //the share of the notifications that are sent to a group (prefix)
+			{"weight.all", "5"}, //the share of the notifications that are sent to all subscribers (".*")
+			{"high.priority.percent", "0"}, //the share (in percent) of the direct notifications that are sent with a high priority
+			{"payload.bytes", "100"}, //the (minimum) size of a notification message
+			{"sender.threads", "16"}, //the number of threads that send the REST requests
+			{"connect.timeout.seconds", "60"}, //the maximum time to wait until all subscribers received a ready message
+	};
+	
+	private static final String MESSAGE_PREFIX = "loadtest ";
+	private static final String READY_MESSAGE = "loadtest_ready";
+	private static final String SENDER = "load_generator";
+	private static final ObjectWriter NOTIFICATION_WRITER = new ObjectMapper().writerFor(Notification.class);
+	
+	/**
+	 * Samples the resource usage of the service (the CPU time at the start and the end and the maximum memory and threads)
+	 */
+	private class ResourceSampler implements Runnable {
+		
+		private double firstCpuSeconds = -1;
+		private long firstSampleNanos;
+		private double lastCpuSeconds;
+		private long lastSampleNanos;
+		private double maxHeapUsed;
+		private double maxThreads;
+		private double lastNonHeapUsed;
+		
+		@Override
+		public synchronized void run() {
+			try {
+				Map<String, Double> metrics = scrapeMetrics();
+				double cpuSeconds = metrics.getOrDefault("process_cpu_seconds_total", 0d);
+				if (firstCpuSeconds < 0) {
+					firstCpuSeconds = cpuSeconds;
+					firstSampleNanos = System.nanoTime();
+				}
+				lastCpuSeconds = cpuSeconds;
+				lastSampleNanos = System.nanoTime();
+				maxHeapUsed = Math.max(maxHeapUsed, metrics.getOrDefault("jvm_memory_heap_used_bytes", 0d));
+				maxThreads = Math.max(maxThreads, metrics.getOrDefault("jvm_threads_live", 0d));
+				lastNonHeapUsed = metrics.getOrDefault("jvm_memory_nonheap_used_bytes", 0d);
+			}
+			catch (IOException | RuntimeException e) {
+				LOGGER.warn("the metrics of the service couldn't be sampled: {}", e.getMessage());
+			}
+		}
+		
+		/**
+		 * Get the average number of cores that the service used between the first and the last sample.
+		 */
+		private synchronized double getAverageCores() {
+			double seconds = (double) (lastSampleNanos - firstSampleNanos) / TimeUnit.SECONDS.toNanos(1);
+			return seconds > 0 ? (lastCpuSeconds - firstCpuSeconds) / seconds : 0;
+		}
+	}
+	
+	private final Properties settings;
+	private final String baseUrl;
+	private final int subscribers;
+	private final int groups;
+	private final String usernamePrefix;
+	
+	private final List<SubscriberClient> clients;
+	/**
+	 * Whether the subscribers (by their indices) received the ready message
+	 */
+	private final AtomicIntegerArray ready;
+	private final AtomicInteger readySubscribers;
+	/**
+	 * The time from the (scheduled) start of the REST request until the notification was received by a subscriber
+	 */
+	private final Histogram latency;
+	/**
+	 * The latency of the high priority notifications (also included in {@link #latency})
+	 */
+	private final Histogram highPriorityLatency;
+	private final LongAdder expectedDeliveries;
+	private final LongAdder deliveries;
+	private final LongAdder accepted;
+	private final LongAdder rejected;
+	private final LongAdder failed;
+	
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Properties settings = new Properties();
+		for (String[] setting : DEFAULT_SETTINGS) {
+			settings.setProperty(setting[0], setting[1]);
+		}
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator == -1 || !settings.containsKey(arg.substring(0, separator))) {
+				throw new IllegalArgumentException("unknown setting: " + arg + " (known settings: " + settings.stringPropertyNames() + ")");
+			}
+			settings.setProperty(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+		new LoadGenerator(settings).run();
+	}
+	
+	public LoadGenerator(Properties settings) {
+		this.settings = settings;
+		this.baseUrl = "http://" + settings.getProperty("host") + ":" + getInt("port.rest") + settings.getProperty("rest.path");
+		this.subscribers = getInt("subscribers");
+		this.groups = Math.max(1, Math.min(getInt("groups"), subscribers));
+		this.usernamePrefix = settings.getProperty("username.prefix");
+		this.clients = new ArrayList<SubscriberClient>(subscribers);
+		this.ready = new AtomicIntegerArray(subscribers);
+		this.readySubscribers = new AtomicInteger();
+		this.latency = new Histogram("loadtest_latency_seconds", "The time from the REST request until the notification was received");
+		this.highPriorityLatency = new Histogram("loadtest_latency_high_priority_seconds", "The latency of the high priority notifications");
+		this.expectedDeliveries = new LongAdder();
+		this.deliveries = new LongAdder();
+		this.accepted = new LongAdder();
+		this.rejected = new LongAdder();
+		this.failed = new LongAdder();
+	}
+	
+	@Override
+	public String toString() {
+		return "LoadGenerator [baseUrl=" + baseUrl + ", subscribers=" + subscribers + ", groups=" + groups + ", usernamePrefix=" + usernamePrefix
+				+ "]";
+	}
+	
+	private int getInt(String key) {
+		return Integer.parseInt(settings.getProperty(key).trim());
+	}
+	
+	/**
+	 * Connect the subscribers, send the notifications, wait for the deliveries and print the report.
+	 */
+	public void run() throws IOException, InterruptedException {
+		LOGGER.info("starting load test: {}", settings);
+		try {
+			long connectStart = System.nanoTime();
+			connectSubscribers();
+			waitForSubscribers();
+			LOGGER.info("connected {} subscribers in {} ms", subscribers, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart));
+			
+			ResourceSampler sampler = new ResourceSampler();
+			ScheduledExecutorService samplerExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "loadtest_sampler_thread");
+				thread.setDaemon(true);
+				return thread;
+			});
+			samplerExecutor.scheduleAtFixedRate(sampler, 0, 1, TimeUnit.SECONDS);
+			
+			long sendStart = System.nanoTime();
+			sendNotifications();
+			long sendNanos = System.nanoTime() - sendStart;
+			waitForDeliveries();
+			
+			samplerExecutor.shutdownNow();
+			sampler.run();
+			printReport(sendNanos, sampler);
+		}
+		finally {
+			for (SubscriberClient client : clients) {
+				try {
+					client.closeConnection();
+				}
+				catch (IOException | IllegalStateException e) {
+					LOGGER.debug("the client couldn't be closed", e);
+				}
+			}
+		}
+	}
+	
+	private String getUsername(int index) {
+		return usernamePrefix + "g" + (index % groups) + "_u" + index;
+	}
+	
+	private void connectSubscribers() throws IOException {
+		for (int i = 0; i < subscribers; i++) {
+			Properties configuration = new Properties();
+			configuration.setProperty("host", settings.getProperty("host"));
+			configuration.setProperty("port.rest", settings.getProperty("port.rest"));
+			configuration.setProperty("port.socket", settings.getProperty("port.socket"));
+			configuration.setProperty("protocol", settings.getProperty("protocol"));
+			configuration.setProperty("compression", settings.getProperty("compression"));
+			configuration.setProperty("username", getUsername(i));
+			int index = i;
+			clients.add(new SubscriberClient(configuration, message -> receiveNotification(index, message), Runnable::run));
+		}
+	}
+	
+	/**
+	 * Send a ready message to all subscribers until every subscriber received it (the handshakes are completed asynchronously and the number of
+	 * subscribers in the metrics can contain other subscribers, e.g. the ones of a previous run that are not yet removed).
+	 */
+	private void waitForSubscribers() throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(getInt("connect.timeout.seconds"));
+		byte[] body = NOTIFICATION_WRITER.writeValueAsBytes(new Notification(READY_MESSAGE, SENDER, usernamePrefix + ".*"));
+		while (readySubscribers.get() < subscribers) {
+			if (System.nanoTime() - deadline > 0) {
+				throw new IOException("only " + readySubscribers.get() + " of " + subscribers + " subscribers were registered in the service");
+			}
+			post("/notify", body);
+			Thread.sleep(500);
+		}
+	}
+	
+	/**
+	 * Send the notifications at the configured rate. The requests are sent by a pool of threads, so a slow response doesn't delay the following
+	 * notifications, and the latency is measured from the time at which a notification was scheduled (so a backlog of requests is measured too).
+	 */
+	private void sendNotifications() throws InterruptedException {
+		int rate = getInt("rate");
+		long total = (long) rate * getInt("duration.seconds");
+		long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(rate, 1);
+		ExecutorService senders = Executors.newFixedThreadPool(getInt("sender.threads"), runnable -> {
+			Thread thread = new Thread(runnable, "loadtest_sender_thread");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		long next = System.nanoTime();
+		for (long i = 0; i < total; i++) {
+			long delay = next - System.nanoTime();
+			if (delay > 0) {
+				LockSupport.parkNanos(delay);
+			}
+			long scheduledNanos = next;
+			senders.execute(() -> sendNotification(scheduledNanos));
+			next += intervalNanos;
+		}
+		senders.shutdown();
+		senders.awaitTermination(1, TimeUnit.MINUTES);
+	}
+	
+	/**
+	 * Send a notification to a random receiver (chosen by the weights) and add the number of subscribers that should receive it.
+	 */
+	private void sendNotification(long scheduledNanos) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int direct = getInt("weight.direct");
+		int prefix = getInt("weight.prefix");
+		int choice = random.nextInt(Math.max(1, direct + prefix + getInt("weight.all")));
+		String receiver;
+		int expected;
+		boolean highPriority = false;
+		if (choice < direct) {
+			receiver = getUsername(random.nextInt(subscribers));
+			expected = 1;
+			highPriority = random.nextInt(100) < getInt("high.priority.percent");
+		}
+		else if (choice < direct + prefix) {
+			int group = random.nextInt(groups);
+			receiver = usernamePrefix + "g" + group + "_.*";
+			expected = subscribers / groups + (group < subscribers % groups ? 1 : 0);
+		}
+		else {
+			receiver = ".*";
+			expected = subscribers;
+		}
+		
+		//the character after the time marks the high priority notifications
+		StringBuilder message = new StringBuilder(MESSAGE_PREFIX).append(scheduledNanos).append(' ').append(highPriority ? 'h' : 'l');
+		int payloadBytes = getInt("payload.bytes");
+		while (message.length() < payloadBytes) {
+			message.append('x');
+		}
+		
+		try {
+			Notification notification = new Notification(message.toString(), SENDER, receiver);
+			notification.setPriority(highPriority ? Priority.HIGH : null);
+			byte[] body = NOTIFICATION_WRITER.writeValueAsBytes(notification);
+			int status = post("/notify", body);
+			if (status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_ACCEPTED) {
+				accepted.increment();
+				expectedDeliveries.add(expected);
+			}
+			else {
+				LOGGER.debug("the notification was rejected (status: {})", status);
+				rejected.increment();
+			}
+		}
+		catch (IOException ioe) {
+			LOGGER.warn("the notification couldn't be sent: {}", ioe.getMessage());
+			failed.increment();
+		}
+	}
+	
+	private void receiveNotification(int index, String message) {
+		if (message.equals(READY_MESSAGE)) {
+			if (ready.compareAndSet(index, 0, 1)) {
+				readySubscribers.incrementAndGet();
+			}
+		}
+		else if (message.startsWith(MESSAGE_PREFIX)) {
+			int end = message.indexOf(' ', MESSAGE_PREFIX.length());
+			long scheduledNanos = Long.parseLong(message.substring(MESSAGE_PREFIX.length(), end));
+			latency.recordSince(scheduledNanos);
+			if (message.charAt(end + 1) == 'h') {
+				highPriorityLatency.recordSince(scheduledNanos);
+			}
+			deliveries.increment();
+		}
+	}
+	
+	/**
+	 * Wait until all expected notifications were delivered (or the drain time has passed).
+	 */
+	private void waitForDeliveries() throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(getInt("drain.seconds"));
+		while (deliveries.sum() < expectedDeliveries.sum() && System.nanoTime() - deadline < 0) {
+			Thread.sleep(100);
+		}
+	}
+	
+	private int post(String path, byte[] body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", "application/json");
+		connection.setDoOutput(true);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body);
+		}
+		int status = connection.getResponseCode();
+		//read the response completely, so the connection is kept alive for the next request
+		readFully(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+		return status;
+	}
+	
+	/**
+	 * Get the metrics of the service (the samples of the prometheus text format by their names).
+	 */
+	private Map<String, Double> scrapeMetrics() throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/metrics").openConnection();
+		if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+			throw new IOException("the metrics couldn't be loaded (status: " + connection.getResponseCode() + ")");
+		}
+		Map<String, Double> metrics = new HashMap<String, Double>();
+		for (String line : new String(readFully(connection.getInputStream()), StandardCharsets.UTF_8).split("\n")) {
+			int separator = line.lastIndexOf(' ');
+			if (!line.startsWith("#") && separator != -1) {
+				metrics.put(line.substring(0, separator), Double.parseDouble(line.substring(separator + 1)));
+			}
+		}
+		return metrics;
+	}
+	
+	private static byte[] readFully(InputStream in) throws IOException {
+		if (in == null) {
+			return new byte[0];
+		}
+		try (InputStream stream = in) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toByteArray();
+		}
+	}
+	
+	private void printReport(long sendNanos, ResourceSampler sampler) {
+		long expected = expectedDeliveries.sum();
+		long delivered = deliveries.sum();
+		double sendSeconds = (double) sendNanos / TimeUnit.SECONDS.toNanos(1);
+		StringBuilder report = new StringBuilder();
+		report.append("\n=== load test report ===\n");
+		report.append(String.format("subscribers:          %d (%d groups, protocol: %s, compression: %s)%n", subscribers, groups,
+				settings.getProperty("protocol"), settings.getProperty("compression")));
+		report.append(String.format("notifications:        %d accepted, %d rejected, %d failed in %.1f s (%.1f per second)%n", accepted.sum(),
+				rejected.sum(), failed.sum(), sendSeconds, (accepted.sum() + rejected.sum() + failed.sum()) / sendSeconds));
+		report.append(String.format("deliveries:           %d of %d (%d lost, %.4f%%)%n", delivered, expected, Math.max(0, expected - delivered),
+				expected > 0 ? 100.0 * Math.max(0, expected - delivered) / expected : 0));
+		report.append(String.format("latency (ms):         p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+				toMillis(latency.getValueAtQuantile(0.5)), toMillis(latency.getValueAtQuantile(0.9)), toMillis(latency.getValueAtQuantile(0.99)),
+				toMillis(latency.getValueAtQuantile(0.999)), toMillis(latency.getValueAtQuantile(1.0))));
+		if (highPriorityLatency.getCount() > 0) {
+			report.append(String.format("high priority (ms):   p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+					toMillis(highPriorityLatency.getValueAtQuantile(0.5)), toMillis(highPriorityLatency.getValueAtQuantile(0.9)),
+					toMillis(highPriorityLatency.getValueAtQuantile(0.99)), toMillis(highPriorityLatency.getValueAtQuantile(0.999)),
+					toMillis(highPriorityLatency.getValueAtQuantile(1.0))));
+		}
+		report.append(String.format("service cpu:          %.2f cores (average)%n", sampler.getAverageCores()));
+		report.append(String.format("service memory:       %.1f MB heap (maximum), %.1f MB non-heap%n", sampler.maxHeapUsed / (1 << 20),
+				sampler.lastNonHeapUsed / (1 << 20)));
+		report.append(String.format("service threads:      %.0f (maximum)%n", sampler.maxThreads));
+		System.out.println(report);
+	}
+	
+	private static double toMillis(long nanos) {
+		return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,223 @@
+package net.jfabricationgames.notifier.cluster;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.notification.Priority;
+
+/**
+ * A message that is exchanged between the nodes of a cluster.<br>
+ * The nodes tell each other which subscribers (names) are connected to them: a complete snapshot when they connect and changes afterwards.
+ * Notifications are only forwarded to the nodes that have matching subscribers.
+ */
+public class ClusterMessage {
+	
+	/**
+	 * The maximum length of a string in a message (larger strings are treated as a corrupted stream)
+	 */
+	private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+	
+	public enum Type {
+		
+		/**
+		 * The first message of a connection, that tells the receiving node the id of the sending node (no names)
+		 */
+		HELLO((byte) 1),
+		/**
+		 * The names of all subscribers that are connected to the sending node (replaces everything that was known about the node)
+		 */
+		SNAPSHOT((byte) 2),
+		/**
+		 * The names of subscribers that connected to the sending node
+		 */
+		SUBSCRIBED((byte) 3),
+		/**
+		 * The names of subscribers that are no longer connected to the sending node
+		 */
+		UNSUBSCRIBED((byte) 4),
+		/**
+		 * A notification that has to be sent to the matching subscribers of the receiving node
+		 */
+		NOTIFICATION((byte) 5);
+		
+		private final byte code;
+		
+		private Type(byte code) {
+			this.code = code;
+		}
+		
+		public static Type fromCode(byte code) {
+			for (Type type : values()) {
+				if (type.code == code) {
+					return type;
+				}
+			}
+			return null;
+		}
+		
+		public byte getCode() {
+			return code;
+		}
+	}
+	
+	private final Type type;
+	/**
+	 * The id of the node that sent the message
+	 */
+	private final String nodeId;
+	private final List<String> names;
+	private final Notification notification;
+	
+	public ClusterMessage(Type type, String nodeId, List<String> names, Notification notification) {
+		this.type = type;
+		this.nodeId = nodeId;
+		this.names = names;
+		this.notification = notification;
+	}
+	
+	public static ClusterMessage hello(String nodeId) {
+		return new ClusterMessage(Type.HELLO, nodeId, Collections.emptyList(), null);
+	}
+	public static ClusterMessage snapshot(String nodeId, Collection<String> names) {
+		return new ClusterMessage(Type.SNAPSHOT, nodeId, new ArrayList<String>(names), null);
+	}
+	public static ClusterMessage subscribed(String nodeId, String name) {
+		return new ClusterMessage(Type.SUBSCRIBED, nodeId, Collections.singletonList(name), null);
+	}
+	public static ClusterMessage unsubscribed(String nodeId, String name) {
+		return new ClusterMessage(Type.UNSUBSCRIBED, nodeId, Collections.singletonList(name), null);
+	}
+	public static ClusterMessage notification(String nodeId, Notification notification) {
+		return new ClusterMessage(Type.NOTIFICATION, nodeId, Collections.emptyList(), notification);
+	}
+	
+	@Override
+	public String toString() {
+		return "ClusterMessage [type=" + type + ", nodeId=" + nodeId + ", names=" + names.size() + ", notification=" + notification + "]";
+	}
+	
+	/**
+	 * Write the message: the type (1 byte), the node id, the number of names (int), the names and (only for notifications) the message, the
+	 * sender, the receivers, the topic, the priority (name) and the collapse key of the notification. Strings are written as their length (int;
+	 * -1 for null) and their UTF-8 bytes.
+	 */
+	public void writeTo(DataOutputStream out) throws IOException {
+		out.writeByte(type.getCode());
+		writeString(out, nodeId);
+		writeStrings(out, names);
+		if (type == Type.NOTIFICATION) {
+			writeString(out, notification.getMessage());
+			writeString(out, notification.getSender());
+			writeStrings(out, notification.getReceivers() == null ? Collections.<String> emptyList() : notification.getReceivers());
+			writeString(out, notification.getTopic());
+			writeString(out, notification.getPriority() == null ? null : notification.getPriority().name());
+			writeString(out, notification.getCollapseKey());
+		}
+	}
+	
+	/**
+	 * Read a message that was written by {@link #writeTo(DataOutputStream)}.
+	 * 
+	 * @throws IOException
+	 *         An {@link IOException} is thrown if the reading failed or the message is invalid.
+	 */
+	public static ClusterMessage readFrom(DataInputStream in) throws IOException {
+		byte code = in.readByte();
+		Type type = Type.fromCode(code);
+		if (type == null) {
+			throw new IOException("unknown cluster message type: " + code);
+		}
+		String nodeId = readString(in);
+		List<String> names = readStrings(in);
+		Notification notification = null;
+		if (type == Type.NOTIFICATION) {
+			notification = new Notification();
+			notification.setMessage(readString(in));
+			notification.setSender(readString(in));
+			notification.setReceivers(readStrings(in));
+			notification.setTopic(readString(in));
+			notification.setPriority(readPriority(in));
+			notification.setCollapseKey(readString(in));
+		}
+		return new ClusterMessage(type, nodeId, names, notification);
+	}
+	
+	private static Priority readPriority(DataInputStream in) throws IOException {
+		String priority = readString(in);
+		if (priority == null) {
+			return null;
+		}
+		try {
+			return Priority.valueOf(priority);
+		}
+		catch (IllegalArgumentException iae) {
+			throw new IOException("unknown priority: " + priority);
+		}
+	}
+	
+	private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+		out.writeInt(strings.size());
+		for (String string : strings) {
+			writeString(out, string);
+		}
+	}
+	
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		if (size < 0 || size > MAX_STRING_LENGTH) {
+			throw new IOException("invalid number of strings: " + size);
+		}
+		List<String> strings = new ArrayList<String>(Math.min(size, 1024));
+		for (int i = 0; i < size; i++) {
+			strings.add(readString(in));
+		}
+		return strings;
+	}
+	
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+		}
+		else {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+	
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0 || length > MAX_STRING_LENGTH) {
+			throw new IOException("invalid string length: " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	public String getNodeId() {
+		return nodeId;
+	}
+	
+	public List<String> getNames() {
+		return names;
+	}
+	
+	public Notification getNotification() {
+		return notification;
+	}
+}
\ No newline at end of file
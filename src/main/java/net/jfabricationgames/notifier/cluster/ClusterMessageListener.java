@@ -0,0 +1,23 @@
+package net.jfabricationgames.notifier.cluster;
+
+/**
+ * Receives the messages and connection events of a {@link ClusterTransport}.
+ */
+public interface ClusterMessageListener {
+	
+	/**
+	 * A message from another node was received.
+	 */
+	public void messageReceived(ClusterMessage message);
+	
+	/**
+	 * The connection to the node was (re-)established, so messages can be sent to it (the node needs a snapshot of the local subscribers now).
+	 */
+	public void nodeConnected(String nodeId);
+	
+	/**
+	 * The node is no longer connected, so everything that is known about its subscribers is outdated (it sends a new snapshot when it connects
+	 * again).
+	 */
+	public void nodeDisconnected(String nodeId);
+}
\ No newline at end of file
@@ -0,0 +1,238 @@
+package net.jfabricationgames.notifier.cluster;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.subscriber.ReceiverPattern;
+
+/**
+ * The local node of a cluster of notifier services.<br>
+ * The node keeps a view of the subscriber names that are connected to every other node (a snapshot that is sent when the nodes connect and
+ * updated by the changes afterwards) and forwards a notification only to the nodes that have subscribers that match its receivers. The
+ * snapshots are sent again periodically, so a view that missed a change (e.g. because a queue was full) is corrected eventually.
+ */
+public class ClusterNode implements ClusterMessageListener {
+	
+	private static final Logger LOGGER = LogManager.getLogger(ClusterNode.class);
+	
+	private final ClusterTransport transport;
+	/**
+	 * Supplies the names of all subscribers that are connected to the local node (for the snapshots)
+	 */
+	private final Supplier<Collection<String>> localNames;
+	/**
+	 * Sends a notification that was forwarded by another node to the local subscribers
+	 */
+	private final Consumer<Notification> localDelivery;
+	/**
+	 * The names of the subscribers of the other nodes by the ids of the nodes
+	 */
+	private final Map<String, NavigableSet<String>> remoteNames;
+	
+	public ClusterNode(ClusterTransport transport, Supplier<Collection<String>> localNames, Consumer<Notification> localDelivery) {
+		this.transport = transport;
+		this.localNames = localNames;
+		this.localDelivery = localDelivery;
+		this.remoteNames = new ConcurrentHashMap<String, NavigableSet<String>>();
+	}
+	
+	/**
+	 * Create a node with the transport that is configured in the cluster.* properties of the configuration (the node is not yet started).
+	 */
+	public static ClusterNode fromConfiguration(NotifierConfiguration configuration, Supplier<Collection<String>> localNames,
+			Consumer<Notification> localDelivery) throws IOException {
+		String transportName = configuration.getString("cluster.transport", "tcp");
+		ClusterTransport transport;
+		if (transportName.equalsIgnoreCase("tcp")) {
+			transport = new TcpClusterTransport(configuration);
+		}
+		else {
+			try {
+				transport = (ClusterTransport) Class.forName(transportName).getConstructor(NotifierConfiguration.class).newInstance(configuration);
+			}
+			catch (ReflectiveOperationException | ClassCastException e) {
+				throw new IOException("the cluster transport " + transportName + " couldn't be created", e);
+			}
+		}
+		return new ClusterNode(transport, localNames, localDelivery);
+	}
+	
+	@Override
+	public String toString() {
+		return "ClusterNode [nodeId=" + transport.getNodeId() + ", remoteNodes=" + remoteNames.keySet() + "]";
+	}
+	
+	/**
+	 * Start the transport and a thread that sends a snapshot of the local subscribers to all nodes in the given interval.
+	 */
+	public void start(long syncIntervalMillis) throws IOException {
+		transport.start(this);
+		
+		if (syncIntervalMillis > 0) {
+			Thread syncThread = new Thread(() -> runSync(syncIntervalMillis), "cluster_sync_thread");
+			syncThread.setDaemon(true);
+			syncThread.start();
+		}
+		LOGGER.info(">> ClusterNode started (node: {})", transport.getNodeId());
+	}
+	
+	private void runSync(long syncIntervalMillis) {
+		while (true) {
+			try {
+				Thread.sleep(syncIntervalMillis);
+				transport.broadcast(ClusterMessage.snapshot(transport.getNodeId(), localNames.get()));
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (RuntimeException re) {
+				LOGGER.error("an error occured while sending the cluster snapshot", re);
+			}
+		}
+	}
+	
+	public void close() {
+		transport.close();
+	}
+	
+	/**
+	 * Tell the other nodes that the first subscriber with this name connected to the local node.
+	 */
+	public void subscriberAdded(String name) {
+		transport.broadcast(ClusterMessage.subscribed(transport.getNodeId(), name));
+	}
+	
+	/**
+	 * Tell the other nodes that the last subscriber with this name disconnected from the local node.
+	 */
+	public void subscriberRemoved(String name) {
+		transport.broadcast(ClusterMessage.unsubscribed(transport.getNodeId(), name));
+	}
+	
+	/**
+	 * Forward the notification to all other nodes that have subscribers that match any of the receivers. Notifications with a topic are forwarded
+	 * to all other nodes, because the topics of their subscribers are not known.
+	 * 
+	 * @return The number of nodes the notification was forwarded to.
+	 */
+	public int forward(Notification notification, List<ReceiverPattern> patterns) {
+		ClusterMessage message = null;
+		int forwarded = 0;
+		boolean hasTopic = notification.getTopic() != null && !notification.getTopic().isEmpty();
+		for (Map.Entry<String, NavigableSet<String>> node : remoteNames.entrySet()) {
+			if (hasTopic || matchesAnyName(patterns, node.getValue())) {
+				if (message == null) {
+					message = ClusterMessage.notification(transport.getNodeId(), notification);
+				}
+				transport.send(node.getKey(), message);
+				forwarded++;
+			}
+		}
+		return forwarded;
+	}
+	
+	/**
+	 * Check whether any of the names matches any of the patterns (literals and prefixes are looked up in the sorted names).
+	 */
+	private static boolean matchesAnyName(List<ReceiverPattern> patterns, NavigableSet<String> names) {
+		for (ReceiverPattern pattern : patterns) {
+			if (pattern.getType() == ReceiverPattern.Type.LITERAL && !pattern.getLiteral().isEmpty()) {
+				if (names.contains(pattern.getLiteral())) {
+					return true;
+				}
+			}
+			else {
+				Collection<String> candidates = pattern.getType() == ReceiverPattern.Type.PREFIX ? withPrefix(names, pattern.getLiteral()) : names;
+				for (String name : candidates) {
+					if (pattern.matches(name)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	private static NavigableSet<String> withPrefix(NavigableSet<String> names, String prefix) {
+		if (prefix.isEmpty()) {
+			return names;
+		}
+		//the first string after all strings that start with the prefix is the prefix with an incremented last character
+		char last = prefix.charAt(prefix.length() - 1);
+		if (last == Character.MAX_VALUE) {
+			return names.tailSet(prefix, true);
+		}
+		return names.subSet(prefix, true, prefix.substring(0, prefix.length() - 1) + (char) (last + 1), false);
+	}
+	
+	/**
+	 * Check whether a subscriber with this name is connected to any other node.
+	 */
+	public boolean isSubscribedRemotely(String name) {
+		for (NavigableSet<String> names : remoteNames.values()) {
+			if (names.contains(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public void messageReceived(ClusterMessage message) {
+		LOGGER.debug("received cluster message: {}", message);
+		switch (message.getType()) {
+			case SNAPSHOT:
+				remoteNames.put(message.getNodeId(), new ConcurrentSkipListSet<String>(message.getNames()));
+				break;
+			case SUBSCRIBED:
+				remoteNames.computeIfAbsent(message.getNodeId(), id -> new ConcurrentSkipListSet<String>()).addAll(message.getNames());
+				break;
+			case UNSUBSCRIBED:
+				NavigableSet<String> names = remoteNames.get(message.getNodeId());
+				if (names != null) {
+					names.removeAll(message.getNames());
+				}
+				break;
+			case NOTIFICATION:
+				localDelivery.accept(message.getNotification());
+				break;
+			default:
+				LOGGER.warn("unexpected cluster message: {}", message);
+		}
+	}
+	
+	@Override
+	public void nodeConnected(String nodeId) {
+		transport.send(nodeId, ClusterMessage.snapshot(transport.getNodeId(), localNames.get()));
+	}
+	
+	@Override
+	public void nodeDisconnected(String nodeId) {
+		LOGGER.info("cluster node {} disconnected", nodeId);
+		remoteNames.remove(nodeId);
+	}
+	
+	public String getNodeId() {
+		return transport.getNodeId();
+	}
+	
+	/**
+	 * Get the ids of the other nodes whose subscribers are known.
+	 */
+	public Collection<String> getRemoteNodes() {
+		return remoteNames.keySet();
+	}
+}
\ No newline at end of file
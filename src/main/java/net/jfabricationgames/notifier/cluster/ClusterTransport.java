@@ -0,0 +1,36 @@
+package net.jfabricationgames.notifier.cluster;
+
+import java.io.IOException;
+
+/**
+ * The transport of the messages between the nodes of a cluster (e.g. {@link TcpClusterTransport}).<br>
+ * Other transports can be configured using the property cluster.transport (the name of a class that implements this interface and has a
+ * constructor with a {@link net.jfabricationgames.notifier.config.NotifierConfiguration} parameter).
+ */
+public interface ClusterTransport {
+	
+	/**
+	 * Start the transport (connect to the other nodes). The received messages and the connection events are passed to the listener.
+	 */
+	public void start(ClusterMessageListener listener) throws IOException;
+	
+	/**
+	 * Send a message to a node (the message is discarded if the node is not connected). This method must not block.
+	 */
+	public void send(String nodeId, ClusterMessage message);
+	
+	/**
+	 * Send a message to all connected nodes. This method must not block.
+	 */
+	public void broadcast(ClusterMessage message);
+	
+	/**
+	 * Get the id of the local node (unique in the cluster).
+	 */
+	public String getNodeId();
+	
+	/**
+	 * Close all connections to the other nodes.
+	 */
+	public void close();
+}
\ No newline at end of file
@@ -0,0 +1,298 @@
+package net.jfabricationgames.notifier.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+
+/**
+ * A {@link ClusterTransport} that connects the nodes with TCP connections (all nodes can run on one machine using different ports).<br>
+ * Every node opens a connection to every other node (its peers) for the messages it sends and accepts the connections of the other nodes for the
+ * messages it receives. The id of a node is the address (host:port) on which it accepts the connections of the other nodes, so it has to be
+ * the same address that the other nodes use as peer address.
+ */
+public class TcpClusterTransport implements ClusterTransport {
+	
+	private static final Logger LOGGER = LogManager.getLogger(TcpClusterTransport.class);
+	
+	private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+	
+	/**
+	 * The connection to a peer, that is used to send messages to it (the messages are queued and written by the sender thread)
+	 */
+	private class PeerConnection {
+		
+		private final String peerId;
+		private final BlockingQueue<ClusterMessage> queue;
+		private volatile boolean connected;
+		private volatile Socket socket;
+		private Thread senderThread;
+		
+		public PeerConnection(String peerId) {
+			this.peerId = peerId;
+			this.queue = new ArrayBlockingQueue<ClusterMessage>(queueCapacity);
+		}
+		
+		@Override
+		public String toString() {
+			return "PeerConnection [peerId=" + peerId + ", connected=" + connected + ", queued=" + queue.size() + "]";
+		}
+		
+		private void start() {
+			senderThread = new Thread(this::runSender, "cluster_sender_thread");
+			senderThread.setDaemon(true);
+			senderThread.start();
+		}
+		
+		private void runSender() {
+			while (!closed) {
+				try (Socket connection = new Socket()) {
+					connection.connect(toSocketAddress(peerId), CONNECT_TIMEOUT_MILLIS);
+					socket = connection;
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+					ClusterMessage.hello(nodeId).writeTo(out);
+					out.flush();
+					
+					//messages that were queued before the connection was established are outdated (the node gets a snapshot now)
+					queue.clear();
+					connected = true;
+					LOGGER.info("connected to cluster node {}", peerId);
+					listener.nodeConnected(peerId);
+					
+					while (!closed) {
+						queue.take().writeTo(out);
+						if (queue.isEmpty()) {
+							out.flush();
+						}
+					}
+				}
+				catch (IOException ioe) {
+					if (!closed) {
+						LOGGER.warn("the connection to cluster node {} failed: {} (reconnecting in {} ms)", peerId, ioe.getMessage(),
+								reconnectIntervalMillis);
+					}
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				finally {
+					connected = false;
+				}
+				
+				try {
+					Thread.sleep(reconnectIntervalMillis);
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+		
+		private void send(ClusterMessage message) {
+			if (!connected) {
+				return;
+			}
+			if (!queue.offer(message)) {
+				LOGGER.warn("the queue for cluster node {} is full. message is discarded: {}", peerId, message);
+			}
+		}
+		
+		private void close() {
+			if (senderThread != null) {
+				senderThread.interrupt();
+			}
+			closeQuietly(socket);
+		}
+	}
+	
+	private final String nodeId;
+	private final List<String> peers;
+	private final long reconnectIntervalMillis;
+	/**
+	 * The maximum number of messages that are queued for a peer
+	 */
+	private final int queueCapacity;
+	
+	private ClusterMessageListener listener;
+	private ServerSocket serverSocket;
+	private final Map<String, PeerConnection> connections;
+	/**
+	 * The current (incoming) connections of the other nodes by their ids
+	 */
+	private final Map<String, Socket> incomingConnections;
+	private volatile boolean closed;
+	
+	public TcpClusterTransport(String nodeId, List<String> peers, long reconnectIntervalMillis, int queueCapacity) {
+		this.nodeId = nodeId;
+		this.peers = peers;
+		this.reconnectIntervalMillis = reconnectIntervalMillis;
+		this.queueCapacity = queueCapacity;
+		this.connections = new ConcurrentHashMap<String, PeerConnection>();
+		this.incomingConnections = new ConcurrentHashMap<String, Socket>();
+	}
+	
+	/**
+	 * Create the transport from the cluster.* properties of the configuration.
+	 */
+	public TcpClusterTransport(NotifierConfiguration configuration) throws IOException {
+		this(configuration.getString("cluster.node.address", "localhost:5720"), parsePeers(configuration.getString("cluster.peers", "")),
+				configuration.getLong("cluster.reconnect.interval.millis", 1000), configuration.getInt("cluster.queue.capacity", 10000));
+	}
+	
+	private static List<String> parsePeers(String peers) {
+		List<String> parsed = new ArrayList<String>();
+		for (String peer : peers.split(",")) {
+			if (!peer.trim().isEmpty()) {
+				parsed.add(peer.trim());
+			}
+		}
+		return parsed;
+	}
+	
+	@Override
+	public String toString() {
+		return "TcpClusterTransport [nodeId=" + nodeId + ", peers=" + peers + "]";
+	}
+	
+	@Override
+	public void start(ClusterMessageListener listener) throws IOException {
+		this.listener = listener;
+		serverSocket = new ServerSocket();
+		serverSocket.bind(new InetSocketAddress(toSocketAddress(nodeId).getPort()));
+		
+		Thread acceptorThread = new Thread(this::runAcceptor, "cluster_acceptor_thread");
+		acceptorThread.setDaemon(true);
+		acceptorThread.start();
+		
+		for (String peer : peers) {
+			if (!peer.equals(nodeId)) {
+				PeerConnection connection = new PeerConnection(peer);
+				connections.put(peer, connection);
+				connection.start();
+			}
+		}
+		LOGGER.info(">> TcpClusterTransport started (node: {}   peers: {})", nodeId, peers);
+	}
+	
+	private void runAcceptor() {
+		while (!closed) {
+			try {
+				Socket socket = serverSocket.accept();
+				Thread readerThread = new Thread(() -> runReader(socket), "cluster_reader_thread");
+				readerThread.setDaemon(true);
+				readerThread.start();
+			}
+			catch (IOException ioe) {
+				if (!closed) {
+					LOGGER.error("an error occured while accepting a cluster connection", ioe);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Read the messages of an incoming connection (the first message tells the id of the other node).
+	 */
+	private void runReader(Socket socket) {
+		String peerId = null;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			ClusterMessage hello = ClusterMessage.readFrom(in);
+			if (hello.getType() != ClusterMessage.Type.HELLO) {
+				throw new IOException("the first message of a cluster connection has to be a hello message (was: " + hello.getType() + ")");
+			}
+			peerId = hello.getNodeId();
+			//a node that reconnects replaces its old connection
+			closeQuietly(incomingConnections.put(peerId, socket));
+			LOGGER.info("cluster node {} connected", peerId);
+			
+			while (!closed) {
+				listener.messageReceived(ClusterMessage.readFrom(in));
+			}
+		}
+		catch (EOFException eofe) {
+			LOGGER.info("cluster node {} closed the connection", peerId);
+		}
+		catch (IOException | RuntimeException e) {
+			if (!closed) {
+				LOGGER.warn("the connection of cluster node {} failed: {}", peerId, e.getMessage());
+			}
+		}
+		finally {
+			closeQuietly(socket);
+			//only the current connection of the node removes it (not an old one that is replaced)
+			if (peerId != null && incomingConnections.remove(peerId, socket)) {
+				listener.nodeDisconnected(peerId);
+			}
+		}
+	}
+	
+	@Override
+	public void send(String nodeId, ClusterMessage message) {
+		PeerConnection connection = connections.get(nodeId);
+		if (connection != null) {
+			connection.send(message);
+		}
+	}
+	
+	@Override
+	public void broadcast(ClusterMessage message) {
+		for (PeerConnection connection : connections.values()) {
+			connection.send(message);
+		}
+	}
+	
+	@Override
+	public String getNodeId() {
+		return nodeId;
+	}
+	
+	@Override
+	public void close() {
+		closed = true;
+		closeQuietly(serverSocket);
+		for (PeerConnection connection : connections.values()) {
+			connection.close();
+		}
+		for (Socket socket : incomingConnections.values()) {
+			closeQuietly(socket);
+		}
+	}
+	
+	private static InetSocketAddress toSocketAddress(String address) {
+		int separator = address.lastIndexOf(':');
+		if (separator == -1) {
+			throw new IllegalArgumentException("the address of a cluster node has to be host:port (was: " + address + ")");
+		}
+		return new InetSocketAddress(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+	}
+	
+	private static void closeQuietly(AutoCloseable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			}
+			catch (Exception e) {
+				LOGGER.debug("couldn't close the cluster connection", e);
+			}
+		}
+	}
+}
\ No newline at end of file
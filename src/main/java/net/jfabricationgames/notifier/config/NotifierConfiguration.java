@@ -0,0 +1,98 @@
+package net.jfabricationgames.notifier.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The configuration of the notifier service (loaded from the notifier_config.properties file).
+ */
+public class NotifierConfiguration {
+	
+	private static final Logger LOGGER = LogManager.getLogger(NotifierConfiguration.class);
+	
+	private static final String RESOURCE_NAME = "notifier_config.properties";
+	
+	private static NotifierConfiguration instance;
+	
+	private Properties properties;
+	
+	/**
+	 * Create a configuration from the given properties (used for tests or embedded setups).
+	 */
+	public NotifierConfiguration(Properties properties) {
+		this.properties = properties;
+	}
+	
+	/**
+	 * Get the configuration that is loaded from the config file (the file is only loaded once).
+	 */
+	public static synchronized NotifierConfiguration getInstance() throws IOException {
+		if (instance == null) {
+			instance = new NotifierConfiguration(loadProperties());
+		}
+		return instance;
+	}
+	
+	private static Properties loadProperties() throws IOException {
+		LOGGER.debug("loading configuration from config file: {}", RESOURCE_NAME);
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		Properties configProperties = new Properties();
+		try (InputStream resourceStream = loader.getResourceAsStream(RESOURCE_NAME)) {
+			if (resourceStream == null) {
+				throw new IOException("the config file couldn't be found: " + RESOURCE_NAME);
+			}
+			configProperties.load(resourceStream);
+		}
+		return configProperties;
+	}
+	
+	@Override
+	public String toString() {
+		return "NotifierConfiguration [properties=" + properties + "]";
+	}
+	
+	public String getString(String key, String defaultValue) {
+		return properties.getProperty(key, defaultValue).trim();
+	}
+	
+	public int getInt(String key, int defaultValue) throws IOException {
+		String value = getString(key, Integer.toString(defaultValue));
+		try {
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException nfe) {
+			throw new IOException(key + " couldn't be interpreted as integer value (was: " + value + ")", nfe);
+		}
+	}
+	
+	public long getLong(String key, long defaultValue) throws IOException {
+		String value = getString(key, Long.toString(defaultValue));
+		try {
+			return Long.parseLong(value);
+		}
+		catch (NumberFormatException nfe) {
+			throw new IOException(key + " couldn't be interpreted as long value (was: " + value + ")", nfe);
+		}
+	}
+	
+	public boolean getBoolean(String key, boolean defaultValue) {
+		return Boolean.parseBoolean(getString(key, Boolean.toString(defaultValue)));
+	}
+	
+	/**
+	 * Get an enum value (the configured value is case insensitive, e.g. "drop_oldest" for DROP_OLDEST).
+	 */
+	public <T extends Enum<T>> T getEnum(String key, Class<T> type, T defaultValue) throws IOException {
+		String value = getString(key, defaultValue.name());
+		try {
+			return Enum.valueOf(type, value.toUpperCase());
+		}
+		catch (IllegalArgumentException iae) {
+			throw new IOException(key + " couldn't be interpreted as " + type.getSimpleName() + " (was: " + value + ")", iae);
+		}
+	}
+}
\ No newline at end of file
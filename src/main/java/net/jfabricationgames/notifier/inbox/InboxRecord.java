@@ -0,0 +1,59 @@
+package net.jfabricationgames.notifier.inbox;
+
+/**
+ * A record of the inbox log: a stored notification message for a user or a marker that the messages of a user were consumed (replayed).
+ */
+public class InboxRecord {
+	
+	/**
+	 * A notification message for a user that was offline
+	 */
+	public static final byte TYPE_MESSAGE = 1;
+	/**
+	 * All messages of the user up to the sequence number were consumed
+	 */
+	public static final byte TYPE_CONSUMED = 2;
+	
+	private final byte type;
+	/**
+	 * The sequence number of the message (or the last consumed message); assigned when a message is appended the first time and kept when it's
+	 * copied by a compaction
+	 */
+	private final long sequence;
+	private final long timestamp;
+	private final String username;
+	private final String message;
+	
+	public InboxRecord(byte type, long sequence, long timestamp, String username, String message) {
+		this.type = type;
+		this.sequence = sequence;
+		this.timestamp = timestamp;
+		this.username = username;
+		this.message = message;
+	}
+	
+	@Override
+	public String toString() {
+		return "InboxRecord [type=" + type + ", sequence=" + sequence + ", timestamp=" + timestamp + ", username=" + username + "]";
+	}
+	
+	public byte getType() {
+		return type;
+	}
+	
+	public long getSequence() {
+		return sequence;
+	}
+	
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	public String getUsername() {
+		return username;
+	}
+	
+	public String getMessage() {
+		return message;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,163 @@
+package net.jfabricationgames.notifier.inbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A segment of the inbox log: a memory mapped file of a fixed size that records are appended to.<br>
+ * A record is stored as: the length of the rest of the record (int), the type (byte), the sequence number (long), the timestamp (long), the
+ * length of the username (short), the username and the message (both in UTF-8). The length is written after the rest of the record, so a record
+ * that was not written completely (because the service was stopped) ends the segment like the unused (zero filled) part of the file.
+ */
+class InboxSegment {
+	
+	/**
+	 * The size of the fields that follow the length field (without the username and the message)
+	 */
+	private static final int RECORD_HEADER_SIZE = 1 + 8 + 8 + 2;
+	
+	private final File file;
+	private final long id;
+	private final MappedByteBuffer buffer;
+	
+	/**
+	 * The position at which the next record is appended
+	 */
+	private int writePosition;
+	/**
+	 * The number of messages in this segment that are still in the index of the inbox
+	 */
+	private int liveMessages;
+	private int messages;
+	
+	private InboxSegment(File file, long id, MappedByteBuffer buffer) {
+		this.file = file;
+		this.id = id;
+		this.buffer = buffer;
+	}
+	
+	/**
+	 * Open (or create) the segment file and map it into memory.
+	 */
+	static InboxSegment open(File file, long id, int size) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"); FileChannel channel = randomAccessFile.getChannel()) {
+			//an existing segment keeps its size (even if the configured size was changed)
+			long mappedSize = Math.max(channel.size(), size);
+			//the mapping stays valid after the channel is closed
+			return new InboxSegment(file, id, channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize));
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "InboxSegment [file=" + file + ", writePosition=" + writePosition + ", messages=" + messages + ", liveMessages=" + liveMessages + "]";
+	}
+	
+	/**
+	 * Read all records of the segment (in order) and move the write position to the end of the last complete record.
+	 */
+	void scan(ObjIntConsumer<InboxRecord> consumer) {
+		int position = 0;
+		while (position + 4 <= buffer.capacity()) {
+			int length = buffer.getInt(position);
+			if (length <= 0 || position + 4 + length > buffer.capacity()) {
+				break;
+			}
+			consumer.accept(read(position), position);
+			position += 4 + length;
+		}
+		writePosition = position;
+	}
+	
+	/**
+	 * Append a record to the segment.
+	 * 
+	 * @return The position of the record or -1 if the segment has not enough space left.
+	 */
+	int append(byte type, long sequence, long timestamp, String username, String message) {
+		byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+		byte[] messageBytes = message == null ? new byte[0] : message.getBytes(StandardCharsets.UTF_8);
+		int length = RECORD_HEADER_SIZE + usernameBytes.length + messageBytes.length;
+		if (writePosition + 4 + length > buffer.capacity()) {
+			return -1;
+		}
+		
+		int position = writePosition;
+		ByteBuffer record = buffer.duplicate();
+		((Buffer) record).position(position + 4);
+		record.put(type);
+		record.putLong(sequence);
+		record.putLong(timestamp);
+		record.putShort((short) usernameBytes.length);
+		record.put(usernameBytes);
+		record.put(messageBytes);
+		//the length is written last, so the record is only visible when it's complete
+		buffer.putInt(position, length);
+		
+		writePosition += 4 + length;
+		return position;
+	}
+	
+	/**
+	 * Read the record at the position.
+	 */
+	InboxRecord read(int position) {
+		ByteBuffer record = buffer.duplicate();
+		((Buffer) record).position(position);
+		int length = record.getInt();
+		byte type = record.get();
+		long sequence = record.getLong();
+		long timestamp = record.getLong();
+		byte[] usernameBytes = new byte[record.getShort() & 0xFFFF];
+		record.get(usernameBytes);
+		byte[] messageBytes = new byte[length - RECORD_HEADER_SIZE - usernameBytes.length];
+		record.get(messageBytes);
+		String message = type == InboxRecord.TYPE_MESSAGE ? new String(messageBytes, StandardCharsets.UTF_8) : null;
+		return new InboxRecord(type, sequence, timestamp, new String(usernameBytes, StandardCharsets.UTF_8), message);
+	}
+	
+	/**
+	 * Write the changes to the file.
+	 */
+	void force() {
+		buffer.force();
+	}
+	
+	/**
+	 * Delete the segment file (the mapping is released when the buffer is collected).
+	 */
+	boolean delete() {
+		return file.delete();
+	}
+	
+	void addMessage() {
+		messages++;
+		liveMessages++;
+	}
+	void removeLiveMessage() {
+		liveMessages--;
+	}
+	
+	long getId() {
+		return id;
+	}
+	
+	int getMessages() {
+		return messages;
+	}
+	
+	int getLiveMessages() {
+		return liveMessages;
+	}
+	
+	boolean isEmpty() {
+		return writePosition == 0;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,480 @@
+package net.jfabricationgames.notifier.inbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+
+/**
+ * A durable inbox for notifications to users that are not connected (store and forward).<br>
+ * The messages are appended to a segmented, memory mapped log by a background thread (so storing a message never blocks the thread that sends the
+ * notification) and indexed by the username. When the user connects again the messages are replayed in the order they were stored and a consumed
+ * marker is appended to the log (by the writer thread too), so they are not replayed again after a restart.
+ * 
+ * Messages that are older than the retention time (or exceed the maximum number of messages per user) are removed from the index. Segments
+ * without live messages are deleted (starting with the oldest one) and the live messages of mostly consumed segments are copied to the newest
+ * segment, so the old segment can be deleted (compaction).
+ */
+public class OfflineInbox {
+	
+	private static final Logger LOGGER = LogManager.getLogger(OfflineInbox.class);
+	
+	private static final String SEGMENT_PREFIX = "inbox-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	
+	/**
+	 * Segments with a lower ratio of live messages are compacted
+	 */
+	private static final double COMPACTION_RATIO = 0.5;
+	
+	/**
+	 * A message in the index
+	 */
+	private static class Entry {
+		
+		private final long sequence;
+		private final long timestamp;
+		private InboxSegment segment;
+		private int position;
+		
+		public Entry(long sequence, long timestamp, InboxSegment segment, int position) {
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+			this.segment = segment;
+			this.position = position;
+		}
+	}
+	
+	/**
+	 * A message that waits to be appended to the log
+	 */
+	private static class PendingMessage {
+		
+		private final String username;
+		private final String message;
+		private final long timestamp;
+		
+		public PendingMessage(String username, String message, long timestamp) {
+			this.username = username;
+			this.message = message;
+			this.timestamp = timestamp;
+		}
+	}
+	
+	/**
+	 * A marker for the replayed messages of a user that waits to be appended to the log
+	 */
+	private static class PendingConsumedMarker {
+		
+		private final String username;
+		private final long sequence;
+		private final long timestamp;
+		
+		public PendingConsumedMarker(String username, long sequence, long timestamp) {
+			this.username = username;
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+		}
+	}
+	
+	private final File directory;
+	private final int segmentSize;
+	private final long retentionMillis;
+	private final int maxMessagesPerUser;
+	private final long compactionIntervalMillis;
+	
+	/**
+	 * The messages that were stored, but not yet appended to the log
+	 */
+	private final BlockingQueue<PendingMessage> pendingMessages;
+	/**
+	 * Wakes up the writer thread when messages or consumed markers are queued (the messages are only taken from the queue while holding the lock
+	 * of the inbox, so a replay can't miss a message that the writer took from the queue, but didn't append yet)
+	 */
+	private final Semaphore pendingSignal;
+	/**
+	 * The consumed markers of the replayed messages that were not yet appended to the log (only used while holding the lock of the inbox)
+	 */
+	private final Deque<PendingConsumedMarker> pendingConsumedMarkers;
+	
+	/**
+	 * The segments of the log (the last one is the active segment that records are appended to)
+	 */
+	private final List<InboxSegment> segments;
+	/**
+	 * The stored messages of every user (in the order they were stored)
+	 */
+	private final Map<String, Deque<Entry>> entriesByUser;
+	private long nextSequence;
+	
+	private volatile boolean closed;
+	
+	public OfflineInbox(File directory, int segmentSize, long retentionMillis, int maxMessagesPerUser, int queueCapacity,
+			long compactionIntervalMillis) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.retentionMillis = retentionMillis;
+		this.maxMessagesPerUser = maxMessagesPerUser;
+		this.compactionIntervalMillis = compactionIntervalMillis;
+		this.pendingMessages = new ArrayBlockingQueue<PendingMessage>(queueCapacity);
+		this.pendingSignal = new Semaphore(0);
+		this.pendingConsumedMarkers = new ArrayDeque<PendingConsumedMarker>();
+		this.segments = new ArrayList<InboxSegment>();
+		this.entriesByUser = new HashMap<String, Deque<Entry>>();
+		
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("the inbox directory couldn't be created: " + directory);
+		}
+		loadSegments();
+		
+		Thread writerThread = new Thread(this::runWriter, "inbox_writer_thread");
+		writerThread.setDaemon(true);
+		writerThread.start();
+		
+		LOGGER.info(">> OfflineInbox started (directory: {}   segments: {}   stored messages: {})", directory, segments.size(), size());
+	}
+	
+	/**
+	 * Create the inbox from the inbox.* properties of the configuration.
+	 */
+	public static OfflineInbox fromConfiguration(NotifierConfiguration configuration) throws IOException {
+		File directory = new File(configuration.getString("inbox.directory", "inbox"));
+		int segmentSize = configuration.getInt("inbox.segment.size.bytes", 16 * 1024 * 1024);
+		long retentionMillis = configuration.getLong("inbox.retention.millis", TimeUnit.DAYS.toMillis(7));
+		int maxMessagesPerUser = configuration.getInt("inbox.max.messages.per.user", 1000);
+		int queueCapacity = configuration.getInt("inbox.queue.capacity", 10000);
+		long compactionIntervalMillis = configuration.getLong("inbox.compaction.interval.millis", TimeUnit.MINUTES.toMillis(1));
+		if (segmentSize < 1024) {
+			throw new IOException("the inbox segments must have at least 1024 bytes (was: " + segmentSize + ")");
+		}
+		if (maxMessagesPerUser < 1 || queueCapacity < 1 || compactionIntervalMillis < 1) {
+			throw new IOException("the inbox limits must be positive");
+		}
+		return new OfflineInbox(directory, segmentSize, retentionMillis, maxMessagesPerUser, queueCapacity, compactionIntervalMillis);
+	}
+	
+	@Override
+	public String toString() {
+		return "OfflineInbox [directory=" + directory + ", segmentSize=" + segmentSize + ", retentionMillis=" + retentionMillis
+				+ ", maxMessagesPerUser=" + maxMessagesPerUser + "]";
+	}
+	
+	/**
+	 * Store a message for a user that is not connected. The message is only queued here and appended to the log by the writer thread.
+	 * 
+	 * @return False if the message was not stored, because the queue is full (the writer can't keep up) or the inbox is closed.
+	 */
+	public boolean store(String username, String message) {
+		if (closed) {
+			return false;
+		}
+		if (username.getBytes(StandardCharsets.UTF_8).length > 0xFFFF) {
+			LOGGER.warn("the username is too long for the inbox (message is not stored)");
+			return false;
+		}
+		if (!pendingMessages.offer(new PendingMessage(username, message, System.currentTimeMillis()))) {
+			LOGGER.warn("the inbox queue is full. message for user {} is not stored", username);
+			return false;
+		}
+		pendingSignal.release();
+		return true;
+	}
+	
+	/**
+	 * Get all stored messages of the user (in the order they were stored) and remove them from the inbox.<br>
+	 * The consumed marker is appended to the log by the writer thread, so the replay doesn't wait for the log to be written to the disk (if the
+	 * service is stopped before the marker was written, the messages are replayed again after the restart).
+	 */
+	public synchronized List<String> replay(String username) {
+		//messages that are still queued must be appended first, so they are replayed too
+		appendPendingMessages();
+		
+		Deque<Entry> entries = entriesByUser.remove(username);
+		if (entries == null || entries.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<String> messages = new ArrayList<String>(entries.size());
+		long lastSequence = 0;
+		for (Entry entry : entries) {
+			messages.add(entry.segment.read(entry.position).getMessage());
+			entry.segment.removeLiveMessage();
+			lastSequence = entry.sequence;
+		}
+		pendingConsumedMarkers.addLast(new PendingConsumedMarker(username, lastSequence, System.currentTimeMillis()));
+		pendingSignal.release();
+		LOGGER.debug("replaying {} stored messages for user {}", messages.size(), username);
+		return messages;
+	}
+	
+	/**
+	 * Append all queued messages to the log (used by the writer thread and before replaying).
+	 */
+	synchronized void appendPendingMessages() {
+		PendingMessage pending;
+		while ((pending = pendingMessages.poll()) != null) {
+			appendMessage(pending);
+		}
+	}
+	
+	/**
+	 * Append the consumed markers of the replayed messages to the log (used by the writer thread and when the inbox is closed).
+	 */
+	private synchronized void appendConsumedMarkers() {
+		PendingConsumedMarker marker;
+		while ((marker = pendingConsumedMarkers.pollFirst()) != null) {
+			try {
+				append(InboxRecord.TYPE_CONSUMED, marker.sequence, marker.timestamp, marker.username, null);
+			}
+			catch (IOException ioe) {
+				LOGGER.error("the consumed marker couldn't be written to the inbox (the messages may be replayed again after a restart)", ioe);
+			}
+		}
+	}
+	
+	/**
+	 * Remove expired messages from the index and delete (or compact) the old segments.
+	 */
+	synchronized void compact() {
+		removeExpiredMessages(System.currentTimeMillis() - retentionMillis);
+		
+		//segments are only deleted from the oldest one, so the consumed markers of deleted segments only refer to deleted messages
+		while (segments.size() > 1) {
+			InboxSegment oldest = segments.get(0);
+			if (oldest.getLiveMessages() > 0) {
+				if (oldest.getLiveMessages() >= oldest.getMessages() * COMPACTION_RATIO) {
+					break;
+				}
+				try {
+					copyLiveMessages(oldest);
+				}
+				catch (IOException ioe) {
+					LOGGER.error("the inbox segment couldn't be compacted: {}", oldest, ioe);
+					break;
+				}
+			}
+			segments.remove(0);
+			if (!oldest.delete()) {
+				LOGGER.warn("the inbox segment couldn't be deleted: {}", oldest);
+			}
+			LOGGER.debug("deleted inbox segment: {}", oldest);
+		}
+	}
+	
+	/**
+	 * Stop the writer thread (the queued messages are appended first).
+	 */
+	public synchronized void close() {
+		closed = true;
+		appendPendingMessages();
+		appendConsumedMarkers();
+		activeSegment().force();
+	}
+	
+	/**
+	 * Get the number of stored messages (that are already appended to the log).
+	 */
+	public synchronized int size() {
+		int size = 0;
+		for (Deque<Entry> entries : entriesByUser.values()) {
+			size += entries.size();
+		}
+		return size;
+	}
+	
+	synchronized int getSegmentCount() {
+		return segments.size();
+	}
+	
+	private void runWriter() {
+		long nextCompaction = System.currentTimeMillis() + compactionIntervalMillis;
+		while (!closed) {
+			try {
+				long timeout = Math.max(nextCompaction - System.currentTimeMillis(), 1);
+				boolean pending = pendingSignal.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+				synchronized (this) {
+					if (pending) {
+						//all queued messages and markers are appended at once, so the other signals can be ignored
+						pendingSignal.drainPermits();
+						appendPendingMessages();
+						appendConsumedMarkers();
+						activeSegment().force();
+					}
+					if (System.currentTimeMillis() >= nextCompaction) {
+						compact();
+						nextCompaction = System.currentTimeMillis() + compactionIntervalMillis;
+					}
+				}
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (RuntimeException re) {
+				LOGGER.error("an error occured in the inbox writer", re);
+			}
+		}
+	}
+	
+	private void appendMessage(PendingMessage pending) {
+		Entry entry;
+		try {
+			entry = append(InboxRecord.TYPE_MESSAGE, nextSequence++, pending.timestamp, pending.username, pending.message);
+		}
+		catch (IOException ioe) {
+			LOGGER.error("a message for user {} couldn't be appended to the inbox", pending.username, ioe);
+			return;
+		}
+		Deque<Entry> entries = entriesByUser.computeIfAbsent(pending.username, name -> new ArrayDeque<Entry>());
+		entries.addLast(entry);
+		entry.segment.addMessage();
+		if (entries.size() > maxMessagesPerUser) {
+			entries.pollFirst().segment.removeLiveMessage();
+		}
+	}
+	
+	/**
+	 * Append a record to the active segment (a new segment is created if the active one is full).
+	 */
+	private Entry append(byte type, long sequence, long timestamp, String username, String message) throws IOException {
+		InboxSegment segment = activeSegment();
+		int position = segment.append(type, sequence, timestamp, username, message);
+		if (position == -1) {
+			if (segment.isEmpty()) {
+				throw new IOException("the record is too large for an inbox segment (segment size: " + segmentSize + ")");
+			}
+			segment.force();
+			segment = createSegment(segment.getId() + 1);
+			position = segment.append(type, sequence, timestamp, username, message);
+			if (position == -1) {
+				throw new IOException("the record is too large for an inbox segment (segment size: " + segmentSize + ")");
+			}
+		}
+		return new Entry(sequence, timestamp, segment, position);
+	}
+	
+	private void removeExpiredMessages(long oldestTimestamp) {
+		Iterator<Deque<Entry>> iterator = entriesByUser.values().iterator();
+		while (iterator.hasNext()) {
+			Deque<Entry> entries = iterator.next();
+			while (!entries.isEmpty() && entries.peekFirst().timestamp < oldestTimestamp) {
+				entries.pollFirst().segment.removeLiveMessage();
+			}
+			if (entries.isEmpty()) {
+				iterator.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Copy the live messages of the segment to the active segment (keeping their sequence numbers, so the order doesn't change).
+	 */
+	private void copyLiveMessages(InboxSegment segment) throws IOException {
+		for (Map.Entry<String, Deque<Entry>> userEntries : entriesByUser.entrySet()) {
+			for (Entry entry : userEntries.getValue()) {
+				if (entry.segment == segment) {
+					InboxRecord record = segment.read(entry.position);
+					Entry copy = append(InboxRecord.TYPE_MESSAGE, entry.sequence, entry.timestamp, userEntries.getKey(), record.getMessage());
+					segment.removeLiveMessage();
+					copy.segment.addMessage();
+					entry.segment = copy.segment;
+					entry.position = copy.position;
+				}
+			}
+		}
+		activeSegment().force();
+	}
+	
+	/**
+	 * Load the existing segments and rebuild the index from their records.
+	 */
+	private void loadSegments() throws IOException {
+		File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+		List<Long> ids = new ArrayList<Long>();
+		for (File file : files == null ? new File[0] : files) {
+			String name = file.getName();
+			try {
+				ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+			}
+			catch (NumberFormatException nfe) {
+				LOGGER.warn("ignoring file in the inbox directory: {}", file);
+			}
+		}
+		Collections.sort(ids);
+		
+		Map<String, List<Entry>> loadedEntries = new HashMap<String, List<Entry>>();
+		Map<String, Long> consumedSequences = new HashMap<String, Long>();
+		for (long id : ids) {
+			InboxSegment segment = InboxSegment.open(segmentFile(id), id, segmentSize);
+			segment.scan((record, position) -> {
+				nextSequence = Math.max(nextSequence, record.getSequence() + 1);
+				if (record.getType() == InboxRecord.TYPE_MESSAGE) {
+					loadedEntries.computeIfAbsent(record.getUsername(), name -> new ArrayList<Entry>())
+							.add(new Entry(record.getSequence(), record.getTimestamp(), segment, position));
+				}
+				else if (record.getType() == InboxRecord.TYPE_CONSUMED) {
+					consumedSequences.merge(record.getUsername(), record.getSequence(), Math::max);
+				}
+			});
+			segments.add(segment);
+		}
+		if (segments.isEmpty()) {
+			createSegment(0);
+		}
+		
+		for (Map.Entry<String, List<Entry>> userEntries : loadedEntries.entrySet()) {
+			long consumed = consumedSequences.getOrDefault(userEntries.getKey(), -1L);
+			List<Entry> entries = userEntries.getValue();
+			//copied messages can be found twice (if the service was stopped during a compaction); the order is defined by the sequence
+			entries.sort((e1, e2) -> Long.compare(e1.sequence, e2.sequence));
+			Deque<Entry> live = new ArrayDeque<Entry>();
+			for (Entry entry : entries) {
+				entry.segment.addMessage();
+				if (entry.sequence > consumed && (live.isEmpty() || live.peekLast().sequence != entry.sequence)) {
+					live.addLast(entry);
+				}
+				else {
+					//consumed messages are counted too (but not as live messages), so the segments can be compacted
+					entry.segment.removeLiveMessage();
+				}
+			}
+			while (live.size() > maxMessagesPerUser) {
+				live.pollFirst().segment.removeLiveMessage();
+			}
+			if (!live.isEmpty()) {
+				entriesByUser.put(userEntries.getKey(), live);
+			}
+		}
+		removeExpiredMessages(System.currentTimeMillis() - retentionMillis);
+	}
+	
+	private InboxSegment createSegment(long id) throws IOException {
+		InboxSegment segment = InboxSegment.open(segmentFile(id), id, segmentSize);
+		segments.add(segment);
+		LOGGER.debug("created inbox segment: {}", segment);
+		return segment;
+	}
+	
+	private File segmentFile(long id) {
+		return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+	}
+	
+	private InboxSegment activeSegment() {
+		return segments.get(segments.size() - 1);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+package net.jfabricationgames.notifier.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing counter that can be incremented by many threads without contention.
+ */
+public class Counter {
+	
+	private final String name;
+	private final String help;
+	
+	private final LongAdder value;
+	
+	public Counter(String name, String help) {
+		this.name = name;
+		this.help = help;
+		this.value = new LongAdder();
+	}
+	
+	@Override
+	public String toString() {
+		return "Counter [name=" + name + ", value=" + value + "]";
+	}
+	
+	public void increment() {
+		value.increment();
+	}
+	
+	public void add(long amount) {
+		value.add(amount);
+	}
+	
+	public long get() {
+		return value.sum();
+	}
+	
+	/**
+	 * Append the counter in the prometheus text format.
+	 */
+	public void writeTo(StringBuilder sb) {
+		NotifierMetrics.writeHeader(sb, name, help, "counter");
+		sb.append(name).append(' ').append(get()).append('\n');
+	}
+	
+	public String getName() {
+		return name;
+	}
+}
\ No newline at end of file
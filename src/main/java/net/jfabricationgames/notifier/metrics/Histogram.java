@@ -0,0 +1,138 @@
+package net.jfabricationgames.notifier.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations (in nanoseconds) with log-linear buckets (like an HDR histogram).<br>
+ * Every power of two is split into {@value #SUB_BUCKETS} linear buckets, so every recorded value is known with a relative error of at most
+ * 12.5%, while all values up to {@link Long#MAX_VALUE} fit into less than 500 buckets. Recording a value only increments a bucket and two
+ * adders, so it can be done on the hot path without locking or allocating.
+ */
+public class Histogram {
+	
+	private static final int SUB_BUCKET_BITS = 3;
+	/**
+	 * The number of linear buckets per power of two
+	 */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = bucketIndex(Long.MAX_VALUE) + 1;
+	
+	/**
+	 * The quantiles that are written in the prometheus text format
+	 */
+	private static final double[] QUANTILES = new double[] {0.5, 0.9, 0.99, 0.999};
+	
+	private final String name;
+	private final String help;
+	
+	private final AtomicLongArray buckets;
+	private final LongAdder count;
+	private final LongAdder sum;
+	
+	public Histogram(String name, String help) {
+		this.name = name;
+		this.help = help;
+		this.buckets = new AtomicLongArray(BUCKETS);
+		this.count = new LongAdder();
+		this.sum = new LongAdder();
+	}
+	
+	@Override
+	public String toString() {
+		return "Histogram [name=" + name + ", count=" + getCount() + "]";
+	}
+	
+	/**
+	 * Get the index of the bucket that contains the value.
+	 */
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) Math.max(value, 0);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+	
+	/**
+	 * Get the highest value that is counted in the bucket.
+	 */
+	static long highestValueInBucket(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+	
+	/**
+	 * Record a duration in nanoseconds.
+	 */
+	public void record(long nanos) {
+		buckets.incrementAndGet(bucketIndex(nanos));
+		count.increment();
+		sum.add(nanos);
+	}
+	
+	/**
+	 * Record the duration from the start time (taken from {@link System#nanoTime()}) until now.
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+	
+	/**
+	 * Get the (highest equivalent) value below which the given fraction of the recorded values lies (or 0 if nothing was recorded).
+	 */
+	public long getValueAtQuantile(double quantile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return highestValueInBucket(i);
+			}
+		}
+		return highestValueInBucket(BUCKETS - 1);
+	}
+	
+	public long getCount() {
+		return count.sum();
+	}
+	
+	public long getSum() {
+		return sum.sum();
+	}
+	
+	/**
+	 * Append the histogram as a summary (quantiles, sum and count in seconds) in the prometheus text format.
+	 */
+	public void writeTo(StringBuilder sb) {
+		NotifierMetrics.writeHeader(sb, name, help, "summary");
+		for (double quantile : QUANTILES) {
+			sb.append(name).append("{quantile=\"").append(quantile).append("\"} ").append(toSeconds(getValueAtQuantile(quantile))).append('\n');
+		}
+		sb.append(name).append("_sum ").append(toSeconds(getSum())).append('\n');
+		sb.append(name).append("_count ").append(getCount()).append('\n');
+	}
+	
+	private static double toSeconds(long nanos) {
+		return (double) nanos / TimeUnit.SECONDS.toNanos(1);
+	}
+	
+	public String getName() {
+		return name;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,105 @@
+package net.jfabricationgames.notifier.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics of the notifier service (counters and latency histograms), that can be written in the prometheus text format.
+ */
+public class NotifierMetrics {
+	
+	public static final Counter NOTIFICATIONS_RECEIVED = new Counter("notifier_notifications_received_total",
+			"The number of notifications that were received via REST");
+	public static final Counter NOTIFICATIONS_REJECTED = new Counter("notifier_notifications_rejected_total",
+			"The number of notifications that were rejected because they were invalid");
+	public static final Counter NOTIFICATIONS_RATE_LIMITED = new Counter("notifier_notifications_rate_limited_total",
+			"The number of notifications that were rejected because the rate limit of their sender or a receiver was exceeded");
+	public static final Counter NOTIFICATIONS_DUPLICATE = new Counter("notifier_notifications_duplicate_total",
+			"The number of notifications that were not sent again because their idempotency key was already accepted");
+	public static final Counter REQUESTS_OVERLOADED = new Counter("notifier_requests_overloaded_total",
+			"The number of notification requests that were rejected because the maximum number of concurrent fan outs was reached");
+	public static final Counter SUBSCRIBERS_MATCHED = new Counter("notifier_subscribers_matched_total",
+			"The number of subscribers that matched the receivers of a notification (summed over all notifications)");
+	public static final Counter MESSAGES_DELIVERED = new Counter("notifier_messages_delivered_total",
+			"The number of notification messages that were completely written to a subscriber");
+	public static final Counter MESSAGES_DROPPED = new Counter("notifier_messages_dropped_total",
+			"The number of notification messages that were dropped because the queue of a subscriber was full");
+	public static final Counter MESSAGES_COLLAPSED = new Counter("notifier_messages_collapsed_total",
+			"The number of queued notification messages that were replaced by a newer message with the same collapse key");
+	public static final Counter MESSAGES_RESENT = new Counter("notifier_messages_resent_total",
+			"The number of unacknowledged notification messages that were sent again to a subscriber that reconnected");
+	public static final Counter MESSAGES_UNACKNOWLEDGED_DROPPED = new Counter("notifier_messages_unacknowledged_dropped_total",
+			"The number of notification messages that were removed from a full resend buffer before they were acknowledged");
+	public static final Counter WRITE_FAILURES = new Counter("notifier_write_failures_total",
+			"The number of writes to subscribers that failed");
+	public static final Counter CONNECTIONS_ACCEPTED = new Counter("notifier_connections_accepted_total",
+			"The number of subscriber connections that were accepted");
+	public static final Counter CONNECTIONS_REMOVED = new Counter("notifier_connections_removed_total",
+			"The number of subscriber connections that were closed and removed");
+	public static final Counter HEARTBEAT_TIMEOUTS = new Counter("notifier_heartbeat_timeouts_total",
+			"The number of subscriber connections that were closed because they didn't answer to pings");
+	
+	public static final Histogram DELIVERY_LATENCY = new Histogram("notifier_delivery_latency_seconds",
+			"The time from receiving a notification until it was completely written to a subscriber");
+	public static final Histogram HIGH_PRIORITY_DELIVERY_LATENCY = new Histogram("notifier_delivery_latency_high_priority_seconds",
+			"The delivery latency of the high priority notifications (also included in notifier_delivery_latency_seconds)");
+	public static final Histogram FANOUT_TIME = new Histogram("notifier_fanout_seconds",
+			"The time to match the receivers of a notification against all subscribers and queue the message for them");
+	public static final Histogram WRITE_TIME = new Histogram("notifier_write_seconds", "The time of a single (gathering) write to a subscriber");
+	
+	private static final Counter[] COUNTERS = new Counter[] {NOTIFICATIONS_RECEIVED, NOTIFICATIONS_REJECTED, NOTIFICATIONS_RATE_LIMITED,
+			NOTIFICATIONS_DUPLICATE, REQUESTS_OVERLOADED, SUBSCRIBERS_MATCHED, MESSAGES_DELIVERED, MESSAGES_DROPPED, MESSAGES_COLLAPSED,
+			MESSAGES_RESENT, MESSAGES_UNACKNOWLEDGED_DROPPED, WRITE_FAILURES, CONNECTIONS_ACCEPTED, CONNECTIONS_REMOVED, HEARTBEAT_TIMEOUTS};
+	private static final Histogram[] HISTOGRAMS = new Histogram[] {DELIVERY_LATENCY, HIGH_PRIORITY_DELIVERY_LATENCY, FANOUT_TIME,
+			WRITE_TIME};
+	
+	private NotifierMetrics() {}
+	
+	/**
+	 * Append all metrics in the prometheus text format.
+	 */
+	public static void writeTo(StringBuilder sb) {
+		for (Counter counter : COUNTERS) {
+			counter.writeTo(sb);
+		}
+		for (Histogram histogram : HISTOGRAMS) {
+			histogram.writeTo(sb);
+		}
+	}
+	
+	/**
+	 * Append the CPU time, the memory usage and the number of threads of the process in the prometheus text format (e.g. to compare the resource
+	 * usage of the execution modes under load).
+	 */
+	public static void writeProcessMetrics(StringBuilder sb) {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			long cpuNanos = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+			if (cpuNanos >= 0) {
+				writeHeader(sb, "process_cpu_seconds_total", "The CPU time (user and system) that was used by the process", "counter");
+				sb.append("process_cpu_seconds_total ").append((double) cpuNanos / TimeUnit.SECONDS.toNanos(1)).append('\n');
+			}
+		}
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+		writeGauge(sb, "jvm_memory_heap_used_bytes", "The used heap memory", heap.getUsed());
+		writeGauge(sb, "jvm_memory_heap_committed_bytes", "The heap memory that is reserved by the JVM", heap.getCommitted());
+		writeGauge(sb, "jvm_memory_nonheap_used_bytes", "The used non-heap memory (metaspace, code cache, ...)", nonHeap.getUsed());
+		writeGauge(sb, "jvm_threads_live", "The number of live threads", ManagementFactory.getThreadMXBean().getThreadCount());
+	}
+	
+	/**
+	 * Append a gauge (a value that can go up and down) in the prometheus text format.
+	 */
+	public static void writeGauge(StringBuilder sb, String name, String help, long value) {
+		writeHeader(sb, name, help, "gauge");
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+	
+	static void writeHeader(StringBuilder sb, String name, String help, String type) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+}
\ No newline at end of file
@@ -0,0 +1,60 @@
+package net.jfabricationgames.notifier.notification;
+
+/**
+ * The result of a notification that was sent with waitForDelivery: how many subscribers (of this node) it was sent to and how many of them it was
+ * written to completely or couldn't be written to (e.g. because the subscriber disconnected or its queue was full).
+ */
+public class DeliveryReport {
+	
+	private int matchedSubscribers;
+	private int deliveredSubscribers;
+	private int failedSubscribers;
+	/**
+	 * Whether all matched subscribers were handled (false if the timeout expired before)
+	 */
+	private boolean completed;
+	
+	public DeliveryReport() {
+		//default constructor for serialization
+	}
+	public DeliveryReport(int matchedSubscribers, int deliveredSubscribers, int failedSubscribers, boolean completed) {
+		this.matchedSubscribers = matchedSubscribers;
+		this.deliveredSubscribers = deliveredSubscribers;
+		this.failedSubscribers = failedSubscribers;
+		this.completed = completed;
+	}
+	
+	@Override
+	public String toString() {
+		return "DeliveryReport [matchedSubscribers=" + matchedSubscribers + ", deliveredSubscribers=" + deliveredSubscribers + ", failedSubscribers="
+				+ failedSubscribers + ", completed=" + completed + "]";
+	}
+	
+	public int getMatchedSubscribers() {
+		return matchedSubscribers;
+	}
+	public void setMatchedSubscribers(int matchedSubscribers) {
+		this.matchedSubscribers = matchedSubscribers;
+	}
+	
+	public int getDeliveredSubscribers() {
+		return deliveredSubscribers;
+	}
+	public void setDeliveredSubscribers(int deliveredSubscribers) {
+		this.deliveredSubscribers = deliveredSubscribers;
+	}
+	
+	public int getFailedSubscribers() {
+		return failedSubscribers;
+	}
+	public void setFailedSubscribers(int failedSubscribers) {
+		this.failedSubscribers = failedSubscribers;
+	}
+	
+	public boolean isCompleted() {
+		return completed;
+	}
+	public void setCompleted(boolean completed) {
+		this.completed = completed;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+package net.jfabricationgames.notifier.notification;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Counts the subscribers that a notification was written to (or couldn't be written to) and calls a listener when all subscribers that it was
+ * sent to are handled.<br>
+ * The counts are reported by the threads that write to the subscribers, so the listener should not block (it's called by one of them).
+ * Outcomes that are reported after the tracker completed (e.g. a notification that is resent to a subscriber that reconnected) are ignored.
+ */
+public class DeliveryTracker {
+	
+	private final Consumer<DeliveryReport> completionListener;
+	private final AtomicInteger delivered;
+	private final AtomicInteger failed;
+	/**
+	 * The number of subscribers the notification was sent to (-1 while it's still routed)
+	 */
+	private volatile int matched;
+	private final AtomicBoolean completed;
+	
+	public DeliveryTracker(Consumer<DeliveryReport> completionListener) {
+		this.completionListener = completionListener;
+		this.delivered = new AtomicInteger();
+		this.failed = new AtomicInteger();
+		this.matched = -1;
+		this.completed = new AtomicBoolean();
+	}
+	
+	@Override
+	public String toString() {
+		return "DeliveryTracker [matched=" + matched + ", delivered=" + delivered + ", failed=" + failed + ", completed=" + completed + "]";
+	}
+	
+	/**
+	 * Report that the notification was written to a subscriber completely.
+	 */
+	public void delivered() {
+		if (!completed.get()) {
+			delivered.incrementAndGet();
+			checkCompleted();
+		}
+	}
+	
+	/**
+	 * Report that the notification couldn't be written to a subscriber.
+	 */
+	public void failed() {
+		if (!completed.get()) {
+			failed.incrementAndGet();
+			checkCompleted();
+		}
+	}
+	
+	/**
+	 * Set the number of subscribers the notification was sent to (when the routing is finished).
+	 */
+	public void setMatched(int matched) {
+		this.matched = matched;
+		checkCompleted();
+	}
+	
+	/**
+	 * Complete the tracker without calling the listener (if the notification couldn't be routed).
+	 * 
+	 * @return True if the tracker was aborted. False if it was already completed (so the listener was already called).
+	 */
+	public boolean abort() {
+		return completed.compareAndSet(false, true);
+	}
+	
+	private void checkCompleted() {
+		int expected = matched;
+		if (expected >= 0 && delivered.get() + failed.get() >= expected && completed.compareAndSet(false, true)) {
+			completionListener.accept(getReport());
+		}
+	}
+	
+	/**
+	 * Get the current counts (the report is not completed if some subscribers are still pending).
+	 */
+	public DeliveryReport getReport() {
+		int expected = Math.max(matched, 0);
+		int failedCount = Math.min(failed.get(), expected);
+		int deliveredCount = Math.min(delivered.get(), expected - failedCount);
+		return new DeliveryReport(expected, deliveredCount, failedCount, completed.get());
+	}
+	
+	public boolean isCompleted() {
+		return completed.get();
+	}
+}
\ No newline at end of file
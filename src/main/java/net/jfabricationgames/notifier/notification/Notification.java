@@ -8,6 +8,24 @@ public class Notification {
 	private String message;
 	private String sender;
 	private List<String> receivers;
+	/**
+	 * The topic of the notification (optional). The notification is sent to all subscribers of the topic in addition to the receivers.
+	 */
+	private String topic;
+	/**
+	 * The priority of the notification (optional; {@link Priority#LOW} if not set)
+	 */
+	private Priority priority;
+	/**
+	 * An optional key that identifies the notification for its sender. A notification with a key that was already accepted (e.g. a retry of a
+	 * request that timed out) is not sent again.
+	 */
+	private String idempotencyKey;
+	/**
+	 * An optional key of notifications that replace each other (e.g. the latest status). A notification that is still waiting to be written to a
+	 * subscriber is replaced by a newer notification with the same key.
+	 */
+	private String collapseKey;
 	
 	public Notification() {
 		//default constructor for serialization
@@ -20,7 +38,8 @@ public class Notification {
 	
 	@Override
 	public String toString() {
-		return "Notification [message=" + message + ", sender=" + sender + ", receivers=" + receivers + "]";
+		return "Notification [message=" + message + ", sender=" + sender + ", receivers=" + receivers + ", topic=" + topic + ", priority=" + priority
+				+ ", idempotencyKey=" + idempotencyKey + ", collapseKey=" + collapseKey + "]";
 	}
 	
 	public String getMessage() {
@@ -43,4 +62,32 @@ public class Notification {
 	public void setReceivers(List<String> receivers) {
 		this.receivers = receivers;
 	}
+	
+	public String getTopic() {
+		return topic;
+	}
+	public void setTopic(String topic) {
+		this.topic = topic;
+	}
+	
+	public Priority getPriority() {
+		return priority;
+	}
+	public void setPriority(Priority priority) {
+		this.priority = priority;
+	}
+	
+	public String getIdempotencyKey() {
+		return idempotencyKey;
+	}
+	public void setIdempotencyKey(String idempotencyKey) {
+		this.idempotencyKey = idempotencyKey;
+	}
+	
+	public String getCollapseKey() {
+		return collapseKey;
+	}
+	public void setCollapseKey(String collapseKey) {
+		this.collapseKey = collapseKey;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package net.jfabricationgames.notifier.notification;
+
+/**
+ * The result for a single notification of a batch request.
+ */
+public class NotificationResult {
+	
+	public enum Status {
+		/**
+		 * The notification was sent to all matching subscribers
+		 */
+		ACCEPTED,
+		/**
+		 * The notification was invalid (e.g. it had no receivers) and was not sent
+		 */
+		REJECTED,
+		/**
+		 * The notification was not sent because a rate limit was exceeded or the service was overloaded (it can be sent again after the time of
+		 * the Retry-After header)
+		 */
+		THROTTLED,
+		/**
+		 * The notification was not sent again, because a notification with the same idempotency key was already accepted
+		 */
+		DUPLICATE;
+	}
+	
+	private int index;
+	private Status status;
+	private int matchedSubscribers;
+	private String error;
+	
+	public NotificationResult() {
+		//default constructor for serialization
+	}
+	public NotificationResult(int index, Status status, int matchedSubscribers, String error) {
+		this.index = index;
+		this.status = status;
+		this.matchedSubscribers = matchedSubscribers;
+		this.error = error;
+	}
+	
+	public static NotificationResult accepted(int index, int matchedSubscribers) {
+		return new NotificationResult(index, Status.ACCEPTED, matchedSubscribers, null);
+	}
+	public static NotificationResult rejected(int index, String error) {
+		return new NotificationResult(index, Status.REJECTED, 0, error);
+	}
+	public static NotificationResult throttled(int index, String error) {
+		return new NotificationResult(index, Status.THROTTLED, 0, error);
+	}
+	public static NotificationResult duplicate(int index) {
+		return new NotificationResult(index, Status.DUPLICATE, 0, null);
+	}
+	
+	@Override
+	public String toString() {
+		return "NotificationResult [index=" + index + ", status=" + status + ", matchedSubscribers=" + matchedSubscribers + ", error=" + error + "]";
+	}
+	
+	public int getIndex() {
+		return index;
+	}
+	public void setIndex(int index) {
+		this.index = index;
+	}
+	
+	public Status getStatus() {
+		return status;
+	}
+	public void setStatus(Status status) {
+		this.status = status;
+	}
+	
+	public int getMatchedSubscribers() {
+		return matchedSubscribers;
+	}
+	public void setMatchedSubscribers(int matchedSubscribers) {
+		this.matchedSubscribers = matchedSubscribers;
+	}
+	
+	public String getError() {
+		return error;
+	}
+	public void setError(String error) {
+		this.error = error;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,18 @@
+package net.jfabricationgames.notifier.notification;
+
+/**
+ * The priority of a notification. Every subscriber has a separate lane for each priority, so urgent notifications are not delayed by a large
+ * number of queued bulk notifications.
+ */
+public enum Priority {
+	
+	/**
+	 * Urgent notifications, that are written before the queued low priority notifications (see {@link #LOW} for the fairness)
+	 */
+	HIGH,
+	/**
+	 * The default priority. Low priority notifications are still written while high priority notifications are queued (one after every few
+	 * high priority notifications), so they are not starved.
+	 */
+	LOW;
+}
\ No newline at end of file
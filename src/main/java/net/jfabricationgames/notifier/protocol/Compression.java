@@ -0,0 +1,17 @@
+package net.jfabricationgames.notifier.protocol;
+
+/**
+ * The compression of the data frames that a subscriber can request in the handshake (only for the {@link Protocol#BINARY} protocol).
+ */
+public enum Compression {
+	
+	/**
+	 * All frames are sent uncompressed
+	 */
+	NONE,
+	/**
+	 * The payloads of data frames that exceed a size threshold are compressed using deflate (see {@link DeflateCodec}). Compressed frames are
+	 * marked with the {@link FrameCodec#FLAG_COMPRESSED} flag.
+	 */
+	DEFLATE;
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+package net.jfabricationgames.notifier.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and decompresses the payloads of data frames using deflate (raw deflate data without a zlib header or checksum, because the frames
+ * are already delimited by their length).<br>
+ * The deflaters and inflaters are kept in small pools, because creating them allocates native memory.
+ */
+public class DeflateCodec {
+	
+	/**
+	 * The maximum number of unused deflaters (or inflaters) that are kept for reuse
+	 */
+	private static final int POOL_SIZE = 8;
+	private static final int BUFFER_SIZE = 4096;
+	
+	private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<Deflater>(POOL_SIZE);
+	private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<Inflater>(POOL_SIZE);
+	
+	private DeflateCodec() {}
+	
+	/**
+	 * Compress the bytes of the input.
+	 */
+	public static byte[] compress(byte[] input, int offset, int length) {
+		Deflater deflater = DEFLATERS.poll();
+		if (deflater == null) {
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		}
+		try {
+			deflater.setInput(input, offset, length);
+			deflater.finish();
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.min(length, BUFFER_SIZE));
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (!deflater.finished()) {
+				int deflated = deflater.deflate(buffer);
+				compressed.write(buffer, 0, deflated);
+			}
+			return compressed.toByteArray();
+		}
+		finally {
+			deflater.reset();
+			if (!DEFLATERS.offer(deflater)) {
+				deflater.end();
+			}
+		}
+	}
+	
+	/**
+	 * Decompress the input.
+	 * 
+	 * @param maxLength
+	 *        The maximum length of the decompressed data (to not run out of memory because of a corrupted or malicious frame).
+	 * 
+	 * @throws IOException
+	 *         An {@link IOException} is thrown if the input is no valid deflate data or the decompressed data exceed the maximum length.
+	 */
+	public static byte[] decompress(byte[] input, int maxLength) throws IOException {
+		Inflater inflater = INFLATERS.poll();
+		if (inflater == null) {
+			inflater = new Inflater(true);
+		}
+		try {
+			inflater.setInput(input);
+			ByteArrayOutputStream decompressed = new ByteArrayOutputStream(Math.min(input.length * 4, maxLength));
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (!inflater.finished()) {
+				int inflated = inflater.inflate(buffer);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("the compressed data are incomplete");
+				}
+				if (decompressed.size() + inflated > maxLength) {
+					throw new IOException("the decompressed data exceed the maximum length of " + maxLength + " bytes");
+				}
+				decompressed.write(buffer, 0, inflated);
+			}
+			return decompressed.toByteArray();
+		}
+		catch (DataFormatException dfe) {
+			throw new IOException("the compressed data are invalid", dfe);
+		}
+		finally {
+			inflater.reset();
+			if (!INFLATERS.offer(inflater)) {
+				inflater.end();
+			}
+		}
+	}
+}
\ No newline at end of file
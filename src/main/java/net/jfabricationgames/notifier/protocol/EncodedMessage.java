@@ -0,0 +1,221 @@
+package net.jfabricationgames.notifier.protocol;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import net.jfabricationgames.notifier.notification.DeliveryTracker;
+import net.jfabricationgames.notifier.notification.Priority;
+
+/**
+ * A notification message that is encoded only once (in UTF-8) and then shared by all subscribers it is sent to.<br>
+ * The encoded payload (and the frame header of the binary protocol) are read only buffers. Every subscriber gets its own duplicates of them
+ * (which only have their own positions, but share the content), so a broadcast doesn't encode or copy the message for every subscriber.
+ */
+public class EncodedMessage {
+	
+	private static final ByteBuffer MESSAGE_END = ByteBuffer.wrap(SentinelCodec.MESSAGE_END.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+	private static final ByteBuffer UNCOMPRESSIBLE = ByteBuffer.allocate(0);
+	
+	private final String message;
+	private final Priority priority;
+	/**
+	 * The key of the messages that replace each other in the outbound queue of a subscriber (null if the message is never replaced)
+	 */
+	private final String collapseKey;
+	/**
+	 * Counts the subscribers the message was written to (null if the sender doesn't wait for the delivery)
+	 */
+	private final DeliveryTracker deliveryTracker;
+	private final ByteBuffer payload;
+	/**
+	 * The header of the data frame (created when the message is sent to the first subscriber that uses the binary protocol)
+	 */
+	private volatile ByteBuffer frameHeader;
+	/**
+	 * The message encoded as a Server-Sent Event (created when the message is sent to the first subscriber that uses SSE)
+	 */
+	private volatile ByteBuffer event;
+	/**
+	 * The data frame with the compressed payload (created when the message is sent to the first subscriber that uses compression; the
+	 * {@link #UNCOMPRESSIBLE} marker if compressing doesn't make the payload smaller)
+	 */
+	private volatile ByteBuffer compressedFrame;
+	/**
+	 * The time (from {@link System#nanoTime()}) when the message was created (to measure the delivery latency)
+	 */
+	private final long createdNanos;
+	
+	public EncodedMessage(String message) {
+		this(message, Priority.LOW);
+	}
+	public EncodedMessage(String message, Priority priority) {
+		this(message, priority, null);
+	}
+	public EncodedMessage(String message, Priority priority, String collapseKey) {
+		this(message, priority, collapseKey, null);
+	}
+	public EncodedMessage(String message, Priority priority, String collapseKey, DeliveryTracker deliveryTracker) {
+		this.deliveryTracker = deliveryTracker;
+		this.createdNanos = System.nanoTime();
+		this.message = message;
+		this.priority = priority == null ? Priority.LOW : priority;
+		this.collapseKey = collapseKey;
+		this.payload = ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+	}
+	
+	@Override
+	public String toString() {
+		return "EncodedMessage [message=" + message + ", priority=" + priority + ", collapseKey=" + collapseKey + "]";
+	}
+	
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((message == null) ? 0 : message.hashCode());
+		return result;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		EncodedMessage other = (EncodedMessage) obj;
+		if (message == null) {
+			if (other.message != null)
+				return false;
+		}
+		else if (!message.equals(other.message))
+			return false;
+		return true;
+	}
+	
+	/**
+	 * Get the buffers that have to be written (in this order) to send the message in the given protocol.<br>
+	 * The returned buffers are duplicates of the shared buffers, so they can be written independently of the other subscribers.
+	 */
+	public ByteBuffer[] getBuffers(Protocol protocol) {
+		if (protocol == Protocol.BINARY) {
+			ByteBuffer header = frameHeader;
+			if (header == null) {
+				//creating the header twice in concurrent calls does no harm
+				header = FrameCodec.encodeHeader(FrameType.DATA, (byte) 0, payload.remaining()).asReadOnlyBuffer();
+				frameHeader = header;
+			}
+			return new ByteBuffer[] {header.duplicate(), payload.duplicate()};
+		}
+		else if (protocol == Protocol.SSE) {
+			ByteBuffer encodedEvent = event;
+			if (encodedEvent == null) {
+				encodedEvent = ByteBuffer.wrap(SseCodec.encode(message)).asReadOnlyBuffer();
+				event = encodedEvent;
+			}
+			return new ByteBuffer[] {encodedEvent.duplicate()};
+		}
+		else if (protocol == Protocol.WEBSOCKET) {
+			//the container creates the frame of the text message
+			return new ByteBuffer[] {payload.duplicate()};
+		}
+		else {
+			return new ByteBuffer[] {payload.duplicate(), MESSAGE_END.duplicate()};
+		}
+	}
+	
+	/**
+	 * Get the buffers of a data frame with the compressed payload (for binary subscribers that requested {@link Compression#DEFLATE}).<br>
+	 * The payload is only compressed once and the compressed frame is shared by all subscribers. Messages that are smaller than the threshold (or
+	 * that don't get smaller when they are compressed) are sent in an uncompressed frame.
+	 */
+	public ByteBuffer[] getCompressedBuffers(int thresholdBytes) {
+		ByteBuffer frame = getCompressedFrame(thresholdBytes);
+		if (frame == null) {
+			return getBuffers(Protocol.BINARY);
+		}
+		return new ByteBuffer[] {frame.duplicate()};
+	}
+	
+	/**
+	 * Get the buffers of a sequenced data frame (for binary subscribers that acknowledge the frames).<br>
+	 * The header is created for every subscriber (the sequence number is set with {@link FrameCodec#putSequence(ByteBuffer, long)} when the frame
+	 * is written), but the (compressed) payload is shared.
+	 */
+	public ByteBuffer[] getSequencedBuffers(Compression compression, int thresholdBytes) {
+		ByteBuffer frame = compression == Compression.DEFLATE ? getCompressedFrame(thresholdBytes) : null;
+		if (frame == null) {
+			return new ByteBuffer[] {FrameCodec.encodeSequencedHeader((byte) 0, payload.remaining()), payload.duplicate()};
+		}
+		ByteBuffer compressedPayload = frame.duplicate();
+		((Buffer) compressedPayload).position(FrameCodec.HEADER_SIZE);
+		return new ByteBuffer[] {FrameCodec.encodeSequencedHeader(FrameCodec.FLAG_COMPRESSED, compressedPayload.remaining()), compressedPayload};
+	}
+	
+	/**
+	 * Get the shared data frame with the compressed payload (or null if the message is smaller than the threshold or doesn't get smaller when
+	 * it's compressed).
+	 */
+	private ByteBuffer getCompressedFrame(int thresholdBytes) {
+		if (payload.remaining() < thresholdBytes) {
+			return null;
+		}
+		ByteBuffer frame = compressedFrame;
+		if (frame == null) {
+			//compressing the payload twice in concurrent calls does no harm
+			byte[] uncompressed = new byte[payload.remaining()];
+			payload.duplicate().get(uncompressed);
+			byte[] compressed = DeflateCodec.compress(uncompressed, 0, uncompressed.length);
+			if (compressed.length < uncompressed.length) {
+				frame = FrameCodec.encode(FrameType.DATA, FrameCodec.FLAG_COMPRESSED, compressed).asReadOnlyBuffer();
+			}
+			else {
+				frame = UNCOMPRESSIBLE;
+			}
+			compressedFrame = frame;
+		}
+		return frame == UNCOMPRESSIBLE ? null : frame;
+	}
+	
+	/**
+	 * Report that the message was written to a subscriber completely (if the delivery is tracked).
+	 */
+	public void delivered() {
+		if (deliveryTracker != null) {
+			deliveryTracker.delivered();
+		}
+	}
+	/**
+	 * Report that the message couldn't be written to a subscriber (e.g. it was dropped from a full queue or the subscriber disconnected).
+	 */
+	public void deliveryFailed() {
+		if (deliveryTracker != null) {
+			deliveryTracker.failed();
+		}
+	}
+	
+	public long getCreatedNanos() {
+		return createdNanos;
+	}
+	
+	public String getMessage() {
+		return message;
+	}
+	
+	public Priority getPriority() {
+		return priority;
+	}
+	
+	public String getCollapseKey() {
+		return collapseKey;
+	}
+	
+	/**
+	 * Get the length of the encoded message (without frame header or message end tag).
+	 */
+	public int getLength() {
+		return payload.remaining();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package net.jfabricationgames.notifier.protocol;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A decoded frame of the binary protocol.
+ */
+public class Frame {
+	
+	private final FrameType type;
+	private final byte flags;
+	/**
+	 * The sequence number of a sequenced data frame (0 for all other frames)
+	 */
+	private final long sequence;
+	private final byte[] payload;
+	
+	public Frame(FrameType type, byte flags, byte[] payload) {
+		this(type, flags, 0, payload);
+	}
+	public Frame(FrameType type, byte flags, long sequence, byte[] payload) {
+		this.type = type;
+		this.flags = flags;
+		this.sequence = sequence;
+		this.payload = payload;
+	}
+	
+	@Override
+	public String toString() {
+		return "Frame [type=" + type + ", flags=" + flags + ", sequence=" + sequence + ", payloadLength=" + payload.length + "]";
+	}
+	
+	/**
+	 * Get the payload as UTF-8 encoded text.
+	 */
+	public String getPayloadAsString() {
+		return new String(payload, StandardCharsets.UTF_8);
+	}
+	
+	public FrameType getType() {
+		return type;
+	}
+	
+	public byte getFlags() {
+		return flags;
+	}
+	
+	public boolean isCompressed() {
+		return (flags & FrameCodec.FLAG_COMPRESSED) != 0;
+	}
+	
+	public boolean isSequenced() {
+		return (flags & FrameCodec.FLAG_SEQUENCED) != 0;
+	}
+	
+	public long getSequence() {
+		return sequence;
+	}
+	
+	public byte[] getPayload() {
+		return payload;
+	}
+}
\ No newline at end of file
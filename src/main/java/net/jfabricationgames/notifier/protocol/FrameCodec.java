@@ -0,0 +1,168 @@
+package net.jfabricationgames.notifier.protocol;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes the frames of the binary protocol.<br>
+ * Every frame starts with a header of {@link #HEADER_SIZE} bytes: the protocol version (1 byte), the {@link FrameType} (1 byte), flags (1 byte)
+ * and the length of the payload (4 bytes, big endian). The payload follows the header. Data frames with the {@link #FLAG_SEQUENCED} flag have
+ * an extended header of {@link #SEQUENCED_HEADER_SIZE} bytes, that ends with the sequence number of the frame (8 bytes, big endian).
+ * 
+ * Decoding is incremental: the decoder can be fed with any chunks of bytes and only reads the header and the payload once, so no buffer has to be
+ * scanned for a message end.
+ */
+public class FrameCodec {
+	
+	/**
+	 * The version of the frame format (the first byte of every frame)
+	 */
+	public static final byte VERSION = 1;
+	/**
+	 * The oldest version of the frame format that is still supported
+	 */
+	public static final byte MIN_VERSION = 1;
+	public static final int HEADER_SIZE = 7;
+	public static final int SEQUENCED_HEADER_SIZE = HEADER_SIZE + 8;
+	/**
+	 * The maximum length of a payload (larger frames are treated as a corrupted stream)
+	 */
+	public static final int MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+	/**
+	 * The flag of a data frame whose payload is compressed (see {@link DeflateCodec})
+	 */
+	public static final byte FLAG_COMPRESSED = 1;
+	/**
+	 * The flag of a data frame that has a sequence number (for subscribers that acknowledge the frames)
+	 */
+	public static final byte FLAG_SEQUENCED = 2;
+	
+	private final ByteBuffer header;
+	/**
+	 * The payload of the frame that is currently decoded (null while the header is decoded)
+	 */
+	private ByteBuffer payload;
+	private FrameType type;
+	private byte flags;
+	private long sequence;
+	
+	public FrameCodec() {
+		header = ByteBuffer.allocate(SEQUENCED_HEADER_SIZE);
+		((Buffer) header).limit(HEADER_SIZE);
+	}
+	
+	/**
+	 * Choose the version of the frame format that is used with a client (the newest version that both sides support).
+	 * 
+	 * @return The negotiated version or 0 if the requested version is older than all supported versions.
+	 */
+	public static int negotiateVersion(int requestedVersion) {
+		int version = Math.min(requestedVersion, VERSION);
+		return version >= MIN_VERSION ? version : 0;
+	}
+	
+	/**
+	 * Create the header of a frame.
+	 */
+	public static ByteBuffer encodeHeader(FrameType type, byte flags, int payloadLength) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.put(VERSION).put(type.getCode()).put(flags).putInt(payloadLength);
+		((Buffer) header).flip();
+		return header;
+	}
+	
+	/**
+	 * Create the extended header of a sequenced data frame. The sequence number is set later (using {@link #putSequence(ByteBuffer, long)}),
+	 * because it's only known when the frame is written.
+	 */
+	public static ByteBuffer encodeSequencedHeader(byte flags, int payloadLength) {
+		ByteBuffer header = ByteBuffer.allocate(SEQUENCED_HEADER_SIZE);
+		header.put(VERSION).put(FrameType.DATA.getCode()).put((byte) (flags | FLAG_SEQUENCED)).putInt(payloadLength).putLong(0);
+		((Buffer) header).flip();
+		return header;
+	}
+	
+	/**
+	 * Set the sequence number in a header that was created by {@link #encodeSequencedHeader(byte, int)} (the position is not changed).
+	 */
+	public static void putSequence(ByteBuffer sequencedHeader, long sequence) {
+		sequencedHeader.putLong(HEADER_SIZE, sequence);
+	}
+	
+	/**
+	 * Create a complete frame (header and payload) in one buffer.
+	 */
+	public static ByteBuffer encode(FrameType type, byte flags, byte[] payload) {
+		ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+		frame.put(VERSION).put(type.getCode()).put(flags).putInt(payload.length).put(payload);
+		((Buffer) frame).flip();
+		return frame;
+	}
+	
+	/**
+	 * Decode the next frame from the input. Only the bytes of this frame are consumed, so the input can contain multiple frames.
+	 * 
+	 * @return The decoded frame or null if the input doesn't contain the rest of the frame yet (all input is consumed in this case).
+	 * 
+	 * @throws IOException
+	 *         An {@link IOException} is thrown if the header of the frame is invalid.
+	 */
+	public Frame decode(ByteBuffer in) throws IOException {
+		if (payload == null) {
+			transfer(in, header);
+			if (!header.hasRemaining() && header.limit() == HEADER_SIZE && (header.get(2) & FLAG_SEQUENCED) != 0) {
+				//the header is extended by the sequence number
+				((Buffer) header).limit(SEQUENCED_HEADER_SIZE);
+				transfer(in, header);
+			}
+			if (header.hasRemaining()) {
+				return null;
+			}
+			((Buffer) header).flip();
+			byte version = header.get();
+			byte code = header.get();
+			flags = header.get();
+			int length = header.getInt();
+			sequence = header.hasRemaining() ? header.getLong() : 0;
+			((Buffer) header).clear();
+			((Buffer) header).limit(HEADER_SIZE);
+			
+			if (version != VERSION) {
+				throw new IOException("unsupported frame version: " + version);
+			}
+			if (length < 0 || length > MAX_PAYLOAD_LENGTH) {
+				throw new IOException("invalid payload length: " + length);
+			}
+			type = FrameType.fromCode(code);
+			if (type == null) {
+				throw new IOException("unknown frame type: " + code);
+			}
+			payload = ByteBuffer.allocate(length);
+		}
+		
+		transfer(in, payload);
+		if (payload.hasRemaining()) {
+			return null;
+		}
+		Frame frame = new Frame(type, flags, sequence, payload.array());
+		payload = null;
+		return frame;
+	}
+	
+	/**
+	 * Copy as many bytes as possible from the input to the output.
+	 */
+	private static void transfer(ByteBuffer in, ByteBuffer out) {
+		int count = Math.min(in.remaining(), out.remaining());
+		if (count == in.remaining()) {
+			out.put(in);
+		}
+		else {
+			ByteBuffer slice = in.slice();
+			((Buffer) slice).limit(count);
+			out.put(slice);
+			((Buffer) in).position(in.position() + count);
+		}
+	}
+}
\ No newline at end of file
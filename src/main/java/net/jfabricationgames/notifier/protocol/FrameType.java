@@ -0,0 +1,50 @@
+package net.jfabricationgames.notifier.protocol;
+
+/**
+ * The types of the frames in the binary protocol (encoded as a single byte in the frame header).
+ */
+public enum FrameType {
+	
+	/**
+	 * A notification message (the payload is the UTF-8 encoded message)
+	 */
+	DATA((byte) 1),
+	/**
+	 * A control frame that tells the other side that the connection is closed (no payload)
+	 */
+	CLOSE((byte) 2),
+	/**
+	 * A control frame that checks whether the other side is still alive (no payload; answered with a {@link #PONG})
+	 */
+	PING((byte) 3),
+	/**
+	 * The answer to a {@link #PING} (no payload)
+	 */
+	PONG((byte) 4),
+	/**
+	 * A control frame of a subscriber that acknowledges all sequenced data frames up to the sequence number in the payload (8 bytes, big endian)
+	 */
+	ACK((byte) 5);
+	
+	private final byte code;
+	
+	private FrameType(byte code) {
+		this.code = code;
+	}
+	
+	/**
+	 * Get the frame type for the code from a frame header (or null if the code is unknown).
+	 */
+	public static FrameType fromCode(byte code) {
+		for (FrameType type : values()) {
+			if (type.code == code) {
+				return type;
+			}
+		}
+		return null;
+	}
+	
+	public byte getCode() {
+		return code;
+	}
+}
\ No newline at end of file
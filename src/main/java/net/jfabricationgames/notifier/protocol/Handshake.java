@@ -0,0 +1,241 @@
+package net.jfabricationgames.notifier.protocol;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The handshake that is send by a subscriber as answer to the {@link #USERNAME_REQUEST} of the service.<br>
+ * Legacy clients only answer with their username and then receive messages in the {@link Protocol#LEGACY} protocol. Other clients answer with
+ * a handshake (the options are encoded as properties between {@link #HANDSHAKE_START} and {@link #HANDSHAKE_END}). The service then answers
+ * with a {@link #HANDSHAKE_ACCEPTED} message (still in the legacy protocol) that contains the negotiated options and uses the negotiated
+ * protocol for all following messages. The version of the binary protocol is the newest one that both sides support (see
+ * {@link FrameCodec#negotiateVersion(int)}); if there is none, the service uses the legacy protocol. A client that doesn't receive the accepted message (e.g. from an older service) just stays on the legacy
+ * protocol.
+ */
+public class Handshake {
+	
+	/**
+	 * The string that the service will send to request a name from the user.
+	 */
+	public static final String USERNAME_REQUEST = "<<send_username>>";
+	public static final String HANDSHAKE_START = "<<handshake>>";
+	public static final String HANDSHAKE_END = "<<handshake_end>>";
+	public static final String HANDSHAKE_ACCEPTED = "<<handshake_accepted>>";
+	
+	/**
+	 * The maximum size of a handshake (larger handshakes are rejected)
+	 */
+	public static final int MAX_HANDSHAKE_SIZE = 8192;
+	
+	private static final String KEY_USERNAME = "username";
+	private static final String KEY_PROTOCOL = "protocol";
+	private static final String KEY_PROTOCOL_VERSION = "protocol.version";
+	private static final String KEY_HEARTBEAT_INTERVAL = "heartbeat.interval.millis";
+	private static final String KEY_COMPRESSION = "compression";
+	private static final String KEY_TOPICS = "topics";
+	private static final String KEY_ACKS = "acks";
+	private static final String KEY_LAST_ACK = "last_ack";
+	private static final String KEY_NEXT_SEQUENCE = "sequence.next";
+	
+	private Properties properties;
+	
+	public Handshake() {
+		properties = new Properties();
+	}
+	private Handshake(Properties properties) {
+		this.properties = properties;
+	}
+	
+	/**
+	 * Parse the options of a handshake (the text between the start and end tags).
+	 */
+	public static Handshake parse(String options) throws IOException {
+		Properties properties = new Properties();
+		properties.load(new StringReader(options));
+		return new Handshake(properties);
+	}
+	
+	/**
+	 * Encode the handshake that is send by the client (including the start and end tags).
+	 */
+	public String encodeRequest() {
+		return HANDSHAKE_START + encodeOptions() + HANDSHAKE_END;
+	}
+	
+	/**
+	 * Encode the answer of the service (including the accepted tag, but without the message end tag).
+	 */
+	public String encodeAccepted() {
+		return HANDSHAKE_ACCEPTED + encodeOptions();
+	}
+	
+	private String encodeOptions() {
+		StringWriter writer = new StringWriter();
+		try {
+			properties.store(writer, null);
+		}
+		catch (IOException ioe) {
+			//can't happen when writing to a string
+			throw new IllegalStateException(ioe);
+		}
+		String options = writer.toString();
+		//remove the date comment that is always written by Properties.store
+		return options.startsWith("#") ? options.substring(options.indexOf('\n') + 1) : options;
+	}
+	
+	@Override
+	public String toString() {
+		return "Handshake [properties=" + properties + "]";
+	}
+	
+	/**
+	 * Set an option that is not interpreted by the handshake itself.
+	 */
+	public void setOption(String key, String value) {
+		properties.setProperty(key, value);
+	}
+	public String getOption(String key) {
+		return properties.getProperty(key);
+	}
+	
+	public String getUsername() {
+		return properties.getProperty(KEY_USERNAME);
+	}
+	public void setUsername(String username) {
+		properties.setProperty(KEY_USERNAME, username);
+	}
+	
+	/**
+	 * Get the requested protocol (LEGACY if the protocol is not set or unknown).
+	 */
+	public Protocol getProtocol() {
+		String protocol = properties.getProperty(KEY_PROTOCOL, Protocol.LEGACY.name());
+		try {
+			return Protocol.valueOf(protocol.toUpperCase());
+		}
+		catch (IllegalArgumentException iae) {
+			return Protocol.LEGACY;
+		}
+	}
+	public void setProtocol(Protocol protocol) {
+		properties.setProperty(KEY_PROTOCOL, protocol.name().toLowerCase());
+	}
+	
+	/**
+	 * Get the version of the binary frame format (0 if not set).
+	 */
+	public int getProtocolVersion() {
+		try {
+			return Integer.parseInt(properties.getProperty(KEY_PROTOCOL_VERSION, "0"));
+		}
+		catch (NumberFormatException nfe) {
+			return 0;
+		}
+	}
+	public void setProtocolVersion(int version) {
+		properties.setProperty(KEY_PROTOCOL_VERSION, Integer.toString(version));
+	}
+	
+	/**
+	 * Get the interval in which the service sends pings to an idle subscriber (0 if the service doesn't send pings).
+	 */
+	public long getHeartbeatIntervalMillis() {
+		try {
+			return Long.parseLong(properties.getProperty(KEY_HEARTBEAT_INTERVAL, "0"));
+		}
+		catch (NumberFormatException nfe) {
+			return 0;
+		}
+	}
+	public void setHeartbeatIntervalMillis(long intervalMillis) {
+		properties.setProperty(KEY_HEARTBEAT_INTERVAL, Long.toString(intervalMillis));
+	}
+	
+	/**
+	 * Get the requested (or accepted) compression of the data frames (NONE if the compression is not set or unknown).
+	 */
+	public Compression getCompression() {
+		String compression = properties.getProperty(KEY_COMPRESSION, Compression.NONE.name());
+		try {
+			return Compression.valueOf(compression.toUpperCase());
+		}
+		catch (IllegalArgumentException iae) {
+			return Compression.NONE;
+		}
+	}
+	public void setCompression(Compression compression) {
+		properties.setProperty(KEY_COMPRESSION, compression.name().toLowerCase());
+	}
+	
+	/**
+	 * Get the topics that the subscriber subscribes to (an empty list if no topics are set).
+	 */
+	public List<String> getTopics() {
+		return parseTopics(properties.getProperty(KEY_TOPICS));
+	}
+	public void setTopics(Collection<String> topics) {
+		properties.setProperty(KEY_TOPICS, String.join(",", topics));
+	}
+	
+	/**
+	 * Check whether the subscriber acknowledges the data frames (requested by the client and confirmed by the service; only for the binary
+	 * protocol). The data frames are sequenced then.
+	 */
+	public boolean isAcks() {
+		return Boolean.parseBoolean(properties.getProperty(KEY_ACKS, "false"));
+	}
+	public void setAcks(boolean acks) {
+		properties.setProperty(KEY_ACKS, Boolean.toString(acks));
+	}
+	
+	/**
+	 * Get the sequence number of the last data frame that the client received in a previous connection (0 if it's a new session). The service
+	 * resends the unacknowledged frames after this sequence number.
+	 */
+	public long getLastAck() {
+		return parseLong(KEY_LAST_ACK);
+	}
+	public void setLastAck(long sequence) {
+		properties.setProperty(KEY_LAST_ACK, Long.toString(sequence));
+	}
+	
+	/**
+	 * Get the sequence number of the next data frame that the service sends (in the accepted handshake). If it's not the one after the last ack
+	 * of the client, frames were lost (or the session couldn't be resumed, if it's 1).
+	 */
+	public long getNextSequence() {
+		return parseLong(KEY_NEXT_SEQUENCE);
+	}
+	public void setNextSequence(long sequence) {
+		properties.setProperty(KEY_NEXT_SEQUENCE, Long.toString(sequence));
+	}
+	
+	private long parseLong(String key) {
+		try {
+			return Long.parseLong(properties.getProperty(key, "0"));
+		}
+		catch (NumberFormatException nfe) {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Parse a comma separated list of topics (empty topics are ignored, so a topic can't contain a comma).
+	 */
+	public static List<String> parseTopics(String topics) {
+		List<String> parsed = new ArrayList<String>();
+		if (topics != null) {
+			for (String topic : topics.split(",")) {
+				if (!topic.trim().isEmpty()) {
+					parsed.add(topic.trim());
+				}
+			}
+		}
+		return parsed;
+	}
+}
\ No newline at end of file
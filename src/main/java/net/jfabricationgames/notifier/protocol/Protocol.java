@@ -0,0 +1,24 @@
+package net.jfabricationgames.notifier.protocol;
+
+/**
+ * The protocols that can be used for the messages that are send from the service to a subscriber.
+ */
+public enum Protocol {
+	
+	/**
+	 * Every message is ended by the {@link SentinelCodec#MESSAGE_END} tag (used by clients that don't send a handshake)
+	 */
+	LEGACY,
+	/**
+	 * Every message is send in a length prefixed binary frame (see {@link FrameCodec})
+	 */
+	BINARY,
+	/**
+	 * Every message is send as a text message of a WebSocket (only used by the subscribers that connect through the servlet container)
+	 */
+	WEBSOCKET,
+	/**
+	 * Every message is send as a Server-Sent Event (see {@link SseCodec}; only used by the subscribers that connect through the servlet container)
+	 */
+	SSE;
+}
\ No newline at end of file
@@ -0,0 +1,86 @@
+package net.jfabricationgames.notifier.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Encodes and decodes the messages of the legacy protocol, where every message is ended by a sentinel tag.<br>
+ * Decoding is incremental: every byte is only checked once against the sentinel (using the KMP algorithm), so the received text doesn't have to
+ * be scanned again for every chunk that is read.
+ */
+public class SentinelCodec {
+	
+	/**
+	 * A string that indicates the end of a notification message.
+	 */
+	public static final String MESSAGE_END = "<<notification_end>>";
+	
+	private final byte[] sentinel;
+	/**
+	 * The KMP failure function of the sentinel (the length of the longest proper prefix that is also a suffix for every prefix of the sentinel)
+	 */
+	private final int[] failure;
+	
+	private byte[] buffer;
+	private int size;
+	/**
+	 * The number of bytes of the sentinel that are matched at the end of the buffer
+	 */
+	private int matched;
+	
+	public SentinelCodec(Charset charset) {
+		this(MESSAGE_END, charset);
+	}
+	public SentinelCodec(String sentinel, Charset charset) {
+		this.sentinel = sentinel.getBytes(charset);
+		this.failure = new int[this.sentinel.length];
+		for (int i = 1, k = 0; i < this.sentinel.length; i++) {
+			while (k > 0 && this.sentinel[i] != this.sentinel[k]) {
+				k = failure[k - 1];
+			}
+			if (this.sentinel[i] == this.sentinel[k]) {
+				k++;
+			}
+			failure[i] = k;
+		}
+		this.buffer = new byte[256];
+	}
+	
+	/**
+	 * Encode a message (followed by the message end tag).
+	 */
+	public static byte[] encode(String message, Charset charset) {
+		return (message + MESSAGE_END).getBytes(charset);
+	}
+	
+	/**
+	 * Decode the next message from the input. Only the bytes of this message (including the sentinel) are consumed.
+	 * 
+	 * @return The bytes of the message (without the sentinel) or null if the input doesn't contain the end of the message yet (all input is
+	 *         consumed in this case).
+	 */
+	public byte[] decode(ByteBuffer in) {
+		while (in.hasRemaining()) {
+			byte b = in.get();
+			if (size == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			buffer[size++] = b;
+			
+			while (matched > 0 && b != sentinel[matched]) {
+				matched = failure[matched - 1];
+			}
+			if (b == sentinel[matched]) {
+				matched++;
+			}
+			if (matched == sentinel.length) {
+				byte[] message = Arrays.copyOf(buffer, size - sentinel.length);
+				size = 0;
+				matched = 0;
+				return message;
+			}
+		}
+		return null;
+	}
+}
\ No newline at end of file
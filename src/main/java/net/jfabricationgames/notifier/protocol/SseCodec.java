@@ -0,0 +1,46 @@
+package net.jfabricationgames.notifier.protocol;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes the messages that are sent to subscribers as Server-Sent Events (a text/event-stream).<br>
+ * Every line of the message is sent in a data field and the event is ended by an empty line, so a client (like the EventSource of a browser)
+ * receives the message with its line breaks as the data of one event.
+ */
+public class SseCodec {
+	
+	public static final String CONTENT_TYPE = "text/event-stream";
+	
+	private static final String DATA_FIELD = "data: ";
+	
+	private SseCodec() {}
+	
+	/**
+	 * Encode the message as one event (in UTF-8). Line breaks (CRLF, LF or CR) end a data field.
+	 */
+	public static byte[] encode(String message) {
+		StringBuilder event = new StringBuilder(message.length() + DATA_FIELD.length() + 2);
+		event.append(DATA_FIELD);
+		for (int i = 0; i < message.length(); i++) {
+			char c = message.charAt(i);
+			if (c == '\r' || c == '\n') {
+				if (c == '\r' && i + 1 < message.length() && message.charAt(i + 1) == '\n') {
+					i++;
+				}
+				event.append('\n').append(DATA_FIELD);
+			}
+			else {
+				event.append(c);
+			}
+		}
+		event.append("\n\n");
+		return event.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Encode a comment, that is ignored by the clients (e.g. to keep an idle connection open).
+	 */
+	public static byte[] encodeComment(String comment) {
+		return (": " + comment + "\n\n").getBytes(StandardCharsets.UTF_8);
+	}
+}
\ No newline at end of file
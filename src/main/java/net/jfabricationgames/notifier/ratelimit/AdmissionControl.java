@@ -0,0 +1,217 @@
+package net.jfabricationgames.notifier.ratelimit;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+import net.jfabricationgames.notifier.metrics.NotifierMetrics;
+import net.jfabricationgames.notifier.notification.Notification;
+
+/**
+ * Decides whether the notifications of a request are accepted, before they are routed to the subscribers: the rates per sender and per receiver
+ * are limited and only a maximum number of fan outs (routings to the subscribers) are executed at the same time, so a single producer can't
+ * saturate the service for all others. Notifications with an idempotency key that was already accepted (retries of a producer) are recognized
+ * as duplicates.
+ */
+public class AdmissionControl {
+	
+	private static final Logger LOGGER = LogManager.getLogger(AdmissionControl.class);
+	
+	/**
+	 * The rate limiter key for notifications without a sender
+	 */
+	private static final String UNKNOWN_SENDER = "";
+	
+	/**
+	 * The rate limits per sender and per receiver (null if not limited)
+	 */
+	private final RateLimiter senderLimiter;
+	private final RateLimiter receiverLimiter;
+	/**
+	 * The permits for the fan outs that are executed at the same time (null if not limited)
+	 */
+	private final Semaphore fanOuts;
+	/**
+	 * The time that a request waits for a free fan out permit
+	 */
+	private final long fanOutTimeoutMillis;
+	/**
+	 * The idempotency keys of the accepted notifications (null if duplicates are not recognized)
+	 */
+	private final IdempotencyCache idempotencyCache;
+	
+	public AdmissionControl(RateLimiter senderLimiter, RateLimiter receiverLimiter, int maxConcurrentFanOuts, long fanOutTimeoutMillis) {
+		this(senderLimiter, receiverLimiter, maxConcurrentFanOuts, fanOutTimeoutMillis, null);
+	}
+	public AdmissionControl(RateLimiter senderLimiter, RateLimiter receiverLimiter, int maxConcurrentFanOuts, long fanOutTimeoutMillis,
+			IdempotencyCache idempotencyCache) {
+		this.senderLimiter = senderLimiter;
+		this.receiverLimiter = receiverLimiter;
+		this.fanOuts = maxConcurrentFanOuts > 0 ? new Semaphore(maxConcurrentFanOuts) : null;
+		this.fanOutTimeoutMillis = fanOutTimeoutMillis;
+		this.idempotencyCache = idempotencyCache;
+	}
+	
+	/**
+	 * Create the admission control from the ratelimit.*, fanout.* and idempotency.* properties of the configuration.
+	 */
+	public static AdmissionControl fromConfiguration(NotifierConfiguration configuration) throws IOException {
+		int maxKeys = configuration.getInt("ratelimit.max.keys", 100000);
+		RateLimiter senderLimiter = createRateLimiter(configuration, "ratelimit.sender", maxKeys);
+		RateLimiter receiverLimiter = createRateLimiter(configuration, "ratelimit.receiver", maxKeys);
+		int maxConcurrentFanOuts = configuration.getInt("fanout.max.concurrent", 64);
+		long fanOutTimeoutMillis = configuration.getLong("fanout.admission.timeout.millis", 100);
+		long idempotencyExpirationMillis = configuration.getLong("idempotency.expiration.millis", 300000);
+		int idempotencyMaxKeys = configuration.getInt("idempotency.max.keys", 100000);
+		if (idempotencyExpirationMillis > 0 && idempotencyMaxKeys < 1) {
+			throw new IOException("the maximum number of idempotency keys must be positive (was: " + idempotencyMaxKeys + ")");
+		}
+		IdempotencyCache idempotencyCache = idempotencyExpirationMillis > 0 ? new IdempotencyCache(idempotencyExpirationMillis, idempotencyMaxKeys)
+				: null;
+		LOGGER.info("admission control: sender limit: {}   receiver limit: {}   max concurrent fan outs: {}   idempotency keys: {}", senderLimiter,
+				receiverLimiter, maxConcurrentFanOuts, idempotencyCache);
+		return new AdmissionControl(senderLimiter, receiverLimiter, maxConcurrentFanOuts, fanOutTimeoutMillis, idempotencyCache);
+	}
+	
+	private static RateLimiter createRateLimiter(NotifierConfiguration configuration, String prefix, int maxKeys) throws IOException {
+		long perSecond = configuration.getLong(prefix + ".per.second", 0);
+		long burst = configuration.getLong(prefix + ".burst", 100);
+		if (perSecond <= 0) {
+			return null;
+		}
+		if (burst < 1) {
+			throw new IOException("the burst of the rate limit must be positive (" + prefix + ".burst was: " + burst + ")");
+		}
+		return new RateLimiter(perSecond, burst, maxKeys);
+	}
+	
+	@Override
+	public String toString() {
+		return "AdmissionControl [senderLimiter=" + senderLimiter + ", receiverLimiter=" + receiverLimiter + ", fanOuts=" + fanOuts
+				+ ", idempotencyCache=" + idempotencyCache + "]";
+	}
+	
+	/**
+	 * Check whether a notification with the same idempotency key (from the same sender) was already accepted. Otherwise the key is remembered,
+	 * so the next notification with this key is a duplicate (see {@link #forgetIdempotencyKey(Notification)} for notifications that are not sent
+	 * after this check).
+	 * 
+	 * @return True if the notification is a duplicate (a retry) and must not be sent again.
+	 */
+	public boolean checkDuplicate(Notification notification) {
+		if (idempotencyCache == null || notification.getIdempotencyKey() == null) {
+			return false;
+		}
+		if (idempotencyCache.add(toIdempotencyKey(notification), System.nanoTime())) {
+			return false;
+		}
+		NotifierMetrics.NOTIFICATIONS_DUPLICATE.increment();
+		LOGGER.debug("the notification is a duplicate: {}", notification);
+		return true;
+	}
+	
+	/**
+	 * Forget the idempotency key of a notification that was not sent (e.g. because it exceeded a rate limit), so a retry is not a duplicate.
+	 */
+	public void forgetIdempotencyKey(Notification notification) {
+		if (idempotencyCache != null && notification.getIdempotencyKey() != null) {
+			idempotencyCache.remove(toIdempotencyKey(notification));
+		}
+	}
+	
+	/**
+	 * The idempotency keys are scoped by the sender (so different senders can't suppress the notifications of each other).
+	 */
+	private static String toIdempotencyKey(Notification notification) {
+		String sender = notification.getSender() == null ? UNKNOWN_SENDER : notification.getSender();
+		return sender.length() + ":" + sender + notification.getIdempotencyKey();
+	}
+	
+	/**
+	 * Check (and count) the notification against the rate limits of its sender and its receivers. A notification that is rejected by one of the
+	 * limits is not counted by the others (the tokens that were already taken are given back).
+	 * 
+	 * @return 0 if the notification can be sent or the time (in nanoseconds) after which the sender can try again.
+	 */
+	public long checkRateLimits(Notification notification) {
+		long wait = 0;
+		String sender = notification.getSender() == null ? UNKNOWN_SENDER : notification.getSender();
+		if (senderLimiter != null) {
+			wait = senderLimiter.tryAcquire(sender);
+		}
+		if (wait == 0 && receiverLimiter != null && notification.getReceivers() != null) {
+			List<String> receivers = notification.getReceivers();
+			for (int i = 0; i < receivers.size(); i++) {
+				wait = receiverLimiter.tryAcquire(receivers.get(i));
+				if (wait > 0) {
+					releaseRateLimits(sender, receivers.subList(0, i));
+					break;
+				}
+			}
+		}
+		if (wait > 0) {
+			NotifierMetrics.NOTIFICATIONS_RATE_LIMITED.increment();
+			LOGGER.debug("the notification exceeds a rate limit: {}", notification);
+		}
+		return wait;
+	}
+	
+	/**
+	 * Give back the tokens that were taken by {@link #checkRateLimits(Notification)} for a notification that is not sent (e.g. because the
+	 * service is overloaded), so a retry is not limited by them.
+	 */
+	public void releaseRateLimits(Notification notification) {
+		String sender = notification.getSender() == null ? UNKNOWN_SENDER : notification.getSender();
+		List<String> receivers = notification.getReceivers() == null ? Collections.<String> emptyList() : notification.getReceivers();
+		releaseRateLimits(sender, receivers);
+	}
+	
+	private void releaseRateLimits(String sender, List<String> receivers) {
+		if (receiverLimiter != null) {
+			receivers.forEach(receiverLimiter::release);
+		}
+		if (senderLimiter != null) {
+			senderLimiter.release(sender);
+		}
+	}
+	
+	/**
+	 * Wait (up to the configured timeout) for a free fan out. Every successful call has to be followed by a call of {@link #endFanOut()}.
+	 * 
+	 * @return True if the fan out can be started. False if too many fan outs are executed at the moment.
+	 */
+	public boolean tryStartFanOut() {
+		if (fanOuts == null) {
+			return true;
+		}
+		try {
+			if (fanOuts.tryAcquire(fanOutTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		NotifierMetrics.REQUESTS_OVERLOADED.increment();
+		return false;
+	}
+	
+	public void endFanOut() {
+		if (fanOuts != null) {
+			fanOuts.release();
+		}
+	}
+	
+	/**
+	 * Convert a waiting time to the value of a Retry-After header (in seconds, rounded up).
+	 */
+	public static long toRetryAfterSeconds(long waitNanos) {
+		return Math.max((waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1), 1);
+	}
+}
\ No newline at end of file
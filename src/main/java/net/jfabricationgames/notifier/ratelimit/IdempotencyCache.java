@@ -0,0 +1,77 @@
+package net.jfabricationgames.notifier.ratelimit;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the idempotency keys of the notifications that were accepted for a fixed time, so retried requests can be recognized.<br>
+ * The keys are kept in insertion order. Because all keys expire after the same time, the expired keys are always the oldest ones, so they are
+ * removed from the head of the map (and the oldest keys are removed when the maximum number of keys is reached). All operations take constant
+ * time.
+ */
+public class IdempotencyCache {
+	
+	private final long expirationNanos;
+	private final int maxKeys;
+	
+	/**
+	 * The keys and the times (from {@link System#nanoTime()}) at which they expire
+	 */
+	private final LinkedHashMap<String, Long> keys;
+	
+	public IdempotencyCache(long expirationMillis, int maxKeys) {
+		if (expirationMillis < 1) {
+			throw new IllegalArgumentException("the expiration time must be positive (was: " + expirationMillis + ")");
+		}
+		if (maxKeys < 1) {
+			throw new IllegalArgumentException("the maximum number of keys must be positive (was: " + maxKeys + ")");
+		}
+		this.expirationNanos = TimeUnit.MILLISECONDS.toNanos(expirationMillis);
+		this.maxKeys = maxKeys;
+		this.keys = new LinkedHashMap<String, Long>();
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return "IdempotencyCache [expirationNanos=" + expirationNanos + ", maxKeys=" + maxKeys + ", keys=" + keys.size() + "]";
+	}
+	
+	/**
+	 * Add the key if its not yet known (or expired).
+	 * 
+	 * @return True if the key was added. False if the key is already known (the request is a duplicate).
+	 */
+	public synchronized boolean add(String key, long nowNanos) {
+		removeExpired(nowNanos);
+		if (keys.containsKey(key)) {
+			return false;
+		}
+		keys.put(key, nowNanos + expirationNanos);
+		if (keys.size() > maxKeys) {
+			Iterator<String> oldest = keys.keySet().iterator();
+			oldest.next();
+			oldest.remove();
+		}
+		return true;
+	}
+	
+	/**
+	 * Remove a key (e.g. because the request was not accepted, so a retry has to be handled).
+	 */
+	public synchronized void remove(String key) {
+		keys.remove(key);
+	}
+	
+	private void removeExpired(long nowNanos) {
+		Iterator<Map.Entry<String, Long>> iterator = keys.entrySet().iterator();
+		while (iterator.hasNext() && iterator.next().getValue() - nowNanos <= 0) {
+			iterator.remove();
+		}
+	}
+	
+	public synchronized int size() {
+		return keys.size();
+	}
+}
\ No newline at end of file
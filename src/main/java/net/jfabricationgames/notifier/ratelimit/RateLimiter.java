@@ -0,0 +1,105 @@
+package net.jfabricationgames.notifier.ratelimit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Limits the rate of requests per key (e.g. per sender) using a {@link TokenBucket} for every key.<br>
+ * The buckets are kept in a {@link ConcurrentHashMap}, so the lookup of an existing bucket doesn't lock and the buckets are updated lock free.
+ * Buckets that are full are removed when the maximum number of buckets is reached (a removed bucket is created again as a full bucket, so this
+ * doesn't change the limits). If there are not enough full buckets (many keys are used at the moment), the buckets that are closest to being
+ * full are removed, so the number of buckets stays limited even if a producer rotates its keys.
+ */
+public class RateLimiter {
+	
+	private final long tokensPerSecond;
+	private final long burst;
+	private final int maxBuckets;
+	
+	private final ConcurrentMap<String, TokenBucket> buckets;
+	
+	public RateLimiter(long tokensPerSecond, long burst, int maxBuckets) {
+		if (tokensPerSecond < 1) {
+			throw new IllegalArgumentException("the rate must be positive (was: " + tokensPerSecond + ")");
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException("the burst must be positive (was: " + burst + ")");
+		}
+		this.tokensPerSecond = tokensPerSecond;
+		this.burst = burst;
+		this.maxBuckets = maxBuckets;
+		this.buckets = new ConcurrentHashMap<String, TokenBucket>();
+	}
+	
+	@Override
+	public String toString() {
+		return "RateLimiter [tokensPerSecond=" + tokensPerSecond + ", burst=" + burst + ", buckets=" + buckets.size() + "]";
+	}
+	
+	/**
+	 * Take a token from the bucket of the key.
+	 * 
+	 * @return 0 if the request is allowed or the time (in nanoseconds) until the next request of this key is allowed.
+	 */
+	public long tryAcquire(String key) {
+		return tryAcquire(key, System.nanoTime());
+	}
+	
+	long tryAcquire(String key, long nowNanos) {
+		TokenBucket bucket = buckets.get(key);
+		if (bucket == null) {
+			if (buckets.size() >= maxBuckets) {
+				removeBuckets(nowNanos);
+			}
+			bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(tokensPerSecond, burst, nowNanos));
+		}
+		return bucket.tryAcquire(nowNanos);
+	}
+	
+	/**
+	 * Give back a token that was taken from the bucket of the key (if the request was rejected by another limit).
+	 */
+	public void release(String key) {
+		TokenBucket bucket = buckets.get(key);
+		if (bucket != null) {
+			bucket.release();
+		}
+	}
+	
+	/**
+	 * Remove the full buckets and (if that's not enough to make room for a new bucket) the buckets that are closest to being full. More buckets
+	 * than needed are removed in this case (a tenth of the maximum), so the buckets don't have to be sorted for every new key.
+	 */
+	private synchronized void removeBuckets(long nowNanos) {
+		if (buckets.size() < maxBuckets) {
+			//another thread already made room
+			return;
+		}
+		removeFullBuckets(nowNanos);
+		int remove = buckets.size() - maxBuckets + Math.max(maxBuckets / 10, 1);
+		if (remove > 0) {
+			List<Map.Entry<String, TokenBucket>> entries = new ArrayList<Map.Entry<String, TokenBucket>>(buckets.entrySet());
+			entries.sort((e1, e2) -> Long.compare(e1.getValue().getFullAtNanos() - nowNanos, e2.getValue().getFullAtNanos() - nowNanos));
+			for (Map.Entry<String, TokenBucket> entry : entries.subList(0, Math.min(remove, entries.size()))) {
+				buckets.remove(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * Remove the buckets that are full (the keys that were not used for a while).
+	 */
+	void removeFullBuckets(long nowNanos) {
+		buckets.values().removeIf(bucket -> bucket.isFull(nowNanos));
+	}
+	
+	/**
+	 * Get the number of buckets (the number of keys that were used recently).
+	 */
+	public int size() {
+		return buckets.size();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,93 @@
+package net.jfabricationgames.notifier.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that is refilled with a fixed rate up to its capacity (the allowed burst).<br>
+ * The bucket is lock free: its only state is the time at which it will be full again (the "theoretical arrival time" of the generic cell rate
+ * algorithm). Taking a token moves this time forward by the refill time of one token, using a single compare and set.
+ */
+public class TokenBucket {
+	
+	/**
+	 * The time it takes to refill one token
+	 */
+	private final long nanosPerToken;
+	/**
+	 * The time it takes to refill the whole bucket
+	 */
+	private final long capacityNanos;
+	/**
+	 * The time (from {@link System#nanoTime()}) at which the bucket is full again
+	 */
+	private final AtomicLong fullAt;
+	
+	/**
+	 * Create a full bucket.
+	 * 
+	 * @param tokensPerSecond
+	 *        The rate in which the bucket is refilled.
+	 * 
+	 * @param capacity
+	 *        The maximum number of tokens in the bucket (the number of tokens that can be taken at once).
+	 */
+	public TokenBucket(long tokensPerSecond, long capacity, long nowNanos) {
+		if (tokensPerSecond < 1) {
+			throw new IllegalArgumentException("the rate must be positive (was: " + tokensPerSecond + ")");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("the capacity must be positive (was: " + capacity + ")");
+		}
+		this.nanosPerToken = Math.max(TimeUnit.SECONDS.toNanos(1) / tokensPerSecond, 1);
+		this.capacityNanos = nanosPerToken * capacity;
+		this.fullAt = new AtomicLong(nowNanos);
+	}
+	
+	@Override
+	public String toString() {
+		return "TokenBucket [nanosPerToken=" + nanosPerToken + ", capacityNanos=" + capacityNanos + ", fullAt=" + fullAt + "]";
+	}
+	
+	/**
+	 * Take a token from the bucket.
+	 * 
+	 * @return 0 if a token was taken or the time (in nanoseconds) until the next token is available (no token is taken in this case).
+	 */
+	public long tryAcquire(long nowNanos) {
+		while (true) {
+			long current = fullAt.get();
+			//a bucket that is already full doesn't collect more tokens
+			long next = (current - nowNanos > 0 ? current : nowNanos) + nanosPerToken;
+			long wait = next - nowNanos - capacityNanos;
+			if (wait > 0) {
+				return wait;
+			}
+			if (fullAt.compareAndSet(current, next)) {
+				return 0;
+			}
+		}
+	}
+	
+	/**
+	 * Give back a token that was taken before (the bucket can't get more tokens than its capacity by this, because a time in the past means that
+	 * the bucket is full).
+	 */
+	public void release() {
+		fullAt.addAndGet(-nanosPerToken);
+	}
+	
+	/**
+	 * Check whether the bucket is full (so it can be removed and created again without changing the limit).
+	 */
+	public boolean isFull(long nowNanos) {
+		return fullAt.get() - nowNanos <= 0;
+	}
+	
+	/**
+	 * Get the time (from {@link System#nanoTime()}) at which the bucket is full again.
+	 */
+	public long getFullAtNanos() {
+		return fullAt.get();
+	}
+}
\ No newline at end of file
@@ -1,38 +1,111 @@
 package net.jfabricationgames.notifier.service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.PatternSyntaxException;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+import net.jfabricationgames.notifier.metrics.NotifierMetrics;
+import net.jfabricationgames.notifier.notification.DeliveryReport;
+import net.jfabricationgames.notifier.notification.DeliveryTracker;
 import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.notification.NotificationResult;
+import net.jfabricationgames.notifier.ratelimit.AdmissionControl;
+import net.jfabricationgames.notifier.subscriber.ExecutionMode;
+import net.jfabricationgames.notifier.subscriber.ReceiverPattern;
 import net.jfabricationgames.notifier.subscriber.SubscriberManager;
+import net.jfabricationgames.notifier.subscriber.VirtualThreads;
 
 @Path("notifier")
 public class NotifierService {
 	
 	private static final Logger LOGGER = LogManager.getLogger(NotifierService.class);
 	
+	/**
+	 * The media type for newline delimited JSON (one notification per line)
+	 */
+	public static final String APPLICATION_NDJSON = "application/x-ndjson";
+	/**
+	 * The media type of the prometheus text format
+	 */
+	public static final String TEXT_PROMETHEUS = "text/plain; version=0.0.4";
+	/**
+	 * The maximum number of notifications of a batch that are routed together (so a streamed batch is not kept in memory completely)
+	 */
+	private static final int BATCH_ROUTING_SIZE = 1000;
+	/**
+	 * The Retry-After time (in seconds) for requests that are rejected because the service is overloaded
+	 */
+	private static final long OVERLOADED_RETRY_AFTER_SECONDS = 1;
+	
+	private static final ObjectReader NOTIFICATION_READER = new ObjectMapper().readerFor(Notification.class);
+	
 	/**
 	 * The subscriber manager that handles all subscribers and passes on the notifications
 	 */
 	private static SubscriberManager manager;
+	/**
+	 * The rate limits and the limit of concurrent fan outs, that are checked before a notification is routed
+	 */
+	private static AdmissionControl admission;
+	/**
+	 * Routes the single notifications (so the request threads of the container don't wait for the fan out) and completes the requests that
+	 * wait for the delivery. In the virtual execution mode every task is executed by its own virtual thread (the number of concurrent fan outs
+	 * is limited by the admission control).
+	 */
+	private static Executor fanOutExecutor;
+	/**
+	 * Executes the timeouts of the requests that wait for the delivery (also used as fan out executor in the platform execution mode)
+	 */
+	private static ScheduledExecutorService scheduler;
+	/**
+	 * The maximum time that a request can wait for the delivery of its notification
+	 */
+	private static long maxWaitForDeliveryMillis;
 	
 	public NotifierService() {
+		getSubscriberManager();
+	}
+	
+	/**
+	 * Get the subscriber manager (that is also used by the WebSocket and SSE endpoints) and start it if it's not yet running.
+	 */
+	static synchronized SubscriberManager getSubscriberManager() {
 		//don't start another SubscriberManager if there is already one running (services can be started multiple times)
 		if (manager == null) {
 			try {
-				manager = new SubscriberManager();
+				initialize(new SubscriberManager(), NotifierConfiguration.getInstance());
 			}
 			catch (IOException ioe) {
 				LOGGER.fatal("the subscriber manager couldn't be initialized (ending program)", ioe);
@@ -40,6 +113,45 @@ public class NotifierService {
 				System.exit(1);
 			}			
 		}
+		return manager;
+	}
+	
+	/**
+	 * Set the subscriber manager and create the admission control and the fan out executor from the configuration (package private for tests).
+	 */
+	static synchronized void initialize(SubscriberManager subscriberManager, NotifierConfiguration configuration) throws IOException {
+		admission = AdmissionControl.fromConfiguration(configuration);
+		int threads = configuration.getInt("fanout.threads", 8);
+		if (threads < 1) {
+			throw new IOException("there must be at least one fan out thread (was: " + threads + ")");
+		}
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+		ExecutionMode executionMode = configuration.getEnum("execution.mode", ExecutionMode.class, ExecutionMode.PLATFORM);
+		if (executionMode == ExecutionMode.VIRTUAL && VirtualThreads.isSupported()) {
+			//the scheduler only executes the timeouts (the responses are completed by virtual threads)
+			scheduler = createScheduler(1, "fanout_timeout_thread_");
+			fanOutExecutor = task -> VirtualThreads.start("virtual_fanout_thread", task);
+		}
+		else {
+			scheduler = createScheduler(threads, "fanout_thread_");
+			fanOutExecutor = scheduler;
+		}
+		maxWaitForDeliveryMillis = configuration.getLong("fanout.wait.max.millis", 30000);
+		manager = subscriberManager;
+	}
+	
+	private static ScheduledExecutorService createScheduler(int threads, String threadName) {
+		AtomicInteger threadCount = new AtomicInteger();
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, task -> {
+			Thread thread = new Thread(task, threadName + threadCount.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		//the timeouts of the requests that wait for the delivery are cancelled when the delivery is completed
+		executor.setRemoveOnCancelPolicy(true);
+		return executor;
 	}
 	
 	/**
@@ -54,40 +166,289 @@ public class NotifierService {
 	}
 	
 	/**
-	 * Send a notification to registered listeners (using HTTP POST)
+	 * Send a notification to registered listeners (using HTTP POST).<br>
+	 * The request is answered with HTTP 202 as soon as the notification is accepted (the fan out is done in the background). With the query
+	 * parameter waitForDelivery (a timeout in milliseconds) the response is sent when the notification was written to all matched subscribers (or
+	 * when the timeout expired) and contains a {@link DeliveryReport}.
 	 */
 	@POST
 	@Path("/notify")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response notifySubscribers(Notification notification) {
+	public void notifySubscribers(Notification notification, @QueryParam("waitForDelivery") @DefaultValue("0") long waitForDeliveryMillis,
+			@Suspended AsyncResponse response) {
 		LOGGER.info("Received notification: {}", notification);
+		NotifierMetrics.NOTIFICATIONS_RECEIVED.increment();
 		try {
-			manager.sendNotification(notification);
-			return Response.status(Status.OK).build();
+			sendNotification(notification, waitForDeliveryMillis, response);
 		}
 		catch (Exception e) {
 			LOGGER.error("an error occured while trying to send the notification (sending HTTP 500 to producer)", e);
-			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+			response.resume(Response.status(Status.INTERNAL_SERVER_ERROR).build());
 		}
 	}
 	
 	/**
-	 * Send a notification to registered listeners (using HTTP GET)
+	 * Send a notification to registered listeners (using HTTP GET; answered like {@link #notifySubscribers(Notification, long, AsyncResponse)})
 	 */
 	@GET
 	@Path("/notify/{from_user}/{to_user}/{message}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response notifySubscribersHttpGet(@PathParam("from_user") String sender, @PathParam("to_user") String user, @PathParam("message") String message) {
+	public void notifySubscribersHttpGet(@PathParam("from_user") String sender, @PathParam("to_user") String user, @PathParam("message") String message,
+			@QueryParam("waitForDelivery") @DefaultValue("0") long waitForDeliveryMillis, @Suspended AsyncResponse response) {
 		LOGGER.info("Received notification via HTTP GET request: [from_user: {} to_user: {} message: {}]", sender, user, message);
+		NotifierMetrics.NOTIFICATIONS_RECEIVED.increment();
 		try {
 			Notification notification = new Notification(message, sender, user);
-			manager.sendNotification(notification);
-			return Response.status(Status.OK).build();
+			sendNotification(notification, waitForDeliveryMillis, response);
 		}
 		catch (Exception e) {
 			LOGGER.error("an error occured while trying to send the notification (sending HTTP 500 to producer)", e);
+			response.resume(Response.status(Status.INTERNAL_SERVER_ERROR).build());
+		}
+	}
+	
+	/**
+	 * Send a batch of notifications to registered listeners (using HTTP POST).<br>
+	 * The body is either a JSON array of notifications or newline delimited JSON (one notification per line). The notifications are parsed
+	 * incrementally and routed together, so the subscribers are only iterated once per batch. The response contains a result for every
+	 * notification (in the order of the request). Notifications that exceed a rate limit are not sent (their result is THROTTLED and the response
+	 * contains a Retry-After header). Notifications with an idempotency key that was already accepted are not sent again (their result is
+	 * DUPLICATE).<br>
+	 * The request is suspended while the batch is parsed and routed by the fan out executor, so the request threads of the container don't wait
+	 * for the fan out.
+	 */
+	@POST
+	@Path("/notify/batch")
+	@Consumes({MediaType.APPLICATION_JSON, APPLICATION_NDJSON})
+	@Produces(MediaType.APPLICATION_JSON)
+	public void notifySubscribersBatch(InputStream body, @Suspended AsyncResponse response) {
+		fanOutExecutor.execute(() -> response.resume(sendBatch(body)));
+	}
+	
+	/**
+	 * Parse and route a batch of notifications (see {@link #notifySubscribersBatch(InputStream, AsyncResponse)}).
+	 */
+	private Response sendBatch(InputStream body) {
+		List<NotificationResult> results = new ArrayList<NotificationResult>();
+		List<Notification> batch = new ArrayList<Notification>();
+		List<Integer> batchIndices = new ArrayList<Integer>();
+		long retryAfterNanos = 0;
+		int index = 0;
+		try (MappingIterator<Notification> notifications = NOTIFICATION_READER.readValues(body)) {
+			while (notifications.hasNextValue()) {
+				Notification notification = notifications.nextValue();
+				NotifierMetrics.NOTIFICATIONS_RECEIVED.increment();
+				String error = validate(notification);
+				if (error != null) {
+					NotifierMetrics.NOTIFICATIONS_REJECTED.increment();
+					results.add(NotificationResult.rejected(index, error));
+				}
+				else if (admission.checkDuplicate(notification)) {
+					results.add(NotificationResult.duplicate(index));
+				}
+				else {
+					long wait = admission.checkRateLimits(notification);
+					if (wait > 0) {
+						admission.forgetIdempotencyKey(notification);
+						results.add(NotificationResult.throttled(index, "rate limit exceeded"));
+						retryAfterNanos = Math.max(retryAfterNanos, wait);
+					}
+					else {
+						batch.add(notification);
+						batchIndices.add(index);
+						if (batch.size() >= BATCH_ROUTING_SIZE) {
+							retryAfterNanos = Math.max(retryAfterNanos, routeBatch(batch, batchIndices, results));
+						}
+					}
+				}
+				index++;
+			}
+			retryAfterNanos = Math.max(retryAfterNanos, routeBatch(batch, batchIndices, results));
+			LOGGER.info("Received a batch of {} notifications", index);
+			results.sort((r1, r2) -> Integer.compare(r1.getIndex(), r2.getIndex()));
+			ResponseBuilder response = Response.status(Status.OK).entity(results);
+			if (retryAfterNanos > 0) {
+				response.header(HttpHeaders.RETRY_AFTER, AdmissionControl.toRetryAfterSeconds(retryAfterNanos));
+			}
+			return response.build();
+		}
+		catch (IOException ioe) {
+			//the notifications before the malformed one were already sent
+			LOGGER.warn("a batch of notifications couldn't be parsed at index {} (sending HTTP 400 to producer)", index, ioe);
+			routeBatch(batch, batchIndices, results);
+			NotifierMetrics.NOTIFICATIONS_REJECTED.increment();
+			results.add(NotificationResult.rejected(index, "malformed notification: " + ioe.getMessage()));
+			results.sort((r1, r2) -> Integer.compare(r1.getIndex(), r2.getIndex()));
+			return Response.status(Status.BAD_REQUEST).entity(results).build();
+		}
+		catch (Exception e) {
+			LOGGER.error("an error occured while trying to send a batch of notifications (sending HTTP 500 to producer)", e);
 			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
 		}
 	}
+	
+	/**
+	 * Get the metrics of the service (counters, latency summaries and the resource usage of the process) in the prometheus text format
+	 */
+	@GET
+	@Path("/metrics")
+	@Produces(TEXT_PROMETHEUS)
+	public Response getMetrics() {
+		StringBuilder metrics = new StringBuilder();
+		NotifierMetrics.writeGauge(metrics, "notifier_subscribers", "The number of currently registered subscribers", manager.getSubscriberCount());
+		NotifierMetrics.writeTo(metrics);
+		NotifierMetrics.writeProcessMetrics(metrics);
+		return Response.status(Status.OK).entity(metrics.toString()).build();
+	}
+	
+	/**
+	 * Send a single notification (if it doesn't exceed a rate limit and the maximum number of concurrent fan outs is not reached).<br>
+	 * The notification is routed by the fan out executor. If the producer doesn't wait for the delivery, the response (HTTP 202) is sent as soon
+	 * as the notification is accepted. Otherwise it's sent when the delivery tracker completes (HTTP 200) or the timeout expires (HTTP 202 with
+	 * the subscribers that were handled until then). A duplicate of a notification that was already accepted (with the same idempotency key) is
+	 * answered with HTTP 202, but not sent again. An invalid notification is answered with HTTP 400 (before it's checked against the limits).
+	 */
+	private void sendNotification(Notification notification, long waitForDeliveryMillis, AsyncResponse response) {
+		String error = validate(notification);
+		if (error != null) {
+			NotifierMetrics.NOTIFICATIONS_REJECTED.increment();
+			LOGGER.info("the notification is invalid: {} (sending HTTP 400 to producer)", error);
+			response.resume(Response.status(Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN).entity(error).build());
+			return;
+		}
+		if (admission.checkDuplicate(notification)) {
+			LOGGER.info("the notification is a duplicate (not sending it again)");
+			response.resume(Response.status(Status.ACCEPTED).build());
+			return;
+		}
+		long retryAfterNanos = admission.checkRateLimits(notification);
+		if (retryAfterNanos > 0) {
+			admission.forgetIdempotencyKey(notification);
+			LOGGER.info("the notification exceeds a rate limit (sending HTTP 429 to producer)");
+			response.resume(Response.status(Status.TOO_MANY_REQUESTS)
+					.header(HttpHeaders.RETRY_AFTER, AdmissionControl.toRetryAfterSeconds(retryAfterNanos)).build());
+			return;
+		}
+		if (!admission.tryStartFanOut()) {
+			admission.forgetIdempotencyKey(notification);
+			admission.releaseRateLimits(notification);
+			LOGGER.warn("too many notifications are routed at the moment (sending HTTP 503 to producer)");
+			response.resume(Response.status(Status.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, OVERLOADED_RETRY_AFTER_SECONDS).build());
+			return;
+		}
+		
+		DeliveryTracker tracker = waitForDeliveryMillis > 0 ? trackDelivery(Math.min(waitForDeliveryMillis, maxWaitForDeliveryMillis), response)
+				: null;
+		if (tracker == null) {
+			//answer before the fan out starts, so the accepted notification is never answered with an error
+			response.resume(Response.status(Status.ACCEPTED).build());
+		}
+		fanOutExecutor.execute(() -> {
+			try {
+				manager.sendNotification(notification, tracker);
+			}
+			catch (RuntimeException re) {
+				LOGGER.error("an error occured while trying to send the notification", re);
+				//only a producer that is still waiting for the delivery gets the error
+				if (tracker != null && tracker.abort()) {
+					response.resume(Response.status(Status.INTERNAL_SERVER_ERROR).build());
+				}
+			}
+			finally {
+				admission.endFanOut();
+			}
+		});
+	}
+	
+	/**
+	 * Create a delivery tracker that completes the response with the delivery report (when the notification is written to all matched
+	 * subscribers or when the timeout expires).
+	 */
+	private DeliveryTracker trackDelivery(long timeoutMillis, AsyncResponse response) {
+		ScheduledFuture<?>[] timeout = new ScheduledFuture<?>[1];
+		DeliveryTracker tracker = new DeliveryTracker(report -> {
+			//the tracker completes in the thread that wrote the last message, which mustn't be blocked by the response
+			fanOutExecutor.execute(() -> response.resume(Response.status(Status.OK).entity(report).build()));
+			synchronized (timeout) {
+				if (timeout[0] != null) {
+					timeout[0].cancel(false);
+				}
+			}
+		});
+		synchronized (timeout) {
+			if (!tracker.isCompleted()) {
+				//the response is completed by the fan out executor, so a single scheduler thread can handle all timeouts
+				timeout[0] = scheduler.schedule(
+						() -> fanOutExecutor.execute(() -> response.resume(Response.status(Status.ACCEPTED).entity(tracker.getReport()).build())),
+						timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+		return tracker;
+	}
+	
+	/**
+	 * Route the collected notifications and add their results (the batch and the indices are cleared afterwards).
+	 * 
+	 * @return 0 if the notifications were routed or the time (in nanoseconds) after which they can be sent again (if the maximum number of
+	 *         concurrent fan outs was reached).
+	 */
+	private long routeBatch(List<Notification> batch, List<Integer> batchIndices, List<NotificationResult> results) {
+		if (batch.isEmpty()) {
+			return 0;
+		}
+		long retryAfterNanos = 0;
+		if (admission.tryStartFanOut()) {
+			try {
+				int[] matched = manager.sendNotifications(batch);
+				for (int i = 0; i < matched.length; i++) {
+					results.add(NotificationResult.accepted(batchIndices.get(i), matched[i]));
+				}
+			}
+			finally {
+				admission.endFanOut();
+			}
+		}
+		else {
+			LOGGER.warn("too many notifications are routed at the moment (throttling {} notifications of a batch)", batch.size());
+			batch.forEach(admission::forgetIdempotencyKey);
+			batch.forEach(admission::releaseRateLimits);
+			for (int batchIndex : batchIndices) {
+				results.add(NotificationResult.throttled(batchIndex, "the service is overloaded"));
+			}
+			retryAfterNanos = TimeUnit.SECONDS.toNanos(OVERLOADED_RETRY_AFTER_SECONDS);
+		}
+		batch.clear();
+		batchIndices.clear();
+		return retryAfterNanos;
+	}
+	
+	/**
+	 * Check whether the notification can be sent.
+	 * 
+	 * @return An error message or null if the notification is valid.
+	 */
+	private String validate(Notification notification) {
+		if (notification == null) {
+			return "the notification is null";
+		}
+		if (notification.getMessage() == null) {
+			return "the notification has no message";
+		}
+		boolean hasTopic = notification.getTopic() != null && !notification.getTopic().isEmpty();
+		if (notification.getReceivers() == null || notification.getReceivers().isEmpty()) {
+			//a notification with a topic can be sent without receivers (only to the subscribers of the topic)
+			return hasTopic ? null : "the notification has no receivers and no topic";
+		}
+		if (notification.getReceivers().contains(null)) {
+			return "the receivers of the notification contain null";
+		}
+		try {
+			notification.getReceivers().forEach(ReceiverPattern::compile);
+		}
+		catch (PatternSyntaxException pse) {
+			return "invalid receiver: " + pse.getMessage();
+		}
+		return null;
+	}
 }
\ No newline at end of file
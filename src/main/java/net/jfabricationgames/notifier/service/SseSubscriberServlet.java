@@ -0,0 +1,90 @@
+package net.jfabricationgames.notifier.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+import net.jfabricationgames.notifier.metrics.NotifierMetrics;
+import net.jfabricationgames.notifier.protocol.Handshake;
+import net.jfabricationgames.notifier.protocol.SseCodec;
+import net.jfabricationgames.notifier.subscriber.SseSubscriber;
+import net.jfabricationgames.notifier.subscriber.SubscriberManager;
+
+/**
+ * Subscribes a client using Server-Sent Events (HTTP GET url_to_your_host:port/context/subscribe/sse/username or
+ * .../subscribe/sse?username=username). Topics can be subscribed with the query parameter topics (comma separated).<br>
+ * The request is kept open asynchronously (without a thread) and the notifications are written as events using the non-blocking I/O of the
+ * container.
+ */
+public class SseSubscriberServlet extends HttpServlet {
+	
+	private static final long serialVersionUID = -2468931457503964921L;
+	
+	private static final Logger LOGGER = LogManager.getLogger(SseSubscriberServlet.class);
+	
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String username = getUsername(request);
+		if (username == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "the username is missing (use .../subscribe/sse/username)");
+			return;
+		}
+		LOGGER.info("sse subscriber connected: {}", username);
+		NotifierMetrics.CONNECTIONS_ACCEPTED.increment();
+		
+		response.setContentType(SseCodec.CONTENT_TYPE);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		response.setHeader("Cache-Control", "no-cache");
+		
+		AsyncContext asyncContext = request.startAsync();
+		//the stream stays open until the client disconnects
+		asyncContext.setTimeout(0);
+		SubscriberManager manager = NotifierService.getSubscriberManager();
+		SseSubscriber subscriber = new SseSubscriber(username, asyncContext, manager, NotifierConfiguration.getInstance());
+		subscriber.setTopics(Handshake.parseTopics(request.getParameter("topics")));
+		asyncContext.addListener(new AsyncListener() {
+			
+			@Override
+			public void onComplete(AsyncEvent event) {
+				subscriber.closeConnection();
+			}
+			
+			@Override
+			public void onTimeout(AsyncEvent event) {
+				subscriber.closeConnection();
+			}
+			
+			@Override
+			public void onError(AsyncEvent event) {
+				LOGGER.info("the connection of the sse subscriber {} failed: {}", username, event.getThrowable());
+				subscriber.closeConnection();
+			}
+			
+			@Override
+			public void onStartAsync(AsyncEvent event) {}
+		});
+		manager.addConnectedSubscriber(subscriber);
+	}
+	
+	/**
+	 * Get the username from the path (.../sse/username) or from the query parameter username.
+	 */
+	private static String getUsername(HttpServletRequest request) {
+		String pathInfo = request.getPathInfo();
+		if (pathInfo != null && pathInfo.length() > 1) {
+			return pathInfo.substring(1);
+		}
+		String username = request.getParameter("username");
+		return username == null || username.isEmpty() ? null : username;
+	}
+}
\ No newline at end of file
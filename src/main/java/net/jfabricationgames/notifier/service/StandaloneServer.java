@@ -0,0 +1,80 @@
+package net.jfabricationgames.notifier.service;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+
+/**
+ * Runs the notifier service without a servlet container, using the Grizzly HTTP server (e.g. from the jar that is built with the standalone
+ * profile: java -jar JFG_Notifier-standalone.jar).<br>
+ * The subscriber manager is started before the HTTP server (not with the first request), so the socket port is open as soon as the server is
+ * started. The REST resources have the same paths as in the servlet container. WebSocket and SSE subscribers need a servlet container, so they
+ * are not available in the standalone server. The notify requests are suspended (like in the servlet container), so the HTTP threads
+ * don't wait for the fan out.
+ */
+public class StandaloneServer {
+	
+	private static final Logger LOGGER = LogManager.getLogger(StandaloneServer.class);
+	
+	private final HttpServer server;
+	private final int port;
+	
+	public static void main(String[] args) throws IOException, InterruptedException {
+		long startNanos = System.nanoTime();
+		StandaloneServer server = new StandaloneServer(NotifierConfiguration.getInstance());
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "standalone_shutdown_thread"));
+		LOGGER.info(">> StandaloneServer started in {} ms (jvm uptime: {} ms)", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+				ManagementFactory.getRuntimeMXBean().getUptime());
+		
+		//the threads of the grizzly server are daemon threads, so the main thread keeps the JVM running (until it's shut down)
+		Thread.currentThread().join();
+	}
+	
+	/**
+	 * Start the subscriber manager and the HTTP server (on the port.rest port, using the standalone.* properties of the configuration).
+	 */
+	public StandaloneServer(NotifierConfiguration configuration) throws IOException {
+		port = configuration.getInt("port.rest", 5714);
+		String contextPath = configuration.getString("standalone.context.path", "/JFG_Notifier/notifier");
+		int threads = configuration.getInt("standalone.http.threads", 16);
+		if (threads < 1) {
+			throw new IOException("there must be at least one http thread (was: " + threads + ")");
+		}
+		
+		//start the subscriber manager eagerly (in a servlet container it's started by the first request)
+		NotifierService.getSubscriberManager();
+		
+		URI uri = UriBuilder.fromUri("http://0.0.0.0/").port(port).path(contextPath).build();
+		server = GrizzlyHttpServerFactory.createHttpServer(uri, new ResourceConfig(NotifierService.class), false);
+		ThreadPoolConfig workerThreads = ThreadPoolConfig.defaultConfig().setPoolName("standalone_http_thread").setCorePoolSize(threads)
+				.setMaxPoolSize(threads).setDaemon(true);
+		server.getListeners().forEach(listener -> listener.getTransport().setWorkerThreadPoolConfig(workerThreads));
+		server.start();
+		LOGGER.info("http server started on port {} (path: {}   threads: {})", port, contextPath, threads);
+	}
+	
+	@Override
+	public String toString() {
+		return "StandaloneServer [port=" + port + "]";
+	}
+	
+	/**
+	 * Stop the HTTP server (the subscriber connections are closed when the JVM ends).
+	 */
+	public void stop() {
+		LOGGER.info("stopping the standalone server");
+		server.shutdownNow();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package net.jfabricationgames.notifier.service;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.websocket.CloseReason;
+import javax.websocket.OnClose;
+import javax.websocket.OnError;
+import javax.websocket.OnOpen;
+import javax.websocket.Session;
+import javax.websocket.server.PathParam;
+import javax.websocket.server.ServerEndpoint;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+import net.jfabricationgames.notifier.metrics.NotifierMetrics;
+import net.jfabricationgames.notifier.protocol.Handshake;
+import net.jfabricationgames.notifier.subscriber.SubscriberManager;
+import net.jfabricationgames.notifier.subscriber.WebSocketSubscriber;
+
+/**
+ * Subscribes a client using a WebSocket (ws://url_to_your_host:port/context/subscribe/websocket/username). Topics can be subscribed with the
+ * query parameter topics (comma separated).<br>
+ * The notifications are sent as text messages. The endpoint is deployed by the container (a new instance for every connection).
+ */
+@ServerEndpoint("/subscribe/websocket/{username}")
+public class WebSocketSubscriberEndpoint {
+	
+	private static final Logger LOGGER = LogManager.getLogger(WebSocketSubscriberEndpoint.class);
+	
+	private WebSocketSubscriber subscriber;
+	
+	@OnOpen
+	public void onOpen(Session session, @PathParam("username") String username) throws IOException {
+		LOGGER.info("websocket subscriber connected: {}", username);
+		NotifierMetrics.CONNECTIONS_ACCEPTED.increment();
+		SubscriberManager manager = NotifierService.getSubscriberManager();
+		subscriber = new WebSocketSubscriber(username, session, manager, NotifierConfiguration.getInstance());
+		List<String> topics = session.getRequestParameterMap().get("topics");
+		if (topics != null) {
+			subscriber.setTopics(Handshake.parseTopics(String.join(",", topics)));
+		}
+		manager.addConnectedSubscriber(subscriber);
+	}
+	
+	@OnClose
+	public void onClose(Session session, CloseReason reason) {
+		LOGGER.info("websocket subscriber disconnected: {} (reason: {})", subscriber, reason);
+		if (subscriber != null) {
+			subscriber.closeConnection();
+		}
+	}
+	
+	@OnError
+	public void onError(Session session, Throwable cause) {
+		LOGGER.warn("an error occured in the websocket of the subscriber {}", subscriber, cause);
+		if (subscriber != null) {
+			subscriber.closeConnection();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,210 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+import net.jfabricationgames.notifier.metrics.NotifierMetrics;
+import net.jfabricationgames.notifier.notification.Priority;
+import net.jfabricationgames.notifier.protocol.EncodedMessage;
+import net.jfabricationgames.notifier.protocol.Protocol;
+
+/**
+ * A subscriber that is connected through the servlet container (like a WebSocket or a Server-Sent Events stream) instead of the socket of the
+ * {@link SubscriberReceiver}.<br>
+ * The messages are queued like the messages of the other subscribers and written one at a time using the asynchronous I/O of the container: the
+ * next message is written when the container reports that the previous one is written. So no thread is blocked by a slow client.
+ */
+public abstract class AsyncSubscriber extends Subscriber {
+	
+	private static final Logger LOGGER = LogManager.getLogger(AsyncSubscriber.class);
+	
+	/**
+	 * The {@link #write(OutboundMessage)} method is executed
+	 */
+	private static final int WRITE_STARTED = 0;
+	/**
+	 * The {@link #write(OutboundMessage)} method returned and the write is completed asynchronously
+	 */
+	private static final int WRITE_PENDING = 1;
+	/**
+	 * The write was completed before the {@link #write(OutboundMessage)} method returned
+	 */
+	private static final int WRITE_COMPLETED = 2;
+	
+	private final SubscriberManager manager;
+	private final OutboundQueue pendingWrites;
+	/**
+	 * Whether a thread writes the queued messages (or waits for the container to complete a write)
+	 */
+	private final AtomicBoolean writing;
+	private final AtomicInteger writeState;
+	/**
+	 * The message that is currently written
+	 */
+	private volatile OutboundMessage currentWrite;
+	private final AtomicBoolean closed;
+	
+	/**
+	 * Create a subscriber with an outbound queue that uses the capacity, the overflow policy and the priority weight of the configuration (like the
+	 * other subscribers).
+	 */
+	protected AsyncSubscriber(String name, Protocol protocol, SubscriberManager manager, NotifierConfiguration configuration) throws IOException {
+		super(name, protocol);
+		this.manager = manager;
+		int queueCapacity = configuration.getInt("subscriber.queue.capacity", 1024);
+		OverflowPolicy overflowPolicy = configuration.getEnum("subscriber.queue.overflow_policy", OverflowPolicy.class, OverflowPolicy.DROP_OLDEST);
+		int highPriorityWeight = configuration.getInt("subscriber.queue.priority.weight", OutboundQueue.DEFAULT_HIGH_PRIORITY_WEIGHT);
+		if (queueCapacity < 1) {
+			throw new IOException("the queue capacity must be positive (was: " + queueCapacity + ")");
+		}
+		if (highPriorityWeight < 1) {
+			throw new IOException("the weight of the high priority lane must be positive (was: " + highPriorityWeight + ")");
+		}
+		this.pendingWrites = new OutboundQueue(queueCapacity, overflowPolicy, highPriorityWeight);
+		this.writing = new AtomicBoolean();
+		this.writeState = new AtomicInteger();
+		this.closed = new AtomicBoolean();
+	}
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " [name=" + getName() + ", protocol=" + getProtocol() + ", closed=" + closed.get() + "]";
+	}
+	
+	/**
+	 * Start writing the message asynchronously. When the message is written {@link #writeCompleted()} has to be called (or
+	 * {@link #writeFailed(Throwable)} if the write failed). Both can be called before this method returns.
+	 */
+	protected abstract void write(OutboundMessage message) throws IOException;
+	
+	/**
+	 * Close the connection of the container (called once when the subscriber is closed).
+	 */
+	protected abstract void closeTransport();
+	
+	/**
+	 * Queue the message and start writing if no write is in progress. The write itself is asynchronous, so this method never blocks.
+	 */
+	@Override
+	public void sendMessageToSubscriber(EncodedMessage message) {
+		LOGGER.debug("sending message to subscriber (message: {}   protocol: {}   closed: {})", message, getProtocol(), closed.get());
+		if (closed.get()) {
+			message.deliveryFailed();
+			LOGGER.warn("the subscriber disconnected. notification is not send");
+			manager.removeSubscriber(this);
+			return;
+		}
+		queue(new OutboundMessage(message, message.getBuffers(getProtocol())));
+	}
+	
+	/**
+	 * Queue a message (e.g. a message that is not a notification) and start writing if no write is in progress.
+	 */
+	protected void queue(OutboundMessage message) {
+		if (!pendingWrites.offer(message)) {
+			message.failed();
+			LOGGER.warn("the outbound queue of the subscriber is full. closing the connection to the subscriber: {}", this);
+			closeConnection();
+			return;
+		}
+		if (writing.compareAndSet(false, true)) {
+			writeQueuedMessages();
+		}
+	}
+	
+	/**
+	 * Write the queued messages until the queue is empty or a write is completed asynchronously (the thread that completes it continues then).
+	 */
+	private void writeQueuedMessages() {
+		while (true) {
+			OutboundMessage message = pendingWrites.poll();
+			if (message == null) {
+				writing.set(false);
+				//a message that was added after the queue was polled (but before the flag was reset) has to be written by this thread
+				if (pendingWrites.size() == 0 || !writing.compareAndSet(false, true)) {
+					return;
+				}
+				continue;
+			}
+			
+			currentWrite = message;
+			writeState.set(WRITE_STARTED);
+			try {
+				write(message);
+			}
+			catch (IOException | RuntimeException e) {
+				writeFailed(e);
+				return;
+			}
+			if (writeState.compareAndSet(WRITE_STARTED, WRITE_PENDING)) {
+				//the container calls writeCompleted when the message is written
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Called when the current message was written. If the write was completed asynchronously the next queued message is written.
+	 */
+	protected void writeCompleted() {
+		OutboundMessage written = currentWrite;
+		if (written != null) {
+			written.delivered();
+		}
+		if (written != null && written.isNotification()) {
+			NotifierMetrics.MESSAGES_DELIVERED.increment();
+			NotifierMetrics.DELIVERY_LATENCY.recordSince(written.getCreatedNanos());
+			if (written.getPriority() == Priority.HIGH) {
+				NotifierMetrics.HIGH_PRIORITY_DELIVERY_LATENCY.recordSince(written.getCreatedNanos());
+			}
+		}
+		currentWrite = null;
+		//if the write is completed before the write method returned, the thread that called it continues with the next message
+		if (!writeState.compareAndSet(WRITE_STARTED, WRITE_COMPLETED) && !closed.get()) {
+			writeQueuedMessages();
+		}
+	}
+	
+	/**
+	 * Called when the current message couldn't be written. The subscriber is closed.
+	 */
+	protected void writeFailed(Throwable cause) {
+		OutboundMessage failed = currentWrite;
+		if (failed != null) {
+			failed.failed();
+			currentWrite = null;
+		}
+		if (!closed.get()) {
+			NotifierMetrics.WRITE_FAILURES.increment();
+			LOGGER.warn("the message couldn't be written to the subscriber (closing the connection): {}", cause.getMessage());
+		}
+		closeConnection();
+	}
+	
+	@Override
+	public boolean isConnected() {
+		return !closed.get();
+	}
+	@Override
+	public boolean isConnectionClosed() {
+		return closed.get();
+	}
+	/**
+	 * Close the subscriber and remove it from the manager (only the first call has an effect).
+	 */
+	@Override
+	public void closeConnection() {
+		if (closed.compareAndSet(false, true)) {
+			LOGGER.debug("closing connection of this subscriber");
+			NotifierMetrics.CONNECTIONS_REMOVED.increment();
+			pendingWrites.clear();
+			manager.removeSubscriber(this);
+			closeTransport();
+		}
+	}
+}
\ No newline at end of file
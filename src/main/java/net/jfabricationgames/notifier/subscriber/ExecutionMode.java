@@ -0,0 +1,17 @@
+package net.jfabricationgames.notifier.subscriber;
+
+/**
+ * Defines how the I/O of the subscribers is executed.
+ */
+public enum ExecutionMode {
+	
+	/**
+	 * The subscribers are read and written by the selector based event loops (a fixed number of platform threads; works with java 8)
+	 */
+	PLATFORM,
+	/**
+	 * Every subscriber is read and written with blocking I/O by its own virtual threads (java 21 or newer); the event loops only execute the
+	 * scheduled tasks and timeouts of the subscribers
+	 */
+	VIRTUAL;
+}
\ No newline at end of file
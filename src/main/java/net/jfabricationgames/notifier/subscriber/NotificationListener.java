@@ -0,0 +1,16 @@
+package net.jfabricationgames.notifier.subscriber;
+
+/**
+ * A listener that receives the notifications of a {@link SubscriberClient}.
+ */
+@FunctionalInterface
+public interface NotificationListener {
+	
+	/**
+	 * Called for every notification that the client receives from the service (on the listener executor of the client).
+	 * 
+	 * @param message
+	 *        The message of the notification.
+	 */
+	public void receiveNotification(String message);
+}
\ No newline at end of file
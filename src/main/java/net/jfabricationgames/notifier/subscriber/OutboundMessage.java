@@ -0,0 +1,157 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import java.nio.ByteBuffer;
+
+import net.jfabricationgames.notifier.notification.Priority;
+import net.jfabricationgames.notifier.protocol.EncodedMessage;
+
+/**
+ * A message in the outbound queue of a subscriber. The message consists of one or more buffers that are written using a gathering write.
+ */
+public class OutboundMessage {
+	
+	private final ByteBuffer[] buffers;
+	/**
+	 * The number of bytes of the message (when it was created)
+	 */
+	private final long length;
+	/**
+	 * Whether the message is a notification (or a message of the handshake)
+	 */
+	private final boolean notification;
+	/**
+	 * The time (from {@link System#nanoTime()}) when the notification was created (to measure the delivery latency)
+	 */
+	private final long createdNanos;
+	/**
+	 * The lane of the outbound queue that the message is added to
+	 */
+	private final Priority priority;
+	/**
+	 * The key of the messages that replace each other in the queue (null if the message is never replaced)
+	 */
+	private final String collapseKey;
+	/**
+	 * The encoded notification (null for messages that were not created from an encoded message)
+	 */
+	private final EncodedMessage source;
+	/**
+	 * The sequence number of a sequenced data frame (0 if no sequence number was assigned yet; only used by the thread that writes the message)
+	 */
+	private long sequence;
+	
+	/**
+	 * Create a message that is not a notification (e.g. a handshake message). These messages always have a high priority.
+	 */
+	public OutboundMessage(ByteBuffer... buffers) {
+		this(false, 0, Priority.HIGH, null, null, buffers);
+	}
+	/**
+	 * Create a low priority notification message that was created at the given time (from {@link System#nanoTime()}).
+	 */
+	public OutboundMessage(long createdNanos, ByteBuffer... buffers) {
+		this(true, createdNanos, Priority.LOW, null, null, buffers);
+	}
+	/**
+	 * Create a notification message with the given priority that was created at the given time (from {@link System#nanoTime()}).
+	 */
+	public OutboundMessage(long createdNanos, Priority priority, ByteBuffer... buffers) {
+		this(true, createdNanos, priority, null, null, buffers);
+	}
+	/**
+	 * Create a notification message with the creation time, the priority and the collapse key of the encoded message.
+	 */
+	public OutboundMessage(EncodedMessage message, ByteBuffer... buffers) {
+		this(true, message.getCreatedNanos(), message.getPriority(), message.getCollapseKey(), message, buffers);
+	}
+	private OutboundMessage(boolean notification, long createdNanos, Priority priority, String collapseKey, EncodedMessage source,
+			ByteBuffer... buffers) {
+		this.buffers = buffers;
+		this.length = remaining();
+		this.notification = notification;
+		this.createdNanos = createdNanos;
+		this.priority = priority == null ? Priority.LOW : priority;
+		this.collapseKey = collapseKey;
+		this.source = source;
+	}
+	
+	@Override
+	public String toString() {
+		return "OutboundMessage [remaining=" + remaining() + ", priority=" + priority + ", collapseKey=" + collapseKey + "]";
+	}
+	
+	/**
+	 * Check whether no bytes of this message were written yet (so it can still be put back into the queue).
+	 */
+	public boolean isUnstarted() {
+		return remaining() == length;
+	}
+	
+	/**
+	 * Check whether any bytes of this message were not yet written.
+	 */
+	public boolean hasRemaining() {
+		//the buffers are written in order, so only the last one has to be checked
+		return buffers[buffers.length - 1].hasRemaining();
+	}
+	
+	public long remaining() {
+		long remaining = 0;
+		for (ByteBuffer buffer : buffers) {
+			remaining += buffer.remaining();
+		}
+		return remaining;
+	}
+	
+	public boolean isNotification() {
+		return notification;
+	}
+	
+	public long getCreatedNanos() {
+		return createdNanos;
+	}
+	
+	public Priority getPriority() {
+		return priority;
+	}
+	
+	public String getCollapseKey() {
+		return collapseKey;
+	}
+	
+	/**
+	 * Report that the message was written completely (to the delivery tracker of the notification, if there is one).
+	 */
+	public void delivered() {
+		if (source != null) {
+			source.delivered();
+		}
+	}
+	/**
+	 * Report that the message won't be written (to the delivery tracker of the notification, if there is one).
+	 */
+	public void failed() {
+		if (source != null) {
+			source.deliveryFailed();
+		}
+	}
+	
+	public EncodedMessage getSource() {
+		return source;
+	}
+	
+	public long getSequence() {
+		return sequence;
+	}
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+	
+	public long getLength() {
+		return length;
+	}
+	
+	public ByteBuffer[] getBuffers() {
+		return buffers;
+	}
+}
\ No newline at end of file
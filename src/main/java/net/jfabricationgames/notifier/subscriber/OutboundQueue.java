@@ -0,0 +1,229 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.jfabricationgames.notifier.metrics.NotifierMetrics;
+import net.jfabricationgames.notifier.notification.Priority;
+
+/**
+ * A bounded queue of the messages that are waiting to be written to a subscriber.<br>
+ * Messages are added by the threads that send notifications and removed by the event loop that writes to the subscriber.<br>
+ * The queue has a lane for each {@link Priority}. The high priority lane is drained first, but after a number of high priority messages (the
+ * weight) one low priority message is taken, so the low priority lane is not starved. When the queue is full, low priority messages are dropped
+ * before high priority messages.<br>
+ * A message with a collapse key replaces the queued message with the same key (that was not yet taken from the queue), so only the latest of
+ * these messages is written.
+ */
+public class OutboundQueue {
+	
+	public static final int DEFAULT_HIGH_PRIORITY_WEIGHT = 8;
+	
+	private final int capacity;
+	private final OverflowPolicy overflowPolicy;
+	/**
+	 * The number of high priority messages that are taken before a waiting low priority message is taken
+	 */
+	private final int highPriorityWeight;
+	
+	private final Deque<OutboundMessage> highPriorityMessages;
+	private final Deque<OutboundMessage> lowPriorityMessages;
+	/**
+	 * The number of high priority messages that were taken since the last low priority message
+	 */
+	private int highPriorityInRow;
+	/**
+	 * The queued messages by their collapse keys
+	 */
+	private final Map<String, OutboundMessage> collapsibleMessages;
+	
+	/**
+	 * The number of messages that were dropped because the queue was full
+	 */
+	private long droppedMessages;
+	/**
+	 * The number of bytes of all queued messages
+	 */
+	private long queuedBytes;
+	
+	public OutboundQueue(int capacity, OverflowPolicy overflowPolicy) {
+		this(capacity, overflowPolicy, DEFAULT_HIGH_PRIORITY_WEIGHT);
+	}
+	public OutboundQueue(int capacity, OverflowPolicy overflowPolicy, int highPriorityWeight) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity of the queue must be positive (was: " + capacity + ")");
+		}
+		if (highPriorityWeight < 1) {
+			throw new IllegalArgumentException("The weight of the high priority lane must be positive (was: " + highPriorityWeight + ")");
+		}
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+		this.highPriorityWeight = highPriorityWeight;
+		this.highPriorityMessages = new ArrayDeque<OutboundMessage>();
+		this.lowPriorityMessages = new ArrayDeque<OutboundMessage>();
+		this.collapsibleMessages = new HashMap<String, OutboundMessage>();
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return "OutboundQueue [capacity=" + capacity + ", overflowPolicy=" + overflowPolicy + ", highPriorityWeight=" + highPriorityWeight
+				+ ", highPriority=" + highPriorityMessages.size() + ", lowPriority=" + lowPriorityMessages.size() + ", queuedBytes=" + queuedBytes
+				+ ", droppedMessages=" + droppedMessages + "]";
+	}
+	
+	/**
+	 * Add a message to the lane of its priority. If the queue is full the overflow policy is applied (low priority messages are dropped before
+	 * high priority messages). A queued message with the same collapse key is replaced (the new message is added to the end of its lane).
+	 * 
+	 * @return False if the queue is full and the subscriber has to be disconnected (overflow policy {@link OverflowPolicy#DISCONNECT}). True
+	 *         otherwise (even if a message was dropped).
+	 */
+	public synchronized boolean offer(OutboundMessage message) {
+		boolean highPriority = message.getPriority() == Priority.HIGH;
+		OutboundMessage collapsed = message.getCollapseKey() == null ? null : collapsibleMessages.get(message.getCollapseKey());
+		if (collapsed != null) {
+			//the replaced message was added recently in most cases, so it's searched from the end of the lane
+			getLane(collapsed).removeLastOccurrence(collapsed);
+			removed(collapsed);
+			collapsed.failed();
+			NotifierMetrics.MESSAGES_COLLAPSED.increment();
+		}
+		else if (size() >= capacity) {
+			switch (overflowPolicy) {
+				case DROP_OLDEST:
+					OutboundMessage oldest = lowPriorityMessages.isEmpty() && highPriority ? highPriorityMessages.pollFirst()
+							: lowPriorityMessages.pollFirst();
+					countDroppedMessage();
+					if (oldest == null) {
+						//only high priority messages are queued, so the new low priority message is the one to drop
+						message.failed();
+						return true;
+					}
+					removed(oldest);
+					oldest.failed();
+					break;
+				case DROP_NEWEST:
+					countDroppedMessage();
+					if (highPriority && !lowPriorityMessages.isEmpty()) {
+						//the newest low priority message makes room for the high priority message
+						OutboundMessage newest = lowPriorityMessages.pollLast();
+						removed(newest);
+						newest.failed();
+						break;
+					}
+					message.failed();
+					return true;
+				case DISCONNECT:
+					return false;
+			}
+		}
+		getLane(message).addLast(message);
+		added(message);
+		return true;
+	}
+	
+	private Deque<OutboundMessage> getLane(OutboundMessage message) {
+		return message.getPriority() == Priority.HIGH ? highPriorityMessages : lowPriorityMessages;
+	}
+	
+	private void added(OutboundMessage message) {
+		queuedBytes += message.getLength();
+		if (message.getCollapseKey() != null) {
+			collapsibleMessages.put(message.getCollapseKey(), message);
+		}
+	}
+	
+	private void removed(OutboundMessage message) {
+		queuedBytes -= message.getLength();
+		if (message.getCollapseKey() != null) {
+			collapsibleMessages.remove(message.getCollapseKey(), message);
+		}
+	}
+	
+	private void countDroppedMessage() {
+		droppedMessages++;
+		NotifierMetrics.MESSAGES_DROPPED.increment();
+	}
+	
+	/**
+	 * Remove the next message to write it (or get null if the queue is empty).<br>
+	 * High priority messages are taken first, but if low priority messages are waiting one of them is taken after every
+	 * {@link #getHighPriorityWeight()} high priority messages.<br>
+	 * A message that is currently written is no longer part of the queue, so it can't be dropped when it's only partially written.
+	 */
+	public synchronized OutboundMessage poll() {
+		OutboundMessage message;
+		if (!highPriorityMessages.isEmpty() && (lowPriorityMessages.isEmpty() || highPriorityInRow < highPriorityWeight)) {
+			message = highPriorityMessages.pollFirst();
+			highPriorityInRow++;
+		}
+		else {
+			message = lowPriorityMessages.pollFirst();
+			highPriorityInRow = 0;
+		}
+		if (message != null) {
+			removed(message);
+		}
+		return message;
+	}
+	
+	/**
+	 * Put a message that was taken from the queue, but not yet written, back to the front of its lane (e.g. a low priority message that has to
+	 * wait for a high priority message). The capacity is not checked, because the message was already part of the queue. If a newer message with
+	 * the same collapse key was added in the meantime, the message is not put back.
+	 */
+	public synchronized void requeue(OutboundMessage message) {
+		if (message.getCollapseKey() != null && collapsibleMessages.containsKey(message.getCollapseKey())) {
+			message.failed();
+			NotifierMetrics.MESSAGES_COLLAPSED.increment();
+			return;
+		}
+		getLane(message).addFirst(message);
+		added(message);
+	}
+	
+	/**
+	 * Check whether high priority messages are waiting.
+	 */
+	public synchronized boolean hasHighPriorityMessages() {
+		return !highPriorityMessages.isEmpty();
+	}
+	
+	/**
+	 * Remove all messages (e.g. when the subscriber is closed). The removed notifications are reported as failed to their delivery trackers.
+	 */
+	public synchronized void clear() {
+		highPriorityMessages.forEach(OutboundMessage::failed);
+		lowPriorityMessages.forEach(OutboundMessage::failed);
+		highPriorityMessages.clear();
+		lowPriorityMessages.clear();
+		collapsibleMessages.clear();
+		queuedBytes = 0;
+	}
+	
+	public synchronized int size() {
+		return highPriorityMessages.size() + lowPriorityMessages.size();
+	}
+	
+	public synchronized long getQueuedBytes() {
+		return queuedBytes;
+	}
+	
+	public synchronized long getDroppedMessages() {
+		return droppedMessages;
+	}
+	
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+	
+	public int getHighPriorityWeight() {
+		return highPriorityWeight;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,20 @@
+package net.jfabricationgames.notifier.subscriber;
+
+/**
+ * Defines what happens to a message that is sent to a subscriber whose outbound queue is full.
+ */
+public enum OverflowPolicy {
+	
+	/**
+	 * Remove the oldest queued message to make room for the new one
+	 */
+	DROP_OLDEST,
+	/**
+	 * Discard the new message
+	 */
+	DROP_NEWEST,
+	/**
+	 * Close the connection to the subscriber (a subscriber that can't keep up is treated like a dead one)
+	 */
+	DISCONNECT;
+}
\ No newline at end of file
@@ -0,0 +1,160 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled receiver of a notification (the receivers are regular expressions for the subscriber names).<br>
+ * Receivers without regex meta characters are matched as literal names and receivers like "some_prefix.*" are matched as name prefixes, so the
+ * manager can look them up in the name index instead of testing every subscriber. All other receivers are compiled to a {@link Pattern}.
+ * 
+ * The compiled receivers are kept in a bounded LRU cache, so a receiver is compiled only once and not for every subscriber and notification.
+ */
+public class ReceiverPattern {
+	
+	/**
+	 * The maximum number of compiled receivers that are kept in the cache
+	 */
+	public static final int CACHE_SIZE = 1024;
+	
+	private static final String REGEX_META_CHARACTERS = "\\.[]{}()<>*+-=!?^$|&";
+	
+	private static final Map<String, ReceiverPattern> CACHE = new LinkedHashMap<String, ReceiverPattern>(64, 0.75f, true) {
+		
+		private static final long serialVersionUID = 5186394431652946035L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ReceiverPattern> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	
+	public enum Type {
+		/**
+		 * The receiver is a name without any regex meta characters (matched using equals)
+		 */
+		LITERAL,
+		/**
+		 * The receiver is a literal name followed by ".*" (matched using startsWith)
+		 */
+		PREFIX,
+		/**
+		 * Any other regular expression (matched using the compiled pattern)
+		 */
+		REGEX;
+	}
+	
+	private final String receiver;
+	private final Type type;
+	/**
+	 * The unescaped name (for LITERAL) or prefix (for PREFIX) of the receiver
+	 */
+	private final String literal;
+	/**
+	 * The compiled pattern (only for REGEX)
+	 */
+	private final Pattern pattern;
+	
+	private ReceiverPattern(String receiver) {
+		this.receiver = receiver;
+		String unescaped;
+		if ((unescaped = unescapeLiteral(receiver)) != null) {
+			type = Type.LITERAL;
+			literal = unescaped;
+			pattern = null;
+		}
+		else if (receiver.endsWith(".*") && (unescaped = unescapeLiteral(receiver.substring(0, receiver.length() - 2))) != null) {
+			type = Type.PREFIX;
+			literal = unescaped;
+			pattern = null;
+		}
+		else {
+			type = Type.REGEX;
+			literal = null;
+			pattern = Pattern.compile(receiver);
+		}
+	}
+	
+	/**
+	 * Get the compiled receiver from the cache (or compile and cache it if it's not yet cached).
+	 */
+	public static ReceiverPattern compile(String receiver) {
+		synchronized (CACHE) {
+			ReceiverPattern compiled = CACHE.get(receiver);
+			if (compiled == null) {
+				compiled = new ReceiverPattern(receiver);
+				CACHE.put(receiver, compiled);
+			}
+			return compiled;
+		}
+	}
+	
+	/**
+	 * Get the literal name that is described by the receiver or null if the receiver contains (unescaped) regex meta characters.
+	 */
+	private static String unescapeLiteral(String receiver) {
+		StringBuilder sb = new StringBuilder(receiver.length());
+		for (int i = 0; i < receiver.length(); i++) {
+			char c = receiver.charAt(i);
+			if (c == '\\') {
+				//only escaped meta characters are literals (escapes like \d or \Q are character classes or quotes)
+				if (i + 1 < receiver.length() && REGEX_META_CHARACTERS.indexOf(receiver.charAt(i + 1)) != -1) {
+					sb.append(receiver.charAt(++i));
+				}
+				else {
+					return null;
+				}
+			}
+			else if (REGEX_META_CHARACTERS.indexOf(c) != -1) {
+				return null;
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+	
+	@Override
+	public String toString() {
+		return "ReceiverPattern [receiver=" + receiver + ", type=" + type + "]";
+	}
+	
+	/**
+	 * Check whether the name matches the receiver (with the same semantics as {@link Pattern#matches(String, CharSequence)}).
+	 */
+	public boolean matches(String name) {
+		switch (type) {
+			case LITERAL:
+				return literal.equals(name);
+			case PREFIX:
+				//'.' doesn't match line terminators, so the rest of the name mussn't contain any
+				return name.startsWith(literal) && !containsLineTerminator(name, literal.length());
+			default:
+				return pattern.matcher(name).matches();
+		}
+	}
+	
+	private static boolean containsLineTerminator(String name, int start) {
+		for (int i = start; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public String getReceiver() {
+		return receiver;
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	public String getLiteral() {
+		return literal;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,145 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.jfabricationgames.notifier.metrics.NotifierMetrics;
+import net.jfabricationgames.notifier.protocol.EncodedMessage;
+
+/**
+ * A bounded ring buffer of the notifications that were sent to a subscriber (that acknowledges the data frames), but not yet acknowledged.<br>
+ * Every notification gets the next sequence number of the subscriber when it's added. A cumulative acknowledgement removes all notifications up
+ * to its sequence number, so acknowledging takes constant time per notification. If the buffer is full, the oldest notification is dropped (it
+ * can't be resent anymore).<br>
+ * When the subscriber disconnects the buffer is kept by the {@link SubscriberReceiver} for some time, so a subscriber that reconnects with the
+ * sequence number of its last acknowledgement gets the missing notifications again.
+ * 
+ * The buffer is thread safe (it's filled by the thread that writes to the subscriber and acknowledged by the thread that reads from it).
+ */
+class ResendBuffer {
+	
+	private static final int INITIAL_SIZE = 16;
+	
+	private final int capacity;
+	/**
+	 * The unacknowledged notifications (indexed by their sequence number modulo the length; the array grows up to the capacity)
+	 */
+	private EncodedMessage[] messages;
+	/**
+	 * The sequence number of the oldest unacknowledged notification
+	 */
+	private long firstSequence;
+	/**
+	 * The sequence number of the next notification that is added (sequence numbers start with 1)
+	 */
+	private long nextSequence;
+	/**
+	 * The time (from {@link System#nanoTime()}) when the subscriber disconnected (0 while it's connected)
+	 */
+	private volatile long detachedNanos;
+	
+	ResendBuffer(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("the capacity must be positive (was: " + capacity + ")");
+		}
+		this.capacity = capacity;
+		this.messages = new EncodedMessage[Math.min(capacity, INITIAL_SIZE)];
+		this.firstSequence = 1;
+		this.nextSequence = 1;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return "ResendBuffer [capacity=" + capacity + ", firstSequence=" + firstSequence + ", nextSequence=" + nextSequence + "]";
+	}
+	
+	/**
+	 * Add a notification that is sent to the subscriber.
+	 * 
+	 * @return The sequence number of the notification.
+	 */
+	synchronized long add(EncodedMessage message) {
+		if (nextSequence - firstSequence == capacity) {
+			//the oldest notification was not acknowledged in time
+			messages[index(firstSequence)] = null;
+			firstSequence++;
+			NotifierMetrics.MESSAGES_UNACKNOWLEDGED_DROPPED.increment();
+		}
+		else if (nextSequence - firstSequence == messages.length) {
+			grow();
+		}
+		messages[index(nextSequence)] = message;
+		return nextSequence++;
+	}
+	
+	private void grow() {
+		EncodedMessage[] grown = new EncodedMessage[Math.min(capacity, messages.length * 2)];
+		for (long sequence = firstSequence; sequence < nextSequence; sequence++) {
+			grown[(int) (sequence % grown.length)] = messages[index(sequence)];
+		}
+		messages = grown;
+	}
+	
+	private int index(long sequence) {
+		return (int) (sequence % messages.length);
+	}
+	
+	/**
+	 * Remove all notifications up to the given sequence number (inclusive).
+	 */
+	synchronized void acknowledge(long sequence) {
+		long last = Math.min(sequence, nextSequence - 1);
+		while (firstSequence <= last) {
+			messages[index(firstSequence)] = null;
+			firstSequence++;
+		}
+	}
+	
+	/**
+	 * Remove the last added notification (that was not written, but put back into the queue) and take back its sequence number.
+	 */
+	synchronized void removeLast() {
+		if (nextSequence > firstSequence) {
+			nextSequence--;
+			messages[index(nextSequence)] = null;
+		}
+	}
+	
+	/**
+	 * Remove all unacknowledged notifications (to resend them). Their sequence numbers are assigned again when they are added again.
+	 */
+	synchronized List<EncodedMessage> removeUnacknowledged() {
+		List<EncodedMessage> unacknowledged = new ArrayList<EncodedMessage>((int) (nextSequence - firstSequence));
+		for (long sequence = firstSequence; sequence < nextSequence; sequence++) {
+			unacknowledged.add(messages[index(sequence)]);
+		}
+		Arrays.fill(messages, null);
+		nextSequence = firstSequence;
+		return unacknowledged;
+	}
+	
+	/**
+	 * Get the sequence number of the oldest notification that can still be resent.
+	 */
+	synchronized long getFirstSequence() {
+		return firstSequence;
+	}
+	/**
+	 * Get the sequence number that the next added notification gets.
+	 */
+	synchronized long getNextSequence() {
+		return nextSequence;
+	}
+	
+	synchronized int size() {
+		return (int) (nextSequence - firstSequence);
+	}
+	
+	long getDetachedNanos() {
+		return detachedNanos;
+	}
+	void setDetachedNanos(long detachedNanos) {
+		this.detachedNanos = detachedNanos;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,106 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+import net.jfabricationgames.notifier.protocol.Protocol;
+import net.jfabricationgames.notifier.protocol.SseCodec;
+
+/**
+ * A subscriber that is connected using Server-Sent Events. The events are written to the output stream of an asynchronous request using the
+ * non-blocking I/O of the servlet container: an event is only written while the stream is ready, otherwise the container calls
+ * {@link #onWritePossible()} when the rest can be written.
+ */
+public class SseSubscriber extends AsyncSubscriber implements WriteListener {
+	
+	private static final Logger LOGGER = LogManager.getLogger(SseSubscriber.class);
+	
+	private final AsyncContext asyncContext;
+	private final ServletOutputStream output;
+	
+	/**
+	 * The event that is currently written (null if no event is written)
+	 */
+	private byte[] event;
+	private boolean eventWritten;
+	private boolean eventFlushed;
+	
+	/**
+	 * Create the subscriber for an asynchronous request (the response headers have to be set already).<br>
+	 * The subscriber registers itself as write listener of the output stream and writes a comment, so the client knows that the stream is open.
+	 */
+	public SseSubscriber(String name, AsyncContext asyncContext, SubscriberManager manager, NotifierConfiguration configuration)
+			throws IOException {
+		super(name, Protocol.SSE, manager, configuration);
+		this.asyncContext = asyncContext;
+		this.output = asyncContext.getResponse().getOutputStream();
+		output.setWriteListener(this);
+		queue(new OutboundMessage(ByteBuffer.wrap(SseCodec.encodeComment("subscribed"))));
+	}
+	
+	@Override
+	protected void write(OutboundMessage message) throws IOException {
+		ByteBuffer buffer = message.getBuffers()[0];
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		synchronized (this) {
+			event = bytes;
+			eventWritten = false;
+			eventFlushed = false;
+		}
+		onWritePossible();
+	}
+	
+	@Override
+	public void onWritePossible() throws IOException {
+		if (writeEvent()) {
+			writeCompleted();
+		}
+	}
+	
+	/**
+	 * Write and flush the current event as far as the output stream is ready.
+	 * 
+	 * @return True if the event was written completely.
+	 */
+	private synchronized boolean writeEvent() throws IOException {
+		while (event != null && output.isReady()) {
+			if (!eventWritten) {
+				output.write(event);
+				eventWritten = true;
+			}
+			else if (!eventFlushed) {
+				output.flush();
+				eventFlushed = true;
+			}
+			else {
+				event = null;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public void onError(Throwable t) {
+		writeFailed(t);
+	}
+	
+	@Override
+	protected void closeTransport() {
+		try {
+			asyncContext.complete();
+		}
+		catch (IllegalStateException ise) {
+			LOGGER.debug("the asynchronous request was already completed", ise);
+		}
+	}
+}
\ No newline at end of file
@@ -1,46 +1,174 @@
 package net.jfabricationgames.notifier.subscriber;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.Socket;
-import java.net.SocketException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import net.jfabricationgames.notifier.metrics.NotifierMetrics;
+import net.jfabricationgames.notifier.notification.Priority;
+import net.jfabricationgames.notifier.protocol.Compression;
+import net.jfabricationgames.notifier.protocol.EncodedMessage;
+import net.jfabricationgames.notifier.protocol.Frame;
+import net.jfabricationgames.notifier.protocol.FrameCodec;
+import net.jfabricationgames.notifier.protocol.FrameType;
+import net.jfabricationgames.notifier.protocol.Handshake;
+import net.jfabricationgames.notifier.protocol.Protocol;
+import net.jfabricationgames.notifier.protocol.SentinelCodec;
+
 public class Subscriber {
 	
 	private static final Logger LOGGER = LogManager.getLogger(Subscriber.class);
 	
-	private static final String USERNAME_REQUEST = "<<send_username>>";
-	private static final String MESSAGE_END = "<<notification_end>>";
+	/**
+	 * The maximum number of buffers that are written in one gathering write
+	 */
+	private static final int MAX_GATHERED_BUFFERS = 64;
+	private static final byte[] HANDSHAKE_START = Handshake.HANDSHAKE_START.getBytes(StandardCharsets.UTF_8);
+	private static final byte[] HANDSHAKE_END = Handshake.HANDSHAKE_END.getBytes(StandardCharsets.UTF_8);
+	private static final ByteBuffer PING_FRAME = FrameCodec.encode(FrameType.PING, (byte) 0, new byte[0]).asReadOnlyBuffer();
+	private static final ByteBuffer PONG_FRAME = FrameCodec.encode(FrameType.PONG, (byte) 0, new byte[0]).asReadOnlyBuffer();
+	
+	private static final int READ_BUFFER_SIZE = 1024;
+	
+	/**
+	 * The states of the write request: no write requested, a delayed (coalesced) write requested or an immediate write requested
+	 */
+	private static final int WRITE_IDLE = 0;
+	private static final int WRITE_DELAYED = 1;
+	private static final int WRITE_IMMEDIATE = 2;
 	
 	private SubscriberReceiver receiver;
+	/**
+	 * The event loop that handles the I/O of this subscriber
+	 */
+	private SubscriberEventLoop eventLoop;
 	
 	private String name;
-	private Socket socket;
-	private InputStream inStream;
-	private OutputStream outStream;
-	
-	public Subscriber(Socket socket, SubscriberReceiver receiver) throws IOException {
-		this.socket = socket;
-		this.inStream = new BufferedInputStream(socket.getInputStream());
-		this.outStream = new BufferedOutputStream(socket.getOutputStream());
+	private SocketChannel channel;
+	/**
+	 * The protocol that is used for the messages to the subscriber (negotiated in the handshake)
+	 */
+	private volatile Protocol protocol;
+	/**
+	 * The compression of the data frames that was negotiated in the handshake
+	 */
+	private volatile Compression compression;
+	/**
+	 * The topics the subscriber subscribed to (in the handshake; they are not changed after the subscriber is registered)
+	 */
+	private volatile Set<String> topics;
+	/**
+	 * The notifications that were not yet acknowledged by the subscriber (null if the subscriber doesn't acknowledge the data frames)
+	 */
+	private volatile ResendBuffer resendBuffer;
+	
+	/**
+	 * The buffer for reading from the channel (only used by the event loop or the reader thread)
+	 */
+	private ByteBuffer readBuffer;
+	/**
+	 * The input that was received before the handshake was completed (null after the handshake)
+	 */
+	private ByteArrayOutputStream handshakeInput;
+	/**
+	 * Whether the handshake was received, but waits for the previous connection of the subscriber to be closed (the input is collected until
+	 * the handshake is completed; only used by the event loop)
+	 */
+	private boolean handshakePending;
+	/**
+	 * Decodes the frames from subscribers that use the binary protocol
+	 */
+	private FrameCodec frameDecoder;
+	/**
+	 * The time (from {@link System#nanoTime()}) of the last input from the subscriber
+	 */
+	private volatile long lastReadNanos;
+	/**
+	 * The messages that were not yet written to the channel
+	 */
+	private OutboundQueue pendingWrites;
+	/**
+	 * The messages that are currently written (taken from the queue, but not yet written completely; only used by the event loop or the writer
+	 * thread)
+	 */
+	private Deque<OutboundMessage> currentWrites;
+	/**
+	 * The buffers for the gathering write (only used by the event loop or the writer thread)
+	 */
+	private ByteBuffer[] gatheredBuffers;
+	/**
+	 * Indicates whether a write request is already pending in the receiver (to not wake up the event loop for every message)
+	 */
+	private AtomicInteger writeRequest;
+	/**
+	 * Whether writes are delayed (for up to the coalescing window) to write multiple messages together
+	 */
+	private boolean writeCoalescing;
+	private long coalescingWindowMillis;
+	/**
+	 * The number of queued bytes that are written immediately (without waiting for the end of the coalescing window)
+	 */
+	private long coalescingThresholdBytes;
+	/**
+	 * Wakes up the writer thread of a subscriber that uses blocking I/O (null if the subscriber is handled by the selector of the event loop)
+	 */
+	private volatile Semaphore blockingWriteSignal;
+	
+	public Subscriber(SocketChannel channel, SubscriberReceiver receiver, SubscriberEventLoop eventLoop) throws IOException {
+		this.channel = channel;
 		this.receiver = receiver;
+		this.eventLoop = eventLoop;
+		this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		this.handshakeInput = new ByteArrayOutputStream();
+		this.protocol = Protocol.LEGACY;
+		this.compression = Compression.NONE;
+		this.topics = Collections.emptySet();
+		this.pendingWrites = new OutboundQueue(receiver.getQueueCapacity(), receiver.getOverflowPolicy(), receiver.getHighPriorityWeight());
+		this.currentWrites = new ArrayDeque<OutboundMessage>();
+		this.gatheredBuffers = new ByteBuffer[MAX_GATHERED_BUFFERS];
+		this.writeRequest = new AtomicInteger(WRITE_IDLE);
+		this.writeCoalescing = receiver.isWriteCoalescing();
+		this.coalescingWindowMillis = receiver.getCoalescingWindowMillis();
+		this.coalescingThresholdBytes = receiver.getCoalescingThresholdBytes();
+		this.lastReadNanos = System.nanoTime();
 		
-		//send a name request and receive result (afterwards register this subscriber to the manager)
+		//send a name request (the answer is handled by the event loop of the receiver, that registers this subscriber to the manager)
 		sendNameRequest();
 		
 		LOGGER.info(">> Subscriber started");
 	}
+	/**
+	 * Create a subscriber without a connection (only for subclasses that don't write to a socket channel, like the fake subscribers of the
+	 * benchmarks). The subclasses have to override the methods that send messages.
+	 */
+	Subscriber(String name, Protocol protocol) {
+		this.name = name;
+		this.protocol = protocol;
+		this.compression = Compression.NONE;
+		this.topics = Collections.emptySet();
+	}
 	
 	@Override
 	public String toString() {
-		return "Subscriber [receiver=" + receiver + ", name=" + name + ", socket=" + socket + ", inStream=" + inStream + ", outStream=" + outStream
-				+ "]";
+		return "Subscriber [receiver=" + receiver + ", name=" + name + ", channel=" + channel + ", protocol=" + protocol + "]";
 	}
 	
 	@Override
@@ -78,94 +206,603 @@ public class Subscriber {
 	
 	/**
 	 * Send a request to the user to make him tell his name (no verification)
+	 */
+	private void sendNameRequest() {
+		LOGGER.debug("sending username request to subscriber");
+		//the channel is registered for writing when it's accepted, so the request doesn't need to wake up the event loop
+		pendingWrites.offer(new OutboundMessage(ByteBuffer.wrap(SentinelCodec.encode(Handshake.USERNAME_REQUEST, StandardCharsets.UTF_8))));
+	}
+	
+	/**
+	 * Read from the channel (called by the event loop when the channel is readable).<br>
+	 * The first input is the answer to the username request (either a legacy username or a handshake). After the subscriber is registered, the
+	 * input of legacy subscribers is ignored (they only receive), but reading is still needed to detect a closed connection. Subscribers that use
+	 * the binary protocol send frames.
 	 * 
 	 * @throws IOException
+	 *         An {@link IOException} is thrown if the connection was closed by the subscriber or the reading failed.
 	 */
-	private void sendNameRequest() throws IOException {
-		LOGGER.debug("sending username request to subscriber");
-		sendMessageToSubscriber(USERNAME_REQUEST);
+	void handleRead() throws IOException {
+		((Buffer) readBuffer).clear();
+		int read = channel.read(readBuffer);
+		if (read < 0) {
+			throw new IOException("the connection was closed by the subscriber");
+		}
+		((Buffer) readBuffer).flip();
+		if (read > 0) {
+			//any input (not only pongs) shows that the subscriber is alive
+			lastReadNanos = System.nanoTime();
+		}
+		if (name == null) {
+			if (read > 0) {
+				handleHandshakeInput();
+			}
+			return;
+		}
+		decodeFrames();
+	}
+	
+	private void decodeFrames() throws IOException {
+		if (frameDecoder != null) {
+			Frame frame;
+			while ((frame = frameDecoder.decode(readBuffer)) != null) {
+				handleFrame(frame);
+			}
+		}
+	}
+	
+	/**
+	 * Handle the answer to the username request (called until the subscriber has a name).
+	 */
+	private void handleHandshakeInput() throws IOException {
+		handshakeInput.write(readBuffer.array(), readBuffer.position(), readBuffer.remaining());
+		((Buffer) readBuffer).position(readBuffer.limit());
+		if (handshakePending) {
+			//the input that follows the handshake is decoded when the handshake is completed
+			return;
+		}
+		byte[] input = handshakeInput.toByteArray();
+		
+		if (!regionMatches(input, 0, HANDSHAKE_START, Math.min(input.length, HANDSHAKE_START.length))) {
+			//a legacy client that only sends the username
+			LOGGER.debug("reading username input");
+			String username = new String(input, StandardCharsets.UTF_8);
+			register(username, Protocol.LEGACY);
+			return;
+		}
+		
+		int end = indexOf(input, HANDSHAKE_END, HANDSHAKE_START.length);
+		if (end == -1) {
+			if (input.length > Handshake.MAX_HANDSHAKE_SIZE) {
+				throw new IOException("the handshake exceeds the maximum size of " + Handshake.MAX_HANDSHAKE_SIZE + " bytes");
+			}
+			//wait for the rest of the handshake
+			return;
+		}
+		
+		Handshake handshake = Handshake.parse(new String(input, HANDSHAKE_START.length, end - HANDSHAKE_START.length, StandardCharsets.UTF_8));
+		LOGGER.debug("received handshake: {}", handshake);
+		
+		Handshake accepted = new Handshake();
+		int version = handshake.getProtocol() == Protocol.BINARY ? FrameCodec.negotiateVersion(handshake.getProtocolVersion()) : 0;
+		if (handshake.getProtocol() == Protocol.BINARY && version == 0) {
+			LOGGER.info("the requested version of the binary protocol is not supported (version: {}). using the legacy protocol",
+					handshake.getProtocolVersion());
+		}
+		if (version > 0) {
+			accepted.setProtocol(Protocol.BINARY);
+			accepted.setProtocolVersion(version);
+			accepted.setHeartbeatIntervalMillis(receiver.getHeartbeatIntervalMillis());
+			if (handshake.getCompression() == Compression.DEFLATE && receiver.isCompressionEnabled()) {
+				accepted.setCompression(Compression.DEFLATE);
+				compression = Compression.DEFLATE;
+			}
+			if (handshake.isAcks() && receiver.isAcksEnabled()) {
+				accepted.setAcks(true);
+			}
+		}
+		else {
+			accepted.setProtocol(Protocol.LEGACY);
+		}
+		setTopics(handshake.getTopics());
+		if (!topics.isEmpty()) {
+			accepted.setTopics(topics);
+		}
+		
+		int consumed = end + HANDSHAKE_END.length;
+		if (!accepted.isAcks() || handshake.getLastAck() <= 0) {
+			completeHandshake(handshake, accepted, null, consumed);
+			return;
+		}
+		//a reconnecting subscriber takes over the resend buffer of its previous connection, after the previous connection was closed
+		CompletableFuture<ResendBuffer> retained = receiver.takeResendBuffer(handshake.getUsername());
+		if (retained.isDone() || blockingWriteSignal != null) {
+			//the reader thread of a blocking subscriber can just wait
+			completeHandshake(handshake, accepted, retained.join(), consumed);
+		}
+		else {
+			handshakePending = true;
+			retained.thenAccept(resendBuffer -> eventLoop.execute(() -> completePendingHandshake(handshake, accepted, resendBuffer, consumed)));
+		}
+	}
+	
+	/**
+	 * Complete a handshake that waited for the previous connection of the subscriber to be closed (executed by the event loop).
+	 */
+	private void completePendingHandshake(Handshake handshake, Handshake accepted, ResendBuffer retained, int consumed) {
+		handshakePending = false;
+		if (isConnectionClosed()) {
+			if (retained != null) {
+				//the subscriber disconnected in the meantime, so the buffer is kept for its next reconnect
+				receiver.retainResendBuffer(handshake.getUsername(), this, retained);
+			}
+			return;
+		}
+		try {
+			completeHandshake(handshake, accepted, retained, consumed);
+		}
+		catch (IOException | RuntimeException e) {
+			LOGGER.warn("the subscriber connection failed: {} (removing subscriber: {})", e.getMessage(), this);
+			receiver.closeSubscriber(this);
+		}
+	}
+	
+	/**
+	 * Send the accepted handshake (and the notifications that are resent), register the subscriber and decode the frames that were sent after the
+	 * handshake.
+	 * 
+	 * @param retained
+	 *        The resend buffer of the previous connection (null if there is none).
+	 * @param consumed
+	 *        The number of bytes of the handshake input that belong to the handshake.
+	 */
+	private void completeHandshake(Handshake handshake, Handshake accepted, ResendBuffer retained, int consumed) throws IOException {
+		//the accepted message is still send in the legacy protocol, because the client only switches after receiving it
+		List<EncodedMessage> resent = accepted.isAcks() ? startAcknowledging(handshake, accepted, retained) : Collections.emptyList();
+		pendingWrites.offer(new OutboundMessage(ByteBuffer.wrap(SentinelCodec.encode(accepted.encodeAccepted(), StandardCharsets.UTF_8))));
+		for (EncodedMessage message : resent) {
+			//the resent notifications get new sequence numbers (after the last acknowledged one) when they are written
+			ByteBuffer[] buffers = message.getSequencedBuffers(compression, receiver.getCompressionThresholdBytes());
+			if (pendingWrites.offer(new OutboundMessage(message, buffers))) {
+				NotifierMetrics.MESSAGES_RESENT.increment();
+			}
+		}
+		requestWrite();
+		
+		//frames that were send directly after the handshake are decoded by the frame decoder
+		byte[] input = handshakeInput.toByteArray();
+		readBuffer = ByteBuffer.allocate(Math.max(READ_BUFFER_SIZE, input.length - consumed));
+		readBuffer.put(input, consumed, input.length - consumed);
+		((Buffer) readBuffer).flip();
+		
+		register(handshake.getUsername(), accepted.getProtocol());
+		decodeFrames();
+	}
+	
+	/**
+	 * Create the resend buffer of a subscriber that acknowledges the data frames. If the subscriber reconnects with the sequence number of its
+	 * last acknowledgement, the retained buffer of the previous connection is continued and the notifications that were not acknowledged are
+	 * returned (to resend them).
+	 */
+	private List<EncodedMessage> startAcknowledging(Handshake handshake, Handshake accepted, ResendBuffer retained) {
+		List<EncodedMessage> unacknowledged = Collections.emptyList();
+		long lastAck = handshake.getLastAck();
+		if (retained != null && lastAck < retained.getNextSequence()) {
+			retained.acknowledge(lastAck);
+			unacknowledged = retained.removeUnacknowledged();
+			resendBuffer = retained;
+			LOGGER.debug("resuming the session of subscriber {} (last ack: {}   resending: {})", handshake.getUsername(), lastAck,
+					unacknowledged.size());
+		}
+		else {
+			resendBuffer = new ResendBuffer(receiver.getResendBufferSize());
+		}
+		receiver.startAcknowledging(handshake.getUsername(), this);
+		//the client can detect lost notifications (or a new session) by the sequence number of the next frame
+		accepted.setNextSequence(resendBuffer.getNextSequence());
+		return unacknowledged;
+	}
+	
+	private void register(String username, Protocol protocol) {
+		LOGGER.debug("subscriber registered with username: {} (protocol: {})", username, protocol);
+		handshakeInput = null;
+		//set the username and the protocol to the subscriber
+		this.name = username;
+		this.protocol = protocol;
+		if (protocol == Protocol.BINARY) {
+			frameDecoder = new FrameCodec();
+		}
+		
+		//register the subscriber to the receiver (which registers it to the manager)
+		receiver.registerSubscriber(this);
+		
+		//legacy subscribers can't answer pings (they would receive them as notifications)
+		if (protocol == Protocol.BINARY && receiver.getHeartbeatIntervalMillis() > 0) {
+			eventLoop.scheduleTimeout(this::checkHeartbeat, receiver.getHeartbeatIntervalMillis());
+		}
+	}
+	
+	/**
+	 * Check whether the subscriber sent any input within the heartbeat timeout (executed by the timing wheel of the event loop).<br>
+	 * An idle subscriber is pinged, so that a living client answers with a pong. A subscriber that didn't send anything within the timeout is
+	 * considered dead (e.g. a half open connection, where writing doesn't fail) and is closed, so it doesn't stay in the manager.
+	 */
+	private void checkHeartbeat() {
+		if (isConnectionClosed()) {
+			return;
+		}
+		long intervalMillis = receiver.getHeartbeatIntervalMillis();
+		long timeoutMillis = receiver.getHeartbeatTimeoutMillis();
+		long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastReadNanos);
+		if (idleMillis >= timeoutMillis) {
+			LOGGER.info("no input from the subscriber for {} ms. closing the connection to the subscriber: {}", idleMillis, this);
+			NotifierMetrics.HEARTBEAT_TIMEOUTS.increment();
+			receiver.closeSubscriber(this);
+			return;
+		}
 		
-		Thread usernameRequestListenerThread = new Thread(() -> {
-			while (!Thread.currentThread().isInterrupted()) {
-				try {
-					Thread.sleep(10);
-					//wait for the subscriber to enter a username
-					int available;
-					if ((available = inStream.available()) > 0) {
-						LOGGER.debug("reading scanner input");
-						byte[] buffer = new byte[available];
-						inStream.read(buffer);
-						String username = new String(buffer);
-						LOGGER.debug("subscriber registered with username: {}", username);
-						//set the username to the subscriber
-						Subscriber.this.name = username;
-						
-						//stop listening to the subscriber (subscribers only receive from now on)
-						Thread.currentThread().interrupt();
+		long nextCheckMillis;
+		if (idleMillis >= intervalMillis) {
+			sendControlFrame(PING_FRAME);
+			nextCheckMillis = Math.min(intervalMillis, timeoutMillis - idleMillis);
+		}
+		else {
+			//the subscriber sent something in the meantime, so the next ping is only needed when it's idle for the whole interval
+			nextCheckMillis = intervalMillis - idleMillis;
+		}
+		eventLoop.scheduleTimeout(this::checkHeartbeat, nextCheckMillis);
+	}
+	
+	/**
+	 * Queue a control frame (ping or pong) for the subscriber.
+	 */
+	private void sendControlFrame(ByteBuffer frame) {
+		if (pendingWrites.offer(new OutboundMessage(frame.duplicate()))) {
+			requestWrite();
+		}
+		else {
+			LOGGER.debug("the outbound queue of the subscriber is full. control frame is not send: {}", this);
+		}
+	}
+	
+	/**
+	 * Handle a frame that was send by a subscriber that uses the binary protocol.
+	 */
+	private void handleFrame(Frame frame) throws IOException {
+		LOGGER.trace("received frame from subscriber: {}", frame);
+		if (frame.getType() == FrameType.CLOSE) {
+			throw new IOException("the connection was closed by the subscriber");
+		}
+		else if (frame.getType() == FrameType.PING) {
+			sendControlFrame(PONG_FRAME);
+		}
+		else if (frame.getType() == FrameType.ACK) {
+			if (frame.getPayload().length != 8) {
+				throw new IOException("an ack frame needs a payload of 8 bytes (was: " + frame.getPayload().length + ")");
+			}
+			ResendBuffer acknowledged = resendBuffer;
+			if (acknowledged != null) {
+				acknowledged.acknowledge(ByteBuffer.wrap(frame.getPayload()).getLong());
+			}
+		}
+		//subscribers only receive notifications, so data frames are ignored (and pongs only update the time of the last input)
+	}
+	
+	/**
+	 * Read and write the channel (which has to be in blocking mode) in two virtual threads, instead of the selector of the event loop.<br>
+	 * The read and write methods are the same that are used by the event loop (blocking writes just don't return before everything is written).
+	 */
+	void startBlockingIO() {
+		//the first permit makes the writer send the username request
+		blockingWriteSignal = new Semaphore(1);
+		VirtualThreads.start("virtual_subscriber_reader_thread", this::runBlockingReader);
+		VirtualThreads.start("virtual_subscriber_writer_thread", this::runBlockingWriter);
+	}
+	
+	private void runBlockingReader() {
+		try {
+			while (true) {
+				handleRead();
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			handleBlockingIOFailure(e);
+		}
+	}
+	
+	private void runBlockingWriter() {
+		try {
+			while (!isConnectionClosed()) {
+				blockingWriteSignal.acquire();
+				clearWriteRequest();
+				handleWrite();
+			}
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException | RuntimeException e) {
+			handleBlockingIOFailure(e);
+		}
+	}
+	
+	private void handleBlockingIOFailure(Exception e) {
+		//the other thread fails too when the connection is closed, but the subscriber is only closed once
+		if (!isConnectionClosed()) {
+			LOGGER.warn("the subscriber connection failed: {} (removing subscriber: {})", e.getMessage(), this);
+			receiver.closeSubscriber(this);
+		}
+	}
+	
+	/**
+	 * Check whether the input contains the first bytes (up to the given length) of the searched bytes at the offset.
+	 */
+	private static boolean regionMatches(byte[] input, int offset, byte[] searched, int length) {
+		for (int i = 0; i < length; i++) {
+			if (input[offset + i] != searched[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static int indexOf(byte[] input, byte[] searched, int from) {
+		for (int i = from; i <= input.length - searched.length; i++) {
+			if (regionMatches(input, i, searched, searched.length)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Write the pending messages to the channel (called by the event loop when the channel is writable).<br>
+	 * The buffers of multiple messages are written using a gathering write, so a burst of messages only needs a few system calls.
+	 * 
+	 * @return True if all pending messages were written. False if the channel can't take more bytes at the moment.
+	 * 
+	 * @throws IOException
+	 *         An {@link IOException} is thrown if the writing failed.
+	 */
+	boolean handleWrite() throws IOException {
+		while (true) {
+			int gathered = gatherBuffers();
+			if (gathered == 0) {
+				return true;
+			}
+			long writeStart = System.nanoTime();
+			try {
+				channel.write(gatheredBuffers, 0, gathered);
+			}
+			catch (IOException ioe) {
+				NotifierMetrics.WRITE_FAILURES.increment();
+				currentWrites.forEach(OutboundMessage::failed);
+				currentWrites.clear();
+				throw ioe;
+			}
+			NotifierMetrics.WRITE_TIME.recordSince(writeStart);
+			//remove the buffer references, so the written messages can be collected
+			Arrays.fill(gatheredBuffers, 0, gathered, null);
+			
+			while (!currentWrites.isEmpty() && !currentWrites.peekFirst().hasRemaining()) {
+				OutboundMessage written = currentWrites.pollFirst();
+				written.delivered();
+				if (written.isNotification()) {
+					NotifierMetrics.MESSAGES_DELIVERED.increment();
+					NotifierMetrics.DELIVERY_LATENCY.recordSince(written.getCreatedNanos());
+					if (written.getPriority() == Priority.HIGH) {
+						NotifierMetrics.HIGH_PRIORITY_DELIVERY_LATENCY.recordSince(written.getCreatedNanos());
 					}
 				}
-				catch (InterruptedException ie) {
-					//reset interrupted flag
-					Thread.currentThread().interrupt();
+			}
+			if (!currentWrites.isEmpty()) {
+				//the socket buffer is full -> continue when the channel is writable again
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * Take messages from the queue and collect the buffers that are not yet written for a gathering write.<br>
+	 * If high priority messages are waiting, the low priority messages that were taken before, but not yet started, are put back into the queue,
+	 * so the high priority messages don't have to wait until a large burst of low priority messages is written.<br>
+	 * The notifications to subscribers that acknowledge the data frames get their sequence numbers here, so the numbers are in the order in
+	 * which the frames are written.
+	 * 
+	 * @return The number of gathered buffers.
+	 */
+	private int gatherBuffers() {
+		if (currentWrites.size() > 1 && pendingWrites.hasHighPriorityMessages()) {
+			//the first message may be partially written, so it's never put back
+			while (currentWrites.size() > 1 && currentWrites.peekLast().getPriority() == Priority.LOW && currentWrites.peekLast().isUnstarted()) {
+				OutboundMessage requeued = currentWrites.pollLast();
+				if (requeued.getSequence() != 0) {
+					//the messages are put back in reverse order, so the last assigned sequence number is taken back
+					resendBuffer.removeLast();
+					requeued.setSequence(0);
 				}
-				catch (IOException ioe) {
-					LOGGER.error("error while trying to read from input stream", ioe);
+				pendingWrites.requeue(requeued);
+			}
+		}
+		int gathered = 0;
+		for (OutboundMessage message : currentWrites) {
+			gathered = addBuffers(message, gathered);
+		}
+		OutboundMessage message;
+		while (gathered < MAX_GATHERED_BUFFERS && (message = pendingWrites.poll()) != null) {
+			if (resendBuffer != null && message.getSource() != null) {
+				message.setSequence(resendBuffer.add(message.getSource()));
+				FrameCodec.putSequence(message.getBuffers()[0], message.getSequence());
+			}
+			currentWrites.addLast(message);
+			gathered = addBuffers(message, gathered);
+		}
+		return gathered;
+	}
+	
+	private int addBuffers(OutboundMessage message, int gathered) {
+		for (ByteBuffer buffer : message.getBuffers()) {
+			if (buffer.hasRemaining()) {
+				if (gathered == gatheredBuffers.length) {
+					gatheredBuffers = Arrays.copyOf(gatheredBuffers, gatheredBuffers.length * 2);
 				}
+				gatheredBuffers[gathered++] = buffer;
 			}
-			
-			//register the subscriber to the receiver (which registers it to the manager)
-			receiver.registerSubscriber(Subscriber.this);
-		}, "username_request_listener_thread");
-		
-		//start the thread for listening to the username
-		usernameRequestListenerThread.setDaemon(true);
-		usernameRequestListenerThread.start();
+		}
+		return gathered;
 	}
 	
 	/**
-	 * Send the given message to the subscriber (a notification end tag will be added to the end of the message).
+	 * Send the given message to the subscriber (in a binary frame or followed by a notification end tag, depending on the protocol).
+	 * 
+	 * @param message
+	 */
+	public void sendMessageToSubscriber(String message) {
+		sendMessageToSubscriber(new EncodedMessage(message));
+	}
+	
+	/**
+	 * Send the given message to the subscriber (in a binary frame or followed by a notification end tag, depending on the protocol).<br>
+	 * The message is only queued here. It's written by the event loop, so this method never blocks. If the queue is full the configured
+	 * {@link OverflowPolicy} is applied. The encoded message is not copied, so it can be shared by all subscribers that receive it.
 	 * 
 	 * @param message
-	 * @throws IOException
 	 */
-	public void sendMessageToSubscriber(String message) throws IOException {
+	public void sendMessageToSubscriber(EncodedMessage message) {
 		boolean connected = isConnected();
-		boolean removeSubscriber = false;
-		LOGGER.debug("sending message to subscriber (message: {}{}   connected: {})", message, MESSAGE_END, connected);
+		LOGGER.debug("sending message to subscriber (message: {}   protocol: {}   connected: {})", message, protocol, connected);
 		
 		if (connected) {
-			try {
-				//send the message
-				outStream.write(message.getBytes());
-				//add the notification end tag
-				outStream.write(MESSAGE_END.getBytes());
-				outStream.flush();
+			//compressed messages are compressed only once (by the first subscriber that receives them)
+			ByteBuffer[] buffers;
+			if (resendBuffer != null) {
+				buffers = message.getSequencedBuffers(compression, receiver.getCompressionThresholdBytes());
+			}
+			else if (compression == Compression.DEFLATE) {
+				buffers = message.getCompressedBuffers(receiver.getCompressionThresholdBytes());
+			}
+			else {
+				buffers = message.getBuffers(protocol);
 			}
-			catch (SocketException se) {
-				LOGGER.warn("SocketException caught: {}\nthe subscriber seems to be disconnected. notification is not send", se.getMessage());
-				removeSubscriber = true;
+			if (!pendingWrites.offer(new OutboundMessage(message, buffers))) {
+				message.deliveryFailed();
+				LOGGER.warn("the outbound queue of the subscriber is full. closing the connection to the subscriber: {}", this);
+				eventLoop.execute(() -> receiver.closeSubscriber(this));
+			}
+			else {
+				//high priority messages are not delayed by the write coalescing
+				requestWrite(message.getPriority() == Priority.HIGH);
 			}
 		}
 		else {
+			message.deliveryFailed();
 			LOGGER.warn("the subscriber disconnected. notification is not send");
-			removeSubscriber = true;
-		}
-		
-		if (removeSubscriber) {
 			LOGGER.info("removing this subscriber");
 			receiver.removeSubscriber(this);
 		}
 	}
 	
+	/**
+	 * Make the event loop write the queued messages (the event loop is only woken up if no write request is pending yet).<br>
+	 * If write coalescing is enabled the write is delayed until the coalescing window expires or the queued messages reach the byte threshold.
+	 */
+	private void requestWrite() {
+		requestWrite(false);
+	}
+	private void requestWrite(boolean immediate) {
+		if (immediate || !writeCoalescing || pendingWrites.getQueuedBytes() >= coalescingThresholdBytes) {
+			if (writeRequest.getAndSet(WRITE_IMMEDIATE) != WRITE_IMMEDIATE) {
+				if (blockingWriteSignal != null) {
+					blockingWriteSignal.release();
+				}
+				else {
+					eventLoop.requestWrite(this);
+				}
+			}
+		}
+		else if (writeRequest.compareAndSet(WRITE_IDLE, WRITE_DELAYED)) {
+			//wait for more messages, so they can be written together
+			if (blockingWriteSignal != null) {
+				eventLoop.schedule(blockingWriteSignal::release, coalescingWindowMillis);
+			}
+			else {
+				eventLoop.requestWrite(this, coalescingWindowMillis);
+			}
+		}
+	}
+	
+	/**
+	 * Reset the write request flag (called by the event loop before enabling the write interest or by the writer thread before writing).
+	 */
+	void clearWriteRequest() {
+		writeRequest.set(WRITE_IDLE);
+	}
+	
 	public boolean isConnected() {
-		return socket != null && socket.isConnected() && !socket.isClosed() && outStream != null;
+		return channel != null && channel.isOpen() && channel.isConnected();
 	}
 	public boolean isConnectionClosed() {
-		return socket.isClosed();
+		return !channel.isOpen();
 	}
 	public void closeConnection() throws IOException {
 		LOGGER.debug("closing connection of this subscriber");
-		socket.close();
+		boolean open = channel.isOpen();
+		if (open) {
+			NotifierMetrics.CONNECTIONS_REMOVED.increment();
+		}
+		channel.close();
+		if (open && resendBuffer != null && name != null) {
+			//the queued notifications were not sent, so they are kept with the unacknowledged ones, to send them if the subscriber reconnects
+			OutboundMessage message;
+			while ((message = pendingWrites.poll()) != null) {
+				if (message.getSource() != null) {
+					resendBuffer.add(message.getSource());
+					message.failed();
+				}
+			}
+			receiver.retainResendBuffer(name, this, resendBuffer);
+		}
+		pendingWrites.clear();
+		if (blockingWriteSignal != null) {
+			//wake up the writer thread, so it ends
+			blockingWriteSignal.release();
+		}
+	}
+	
+	SocketChannel getChannel() {
+		return channel;
+	}
+	
+	SubscriberEventLoop getEventLoop() {
+		return eventLoop;
+	}
+	
+	/**
+	 * Get the notifications that were not yet acknowledged by the subscriber (null if it doesn't acknowledge the data frames).
+	 */
+	ResendBuffer getResendBuffer() {
+		return resendBuffer;
+	}
+	
+	public Protocol getProtocol() {
+		return protocol;
+	}
+	
+	public Compression getCompression() {
+		return compression;
+	}
+	
+	/**
+	 * Get the topics the subscriber subscribed to (an immutable set).
+	 */
+	public Set<String> getTopics() {
+		return topics;
+	}
+	/**
+	 * Set the topics of the subscriber (before it's added to the manager, because the topics are indexed when it's added).
+	 */
+	public void setTopics(Collection<String> topics) {
+		this.topics = Collections.unmodifiableSet(new LinkedHashSet<String>(topics));
 	}
 	
 	public String getName() {
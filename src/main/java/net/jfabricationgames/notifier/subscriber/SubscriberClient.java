@@ -5,26 +5,39 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import net.jfabricationgames.notifier.protocol.Compression;
+import net.jfabricationgames.notifier.protocol.DeflateCodec;
+import net.jfabricationgames.notifier.protocol.Frame;
+import net.jfabricationgames.notifier.protocol.FrameCodec;
+import net.jfabricationgames.notifier.protocol.FrameType;
+import net.jfabricationgames.notifier.protocol.Handshake;
+import net.jfabricationgames.notifier.protocol.Protocol;
+import net.jfabricationgames.notifier.protocol.SentinelCodec;
+
 /**
- * A simple implementation of a client side subscriber that subscribes to the service and listens to notifications.
+ * A simple implementation of a client side subscriber that subscribes to the service and listens to notifications.<br>
+ * The listener thread blocks while reading from the socket (so an idle client doesn't use any CPU) and passes the received notifications to the
+ * registered {@link NotificationListener}s.
  */
 public class SubscriberClient {
 	
 	private static final Logger LOGGER = LogManager.getLogger(SubscriberClient.class);
 	
 	/**
-	 * The string that the service will send to request a name from the user.
-	 */
-	private static final String USERNAME_REQUEST = "<<send_username>>";
-	/**
-	 * A string that indicates the end of a notification message.
+	 * The size of the buffer that is used to read from the socket
 	 */
-	private static final String MESSAGE_END = "<<notification_end>>";
+	private static final int READ_BUFFER_SIZE = 8192;
 	
 	/**
 	 * The name (URL) of the host.
@@ -42,6 +55,46 @@ public class SubscriberClient {
 	 * The name, this client will use when subscribing to the notification service
 	 */
 	private String username;
+	/**
+	 * The protocol that is requested in the handshake (LEGACY means no handshake is send, only the username)
+	 */
+	private Protocol requestedProtocol;
+	/**
+	 * The protocol that is currently used for the messages from the service (LEGACY until the service accepted the handshake)
+	 */
+	private Protocol protocol = Protocol.LEGACY;
+	/**
+	 * The compression of the data frames that is requested in the handshake (only for the binary protocol)
+	 */
+	private Compression requestedCompression;
+	/**
+	 * The topics this client subscribes to (send in the handshake, so they can't be used with the legacy protocol)
+	 */
+	private List<String> topics;
+	/**
+	 * Whether the notifications are acknowledged (requested in the handshake; only for the binary protocol)
+	 */
+	private boolean requestedAcks;
+	/**
+	 * Whether the service accepted the acknowledgements (the data frames are sequenced then)
+	 */
+	private boolean acks;
+	/**
+	 * The sequence number of the last received notification (sent as last ack in the handshake when reconnecting)
+	 */
+	private volatile long lastReceivedSequence;
+	/**
+	 * The sequence number that was acknowledged last (only used by the notification listener thread)
+	 */
+	private long lastAckedSequence;
+	/**
+	 * Decodes the messages of the legacy protocol
+	 */
+	private SentinelCodec sentinelDecoder = new SentinelCodec(StandardCharsets.UTF_8);
+	/**
+	 * Decodes the frames of the binary protocol
+	 */
+	private FrameCodec frameDecoder = new FrameCodec();
 	
 	/**
 	 * The socket that makes the connection to the notifier service
@@ -59,12 +112,20 @@ public class SubscriberClient {
 	 * The thread that listens to notifications
 	 */
 	private Thread notificationListenerThread;
+	/**
+	 * The listeners that receive the notifications
+	 */
+	private List<NotificationListener> listeners = new CopyOnWriteArrayList<NotificationListener>();
+	/**
+	 * The executor that calls the listeners (by default they are called in the notification listener thread)
+	 */
+	private Executor listenerExecutor;
 	
 	/**
 	 * Main method for testing
 	 */
 	public static void main(String[] args) throws IOException {
-		new SubscriberClient();
+		new SubscriberClient(message -> LOGGER.info("received notification: {}", message));
 	}
 	
 	/**
@@ -76,8 +137,65 @@ public class SubscriberClient {
 	 *         An {@link IOException} is thrown if the creation of the client fails.
 	 */
 	public SubscriberClient() throws IOException {
-		loadConfig();
-		LOGGER.info("SubscriberClient: loaded configuration: [host: {}   port: {}   username: {}]", host, portRest, username);
+		this(null);
+	}
+	
+	/**
+	 * Create a new client (like {@link #SubscriberClient()}) that passes the notifications to the listener. The listener is called in the
+	 * notification listener thread.
+	 * 
+	 * @param listener
+	 *        The listener that receives the notifications (or null if listeners are added later).
+	 * 
+	 * @throws IOException
+	 *         An {@link IOException} is thrown if the creation of the client fails.
+	 */
+	public SubscriberClient(NotificationListener listener) throws IOException {
+		this(listener, Runnable::run);
+	}
+	
+	/**
+	 * Create a new client (like {@link #SubscriberClient()}) that passes the notifications to the listener using the given executor.
+	 * 
+	 * @param listener
+	 *        The listener that receives the notifications (or null if listeners are added later).
+	 * @param listenerExecutor
+	 *        The executor that calls the listeners. The notifications are passed to the executor in the order they are received.
+	 * 
+	 * @throws IOException
+	 *         An {@link IOException} is thrown if the creation of the client fails.
+	 */
+	public SubscriberClient(NotificationListener listener, Executor listenerExecutor) throws IOException {
+		this(loadConfigProperties(), listener, listenerExecutor);
+	}
+	
+	/**
+	 * Create a new client that uses the given configuration instead of the client_config.properties (e.g. to create many clients with
+	 * different usernames).
+	 * 
+	 * @param configuration
+	 *        The configuration with the same properties as the client_config.properties (host, port.rest, port.socket, username, protocol,
+	 *        compression, topics, acks and last_ack).
+	 * @param listener
+	 *        The listener that receives the notifications (or null if listeners are added later).
+	 * @param listenerExecutor
+	 *        The executor that calls the listeners. The notifications are passed to the executor in the order they are received.
+	 * 
+	 * @throws IOException
+	 *         An {@link IOException} is thrown if the configuration is invalid or the creation of the client fails.
+	 */
+	public SubscriberClient(Properties configuration, NotificationListener listener, Executor listenerExecutor) throws IOException {
+		if (listenerExecutor == null) {
+			throw new IllegalArgumentException("The listener executor mussn't be null");
+		}
+		this.listenerExecutor = listenerExecutor;
+		if (listener != null) {
+			listeners.add(listener);
+		}
+		
+		loadConfig(configuration);
+		LOGGER.info("SubscriberClient: loaded configuration: [host: {}   port: {}   username: {}   protocol: {}   compression: {}   acks: {}]", host,
+				portRest, username, requestedProtocol, requestedCompression, requestedAcks);
 		
 		subscribeToNotifierService();
 		startNotificationListener();
@@ -136,31 +254,27 @@ public class SubscriberClient {
 			throw new IllegalStateException("A notification listener thread has already been started");
 		}
 		notificationListenerThread = new Thread(() -> {
-			int available = 0;
-			StringBuilder sb = new StringBuilder();
+			byte[] buffer = new byte[READ_BUFFER_SIZE];
 			while (!Thread.currentThread().isInterrupted()) {
 				try {
-					if ((available = inStream.available()) > 0) {
-						LOGGER.trace("Received input (bytes available: {})", available);
-						//read the input into a string
-						byte[] buffer = new byte[available];
-						inStream.read(buffer);
-						String str = new String(buffer);
-						
-						//append the new text till the end of the message is reached
-						sb.append(str);
-						
-						//check for message end(s)
-						String rest;//rest of a next message
-						//checks for multiple messages in one buffer
-						while ((rest = handleMessageEnd(sb)) != null) {
-							sb = new StringBuilder(rest);
-						}
+					//block until the service sends something (or the connection is closed)
+					int read = inStream.read(buffer);
+					if (read == -1) {
+						LOGGER.info("the connection to the service was closed");
+						break;
 					}
+					LOGGER.trace("Received input (bytes read: {})", read);
+					//decode all messages (or frames) the input contains
+					handleInput(ByteBuffer.wrap(buffer, 0, read));
+					//the frames of the input are acknowledged together (one cumulative ack per read, not per frame)
+					acknowledgeReceivedFrames();
 				}
 				catch (IOException ioe) {
-					//this exception should be logged...
-					ioe.printStackTrace();
+					if (!socket.isClosed()) {
+						//the connection wasn't closed by this client
+						LOGGER.error("error while reading from the service", ioe);
+					}
+					break;
 				}
 			}
 		}, "notification_listener_thread");
@@ -184,40 +298,135 @@ public class SubscriberClient {
 	}
 	
 	/**
-	 * Check for the end of a message.<br>
-	 * If a message end is contained the message is handled and the rest of the string builder content is returned. Otherwise null is returned.
-	 */
-	private String handleMessageEnd(StringBuilder sb) {
-		int messageEnd = 0;
-		if ((messageEnd = sb.indexOf(MESSAGE_END)) > 0) {
-			//split message in message content, message end identifier and rest (of a next message)
-			String wholeMessage = sb.toString();
-			String message = wholeMessage.substring(0, messageEnd);
-			String rest = wholeMessage.substring(messageEnd + MESSAGE_END.length());
-			
-			LOGGER.debug("received message: {}", message);
-			
-			//handle the message content
-			handleMessage(message);
-			
-			//put the rest of the message back in the string builder
-			return rest;
+	 * Close the connection and subscribe again (e.g. after the connection failed).<br>
+	 * If the notifications are acknowledged, the sequence number of the last received notification is sent in the handshake, so the service
+	 * resends the notifications that were not received.
+	 */
+	public void reconnect() throws IOException {
+		Thread previousListenerThread = notificationListenerThread;
+		if (previousListenerThread != null) {
+			closeConnection();
+			if (previousListenerThread != Thread.currentThread()) {
+				try {
+					previousListenerThread.join();
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new IOException("interrupted while waiting for the notification listener thread to end", ie);
+				}
+			}
 		}
-		else {
-			return null;
+		//the new connection starts with the username request of the legacy protocol
+		protocol = Protocol.LEGACY;
+		sentinelDecoder = new SentinelCodec(StandardCharsets.UTF_8);
+		frameDecoder = new FrameCodec();
+		acks = false;
+		
+		subscribeToNotifierService();
+		startNotificationListener();
+	}
+	
+	/**
+	 * Send a cumulative ack for all notifications that were received since the last ack.
+	 */
+	private void acknowledgeReceivedFrames() throws IOException {
+		long sequence = lastReceivedSequence;
+		if (acks && sequence > lastAckedSequence) {
+			outStream.write(FrameCodec.encode(FrameType.ACK, (byte) 0, ByteBuffer.allocate(8).putLong(sequence).array()).array());
+			outStream.flush();
+			lastAckedSequence = sequence;
 		}
 	}
 	
 	/**
-	 * Handle the message
+	 * Decode the input into messages (legacy protocol) or frames (binary protocol) and handle them.<br>
+	 * The protocol can change while the input is decoded (when the service accepts the handshake), so the rest of the input is decoded using the
+	 * new protocol.
 	 */
-	private void handleMessage(String message) {
+	private void handleInput(ByteBuffer input) throws IOException {
+		while (input.hasRemaining()) {
+			if (protocol == Protocol.BINARY) {
+				Frame frame = frameDecoder.decode(input);
+				if (frame != null) {
+					handleFrame(frame);
+				}
+			}
+			else {
+				byte[] message = sentinelDecoder.decode(input);
+				if (message != null) {
+					handleMessage(new String(message, StandardCharsets.UTF_8));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Handle a frame of the binary protocol
+	 */
+	private void handleFrame(Frame frame) throws IOException {
+		LOGGER.debug("received frame: {}", frame);
+		if (frame.getType() == FrameType.DATA) {
+			if (frame.isSequenced()) {
+				long sequence = frame.getSequence();
+				if (sequence <= lastReceivedSequence) {
+					LOGGER.debug("ignoring a notification that was already received (sequence: {})", sequence);
+					return;
+				}
+				if (sequence > lastReceivedSequence + 1) {
+					LOGGER.warn("{} notifications were lost (received sequence {} after {})", sequence - lastReceivedSequence - 1, sequence,
+							lastReceivedSequence);
+				}
+				lastReceivedSequence = sequence;
+			}
+			if (frame.isCompressed()) {
+				byte[] payload = DeflateCodec.decompress(frame.getPayload(), FrameCodec.MAX_PAYLOAD_LENGTH);
+				handleNotification(new String(payload, StandardCharsets.UTF_8));
+			}
+			else {
+				handleNotification(frame.getPayloadAsString());
+			}
+		}
+		else if (frame.getType() == FrameType.PING) {
+			//answer to the heartbeat of the service, so the connection is not closed as dead
+			outStream.write(FrameCodec.encode(FrameType.PONG, (byte) 0, new byte[0]).array());
+			outStream.flush();
+		}
+		else if (frame.getType() == FrameType.CLOSE) {
+			LOGGER.info("the service closed the connection");
+			closeConnection();
+		}
+	}
+	
+	/**
+	 * Handle a message of the legacy protocol
+	 */
+	private void handleMessage(String message) throws IOException {
 		LOGGER.debug("handling message: {}", message);
-		if (message.equals(USERNAME_REQUEST)) {
-			//notification service requests a name for this user -> send the name
+		if (message.equals(Handshake.USERNAME_REQUEST)) {
+			//notification service requests a name for this user -> send the name (or a handshake)
 			try {
-				LOGGER.debug("received name request. answering with username: {}", username);
-				outStream.write(username.getBytes());
+				if (requestedProtocol == Protocol.LEGACY) {
+					LOGGER.debug("received name request. answering with username: {}", username);
+					outStream.write(username.getBytes(StandardCharsets.UTF_8));
+				}
+				else {
+					Handshake handshake = new Handshake();
+					handshake.setUsername(username);
+					handshake.setProtocol(requestedProtocol);
+					handshake.setProtocolVersion(FrameCodec.VERSION);
+					handshake.setCompression(requestedCompression);
+					if (!topics.isEmpty()) {
+						handshake.setTopics(topics);
+					}
+					if (requestedAcks) {
+						handshake.setAcks(true);
+						if (lastReceivedSequence > 0) {
+							handshake.setLastAck(lastReceivedSequence);
+						}
+					}
+					LOGGER.debug("received name request. answering with handshake: {}", handshake);
+					outStream.write(handshake.encodeRequest().getBytes(StandardCharsets.UTF_8));
+				}
 				outStream.flush();
 			}
 			catch (IOException ioe) {
@@ -227,10 +436,98 @@ public class SubscriberClient {
 				System.exit(1);
 			}
 		}
+		else if (message.startsWith(Handshake.HANDSHAKE_ACCEPTED)) {
+			Handshake accepted;
+			try {
+				accepted = Handshake.parse(message.substring(Handshake.HANDSHAKE_ACCEPTED.length()));
+			}
+			catch (IOException ioe) {
+				LOGGER.error("the accepted handshake couldn't be parsed (staying on the legacy protocol)", ioe);
+				return;
+			}
+			handleAcceptedHandshake(accepted);
+		}
 		else {
-			LOGGER.debug("received notification message from service: {}", message);
-			//do whatever you want with the message
+			handleNotification(message);
+		}
+	}
+	
+	/**
+	 * Switch to the protocol that the service accepted. The frames of the binary protocol are only decoded if the service accepted a version
+	 * that this client supports (otherwise the connection is closed).
+	 */
+	private void handleAcceptedHandshake(Handshake accepted) throws IOException {
+		LOGGER.debug("the service accepted the handshake: {}", accepted);
+		int version = accepted.getProtocolVersion();
+		if (accepted.getProtocol() == Protocol.BINARY && FrameCodec.negotiateVersion(version) != version) {
+			LOGGER.error("the service accepted an unsupported version of the binary protocol (version: {}). closing the connection",
+					version);
+			closeConnection();
+			return;
+		}
+		if (requestedProtocol == Protocol.BINARY && accepted.getProtocol() != Protocol.BINARY) {
+			LOGGER.info("the service doesn't accept the binary protocol (version: {}). using the legacy protocol", FrameCodec.VERSION);
+		}
+		protocol = accepted.getProtocol();
+		acks = accepted.isAcks();
+		if (acks) {
+			startSequence(accepted.getNextSequence());
+		}
+		else if (requestedAcks) {
+			LOGGER.info("the service doesn't accept acks. lost notifications are not resent");
+		}
+	}
+	
+	/**
+	 * Continue with the sequence number of the next frame that the service sends (from the accepted handshake).
+	 */
+	private void startSequence(long nextSequence) {
+		long last = lastReceivedSequence;
+		if (last > 0 && nextSequence > last + 1) {
+			LOGGER.warn("{} notifications were lost while the client was disconnected (they can't be resent anymore)", nextSequence - last - 1);
 		}
+		else if (last > 0 && nextSequence <= last) {
+			LOGGER.warn("the service couldn't resume the session (notifications that were sent while the client was disconnected may be lost)");
+		}
+		lastReceivedSequence = nextSequence - 1;
+		lastAckedSequence = nextSequence - 1;
+	}
+	
+	/**
+	 * Handle a notification message from the service (pass it to the listeners)
+	 */
+	private void handleNotification(String message) {
+		LOGGER.debug("received notification message from service: {}", message);
+		for (NotificationListener listener : listeners) {
+			try {
+				listenerExecutor.execute(() -> {
+					try {
+						listener.receiveNotification(message);
+					}
+					catch (RuntimeException re) {
+						LOGGER.error("the notification listener failed to handle the notification", re);
+					}
+				});
+			}
+			catch (RejectedExecutionException ree) {
+				LOGGER.error("the notification couldn't be passed to the listener executor", ree);
+			}
+		}
+	}
+	
+	public void addNotificationListener(NotificationListener listener) {
+		listeners.add(listener);
+	}
+	public void removeNotificationListener(NotificationListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Get the sequence number of the last received notification (0 if the notifications are not acknowledged). It can be stored and used as
+	 * last_ack in the configuration, to resume the session with a new client.
+	 */
+	public long getLastReceivedSequence() {
+		return lastReceivedSequence;
 	}
 	
 	/**
@@ -243,18 +540,54 @@ public class SubscriberClient {
 	}
 	
 	/**
-	 * Load configuration (host, port and username)
+	 * Load the configuration properties from the client_config.properties
 	 */
-	private void loadConfig() throws IOException {
+	private static Properties loadConfigProperties() throws IOException {
 		String resourceName = "client_config.properties";
 		ClassLoader loader = Thread.currentThread().getContextClassLoader();
 		Properties configProperties = new Properties();
 		try (InputStream resourceStream = loader.getResourceAsStream(resourceName)) {
 			configProperties.load(resourceStream);
 		}
-		
+		return configProperties;
+	}
+	
+	/**
+	 * Load configuration (host, port and username)
+	 */
+	private void loadConfig(Properties configProperties) throws IOException {
 		host = configProperties.getProperty("host", "localhost");
 		username = configProperties.getProperty("username", "user");
+		String protocolValue = configProperties.getProperty("protocol", Protocol.LEGACY.name());
+		try {
+			requestedProtocol = Protocol.valueOf(protocolValue.toUpperCase());
+		}
+		catch (IllegalArgumentException iae) {
+			throw new IOException("protocol must be either legacy or binary (was: " + protocolValue + ")", iae);
+		}
+		if (requestedProtocol != Protocol.LEGACY && requestedProtocol != Protocol.BINARY) {
+			//the other protocols are only used by the web subscribers (websocket and sse), not on the socket connection of this client
+			throw new IOException("protocol must be either legacy or binary (was: " + protocolValue + ")");
+		}
+		String compressionValue = configProperties.getProperty("compression", Compression.NONE.name());
+		try {
+			requestedCompression = Compression.valueOf(compressionValue.toUpperCase());
+		}
+		catch (IllegalArgumentException iae) {
+			throw new IOException("compression must be either none or deflate (was: " + compressionValue + ")", iae);
+		}
+		topics = Handshake.parseTopics(configProperties.getProperty("topics"));
+		if (!topics.isEmpty() && requestedProtocol == Protocol.LEGACY) {
+			throw new IOException("topics can't be subscribed with the legacy protocol (no handshake is send)");
+		}
+		requestedAcks = Boolean.parseBoolean(configProperties.getProperty("acks", "false")) && requestedProtocol == Protocol.BINARY;
+		String lastAckValue = configProperties.getProperty("last_ack", "0");
+		try {
+			lastReceivedSequence = Long.parseLong(lastAckValue);
+		}
+		catch (NumberFormatException nfe) {
+			throw new IOException("last_ack couldn't be interpreted as long value (was: " + lastAckValue + ")", nfe);
+		}
 		String portValue = null;
 		String portValueSocket = null;
 		try {
@@ -0,0 +1,314 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A selector based event loop that handles the I/O (username handshake, reading and writing) of the subscribers that are assigned to it.<br>
+ * The loop is the writer worker of its subscribers: it drains their outbound queues whenever their channels are writable, so a slow subscriber
+ * never blocks the threads that send notifications.
+ */
+public class SubscriberEventLoop {
+	
+	private static final Logger LOGGER = LogManager.getLogger(SubscriberEventLoop.class);
+	
+	/**
+	 * The number of buckets of the timing wheel (with the default tick of one second a round takes more than eight minutes)
+	 */
+	private static final int TIMING_WHEEL_SIZE = 512;
+	
+	/**
+	 * A task that is executed in the event loop when its deadline (in nano time) is reached
+	 */
+	private static class ScheduledTask implements Comparable<ScheduledTask> {
+		
+		private final long deadline;
+		private final Runnable task;
+		
+		public ScheduledTask(long deadline, Runnable task) {
+			this.deadline = deadline;
+			this.task = task;
+		}
+		
+		@Override
+		public int compareTo(ScheduledTask other) {
+			//compare the difference, because nano times can overflow
+			return Long.signum(deadline - other.deadline);
+		}
+	}
+	
+	private SubscriberReceiver receiver;
+	
+	private Selector selector;
+	
+	/**
+	 * Tasks from other threads that have to be executed in the event loop (registering channels and enabling write interests)
+	 */
+	private Queue<Runnable> tasks;
+	/**
+	 * Tasks that are executed after a delay (only used by the event loop)
+	 */
+	private Queue<ScheduledTask> scheduledTasks;
+	/**
+	 * The timeouts of the subscribers (heartbeat checks); a timing wheel, because every subscriber has a timeout (only used by the event loop)
+	 */
+	private TimingWheel timeouts;
+	
+	private String name;
+	private Thread eventLoopThread;
+	
+	public SubscriberEventLoop(SubscriberReceiver receiver, String name) throws IOException {
+		this.receiver = receiver;
+		this.name = name;
+		this.selector = Selector.open();
+		this.tasks = new ConcurrentLinkedQueue<Runnable>();
+		this.scheduledTasks = new PriorityQueue<ScheduledTask>();
+		this.timeouts = new TimingWheel(receiver.getHeartbeatTickMillis(), TIMING_WHEEL_SIZE, System.nanoTime());
+		
+		eventLoopThread = new Thread(this::runEventLoop, name);
+		eventLoopThread.setDaemon(true);
+		eventLoopThread.start();
+		
+		LOGGER.info(">> SubscriberEventLoop {} started", name);
+	}
+	
+	@Override
+	public String toString() {
+		return "SubscriberEventLoop [name=" + name + "]";
+	}
+	
+	private void runEventLoop() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				select();
+				runTasks();
+				runScheduledTasks();
+				timeouts.expire(System.nanoTime());
+				
+				Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+				while (selectedKeys.hasNext()) {
+					SelectionKey key = selectedKeys.next();
+					selectedKeys.remove();
+					handleSelectedKey(key);
+				}
+			}
+			catch (IOException ioe) {
+				LOGGER.error("an error occured in the subscriber event loop", ioe);
+			}
+		}
+		closeSubscribers();
+	}
+	
+	/**
+	 * Close the subscribers of the event loop and the selector (after the event loop was stopped).
+	 */
+	private void closeSubscribers() {
+		for (SelectionKey key : selector.keys()) {
+			receiver.closeSubscriber((Subscriber) key.attachment());
+		}
+		try {
+			selector.close();
+		}
+		catch (IOException ioe) {
+			LOGGER.error("couldn't close the selector", ioe);
+		}
+		LOGGER.info(">> SubscriberEventLoop {} stopped", name);
+	}
+	
+	/**
+	 * Stop the event loop (can be called from any thread).
+	 */
+	void close() {
+		eventLoopThread.interrupt();
+	}
+	
+	/**
+	 * Wait for selected keys or new tasks (but not longer than until the next scheduled task or the next tick of the timing wheel is due).
+	 */
+	private void select() throws IOException {
+		ScheduledTask next = scheduledTasks.peek();
+		if (next == null && timeouts.isEmpty()) {
+			selector.select();
+			return;
+		}
+		long now = System.nanoTime();
+		long remaining = Long.MAX_VALUE;
+		if (next != null) {
+			remaining = next.deadline - now;
+		}
+		if (!timeouts.isEmpty()) {
+			remaining = Math.min(remaining, timeouts.getNextTickNanos() - now);
+		}
+		long timeout = TimeUnit.NANOSECONDS.toMillis(remaining);
+		if (timeout > 0) {
+			selector.select(timeout);
+		}
+		else if (remaining > 0) {
+			//less than a millisecond left (select(0) would block without a timeout)
+			selector.select(1);
+		}
+		else {
+			selector.selectNow();
+		}
+	}
+	
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			runTask(task);
+		}
+	}
+	
+	private void runScheduledTasks() {
+		long now = System.nanoTime();
+		while (!scheduledTasks.isEmpty() && scheduledTasks.peek().deadline - now <= 0) {
+			runTask(scheduledTasks.poll().task);
+		}
+	}
+	
+	private void runTask(Runnable task) {
+		try {
+			task.run();
+		}
+		catch (RuntimeException re) {
+			LOGGER.error("an error occured while executing a task in the subscriber event loop", re);
+		}
+	}
+	
+	/**
+	 * Handle a key that was selected by the event loop (read or write).
+	 */
+	private void handleSelectedKey(SelectionKey key) {
+		if (!key.isValid()) {
+			return;
+		}
+		
+		Subscriber subscriber = (Subscriber) key.attachment();
+		try {
+			if (key.isReadable()) {
+				subscriber.handleRead();
+			}
+			if (key.isValid() && key.isWritable() && subscriber.handleWrite()) {
+				//all pending messages are written -> stop listening for write readiness
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			LOGGER.warn("the subscriber connection failed: {} (removing subscriber: {})", e.getMessage(), subscriber);
+			receiver.closeSubscriber(subscriber);
+		}
+	}
+	
+	/**
+	 * Execute the task in the event loop (can be called from any thread).
+	 */
+	public void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+	
+	/**
+	 * Execute the task in the event loop after the delay (can be called from any thread).
+	 */
+	public void schedule(Runnable task, long delayMillis) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+		execute(() -> scheduledTasks.add(new ScheduledTask(deadline, task)));
+	}
+	
+	/**
+	 * Execute the task in the event loop after the delay (can be called from any thread).<br>
+	 * The timeout is added to the timing wheel, so it's only executed with the precision of the wheel's tick, but scheduling it is cheap even if
+	 * every subscriber has a timeout.
+	 */
+	void scheduleTimeout(Runnable task, long delayMillis) {
+		if (Thread.currentThread() == eventLoopThread) {
+			timeouts.schedule(task, delayMillis, System.nanoTime());
+		}
+		else {
+			long scheduled = System.nanoTime();
+			execute(() -> timeouts.schedule(task, delayMillis, scheduled));
+		}
+	}
+	
+	/**
+	 * Create a subscriber for an accepted channel and start the username handshake (can be called from any thread).
+	 */
+	public void register(SocketChannel channel) {
+		execute(() -> {
+			try {
+				//only create the subscriber here and pass on the reference to the receiver
+				//(the subscriber will register itself as soon as it received a name from the user)
+				Subscriber subscriber = new Subscriber(channel, receiver, this);
+				channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, subscriber);
+			}
+			catch (IOException ioe) {
+				LOGGER.error("the accepted channel couldn't be registered to the event loop", ioe);
+				try {
+					channel.close();
+				}
+				catch (IOException e) {
+					LOGGER.error("couldn't close the channel", e);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Create a subscriber for an accepted blocking channel, that is read and written by its own virtual threads (can be called from any thread).
+	 * The event loop only executes the tasks and timeouts of the subscriber.
+	 */
+	public void registerBlocking(SocketChannel channel) {
+		execute(() -> {
+			try {
+				Subscriber subscriber = new Subscriber(channel, receiver, this);
+				subscriber.startBlockingIO();
+			}
+			catch (IOException | RuntimeException e) {
+				LOGGER.error("the I/O of the accepted channel couldn't be started", e);
+				try {
+					channel.close();
+				}
+				catch (IOException ioe) {
+					LOGGER.error("couldn't close the channel", ioe);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Enable the write interest of the subscriber, so the event loop writes its queued messages (can be called from any thread).
+	 */
+	public void requestWrite(Subscriber subscriber) {
+		execute(() -> enableWrite(subscriber));
+	}
+	
+	/**
+	 * Enable the write interest of the subscriber after the delay, so messages that are sent in the meantime are written together (can be called
+	 * from any thread).
+	 */
+	public void requestWrite(Subscriber subscriber, long delayMillis) {
+		schedule(() -> enableWrite(subscriber), delayMillis);
+	}
+	
+	private void enableWrite(Subscriber subscriber) {
+		subscriber.clearWriteRequest();
+		SelectionKey key = subscriber.getChannel().keyFor(selector);
+		if (key != null && key.isValid()) {
+			key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+		}
+	}
+	
+	public String getName() {
+		return name;
+	}
+}
\ No newline at end of file
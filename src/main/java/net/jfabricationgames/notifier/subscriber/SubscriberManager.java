@@ -3,24 +3,65 @@ package net.jfabricationgames.notifier.subscriber;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import net.jfabricationgames.notifier.cluster.ClusterNode;
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+import net.jfabricationgames.notifier.inbox.OfflineInbox;
+import net.jfabricationgames.notifier.metrics.NotifierMetrics;
+import net.jfabricationgames.notifier.notification.DeliveryTracker;
 import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.protocol.EncodedMessage;
 
 public class SubscriberManager {
 	
 	private static final Logger LOGGER = LogManager.getLogger(SubscriberManager.class);
 	
-	private List<Subscriber> subscribers;
+	/**
+	 * All registered subscribers, indexed by their names
+	 */
+	private SubscriberRegistry subscribers;
+	/**
+	 * Stores the notifications for receivers that are not connected (null if the store and forward mode is disabled)
+	 */
+	private OfflineInbox inbox;
+	/**
+	 * Replays the inbox to the subscribers that connected (null if the store and forward mode is disabled), so the threads that register the
+	 * subscribers (like the event loops) don't wait for the lock of the inbox
+	 */
+	private ExecutorService inboxExecutor;
+	/**
+	 * The connection to the other nodes of the cluster (null if the cluster mode is disabled)
+	 */
+	private ClusterNode cluster;
 	
 	public SubscriberManager() throws IOException {
-		subscribers = new ArrayList<Subscriber>();
+		this(true);
+	}
+	/**
+	 * Create a manager that only starts a {@link SubscriberReceiver} if startReceiver is true (used in tests without socket connections).
+	 */
+	SubscriberManager(boolean startReceiver) throws IOException {
+		subscribers = new SubscriberRegistry();
 		
-		//the receiver is just created with a reference and not saved as reference
-		new SubscriberReceiver(this);
+		if (startReceiver) {
+			NotifierConfiguration configuration = NotifierConfiguration.getInstance();
+			if (configuration.getBoolean("inbox.enabled", false)) {
+				setInbox(OfflineInbox.fromConfiguration(configuration));
+			}
+			if (configuration.getBoolean("cluster.enabled", false)) {
+				cluster = ClusterNode.fromConfiguration(configuration, subscribers::getNames, this::sendForwardedNotification);
+				cluster.start(configuration.getLong("cluster.sync.interval.millis", 30000));
+			}
+			
+			//the receiver is just created with a reference and not saved as reference
+			new SubscriberReceiver(this);
+		}
 		
 		LOGGER.info(">> SubscriberManager started");
 	}
@@ -56,60 +97,377 @@ public class SubscriberManager {
 		return true;
 	}
 	
-	public void sendNotification(Notification notification) {
+	/**
+	 * Send the notification to all subscribers that match any of its receivers or that subscribed to its topic.
+	 * 
+	 * @return The number of subscribers the notification was sent to.
+	 */
+	public int sendNotification(Notification notification) {
+		return sendNotification(notification, null, true);
+	}
+	
+	/**
+	 * Send the notification (like {@link #sendNotification(Notification)}) and report to the tracker when it was written to the subscribers of
+	 * this node (the nodes of the cluster that it's forwarded to and the offline inbox are not tracked).
+	 * 
+	 * @return The number of subscribers the notification was sent to.
+	 */
+	public int sendNotification(Notification notification, DeliveryTracker tracker) {
+		return sendNotification(notification, tracker, true);
+	}
+	
+	/**
+	 * Send a notification that another node of the cluster forwarded (only to the local subscribers, it's not forwarded again).
+	 */
+	private void sendForwardedNotification(Notification notification) {
+		sendNotification(notification, null, false);
+	}
+	
+	private int sendNotification(Notification notification, DeliveryTracker tracker, boolean forward) {
 		LOGGER.debug("sending notification: {}", notification);
 		
-		//copy the list of subscribers to prevent concurrent modifications
-		List<Subscriber> currentSubscribers = new ArrayList<Subscriber>(getSubscribers());
+		long start = System.nanoTime();
+		//send the notification message to all subscribers (encoded only once and shared by all of them)
+		EncodedMessage encoded = encode(notification, tracker);
+		List<ReceiverPattern> patterns = compileReceivers(notification.getReceivers());
+		int[] matched = new int[1];
+		forEachMatchingPattern(patterns, subscriber -> {
+			sendNotificationToSubscriber(subscriber, encoded);
+			matched[0]++;
+		});
+		forEachTopicSubscriber(notification.getTopic(), patterns, subscriber -> {
+			sendNotificationToSubscriber(subscriber, encoded);
+			matched[0]++;
+		});
+		if (forward) {
+			//the offline receivers of a forwarded notification were already handled by the node that forwarded it
+			forwardToCluster(notification, patterns);
+			storeForOfflineReceivers(patterns, notification.getMessage());
+		}
+		NotifierMetrics.FANOUT_TIME.recordSince(start);
+		NotifierMetrics.SUBSCRIBERS_MATCHED.add(matched[0]);
+		if (tracker != null) {
+			tracker.setMatched(matched[0]);
+		}
+		return matched[0];
+	}
+	
+	/**
+	 * Send a batch of notifications. Notifications with literal and prefix receivers are looked up in the name index. Consecutive notifications
+	 * with regular expressions and broadcasts (and without a topic) are routed together in a single pass over all subscribers. The subscribers of
+	 * the topics are looked up in the topic index.<br>
+	 * Every subscriber receives the notifications in the order of the batch: a pass over the subscribers is executed before the next indexed or
+	 * topic notification is sent (so a batch that alternates between indexed and scanned notifications needs more passes).
+	 * 
+	 * @return The number of subscribers each notification was sent to (in the order of the notifications).
+	 */
+	public int[] sendNotifications(List<Notification> notifications) {
+		LOGGER.debug("sending a batch of {} notifications", notifications.size());
 		
-		//send the notification message to all subscribers
-		currentSubscribers.stream().filter(s -> matchesAnyUsernameRegex(notification.getReceivers(), s.getName()))
-				.forEach(s -> sendNotificationToSubscriber(s, notification));
+		long start = System.nanoTime();
+		int[] matched = new int[notifications.size()];
+		//the messages are encoded when they are sent to the first subscriber (notifications without subscribers are never encoded)
+		EncodedMessage[] encoded = new EncodedMessage[notifications.size()];
+		List<Integer> scannedIndices = new ArrayList<Integer>();
+		List<List<ReceiverPattern>> scannedPatterns = new ArrayList<List<ReceiverPattern>>();
+		for (int i = 0; i < notifications.size(); i++) {
+			Notification notification = notifications.get(i);
+			List<ReceiverPattern> patterns = compileReceivers(notification.getReceivers());
+			forwardToCluster(notification, patterns);
+			storeForOfflineReceivers(patterns, notification.getMessage());
+			int index = i;
+			boolean hasTopic = notification.getTopic() != null && !notification.getTopic().isEmpty();
+			if (requiresFullScan(patterns)) {
+				scannedIndices.add(i);
+				scannedPatterns.add(patterns);
+				if (!hasTopic) {
+					//routed with the following scanned notifications
+					continue;
+				}
+			}
+			//the collected notifications are sent first, to keep the order of the batch
+			sendScannedNotifications(scannedIndices, scannedPatterns, notifications, encoded, matched);
+			if (!requiresFullScan(patterns)) {
+				forEachIndexedMatch(patterns, subscriber -> {
+					sendNotificationToSubscriber(subscriber, encode(encoded, notifications, index));
+					matched[index]++;
+				});
+			}
+			forEachTopicSubscriber(notification.getTopic(), patterns, subscriber -> {
+				sendNotificationToSubscriber(subscriber, encode(encoded, notifications, index));
+				matched[index]++;
+			});
+		}
+		sendScannedNotifications(scannedIndices, scannedPatterns, notifications, encoded, matched);
+		
+		NotifierMetrics.FANOUT_TIME.recordSince(start);
+		for (int count : matched) {
+			NotifierMetrics.SUBSCRIBERS_MATCHED.add(count);
+		}
+		return matched;
 	}
 	
-	protected static boolean matchesAnyUsernameRegex(List<String> receiverRegex, String testedName) {
-		boolean matches = false;
-		for (String receiver : receiverRegex) {
-			matches |= matchesUsernameRegex(receiver, testedName);
+	/**
+	 * Send the collected notifications with regular expressions and broadcasts in a single pass over all subscribers (the lists are cleared
+	 * afterwards).
+	 */
+	private void sendScannedNotifications(List<Integer> scannedIndices, List<List<ReceiverPattern>> scannedPatterns,
+			List<Notification> notifications, EncodedMessage[] encoded, int[] matched) {
+		if (scannedIndices.isEmpty()) {
+			return;
 		}
-		return matches;
+		for (Subscriber subscriber : subscribers.snapshot()) {
+			for (int i = 0; i < scannedIndices.size(); i++) {
+				List<ReceiverPattern> patterns = scannedPatterns.get(i);
+				if (matchesAnyPattern(patterns, subscriber.getName(), patterns.size())) {
+					int index = scannedIndices.get(i);
+					sendNotificationToSubscriber(subscriber, encode(encoded, notifications, index));
+					matched[index]++;
+				}
+			}
+		}
+		scannedIndices.clear();
+		scannedPatterns.clear();
 	}
-	protected static boolean matchesUsernameRegex(String usernameRegex, String testedName) {
-		return Pattern.matches(usernameRegex, testedName);
+	
+	/**
+	 * Get the encoded message of the notification at the index (encoded on the first call).
+	 */
+	private static EncodedMessage encode(EncodedMessage[] encoded, List<Notification> notifications, int index) {
+		if (encoded[index] == null) {
+			encoded[index] = encode(notifications.get(index), null);
+		}
+		return encoded[index];
 	}
 	
-	private void sendNotificationToSubscriber(Subscriber subscriber, Notification notification) {
-		try {
-			subscriber.sendMessageToSubscriber(notification.getMessage());
+	/**
+	 * Encode the message of the notification. The collapse key is scoped by the sender, so senders can't replace the messages of each other.
+	 */
+	private static EncodedMessage encode(Notification notification, DeliveryTracker tracker) {
+		String collapseKey = null;
+		if (notification.getCollapseKey() != null) {
+			String sender = notification.getSender() == null ? "" : notification.getSender();
+			collapseKey = sender.length() + ":" + sender + notification.getCollapseKey();
 		}
-		catch (IOException ioe) {
-			LOGGER.warn("problems occured while trying to send a message to the subscriber (closing connection to subscriber)", ioe);
-			if (subscriber.isConnectionClosed()) {
-				LOGGER.info("subscriber connection was already closed (subscriber: {})", subscriber);
+		return new EncodedMessage(notification.getMessage(), notification.getPriority(), collapseKey, tracker);
+	}
+	
+	/**
+	 * Call the action for every subscriber whose name matches any of the receivers (only once per subscriber).<br>
+	 * Literal and prefix receivers are looked up in the name index. Only if a receiver is a more complex regular expression (or a broadcast) all
+	 * subscribers are tested. No collection of the matching subscribers is created, so a broadcast doesn't allocate memory for every subscriber.
+	 */
+	protected void forEachMatchingSubscriber(List<String> receivers, Consumer<Subscriber> action) {
+		forEachMatchingPattern(compileReceivers(receivers), action);
+	}
+	private void forEachMatchingPattern(List<ReceiverPattern> patterns, Consumer<Subscriber> action) {
+		if (requiresFullScan(patterns)) {
+			for (Subscriber subscriber : subscribers.snapshot()) {
+				if (matchesAnyPattern(patterns, subscriber.getName(), patterns.size())) {
+					action.accept(subscriber);
+				}
 			}
-			else {
-				LOGGER.debug("closing connection to subscriber: {}", subscriber);
-				try {
-					subscriber.closeConnection();
+		}
+		else {
+			forEachIndexedMatch(patterns, action);
+		}
+	}
+	
+	/**
+	 * Call the action for every subscriber of the topic (looked up in the topic index) that doesn't match any of the patterns (the action was
+	 * already called for them).
+	 */
+	private void forEachTopicSubscriber(String topic, List<ReceiverPattern> patterns, Consumer<Subscriber> action) {
+		if (topic == null || topic.isEmpty()) {
+			return;
+		}
+		for (Subscriber subscriber : subscribers.getByTopic(topic)) {
+			acceptIfNotMatchedBefore(patterns, patterns.size(), subscriber, action);
+		}
+	}
+	
+	/**
+	 * Forward the notification to the other nodes of the cluster that have matching subscribers (if the cluster mode is enabled).
+	 */
+	private void forwardToCluster(Notification notification, List<ReceiverPattern> patterns) {
+		if (cluster != null) {
+			cluster.forward(notification, patterns);
+		}
+	}
+	
+	/**
+	 * Store the message in the inbox for every literal receiver that is not connected (if the store and forward mode is enabled).<br>
+	 * Only literal receivers are stored, because the names that would match a prefix or a regular expression are not known. Receivers that are
+	 * connected to another node of the cluster are not stored either.
+	 */
+	private void storeForOfflineReceivers(List<ReceiverPattern> patterns, String message) {
+		if (inbox == null) {
+			return;
+		}
+		for (int i = 0; i < patterns.size(); i++) {
+			ReceiverPattern pattern = patterns.get(i);
+			//literal receivers that are given twice are only stored once
+			if (pattern.getType() == ReceiverPattern.Type.LITERAL && !pattern.getLiteral().isEmpty()
+					&& subscribers.get(pattern.getLiteral()).length == 0 && !matchesAnyPattern(patterns, pattern.getLiteral(), i)
+					&& (cluster == null || !cluster.isSubscribedRemotely(pattern.getLiteral()))) {
+				inbox.store(pattern.getLiteral(), message);
+			}
+		}
+	}
+	
+	/**
+	 * Add a subscriber that just connected and send it the notifications that were stored in the inbox while it was not connected (if the store
+	 * and forward mode is enabled).<br>
+	 * The inbox is replayed by the inbox replay thread and the subscriber is only added after the stored notifications were queued, so they are
+	 * sent before the new ones. The inbox is replayed again after adding the subscriber, to not miss notifications that were stored in the
+	 * meantime.
+	 */
+	public void addConnectedSubscriber(Subscriber subscriber) {
+		if (inbox == null) {
+			addSubscriber(subscriber);
+			return;
+		}
+		inboxExecutor.execute(() -> {
+			try {
+				replayOfflineNotifications(subscriber);
+				addSubscriber(subscriber);
+				replayOfflineNotifications(subscriber);
+				if (subscriber.isConnectionClosed()) {
+					//the subscriber disconnected before it was added (so it was not removed)
+					removeSubscriber(subscriber);
 				}
-				catch (IOException e) {
-					LOGGER.error("couldn't close connection to subscriber", e);
+			}
+			catch (RuntimeException re) {
+				LOGGER.error("the stored notifications couldn't be replayed to the subscriber: {}", subscriber, re);
+			}
+		});
+	}
+	
+	/**
+	 * Send the notifications that were stored in the inbox while the subscriber was not connected.
+	 */
+	private void replayOfflineNotifications(Subscriber subscriber) {
+		for (String message : inbox.replay(subscriber.getName())) {
+			subscriber.sendMessageToSubscriber(message);
+		}
+	}
+	
+	/**
+	 * Check whether the subscribers for the patterns can't be looked up in the name index (regular expressions or a broadcast to all).
+	 */
+	private static boolean requiresFullScan(List<ReceiverPattern> patterns) {
+		for (ReceiverPattern pattern : patterns) {
+			if (pattern.getType() == ReceiverPattern.Type.REGEX || pattern.getLiteral().isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Call the action for every subscriber that matches any of the (literal or prefix) patterns, using the name index.
+	 */
+	private void forEachIndexedMatch(List<ReceiverPattern> patterns, Consumer<Subscriber> action) {
+		for (int i = 0; i < patterns.size(); i++) {
+			ReceiverPattern pattern = patterns.get(i);
+			if (pattern.getType() == ReceiverPattern.Type.LITERAL) {
+				for (Subscriber subscriber : subscribers.get(pattern.getLiteral())) {
+					acceptIfNotMatchedBefore(patterns, i, subscriber, action);
+				}
+			}
+			else {
+				for (Subscriber[] named : subscribers.getWithPrefix(pattern.getLiteral()).values()) {
+					if (pattern.matches(named[0].getName())) {
+						for (Subscriber subscriber : named) {
+							acceptIfNotMatchedBefore(patterns, i, subscriber, action);
+						}
+					}
 				}
 			}
-			removeSubscriber(subscriber);
 		}
 	}
 	
+	/**
+	 * Call the action only if the subscriber doesn't match any of the patterns before the given index (to not call it twice for one subscriber).
+	 */
+	private static void acceptIfNotMatchedBefore(List<ReceiverPattern> patterns, int index, Subscriber subscriber, Consumer<Subscriber> action) {
+		if (!matchesAnyPattern(patterns, subscriber.getName(), index)) {
+			action.accept(subscriber);
+		}
+	}
+	
+	private static List<ReceiverPattern> compileReceivers(List<String> receivers) {
+		if (receivers == null) {
+			//a notification that is only sent to the subscribers of its topic
+			return new ArrayList<ReceiverPattern>(0);
+		}
+		List<ReceiverPattern> patterns = new ArrayList<ReceiverPattern>(receivers.size());
+		for (String receiver : receivers) {
+			patterns.add(ReceiverPattern.compile(receiver));
+		}
+		return patterns;
+	}
+	
+	/**
+	 * Check whether the name matches any of the first patterns (up to the given count).
+	 */
+	private static boolean matchesAnyPattern(List<ReceiverPattern> patterns, String testedName, int count) {
+		for (int i = 0; i < count; i++) {
+			if (patterns.get(i).matches(testedName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	protected static boolean matchesAnyUsernameRegex(List<String> receiverRegex, String testedName) {
+		return matchesAnyPattern(compileReceivers(receiverRegex), testedName, receiverRegex.size());
+	}
+	protected static boolean matchesUsernameRegex(String usernameRegex, String testedName) {
+		return ReceiverPattern.compile(usernameRegex).matches(testedName);
+	}
+	
+	private void sendNotificationToSubscriber(Subscriber subscriber, EncodedMessage message) {
+		//the message is only queued (write errors are handled by the event loop of the receiver, that removes the subscriber)
+		subscriber.sendMessageToSubscriber(message);
+	}
+	
 	public void addSubscriber(Subscriber subscriber) {
 		LOGGER.debug("adding subscriber: {}", subscriber);
-		subscribers.add(subscriber);
+		if (subscribers.add(subscriber) && cluster != null) {
+			cluster.subscriberAdded(subscriber.getName());
+		}
 	}
 	public void removeSubscriber(Subscriber subscriber) {
 		LOGGER.debug("removing subscriber: {}", subscriber);
-		subscribers.remove(subscriber);
+		if (subscribers.remove(subscriber) && cluster != null) {
+			cluster.subscriberRemoved(subscriber.getName());
+		}
+	}
+	
+	void setInbox(OfflineInbox inbox) {
+		this.inbox = inbox;
+		if (inboxExecutor == null) {
+			inboxExecutor = Executors.newSingleThreadExecutor(task -> {
+				Thread thread = new Thread(task, "inbox_replay_thread");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+	
+	void setCluster(ClusterNode cluster) {
+		this.cluster = cluster;
+	}
+	
+	public int getSubscriberCount() {
+		return subscribers.size();
 	}
 	
+	/**
+	 * Get an immutable snapshot of all subscribers.
+	 */
 	protected List<Subscriber> getSubscribers() {
-		return subscribers;
+		return subscribers.snapshot();
 	}
 }
\ No newline at end of file
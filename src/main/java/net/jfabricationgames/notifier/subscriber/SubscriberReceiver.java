@@ -1,40 +1,145 @@
 package net.jfabricationgames.notifier.subscriber;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.Properties;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+import net.jfabricationgames.notifier.metrics.NotifierMetrics;
+
+/**
+ * Accepts subscriber connections and assigns them to a fixed number of {@link SubscriberEventLoop}s that handle their I/O (no thread per
+ * connection).
+ */
 public class SubscriberReceiver {
 	
 	private static final Logger LOGGER = LogManager.getLogger(SubscriberReceiver.class);
 	
 	private SubscriberManager manager;
 	
-	private ServerSocket serverSocket;
+	private ServerSocketChannel serverChannel;
+	private Thread subscriberReceiverThread;
+	
+	/**
+	 * The event loops that handle the I/O of the subscribers (the accepted connections are assigned round robin)
+	 */
+	private SubscriberEventLoop[] eventLoops;
+	private int nextEventLoop;
 	
 	/**
 	 * The port to listen for subscribers
 	 */
 	private int port;
+	/**
+	 * The number of event loops that write to the subscribers
+	 */
+	private int writerThreads;
+	/**
+	 * Whether the subscribers are handled by the event loops or by their own virtual threads
+	 */
+	private ExecutionMode executionMode;
+	/**
+	 * The maximum number of messages that are queued for a subscriber
+	 */
+	private int queueCapacity;
+	/**
+	 * What happens to messages for a subscriber whose queue is full
+	 */
+	private OverflowPolicy overflowPolicy;
+	/**
+	 * The number of high priority messages that are written before a waiting low priority message is written
+	 */
+	private int highPriorityWeight;
+	/**
+	 * Whether the messages for a subscriber are collected for a short time to write them together
+	 */
+	private boolean writeCoalescing;
+	/**
+	 * The time for which messages are collected before they are written
+	 */
+	private long coalescingWindowMillis;
+	/**
+	 * The number of collected bytes that are written without waiting for the end of the coalescing window
+	 */
+	private long coalescingThresholdBytes;
+	/**
+	 * The interval in which idle subscribers are pinged (0 if heartbeats are disabled)
+	 */
+	private long heartbeatIntervalMillis;
+	/**
+	 * The time without input after which a subscriber is considered dead
+	 */
+	private long heartbeatTimeoutMillis;
+	/**
+	 * The tick duration of the timing wheels that check the heartbeats
+	 */
+	private long heartbeatTickMillis;
+	/**
+	 * Whether subscribers can request compressed data frames in the handshake
+	 */
+	private boolean compressionEnabled;
+	/**
+	 * The minimum size of a message that is compressed (smaller messages are sent uncompressed)
+	 */
+	private int compressionThresholdBytes;
+	/**
+	 * Whether subscribers can acknowledge the data frames (requested in the handshake), to get unacknowledged notifications resent
+	 */
+	private boolean acksEnabled;
+	/**
+	 * The maximum number of unacknowledged notifications that are kept for a subscriber
+	 */
+	private int resendBufferSize;
+	/**
+	 * The time for which the unacknowledged notifications of a disconnected subscriber are kept
+	 */
+	private long resendRetentionMillis;
+	/**
+	 * The maximum number of disconnected subscribers whose unacknowledged notifications are kept
+	 */
+	private int resendMaxRetained;
+	/**
+	 * The resend buffers of the disconnected subscribers (by their names), until they reconnect or the retention time expires
+	 */
+	private final Map<String, ResendBuffer> retainedResendBuffers = new ConcurrentHashMap<String, ResendBuffer>();
+	/**
+	 * The connected subscribers that acknowledge the data frames (by their names; the last connection of a name)
+	 */
+	private final Map<String, Subscriber> acknowledgingSubscribers = new ConcurrentHashMap<String, Subscriber>();
 	
 	public SubscriberReceiver(SubscriberManager manager) throws IOException {
+		this(manager, NotifierConfiguration.getInstance());
+	}
+	/**
+	 * Create a receiver that uses the given configuration instead of the notifier_config.properties (used in tests).
+	 */
+	SubscriberReceiver(SubscriberManager manager, NotifierConfiguration configuration) throws IOException {
 		this.manager = manager;
 		
 		try {
 			//load the configuration (for port)
-			loadConfiguration();
+			loadConfiguration(configuration);
 		}
 		catch (IOException ioe) {
 			LOGGER.error("configurations couldn't be loaded", ioe);
 			throw ioe;
 		}
 		
-		//start receiving socket requests
+		//start the event loops and receiving socket requests
+		eventLoops = new SubscriberEventLoop[writerThreads];
+		for (int i = 0; i < writerThreads; i++) {
+			eventLoops[i] = new SubscriberEventLoop(this, "subscriber_writer_thread_" + i);
+		}
 		startReceiver();
 		
 		LOGGER.info(">> SubscriberReceiver started");
@@ -42,7 +147,7 @@ public class SubscriberReceiver {
 	
 	@Override
 	public String toString() {
-		return "SubscriberReceiver [manager=" + manager + ", serverSocket=" + serverSocket + ", port=" + port + "]";
+		return "SubscriberReceiver [manager=" + manager + ", serverChannel=" + serverChannel + ", port=" + port + "]";
 	}
 	
 	@Override
@@ -75,20 +180,11 @@ public class SubscriberReceiver {
 	}
 	
 	/**
-	 * Load the port configuration
+	 * Load the port and writer configuration
 	 */
-	private void loadConfiguration() throws IOException {
-		String resourceName = "notifier_config.properties";
-		LOGGER.debug("loading configuration from config file: {}", resourceName);
-		ClassLoader loader = Thread.currentThread().getContextClassLoader();
-		Properties configProperties = new Properties();
-		try (InputStream resourceStream = loader.getResourceAsStream(resourceName)) {
-			configProperties.load(resourceStream);
-		}
-		
-		String portValue = null;
+	private void loadConfiguration(NotifierConfiguration configuration) throws IOException {
+		String portValue = configuration.getString("port.socket", "<<not_found>>");
 		try {
-			portValue = configProperties.getProperty("port.socket", "<<not_found>>");
 			port = Integer.parseInt(portValue);
 		}
 		catch (NumberFormatException nfe) {
@@ -97,29 +193,97 @@ public class SubscriberReceiver {
 		if (port < 1024) {
 			throw new IOException("the port can't be a \"well known port\" (port number < 1024)");
 		}
-		LOGGER.info("configuration loaded. port is: {}", port);
+		
+		writerThreads = configuration.getInt("subscriber.writer.threads", 2);
+		executionMode = configuration.getEnum("execution.mode", ExecutionMode.class, ExecutionMode.PLATFORM);
+		if (executionMode == ExecutionMode.VIRTUAL && !VirtualThreads.isSupported()) {
+			LOGGER.warn("virtual threads are not supported by this java version (java 21 or newer is needed). using the platform execution mode");
+			executionMode = ExecutionMode.PLATFORM;
+		}
+		queueCapacity = configuration.getInt("subscriber.queue.capacity", 1024);
+		overflowPolicy = configuration.getEnum("subscriber.queue.overflow_policy", OverflowPolicy.class, OverflowPolicy.DROP_OLDEST);
+		highPriorityWeight = configuration.getInt("subscriber.queue.priority.weight", OutboundQueue.DEFAULT_HIGH_PRIORITY_WEIGHT);
+		if (writerThreads < 1) {
+			throw new IOException("there must be at least one writer thread (was: " + writerThreads + ")");
+		}
+		if (queueCapacity < 1) {
+			throw new IOException("the queue capacity must be positive (was: " + queueCapacity + ")");
+		}
+		if (highPriorityWeight < 1) {
+			throw new IOException("the weight of the high priority lane must be positive (was: " + highPriorityWeight + ")");
+		}
+		
+		writeCoalescing = configuration.getBoolean("subscriber.write.coalescing.enabled", false);
+		coalescingWindowMillis = configuration.getLong("subscriber.write.coalescing.window.millis", 2);
+		coalescingThresholdBytes = configuration.getLong("subscriber.write.coalescing.threshold.bytes", 16384);
+		if (coalescingWindowMillis < 1) {
+			throw new IOException("the coalescing window must be positive (was: " + coalescingWindowMillis + ")");
+		}
+		heartbeatIntervalMillis = configuration.getLong("subscriber.heartbeat.interval.millis", 30000);
+		heartbeatTimeoutMillis = configuration.getLong("subscriber.heartbeat.timeout.millis", 90000);
+		heartbeatTickMillis = configuration.getLong("subscriber.heartbeat.tick.millis", 1000);
+		if (heartbeatIntervalMillis < 0) {
+			throw new IOException("the heartbeat interval can't be negative (was: " + heartbeatIntervalMillis + ")");
+		}
+		if (heartbeatIntervalMillis > 0 && heartbeatTimeoutMillis <= heartbeatIntervalMillis) {
+			throw new IOException("the heartbeat timeout must be greater than the interval (was: " + heartbeatTimeoutMillis + ")");
+		}
+		if (heartbeatTickMillis < 1) {
+			throw new IOException("the heartbeat tick must be positive (was: " + heartbeatTickMillis + ")");
+		}
+		compressionEnabled = configuration.getBoolean("subscriber.compression.enabled", true);
+		compressionThresholdBytes = configuration.getInt("subscriber.compression.threshold.bytes", 1024);
+		if (compressionThresholdBytes < 0) {
+			throw new IOException("the compression threshold can't be negative (was: " + compressionThresholdBytes + ")");
+		}
+		acksEnabled = configuration.getBoolean("subscriber.acks.enabled", true);
+		resendBufferSize = configuration.getInt("subscriber.resend.buffer.size", 1024);
+		resendRetentionMillis = configuration.getLong("subscriber.resend.retention.millis", 60000);
+		resendMaxRetained = configuration.getInt("subscriber.resend.retained.max", 10000);
+		if (resendBufferSize < 1) {
+			throw new IOException("the resend buffer size must be positive (was: " + resendBufferSize + ")");
+		}
+		LOGGER.info("configuration loaded. port is: {}   writer threads: {}   queue capacity: {}   overflow policy: {}   priority weight: {}", port,
+				writerThreads, queueCapacity, overflowPolicy, highPriorityWeight);
+		LOGGER.info("write coalescing: {}   window: {} ms   threshold: {} bytes", writeCoalescing, coalescingWindowMillis, coalescingThresholdBytes);
+		LOGGER.info("execution mode: {}", executionMode);
+		LOGGER.info("heartbeat interval: {} ms   timeout: {} ms   tick: {} ms", heartbeatIntervalMillis, heartbeatTimeoutMillis, heartbeatTickMillis);
+		LOGGER.info("compression: {}   threshold: {} bytes", compressionEnabled, compressionThresholdBytes);
+		LOGGER.info("acks: {}   resend buffer size: {}   retention: {} ms   max retained: {}", acksEnabled, resendBufferSize, resendRetentionMillis,
+				resendMaxRetained);
 	}
 	
 	private void startReceiver() {
 		LOGGER.info("starting subscriber receiver");
-		Thread subscriberReceiverThread = new Thread(() -> {
+		subscriberReceiverThread = new Thread(() -> {
 			try {
-				serverSocket = new ServerSocket(port);
-				LOGGER.info(">> ServerSocket started on port {}", port);
+				//the server channel is blocking, because accepting connections is the only thing this thread does
+				serverChannel = ServerSocketChannel.open();
+				serverChannel.bind(new InetSocketAddress(port));
+				LOGGER.info(">> ServerSocketChannel started on port {}", port);
 			}
 			catch (IOException ioe) {
-				LOGGER.fatal("an error occured while creating a server socket (ending application)", ioe);
+				LOGGER.fatal("an error occured while creating a server socket channel (ending application)", ioe);
 				//end the program because without a subscriber listener that listens on a port the whole application is quite useless
 				System.exit(1);
 			}
 			
 			while (!Thread.currentThread().isInterrupted()) {
 				try {
-					Socket socket = serverSocket.accept();
-					LOGGER.debug("creating a new subscriber from the accepted socket connection: {}", socket);
-					//only create the subscriber here and pass on the reference to this object
-					//(the subscriber will register itself as soon as it received a name from the user)
-					new Subscriber(socket, this);
+					SocketChannel channel = serverChannel.accept();
+					NotifierMetrics.CONNECTIONS_ACCEPTED.increment();
+					LOGGER.debug("creating a new subscriber from the accepted socket connection: {}", channel);
+					if (executionMode == ExecutionMode.VIRTUAL) {
+						//the channel stays blocking, because it's read and written by virtual threads
+						nextEventLoop().registerBlocking(channel);
+					}
+					else {
+						channel.configureBlocking(false);
+						nextEventLoop().register(channel);
+					}
+				}
+				catch (ClosedByInterruptException cbie) {
+					LOGGER.info("the subscriber receiver was stopped");
 				}
 				catch (IOException ioe) {
 					LOGGER.error("an error occured while trying to accept a new socket", ioe);
@@ -132,6 +296,35 @@ public class SubscriberReceiver {
 		subscriberReceiverThread.start();
 	}
 	
+	/**
+	 * Stop accepting subscribers and stop the event loops, which close their subscribers (used in tests).
+	 */
+	void close() {
+		subscriberReceiverThread.interrupt();
+		for (SubscriberEventLoop eventLoop : eventLoops) {
+			eventLoop.close();
+		}
+	}
+	
+	private SubscriberEventLoop nextEventLoop() {
+		SubscriberEventLoop eventLoop = eventLoops[nextEventLoop];
+		nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+		return eventLoop;
+	}
+	
+	/**
+	 * Close the connection to the subscriber and remove it from the manager.
+	 */
+	public void closeSubscriber(Subscriber subscriber) {
+		try {
+			subscriber.closeConnection();
+		}
+		catch (IOException ioe) {
+			LOGGER.error("couldn't close connection to subscriber", ioe);
+		}
+		removeSubscriber(subscriber);
+	}
+	
 	public void registerSubscriber(Subscriber subscriber) {
 		//test whether the subscriber is valid
 		if (subscriber.getName() == null || subscriber.getName().equals("")) {
@@ -141,10 +334,132 @@ public class SubscriberReceiver {
 			throw new IllegalArgumentException("The subscriber is not connected");
 		}
 		
-		//add the subscriber to the manager
-		manager.addSubscriber(subscriber);
+		//add the subscriber to the manager (after sending the notifications that were stored while the subscriber was offline)
+		manager.addConnectedSubscriber(subscriber);
 	}
 	public void removeSubscriber(Subscriber subscriber) {
 		manager.removeSubscriber(subscriber);
 	}
+	
+	/**
+	 * Remember a subscriber that acknowledges the data frames, so a reconnect of the subscriber can take over its resend buffer.
+	 */
+	void startAcknowledging(String name, Subscriber subscriber) {
+		acknowledgingSubscribers.put(name, subscriber);
+	}
+	
+	/**
+	 * Keep the resend buffer of a subscriber that disconnected, so the unacknowledged notifications can be resent when it reconnects (a
+	 * buffer that is still kept for a previous connection with the same name is replaced).
+	 */
+	void retainResendBuffer(String name, Subscriber subscriber, ResendBuffer resendBuffer) {
+		acknowledgingSubscribers.remove(name, subscriber);
+		if (resendRetentionMillis <= 0) {
+			return;
+		}
+		long now = System.nanoTime();
+		if (retainedResendBuffers.size() >= resendMaxRetained) {
+			removeExpiredResendBuffers(now);
+			if (retainedResendBuffers.size() >= resendMaxRetained) {
+				LOGGER.warn("the maximum number of retained resend buffers is reached. the unacknowledged notifications of {} are discarded", name);
+				NotifierMetrics.MESSAGES_UNACKNOWLEDGED_DROPPED.add(resendBuffer.size());
+				return;
+			}
+		}
+		resendBuffer.setDetachedNanos(now);
+		retainedResendBuffers.put(name, resendBuffer);
+	}
+	
+	/**
+	 * Take the resend buffer that was kept for a subscriber with this name (completed with null if there is none or if it expired).<br>
+	 * If the previous connection of the subscriber is still open (e.g. a half open connection that was not yet detected by the heartbeat) it's
+	 * closed, so the buffer is taken over by the new connection. The previous connection is closed by its own event loop (that may still be
+	 * writing to it), so the buffer is only taken after that event loop retained it.
+	 */
+	CompletableFuture<ResendBuffer> takeResendBuffer(String name) {
+		Subscriber previous = acknowledgingSubscribers.get(name);
+		if (previous == null) {
+			return CompletableFuture.completedFuture(takeRetainedResendBuffer(name));
+		}
+		LOGGER.info("the subscriber {} reconnected. closing the previous connection: {}", name, previous);
+		CompletableFuture<ResendBuffer> resendBuffer = new CompletableFuture<ResendBuffer>();
+		previous.getEventLoop().execute(() -> {
+			try {
+				closeSubscriber(previous);
+			}
+			finally {
+				resendBuffer.complete(takeRetainedResendBuffer(name));
+			}
+		});
+		return resendBuffer;
+	}
+	
+	private ResendBuffer takeRetainedResendBuffer(String name) {
+		ResendBuffer resendBuffer = retainedResendBuffers.remove(name);
+		if (resendBuffer == null || isExpired(resendBuffer, System.nanoTime())) {
+			return null;
+		}
+		resendBuffer.setDetachedNanos(0);
+		return resendBuffer;
+	}
+	
+	private void removeExpiredResendBuffers(long now) {
+		for (Iterator<ResendBuffer> iter = retainedResendBuffers.values().iterator(); iter.hasNext();) {
+			if (isExpired(iter.next(), now)) {
+				iter.remove();
+			}
+		}
+	}
+	
+	private boolean isExpired(ResendBuffer resendBuffer, long now) {
+		return now - resendBuffer.getDetachedNanos() > TimeUnit.MILLISECONDS.toNanos(resendRetentionMillis);
+	}
+	
+	public ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+	
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+	public int getHighPriorityWeight() {
+		return highPriorityWeight;
+	}
+	
+	public boolean isWriteCoalescing() {
+		return writeCoalescing;
+	}
+	public long getCoalescingWindowMillis() {
+		return coalescingWindowMillis;
+	}
+	public long getCoalescingThresholdBytes() {
+		return coalescingThresholdBytes;
+	}
+	
+	public long getHeartbeatIntervalMillis() {
+		return heartbeatIntervalMillis;
+	}
+	public long getHeartbeatTimeoutMillis() {
+		return heartbeatTimeoutMillis;
+	}
+	public long getHeartbeatTickMillis() {
+		return heartbeatTickMillis;
+	}
+	
+	public boolean isCompressionEnabled() {
+		return compressionEnabled;
+	}
+	public int getCompressionThresholdBytes() {
+		return compressionThresholdBytes;
+	}
+	
+	public boolean isAcksEnabled() {
+		return acksEnabled;
+	}
+	public int getResendBufferSize() {
+		return resendBufferSize;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,189 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread safe registry of the subscribers, keyed by their names.<br>
+ * Reads never lock: names are looked up in a concurrent skip list (sorted, so prefixes can be looked up too) and the subscribers of a name are
+ * stored in an immutable array that is replaced on every change. For iterating over all subscribers an immutable snapshot is created once after
+ * a change and then shared by all readers, so iterating doesn't copy the registry for every notification.<br>
+ * The subscribers are also indexed by their topics (an inverted index), so the subscribers of a topic are found without testing all subscribers.
+ */
+public class SubscriberRegistry {
+	
+	private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+	
+	/**
+	 * An immutable list of all subscribers and the version of the registry it was created from
+	 */
+	private static class Snapshot {
+		
+		private final long version;
+		private final List<Subscriber> subscribers;
+		
+		public Snapshot(long version, List<Subscriber> subscribers) {
+			this.version = version;
+			this.subscribers = subscribers;
+		}
+	}
+	
+	private final ConcurrentNavigableMap<String, Subscriber[]> subscribersByName;
+	private final Map<String, Subscriber[]> subscribersByTopic;
+	
+	/**
+	 * Incremented after every change of the registry (used to detect outdated snapshots)
+	 */
+	private final AtomicLong version;
+	private volatile Snapshot snapshot;
+	
+	public SubscriberRegistry() {
+		subscribersByName = new ConcurrentSkipListMap<String, Subscriber[]>();
+		subscribersByTopic = new ConcurrentHashMap<String, Subscriber[]>();
+		version = new AtomicLong();
+	}
+	
+	@Override
+	public String toString() {
+		//only the number of subscribers, because a subscriber's toString contains the receiver and the manager, which contains this registry
+		return "SubscriberRegistry [subscribers=" + size() + "]";
+	}
+	
+	/**
+	 * Add the subscriber.
+	 * 
+	 * @return True if it's the first subscriber with this name.
+	 */
+	public boolean add(Subscriber subscriber) {
+		boolean[] first = new boolean[1];
+		subscribersByName.compute(subscriber.getName(), (name, named) -> {
+			first[0] = named == null;
+			return append(named, subscriber);
+		});
+		for (String topic : subscriber.getTopics()) {
+			subscribersByTopic.compute(topic, (key, subscribed) -> append(subscribed, subscriber));
+		}
+		version.incrementAndGet();
+		return first[0];
+	}
+	
+	private static Subscriber[] append(Subscriber[] subscribers, Subscriber subscriber) {
+		if (subscribers == null) {
+			return new Subscriber[] {subscriber};
+		}
+		Subscriber[] added = Arrays.copyOf(subscribers, subscribers.length + 1);
+		added[subscribers.length] = subscriber;
+		return added;
+	}
+	
+	/**
+	 * Remove the subscriber (by identity, because different subscribers with the same name are equal).
+	 * 
+	 * @return True if it was the last subscriber with this name.
+	 */
+	public boolean remove(Subscriber subscriber) {
+		if (subscriber.getName() == null) {
+			//the subscriber was never registered (disconnected before sending a name)
+			return false;
+		}
+		boolean[] last = new boolean[1];
+		subscribersByName.computeIfPresent(subscriber.getName(), (name, named) -> {
+			Subscriber[] remaining = without(named, subscriber);
+			last[0] = remaining == null;
+			return remaining;
+		});
+		for (String topic : subscriber.getTopics()) {
+			subscribersByTopic.computeIfPresent(topic, (key, subscribed) -> without(subscribed, subscriber));
+		}
+		version.incrementAndGet();
+		return last[0];
+	}
+	
+	/**
+	 * Get the subscribers without the given one (compared by identity) or null if no subscribers remain (which removes the key from the map).
+	 */
+	private static Subscriber[] without(Subscriber[] subscribers, Subscriber subscriber) {
+		List<Subscriber> remaining = new ArrayList<Subscriber>(subscribers.length);
+		for (Subscriber s : subscribers) {
+			if (s != subscriber) {
+				remaining.add(s);
+			}
+		}
+		return remaining.isEmpty() ? null : remaining.toArray(NO_SUBSCRIBERS);
+	}
+	
+	/**
+	 * Get all subscribers with the given name (the returned array mussn't be modified).
+	 */
+	public Subscriber[] get(String name) {
+		Subscriber[] named = subscribersByName.get(name);
+		return named == null ? NO_SUBSCRIBERS : named;
+	}
+	
+	/**
+	 * Get all subscribers of the given topic (the returned array mussn't be modified).
+	 */
+	public Subscriber[] getByTopic(String topic) {
+		Subscriber[] subscribed = subscribersByTopic.get(topic);
+		return subscribed == null ? NO_SUBSCRIBERS : subscribed;
+	}
+	
+	/**
+	 * Get a view of the names of all subscribers (weakly consistent).
+	 */
+	public Set<String> getNames() {
+		return subscribersByName.keySet();
+	}
+	
+	/**
+	 * Get a view of all names (and their subscribers) that start with the given prefix (weakly consistent).
+	 */
+	public NavigableMap<String, Subscriber[]> getWithPrefix(String prefix) {
+		if (prefix.isEmpty()) {
+			return subscribersByName;
+		}
+		//the first string after all strings that start with the prefix is the prefix with an incremented last character
+		char last = prefix.charAt(prefix.length() - 1);
+		if (last == Character.MAX_VALUE) {
+			return subscribersByName.tailMap(prefix, true);
+		}
+		String end = prefix.substring(0, prefix.length() - 1) + (char) (last + 1);
+		return subscribersByName.subMap(prefix, true, end, false);
+	}
+	
+	/**
+	 * Get an immutable list of all subscribers.<br>
+	 * The list is only created again if the registry was changed since the last call, so iterating doesn't allocate anything in most cases.
+	 */
+	public List<Subscriber> snapshot() {
+		Snapshot current = snapshot;
+		long currentVersion = version.get();
+		if (current != null && current.version == currentVersion) {
+			return current.subscribers;
+		}
+		
+		List<Subscriber> subscribers = new ArrayList<Subscriber>();
+		for (Subscriber[] named : subscribersByName.values()) {
+			subscribers.addAll(Arrays.asList(named));
+		}
+		List<Subscriber> immutable = Collections.unmodifiableList(subscribers);
+		if (version.get() == currentVersion) {
+			//only keep the snapshot if the registry wasn't changed while it was created
+			snapshot = new Snapshot(currentVersion, immutable);
+		}
+		return immutable;
+	}
+	
+	public int size() {
+		return snapshot().size();
+	}
+}
\ No newline at end of file
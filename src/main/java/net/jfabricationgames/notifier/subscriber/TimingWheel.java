@@ -0,0 +1,169 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A hashed timing wheel for a large number of timeouts (like the heartbeat checks of all subscribers of an event loop).<br>
+ * The timeouts are put into the bucket of the tick in which they expire (modulo the number of buckets) and only the bucket of the current tick is
+ * checked when the wheel advances, so scheduling and expiring a timeout takes constant time (independent of the number of timeouts).
+ * Timeouts are never executed before their deadline, but up to one tick later.
+ * 
+ * The wheel is not thread safe. It's only used by the thread of the event loop that owns it.
+ */
+class TimingWheel {
+	
+	private static final Logger LOGGER = LogManager.getLogger(TimingWheel.class);
+	
+	/**
+	 * A scheduled task of the timing wheel
+	 */
+	private static class Timeout {
+		
+		private final Runnable task;
+		/**
+		 * The number of times the bucket has to be passed before the timeout expires
+		 */
+		private long rounds;
+		
+		private Timeout(Runnable task, long rounds) {
+			this.task = task;
+			this.rounds = rounds;
+		}
+	}
+	
+	private final long startNanos;
+	private final long tickNanos;
+	private final List<Timeout>[] buckets;
+	private final int mask;
+	
+	/**
+	 * The next tick that is checked (the number of ticks since the start)
+	 */
+	private long tick;
+	private int size;
+	
+	/**
+	 * Create a timing wheel.
+	 * 
+	 * @param tickMillis
+	 *        The duration of a tick (the precision of the timeouts).
+	 * 
+	 * @param wheelSize
+	 *        The number of buckets (rounded up to a power of two). Timeouts that are longer than a round of the wheel are checked once every
+	 *        round.
+	 * 
+	 * @param startNanos
+	 *        The time (from {@link System#nanoTime()}) at which the first tick starts.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	TimingWheel(long tickMillis, int wheelSize, long startNanos) {
+		if (tickMillis < 1) {
+			throw new IllegalArgumentException("the tick duration must be positive (was: " + tickMillis + ")");
+		}
+		if (wheelSize < 1 || wheelSize > (1 << 30)) {
+			throw new IllegalArgumentException("the wheel size must be between 1 and 2^30 (was: " + wheelSize + ")");
+		}
+		int size = Integer.highestOneBit(wheelSize);
+		if (size < wheelSize) {
+			size <<= 1;
+		}
+		this.startNanos = startNanos;
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		this.buckets = new List[size];
+		for (int i = 0; i < size; i++) {
+			buckets[i] = new ArrayList<Timeout>();
+		}
+		this.mask = size - 1;
+	}
+	
+	@Override
+	public String toString() {
+		return "TimingWheel [tickNanos=" + tickNanos + ", buckets=" + buckets.length + ", tick=" + tick + ", size=" + size + "]";
+	}
+	
+	/**
+	 * Schedule a task that is executed (by {@link #expire(long)}) when the delay has passed.
+	 */
+	void schedule(Runnable task, long delayMillis, long nowNanos) {
+		long deadline = nowNanos - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0));
+		//the tick in which the deadline is reached (ticks that were already checked are replaced by the next tick)
+		long deadlineTick = Math.max((deadline + tickNanos - 1) / tickNanos, tick);
+		Timeout timeout = new Timeout(task, (deadlineTick - tick) / buckets.length);
+		buckets[(int) (deadlineTick & mask)].add(timeout);
+		size++;
+	}
+	
+	/**
+	 * Execute the tasks of all timeouts that expired until now.
+	 * 
+	 * @return The number of executed tasks.
+	 */
+	int expire(long nowNanos) {
+		long currentTick = (nowNanos - startNanos) / tickNanos;
+		int expired = 0;
+		while (tick <= currentTick) {
+			int index = (int) (tick & mask);
+			//increase the tick first, so tasks that schedule new timeouts don't add them to the bucket that is checked
+			tick++;
+			expired += expireBucket(index);
+		}
+		return expired;
+	}
+	
+	private int expireBucket(int index) {
+		List<Timeout> bucket = buckets[index];
+		if (bucket.isEmpty()) {
+			return 0;
+		}
+		//timeouts that are added to the bucket by the executed tasks are not checked before the next round
+		int count = bucket.size();
+		int expired = 0;
+		int kept = 0;
+		for (int i = 0; i < count; i++) {
+			Timeout timeout = bucket.get(i);
+			if (timeout.rounds > 0) {
+				timeout.rounds--;
+				bucket.set(kept++, timeout);
+			}
+			else {
+				size--;
+				expired++;
+				try {
+					timeout.task.run();
+				}
+				catch (RuntimeException re) {
+					LOGGER.error("an error occured while executing a timeout task", re);
+				}
+			}
+		}
+		for (int i = count; i < bucket.size(); i++) {
+			bucket.set(kept++, bucket.get(i));
+		}
+		//remove the expired timeouts (the remaining ones were moved to the front)
+		bucket.subList(kept, bucket.size()).clear();
+		return expired;
+	}
+	
+	/**
+	 * Get the time (from {@link System#nanoTime()}) at which the next tick is due (when {@link #expire(long)} has to be called next).
+	 */
+	long getNextTickNanos() {
+		return startNanos + tick * tickNanos;
+	}
+	
+	/**
+	 * Get the number of timeouts in the wheel.
+	 */
+	int size() {
+		return size;
+	}
+	
+	boolean isEmpty() {
+		return size == 0;
+	}
+}
\ No newline at end of file
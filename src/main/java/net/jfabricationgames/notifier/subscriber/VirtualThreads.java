@@ -0,0 +1,50 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads (java 21 or newer). The thread builder is loaded using reflection, so the service can still be compiled and run with
+ * java 8 (where virtual threads are just not supported).
+ */
+public class VirtualThreads {
+	
+	/**
+	 * The factory of Thread.ofVirtual() (null if virtual threads are not supported by the running java version)
+	 */
+	private static final ThreadFactory FACTORY = createFactory();
+	
+	private VirtualThreads() {}
+	
+	private static ThreadFactory createFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Check whether the running java version supports virtual threads.
+	 */
+	public static boolean isSupported() {
+		return FACTORY != null;
+	}
+	
+	/**
+	 * Start a virtual thread that executes the task.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *         An {@link UnsupportedOperationException} is thrown if virtual threads are not supported by the running java version.
+	 */
+	public static Thread start(String name, Runnable task) {
+		if (FACTORY == null) {
+			throw new UnsupportedOperationException("virtual threads need java 21 or newer");
+		}
+		Thread thread = FACTORY.newThread(task);
+		thread.setName(name);
+		thread.start();
+		return thread;
+	}
+}
\ No newline at end of file
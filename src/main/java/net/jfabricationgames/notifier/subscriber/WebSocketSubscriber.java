@@ -0,0 +1,59 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+import net.jfabricationgames.notifier.protocol.Protocol;
+
+/**
+ * A subscriber that is connected using a WebSocket. Every message is sent as a text message, using the asynchronous remote endpoint of the
+ * session.
+ */
+public class WebSocketSubscriber extends AsyncSubscriber {
+	
+	private static final Logger LOGGER = LogManager.getLogger(WebSocketSubscriber.class);
+	
+	private final Session session;
+	
+	public WebSocketSubscriber(String name, Session session, SubscriberManager manager, NotifierConfiguration configuration) throws IOException {
+		super(name, Protocol.WEBSOCKET, manager, configuration);
+		this.session = session;
+	}
+	
+	@Override
+	protected void write(OutboundMessage message) {
+		//the remote endpoint only sends text messages from strings (the container encodes them again)
+		String text = StandardCharsets.UTF_8.decode(message.getBuffers()[0]).toString();
+		session.getAsyncRemote().sendText(text, result -> {
+			if (result.isOK()) {
+				writeCompleted();
+			}
+			else {
+				writeFailed(result.getException());
+			}
+		});
+	}
+	
+	@Override
+	protected void closeTransport() {
+		if (session.isOpen()) {
+			try {
+				session.close(new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "subscriber closed"));
+			}
+			catch (IOException ioe) {
+				LOGGER.debug("couldn't close the websocket session", ioe);
+			}
+		}
+	}
+	
+	public Session getSession() {
+		return session;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package net.jfabricationgames.notifier.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.notification.Priority;
+
+class ClusterMessageTest {
+	
+	private static ClusterMessage roundtrip(ClusterMessage message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		message.writeTo(out);
+		out.flush();
+		return ClusterMessage.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+	
+	@Test
+	public void testSnapshot() throws IOException {
+		ClusterMessage decoded = roundtrip(ClusterMessage.snapshot("localhost:5720", Arrays.asList("user_a", "user_\u00e4")));
+		
+		assertEquals(ClusterMessage.Type.SNAPSHOT, decoded.getType());
+		assertEquals("localhost:5720", decoded.getNodeId());
+		assertEquals(Arrays.asList("user_a", "user_\u00e4"), decoded.getNames());
+		assertNull(decoded.getNotification());
+	}
+	
+	@Test
+	public void testNotification() throws IOException {
+		Notification notification = new Notification("a message\nwith two lines", null, "user_a", "project/.*");
+		notification.setTopic("news");
+		notification.setPriority(Priority.HIGH);
+		notification.setCollapseKey("status");
+		ClusterMessage decoded = roundtrip(ClusterMessage.notification("localhost:5720", notification));
+		
+		assertEquals(ClusterMessage.Type.NOTIFICATION, decoded.getType());
+		assertEquals("a message\nwith two lines", decoded.getNotification().getMessage());
+		assertNull(decoded.getNotification().getSender());
+		assertEquals(Arrays.asList("user_a", "project/.*"), decoded.getNotification().getReceivers());
+		assertEquals("news", decoded.getNotification().getTopic());
+		assertEquals(Priority.HIGH, decoded.getNotification().getPriority());
+		assertEquals("status", decoded.getNotification().getCollapseKey());
+	}
+	
+	@Test
+	public void testUnknownType() {
+		byte[] invalid = new byte[] {42, 0, 0, 0, 0};
+		assertThrows(IOException.class, () -> ClusterMessage.readFrom(new DataInputStream(new ByteArrayInputStream(invalid))));
+	}
+}
\ No newline at end of file
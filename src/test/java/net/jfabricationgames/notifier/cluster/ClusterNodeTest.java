@@ -0,0 +1,106 @@
+package net.jfabricationgames.notifier.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.subscriber.ReceiverPattern;
+
+class ClusterNodeTest {
+	
+	private static final long TIMEOUT_MILLIS = 10000;
+	
+	private static int findFreePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+	
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < end, "the condition was not met in time");
+			Thread.sleep(10);
+		}
+	}
+	
+	private static List<ReceiverPattern> compile(String... receivers) {
+		ReceiverPattern[] patterns = new ReceiverPattern[receivers.length];
+		for (int i = 0; i < receivers.length; i++) {
+			patterns[i] = ReceiverPattern.compile(receivers[i]);
+		}
+		return Arrays.asList(patterns);
+	}
+	
+	@Test
+	public void testForwardToMatchingNodes() throws IOException, InterruptedException {
+		String addressA = "localhost:" + findFreePort();
+		String addressB = "localhost:" + findFreePort();
+		Set<String> namesA = new ConcurrentSkipListSet<String>(Arrays.asList("user_a"));
+		Set<String> namesB = new ConcurrentSkipListSet<String>(Arrays.asList("project/user_b"));
+		BlockingQueue<Notification> deliveredA = new LinkedBlockingQueue<Notification>();
+		BlockingQueue<Notification> deliveredB = new LinkedBlockingQueue<Notification>();
+		
+		ClusterNode nodeA = new ClusterNode(new TcpClusterTransport(addressA, Collections.singletonList(addressB), 50, 100), () -> namesA,
+				deliveredA::add);
+		ClusterNode nodeB = new ClusterNode(new TcpClusterTransport(addressB, Collections.singletonList(addressA), 50, 100), () -> namesB,
+				deliveredB::add);
+		try {
+			nodeA.start(0);
+			nodeB.start(0);
+			
+			//the snapshots are exchanged when the nodes are connected
+			waitFor(() -> nodeA.isSubscribedRemotely("project/user_b") && nodeB.isSubscribedRemotely("user_a"));
+			
+			assertEquals(0, nodeA.forward(new Notification("not forwarded", "sender", "user_c", "other/.*"), compile("user_c", "other/.*")));
+			assertEquals(1, nodeA.forward(new Notification("forwarded", "sender", "project/.*"), compile("project/.*")));
+			Notification forwarded = deliveredB.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			assertEquals("forwarded", forwarded.getMessage());
+			assertEquals(Arrays.asList("project/.*"), forwarded.getReceivers());
+			
+			//changes of the subscribers are sent to the other nodes
+			namesB.add("user_d");
+			nodeB.subscriberAdded("user_d");
+			namesA.remove("user_a");
+			nodeA.subscriberRemoved("user_a");
+			waitFor(() -> nodeA.isSubscribedRemotely("user_d") && !nodeB.isSubscribedRemotely("user_a"));
+			assertEquals(1, nodeA.forward(new Notification("regex", "sender", "user_[d-f]"), compile("user_[d-f]")));
+			assertEquals(0, nodeB.forward(new Notification("removed", "sender", "user_a"), compile("user_a")));
+			assertEquals("regex", deliveredB.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).getMessage());
+			assertTrue(deliveredA.isEmpty());
+		}
+		finally {
+			nodeA.close();
+			nodeB.close();
+		}
+	}
+	
+	@Test
+	public void testNodeDisconnected() {
+		ClusterNode node = new ClusterNode(new TcpClusterTransport("localhost:5720", Collections.emptyList(), 50, 100),
+				() -> Collections.<String> emptyList(), notification -> {});
+		node.messageReceived(ClusterMessage.snapshot("localhost:5721", Arrays.asList("user_a")));
+		assertTrue(node.isSubscribedRemotely("user_a"));
+		
+		node.nodeDisconnected("localhost:5721");
+		assertFalse(node.isSubscribedRemotely("user_a"));
+		Collection<String> remoteNodes = node.getRemoteNodes();
+		assertTrue(remoteNodes.isEmpty());
+	}
+}
\ No newline at end of file
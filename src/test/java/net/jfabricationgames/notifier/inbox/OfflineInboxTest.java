@@ -0,0 +1,99 @@
+package net.jfabricationgames.notifier.inbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OfflineInboxTest {
+	
+	private static final long HOUR = 60 * 60 * 1000L;
+	
+	@TempDir
+	File directory;
+	
+	private OfflineInbox createInbox(int segmentSize, long retentionMillis, int maxMessagesPerUser) throws IOException {
+		return new OfflineInbox(directory, segmentSize, retentionMillis, maxMessagesPerUser, 1000, HOUR);
+	}
+	
+	@Test
+	public void testReplayInOrder() throws IOException {
+		OfflineInbox inbox = createInbox(4096, HOUR, 100);
+		inbox.store("user_a", "message 1");
+		inbox.store("user_b", "message 2");
+		inbox.store("user_a", "message 3");
+		
+		assertEquals(Arrays.asList("message 1", "message 3"), inbox.replay("user_a"));
+		assertEquals(Collections.emptyList(), inbox.replay("user_a"));
+		assertEquals(1, inbox.size());
+		inbox.close();
+	}
+	
+	@Test
+	public void testConsumedMessagesAreNotReplayedAfterRestart() throws IOException {
+		OfflineInbox inbox = createInbox(4096, HOUR, 100);
+		inbox.store("user_a", "message 1");
+		inbox.store("user_b", "message 2");
+		inbox.replay("user_a");
+		inbox.close();
+		
+		OfflineInbox restarted = createInbox(4096, HOUR, 100);
+		assertEquals(Collections.emptyList(), restarted.replay("user_a"));
+		assertEquals(Arrays.asList("message 2"), restarted.replay("user_b"));
+		restarted.close();
+	}
+	
+	@Test
+	public void testMaxMessagesPerUser() throws IOException {
+		OfflineInbox inbox = createInbox(4096, HOUR, 2);
+		inbox.store("user_a", "message 1");
+		inbox.store("user_a", "message 2");
+		inbox.store("user_a", "message 3");
+		
+		assertEquals(Arrays.asList("message 2", "message 3"), inbox.replay("user_a"));
+		inbox.close();
+	}
+	
+	@Test
+	public void testRetention() throws IOException, InterruptedException {
+		OfflineInbox inbox = createInbox(4096, 1, 100);
+		inbox.store("user_a", "message 1");
+		inbox.appendPendingMessages();
+		Thread.sleep(10);
+		
+		inbox.compact();
+		assertEquals(0, inbox.size());
+		inbox.close();
+	}
+	
+	@Test
+	public void testCompaction() throws IOException {
+		OfflineInbox inbox = createInbox(1024, HOUR, 1000);
+		//fill multiple segments, most of the messages are consumed afterwards
+		for (int i = 0; i < 100; i++) {
+			inbox.store("user_a", "a message for user a (number " + i + ")");
+			if (i % 20 == 0) {
+				inbox.store("user_b", "message " + i);
+			}
+		}
+		inbox.replay("user_a");
+		int segments = inbox.getSegmentCount();
+		assertTrue(segments > 3, "segments: " + segments);
+		
+		inbox.compact();
+		assertTrue(inbox.getSegmentCount() < segments, "segments: " + inbox.getSegmentCount());
+		inbox.close();
+		
+		//the copied messages keep their order after a restart
+		OfflineInbox restarted = createInbox(1024, HOUR, 1000);
+		assertEquals(Arrays.asList("message 0", "message 20", "message 40", "message 60", "message 80"), restarted.replay("user_b"));
+		assertEquals(Collections.emptyList(), restarted.replay("user_a"));
+		restarted.close();
+	}
+}
\ No newline at end of file
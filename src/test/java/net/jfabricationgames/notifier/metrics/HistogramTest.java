@@ -0,0 +1,51 @@
+package net.jfabricationgames.notifier.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class HistogramTest {
+	
+	@Test
+	public void testBucketBounds() {
+		for (long value : new long[] {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE}) {
+			int index = Histogram.bucketIndex(value);
+			long highest = Histogram.highestValueInBucket(index);
+			assertTrue(highest >= value);
+			//the relative error is at most 1 / SUB_BUCKETS
+			assertTrue(highest - value <= value / Histogram.SUB_BUCKETS);
+			if (index > 0) {
+				assertTrue(Histogram.highestValueInBucket(index - 1) < value);
+			}
+		}
+	}
+	
+	@Test
+	public void testQuantiles() {
+		Histogram histogram = new Histogram("test", "a test histogram");
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500500000L, histogram.getSum());
+		long median = histogram.getValueAtQuantile(0.5);
+		assertTrue(median >= 500000 && median <= 500000 * 1.125, "median was: " + median);
+		long p99 = histogram.getValueAtQuantile(0.99);
+		assertTrue(p99 >= 990000 && p99 <= 990000 * 1.125, "p99 was: " + p99);
+	}
+	
+	@Test
+	public void testPrometheusFormat() {
+		Histogram histogram = new Histogram("test_seconds", "a test histogram");
+		histogram.record(2000000000L);
+		
+		StringBuilder sb = new StringBuilder();
+		histogram.writeTo(sb);
+		String text = sb.toString();
+		assertTrue(text.contains("# TYPE test_seconds summary\n"));
+		assertTrue(text.contains("test_seconds_count 1\n"));
+		assertTrue(text.contains("test_seconds_sum 2.0\n"));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,64 @@
+package net.jfabricationgames.notifier.notification;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class DeliveryTrackerTest {
+	
+	private List<DeliveryReport> reports = new ArrayList<DeliveryReport>();
+	
+	@Test
+	public void testCompletedWhenAllMatchedSubscribersHandled() {
+		DeliveryTracker tracker = new DeliveryTracker(reports::add);
+		//subscribers can be written to before the routing is finished
+		tracker.delivered();
+		tracker.failed();
+		assertFalse(tracker.isCompleted());
+		
+		tracker.setMatched(3);
+		assertFalse(tracker.isCompleted());
+		DeliveryReport pending = tracker.getReport();
+		assertEquals(3, pending.getMatchedSubscribers());
+		assertEquals(1, pending.getDeliveredSubscribers());
+		assertFalse(pending.isCompleted());
+		
+		tracker.delivered();
+		assertTrue(tracker.isCompleted());
+		assertEquals(1, reports.size());
+		DeliveryReport report = reports.get(0);
+		assertEquals(3, report.getMatchedSubscribers());
+		assertEquals(2, report.getDeliveredSubscribers());
+		assertEquals(1, report.getFailedSubscribers());
+		assertTrue(report.isCompleted());
+		
+		//outcomes that are reported after the completion are ignored
+		tracker.failed();
+		assertEquals(1, reports.size());
+		assertEquals(1, tracker.getReport().getFailedSubscribers());
+	}
+	
+	@Test
+	public void testAbort() {
+		DeliveryTracker tracker = new DeliveryTracker(reports::add);
+		assertTrue(tracker.abort());
+		//the listener is not called for an aborted tracker
+		tracker.setMatched(0);
+		assertTrue(reports.isEmpty());
+		assertFalse(tracker.abort());
+	}
+	
+	@Test
+	public void testNoMatchedSubscribers() {
+		DeliveryTracker tracker = new DeliveryTracker(reports::add);
+		tracker.setMatched(0);
+		assertTrue(tracker.isCompleted());
+		assertEquals(1, reports.size());
+		assertEquals(0, reports.get(0).getMatchedSubscribers());
+	}
+}
\ No newline at end of file
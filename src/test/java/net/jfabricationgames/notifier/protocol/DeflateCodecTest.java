@@ -0,0 +1,42 @@
+package net.jfabricationgames.notifier.protocol;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class DeflateCodecTest {
+	
+	@Test
+	public void testRoundtrip() throws IOException {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < 500; i++) {
+			json.append("{\"id\":").append(i).append(",\"text\":\"a notification \u00e4\u00f6\u00fc\"},");
+		}
+		byte[] input = json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+		
+		byte[] compressed = DeflateCodec.compress(input, 0, input.length);
+		assertTrue(compressed.length < input.length / 4, "compressed length: " + compressed.length);
+		assertArrayEquals(input, DeflateCodec.decompress(compressed, input.length));
+	}
+	
+	@Test
+	public void testMaxLength() {
+		byte[] zeros = new byte[100000];
+		byte[] compressed = DeflateCodec.compress(zeros, 0, zeros.length);
+		//a small frame mussn't be inflated to more than the allowed size
+		assertThrows(IOException.class, () -> DeflateCodec.decompress(compressed, 99999));
+	}
+	
+	@Test
+	public void testInvalidData() {
+		byte[] compressed = DeflateCodec.compress(new byte[1000], 0, 1000);
+		assertThrows(IOException.class, () -> DeflateCodec.decompress(Arrays.copyOf(compressed, compressed.length / 2), 1000));
+		assertThrows(IOException.class, () -> DeflateCodec.decompress(new byte[] {(byte) 0xff, (byte) 0xff, 1, 2}, 1000));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,90 @@
+package net.jfabricationgames.notifier.protocol;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class EncodedMessageTest {
+	
+	@Test
+	public void testBinaryBuffersAreDecodable() throws IOException {
+		EncodedMessage message = new EncodedMessage("\u00e4\u00f6\u00fc shared");
+		ByteBuffer input = join(message.getBuffers(Protocol.BINARY));
+		
+		Frame frame = new FrameCodec().decode(input);
+		assertEquals(FrameType.DATA, frame.getType());
+		assertEquals("\u00e4\u00f6\u00fc shared", frame.getPayloadAsString());
+	}
+	
+	@Test
+	public void testLegacyBuffersAreDecodable() {
+		EncodedMessage message = new EncodedMessage("a legacy message");
+		ByteBuffer input = join(message.getBuffers(Protocol.LEGACY));
+		
+		byte[] decoded = new SentinelCodec(StandardCharsets.UTF_8).decode(input);
+		assertArrayEquals("a legacy message".getBytes(StandardCharsets.UTF_8), decoded);
+	}
+	
+	@Test
+	public void testBuffersAreIndependent() {
+		EncodedMessage message = new EncodedMessage("a shared message");
+		ByteBuffer[] first = message.getBuffers(Protocol.LEGACY);
+		ByteBuffer[] second = message.getBuffers(Protocol.LEGACY);
+		
+		//writing the buffers of one subscriber mussn't change the buffers of the others
+		join(first);
+		assertEquals(0, first[0].remaining());
+		assertEquals(message.getLength(), second[0].remaining());
+	}
+	
+	@Test
+	public void testCompressedBuffers() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append("a compressible message ");
+		}
+		EncodedMessage message = new EncodedMessage(sb.toString());
+		ByteBuffer[] first = message.getCompressedBuffers(1024);
+		ByteBuffer[] second = message.getCompressedBuffers(1024);
+		
+		//the payload is compressed once and shared
+		assertEquals(1, first.length);
+		assertEquals(first[0].remaining(), second[0].remaining());
+		Frame frame = new FrameCodec().decode(join(first));
+		assertTrue(frame.isCompressed());
+		assertEquals(sb.toString(), new String(DeflateCodec.decompress(frame.getPayload(), 10000), StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testSmallMessagesAreNotCompressed() throws IOException {
+		EncodedMessage message = new EncodedMessage("a short message");
+		Frame frame = new FrameCodec().decode(join(message.getCompressedBuffers(1024)));
+		assertFalse(frame.isCompressed());
+		assertEquals("a short message", frame.getPayloadAsString());
+		
+		//messages that don't get smaller are sent uncompressed too
+		frame = new FrameCodec().decode(join(message.getCompressedBuffers(0)));
+		assertFalse(frame.isCompressed());
+	}
+	
+	private static ByteBuffer join(ByteBuffer[] buffers) {
+		int length = 0;
+		for (ByteBuffer buffer : buffers) {
+			length += buffer.remaining();
+		}
+		ByteBuffer joined = ByteBuffer.allocate(length);
+		for (ByteBuffer buffer : buffers) {
+			joined.put(buffer);
+		}
+		((Buffer) joined).flip();
+		return joined;
+	}
+}
\ No newline at end of file
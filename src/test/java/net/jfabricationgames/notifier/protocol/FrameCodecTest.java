@@ -0,0 +1,97 @@
+package net.jfabricationgames.notifier.protocol;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class FrameCodecTest {
+	
+	@Test
+	public void testDecodeMultipleFrames() throws IOException {
+		ByteBuffer first = FrameCodec.encode(FrameType.DATA, (byte) 0, "a message".getBytes(StandardCharsets.UTF_8));
+		ByteBuffer second = FrameCodec.encode(FrameType.DATA, (byte) 0, "a message containing <<notification_end>>".getBytes(StandardCharsets.UTF_8));
+		ByteBuffer third = FrameCodec.encode(FrameType.CLOSE, (byte) 0, new byte[0]);
+		ByteBuffer input = ByteBuffer.allocate(first.remaining() + second.remaining() + third.remaining());
+		input.put(first).put(second).put(third);
+		((Buffer) input).flip();
+		
+		FrameCodec decoder = new FrameCodec();
+		assertEquals("a message", decoder.decode(input).getPayloadAsString());
+		assertEquals("a message containing <<notification_end>>", decoder.decode(input).getPayloadAsString());
+		assertEquals(FrameType.CLOSE, decoder.decode(input).getType());
+		assertNull(decoder.decode(input));
+	}
+	
+	@Test
+	public void testDecodeFragmentedFrame() throws IOException {
+		byte[] frame = FrameCodec.encode(FrameType.DATA, (byte) 0, "\u00e4\u00f6\u00fc fragmented".getBytes(StandardCharsets.UTF_8)).array();
+		
+		FrameCodec decoder = new FrameCodec();
+		Frame decoded = null;
+		//feed the frame byte by byte (the header and the payload are split)
+		for (int i = 0; i < frame.length; i++) {
+			assertNull(decoded);
+			decoded = decoder.decode(ByteBuffer.wrap(frame, i, 1));
+		}
+		assertNotNull(decoded);
+		assertEquals("\u00e4\u00f6\u00fc fragmented", decoded.getPayloadAsString());
+	}
+	
+	@Test
+	public void testDecodeFragmentedSequencedFrames() throws IOException {
+		EncodedMessage message = new EncodedMessage("a sequenced message");
+		ByteBuffer input = ByteBuffer.allocate(1024);
+		for (long sequence = 41; sequence <= 42; sequence++) {
+			ByteBuffer[] buffers = message.getSequencedBuffers(Compression.NONE, 0);
+			FrameCodec.putSequence(buffers[0], sequence);
+			input.put(buffers[0]).put(buffers[1]);
+		}
+		byte[] frames = Arrays.copyOf(input.array(), input.position());
+		
+		FrameCodec decoder = new FrameCodec();
+		List<Frame> decoded = new ArrayList<Frame>();
+		//feed the frames byte by byte (the extended header is split too)
+		for (int i = 0; i < frames.length; i++) {
+			Frame frame = decoder.decode(ByteBuffer.wrap(frames, i, 1));
+			if (frame != null) {
+				decoded.add(frame);
+			}
+		}
+		assertEquals(2, decoded.size());
+		assertTrue(decoded.get(0).isSequenced());
+		assertEquals(41, decoded.get(0).getSequence());
+		assertEquals(42, decoded.get(1).getSequence());
+		assertEquals("a sequenced message", decoded.get(1).getPayloadAsString());
+	}
+	
+	@Test
+	public void testNegotiateVersion() {
+		assertEquals(FrameCodec.VERSION, FrameCodec.negotiateVersion(FrameCodec.VERSION));
+		//a newer client uses the version of the service
+		assertEquals(FrameCodec.VERSION, FrameCodec.negotiateVersion(FrameCodec.VERSION + 1));
+		//a client that doesn't send a version (or an unsupported one) can't use the binary protocol
+		assertEquals(0, FrameCodec.negotiateVersion(0));
+		assertEquals(0, FrameCodec.negotiateVersion(FrameCodec.MIN_VERSION - 1));
+	}
+	
+	@Test
+	public void testInvalidHeader() {
+		ByteBuffer wrongVersion = ByteBuffer.wrap(new byte[] {42, 1, 0, 0, 0, 0, 0});
+		ByteBuffer wrongLength = ByteBuffer.wrap(new byte[] {FrameCodec.VERSION, 1, 0, -1, -1, -1, -1});
+		
+		assertThrows(IOException.class, () -> new FrameCodec().decode(wrongVersion));
+		assertThrows(IOException.class, () -> new FrameCodec().decode(wrongLength));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package net.jfabricationgames.notifier.protocol;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class SentinelCodecTest {
+	
+	@Test
+	public void testDecodeMultipleMessages() {
+		String input = "message1<<notification_end>>message2<<notification_end>>message3";
+		ByteBuffer buffer = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+		
+		SentinelCodec decoder = new SentinelCodec(StandardCharsets.UTF_8);
+		assertEquals("message1", new String(decoder.decode(buffer), StandardCharsets.UTF_8));
+		assertEquals("message2", new String(decoder.decode(buffer), StandardCharsets.UTF_8));
+		assertNull(decoder.decode(buffer));
+		assertEquals("message3", new String(decoder.decode(ByteBuffer.wrap(SentinelCodec.MESSAGE_END.getBytes())), StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testDecodeOverlappingSentinelPrefix() {
+		//the message ends with characters that are also the start of the sentinel
+		byte[] input = SentinelCodec.encode("a <<<notification <<", StandardCharsets.UTF_8);
+		
+		SentinelCodec decoder = new SentinelCodec(StandardCharsets.UTF_8);
+		byte[] message = null;
+		for (int i = 0; i < input.length; i++) {
+			assertNull(message);
+			message = decoder.decode(ByteBuffer.wrap(input, i, 1));
+		}
+		assertEquals("a <<<notification <<", new String(message, StandardCharsets.UTF_8));
+	}
+}
\ No newline at end of file
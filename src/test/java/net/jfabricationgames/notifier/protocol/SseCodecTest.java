@@ -0,0 +1,29 @@
+package net.jfabricationgames.notifier.protocol;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class SseCodecTest {
+	
+	@Test
+	public void testEncodeSingleLine() {
+		assertEquals("data: a message\n\n", new String(SseCodec.encode("a message"), StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testEncodeLineBreaks() {
+		//every line break (CRLF, LF or CR) starts a new data field
+		assertEquals("data: 1\ndata: 2\ndata: 3\ndata: \ndata: 4\n\n", new String(SseCodec.encode("1\r\n2\n3\r\r4"), StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testEncodedMessageIsShared() {
+		EncodedMessage message = new EncodedMessage("a message");
+		assertEquals("data: a message\n\n", StandardCharsets.UTF_8.decode(message.getBuffers(Protocol.SSE)[0]).toString());
+		//the buffers of the second subscriber are independent of the (consumed) buffers of the first one
+		assertEquals("data: a message\n\n", StandardCharsets.UTF_8.decode(message.getBuffers(Protocol.SSE)[0]).toString());
+	}
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+package net.jfabricationgames.notifier.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import net.jfabricationgames.notifier.notification.Notification;
+
+class AdmissionControlTest {
+	
+	@Test
+	public void testSenderLimit() {
+		AdmissionControl admission = new AdmissionControl(new RateLimiter(1, 2, 100), null, 0, 0);
+		assertEquals(0, admission.checkRateLimits(new Notification("message", "sender_a", "user")));
+		assertEquals(0, admission.checkRateLimits(new Notification("message", "sender_a", "user")));
+		assertTrue(admission.checkRateLimits(new Notification("message", "sender_a", "user")) > 0);
+		//other senders have their own limit
+		assertEquals(0, admission.checkRateLimits(new Notification("message", "sender_b", "user")));
+	}
+	
+	@Test
+	public void testReceiverLimit() {
+		AdmissionControl admission = new AdmissionControl(null, new RateLimiter(1, 1, 100), 0, 0);
+		assertEquals(0, admission.checkRateLimits(new Notification("message", "sender_a", ".*")));
+		assertTrue(admission.checkRateLimits(new Notification("message", "sender_b", ".*")) > 0);
+		assertEquals(0, admission.checkRateLimits(new Notification("message", "sender_b", "user")));
+	}
+	
+	@Test
+	public void testRejectedNotificationNotCounted() {
+		AdmissionControl admission = new AdmissionControl(new RateLimiter(1, 2, 100), new RateLimiter(1, 1, 100), 0, 0);
+		assertEquals(0, admission.checkRateLimits(new Notification("message", "sender_a", "user_b")));
+		//rejected by the limit of user_b, so the tokens of sender_a and user_a are given back
+		assertTrue(admission.checkRateLimits(new Notification("message", "sender_a", "user_a", "user_b")) > 0);
+		assertEquals(0, admission.checkRateLimits(new Notification("message", "sender_a", "user_a")));
+	}
+	
+	@Test
+	public void testReleaseRateLimits() {
+		AdmissionControl admission = new AdmissionControl(new RateLimiter(1, 1, 100), new RateLimiter(1, 1, 100), 1, 0);
+		Notification notification = new Notification("message", "sender_a", "user_a", "user_b");
+		assertEquals(0, admission.checkRateLimits(notification));
+		assertTrue(admission.tryStartFanOut());
+		//the notification is not sent (no free fan out), so its tokens are given back and a retry is not limited
+		assertFalse(admission.tryStartFanOut());
+		admission.releaseRateLimits(notification);
+		assertEquals(0, admission.checkRateLimits(notification));
+	}
+	
+	@Test
+	public void testConcurrentFanOuts() {
+		AdmissionControl admission = new AdmissionControl(null, null, 2, 0);
+		assertTrue(admission.tryStartFanOut());
+		assertTrue(admission.tryStartFanOut());
+		assertFalse(admission.tryStartFanOut());
+		admission.endFanOut();
+		assertTrue(admission.tryStartFanOut());
+	}
+	
+	@Test
+	public void testDuplicates() {
+		AdmissionControl admission = new AdmissionControl(null, null, 0, 0, new IdempotencyCache(60000, 100));
+		Notification notification = new Notification("message", "sender_a", "user");
+		notification.setIdempotencyKey("key");
+		assertFalse(admission.checkDuplicate(notification));
+		assertTrue(admission.checkDuplicate(notification));
+		//the keys are scoped by the sender
+		Notification other = new Notification("message", "sender_b", "user");
+		other.setIdempotencyKey("key");
+		assertFalse(admission.checkDuplicate(other));
+		//a notification that was not sent can be retried
+		admission.forgetIdempotencyKey(notification);
+		assertFalse(admission.checkDuplicate(notification));
+		//notifications without a key are never duplicates
+		assertFalse(admission.checkDuplicate(new Notification("message", "sender_a", "user")));
+		assertFalse(admission.checkDuplicate(new Notification("message", "sender_a", "user")));
+	}
+	
+	@Test
+	public void testIdempotencyKeysExpire() {
+		IdempotencyCache cache = new IdempotencyCache(1, 2);
+		long now = System.nanoTime();
+		assertTrue(cache.add("a", now));
+		assertFalse(cache.add("a", now));
+		assertTrue(cache.add("b", now));
+		//the oldest key is removed when the maximum is reached
+		assertTrue(cache.add("c", now));
+		assertEquals(2, cache.size());
+		assertTrue(cache.add("a", now));
+		//all keys expire after a millisecond
+		assertTrue(cache.add("b", now + 2000000L));
+		assertEquals(1, cache.size());
+	}
+	
+	@Test
+	public void testRemoveFullBuckets() {
+		RateLimiter limiter = new RateLimiter(1000, 1, 2);
+		limiter.tryAcquire("a");
+		limiter.tryAcquire("b");
+		assertEquals(2, limiter.size());
+		//the buckets are full again after a millisecond
+		limiter.removeFullBuckets(System.nanoTime() + 2000000L);
+		assertEquals(0, limiter.size());
+	}
+	
+	@Test
+	public void testMaxBucketsWithoutFullBuckets() {
+		RateLimiter limiter = new RateLimiter(1, 10, 20);
+		long now = System.nanoTime();
+		//every bucket is partially drained (and none gets full again), so no bucket can be removed because it's full
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(0, limiter.tryAcquire("sender_" + i, now));
+			assertTrue(limiter.size() <= 20);
+		}
+		//the buckets that are kept still limit their keys
+		for (int i = 0; i < 9; i++) {
+			assertEquals(0, limiter.tryAcquire("sender_999", now));
+		}
+		assertTrue(limiter.tryAcquire("sender_999", now) > 0);
+		assertTrue(limiter.size() <= 20);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,52 @@
+package net.jfabricationgames.notifier.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+	
+	private static final long START = 1000L;
+	
+	private static long millis(long millis) {
+		return START + TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+	
+	@Test
+	public void testBurst() {
+		TokenBucket bucket = new TokenBucket(10, 3, START);
+		assertEquals(0, bucket.tryAcquire(START));
+		assertEquals(0, bucket.tryAcquire(START));
+		assertEquals(0, bucket.tryAcquire(START));
+		//the next token is refilled after 100 ms
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryAcquire(START));
+		assertFalse(bucket.isFull(START));
+	}
+	
+	@Test
+	public void testRefill() {
+		TokenBucket bucket = new TokenBucket(10, 2, START);
+		bucket.tryAcquire(START);
+		bucket.tryAcquire(START);
+		assertTrue(bucket.tryAcquire(millis(50)) > 0);
+		assertEquals(0, bucket.tryAcquire(millis(100)));
+		assertTrue(bucket.tryAcquire(millis(100)) > 0);
+		
+		//a bucket doesn't collect more tokens than its capacity
+		assertTrue(bucket.isFull(millis(10000)));
+		assertEquals(0, bucket.tryAcquire(millis(10000)));
+		assertEquals(0, bucket.tryAcquire(millis(10000)));
+		assertTrue(bucket.tryAcquire(millis(10000)) > 0);
+	}
+	
+	@Test
+	public void testRetryAfterSeconds() {
+		assertEquals(1, AdmissionControl.toRetryAfterSeconds(1));
+		assertEquals(1, AdmissionControl.toRetryAfterSeconds(TimeUnit.SECONDS.toNanos(1)));
+		assertEquals(2, AdmissionControl.toRetryAfterSeconds(TimeUnit.MILLISECONDS.toNanos(1001)));
+	}
+}
\ No newline at end of file
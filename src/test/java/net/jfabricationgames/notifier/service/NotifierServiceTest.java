@@ -0,0 +1,143 @@
+package net.jfabricationgames.notifier.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+import net.jfabricationgames.notifier.notification.DeliveryTracker;
+import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.notification.NotificationResult;
+import net.jfabricationgames.notifier.subscriber.SubscriberManager;
+import net.jfabricationgames.notifier.subscriber.VirtualThreads;
+
+class NotifierServiceTest {
+	
+	private SubscriberManager manager;
+	
+	@BeforeEach
+	public void initialize() throws IOException {
+		manager = mock(SubscriberManager.class);
+		NotifierService.initialize(manager, NotifierConfiguration.getInstance());
+	}
+	
+	/**
+	 * Send a valid notification and get the thread that routes it.
+	 */
+	private Thread getFanOutThread() throws Exception {
+		CompletableFuture<Thread> fanOutThread = new CompletableFuture<Thread>();
+		doAnswer(invocation -> {
+			fanOutThread.complete(Thread.currentThread());
+			return 1;
+		}).when(manager).sendNotification(any(Notification.class), any(DeliveryTracker.class));
+		Response response = notify(new Notification("message", "sender", "user"));
+		assertEquals(Status.ACCEPTED.getStatusCode(), response.getStatus());
+		return fanOutThread.get(5, TimeUnit.SECONDS);
+	}
+	
+	private static Response notify(Notification notification) {
+		AsyncResponse response = mock(AsyncResponse.class);
+		new NotifierService().notifySubscribers(notification, 0, response);
+		ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+		verify(response).resume(captor.capture());
+		return (Response) captor.getValue();
+	}
+	
+	@Test
+	public void testInvalidReceiverPatternRejected() {
+		Response response = notify(new Notification("message", "sender", "user_(a|b"));
+		assertEquals(Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+		verify(manager, never()).sendNotification(any(Notification.class), any(DeliveryTracker.class));
+	}
+	
+	@Test
+	public void testNotificationWithoutMessageRejected() {
+		Response response = notify(new Notification(null, "sender", "user"));
+		assertEquals(Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+		verify(manager, never()).sendNotification(any(Notification.class), any(DeliveryTracker.class));
+	}
+	
+	@Test
+	public void testRoutingError() throws Exception {
+		CountDownLatch routed = new CountDownLatch(2);
+		doAnswer(invocation -> {
+			routed.countDown();
+			throw new IllegalStateException("routing failed");
+		}).when(manager).sendNotification(any(Notification.class), any(DeliveryTracker.class));
+		
+		//an accepted notification is only answered once (with HTTP 202), even if the routing fails
+		AsyncResponse accepted = mock(AsyncResponse.class);
+		new NotifierService().notifySubscribers(new Notification("message", "sender", "user"), 0, accepted);
+		//a producer that waits for the delivery gets the error
+		AsyncResponse waiting = mock(AsyncResponse.class);
+		new NotifierService().notifySubscribers(new Notification("message", "sender", "user"), 5000, waiting);
+		assertTrue(routed.await(5, TimeUnit.SECONDS));
+		
+		ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+		verify(waiting, timeout(5000)).resume(captor.capture());
+		assertEquals(Status.INTERNAL_SERVER_ERROR.getStatusCode(), ((Response) captor.getValue()).getStatus());
+		verify(accepted, times(1)).resume(captor.capture());
+		assertEquals(Status.ACCEPTED.getStatusCode(), ((Response) captor.getValue()).getStatus());
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testBatchRoutedByFanOutExecutor() throws Exception {
+		CompletableFuture<Thread> fanOutThread = new CompletableFuture<Thread>();
+		doAnswer(invocation -> {
+			fanOutThread.complete(Thread.currentThread());
+			return new int[] {1, 2};
+		}).when(manager).sendNotifications(any(List.class));
+		String body = "[{\"message\":\"m1\",\"sender\":\"sender\",\"receivers\":[\"user\"]},"
+				+ "{\"message\":\"m2\",\"sender\":\"sender\",\"receivers\":[\"user_.*\"]}]";
+		AsyncResponse response = mock(AsyncResponse.class);
+		new NotifierService().notifySubscribersBatch(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), response);
+		
+		ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+		verify(response, timeout(5000)).resume(captor.capture());
+		Response result = (Response) captor.getValue();
+		assertEquals(Status.OK.getStatusCode(), result.getStatus());
+		List<NotificationResult> results = (List<NotificationResult>) result.getEntity();
+		assertEquals(2, results.size());
+		assertEquals(2, results.get(1).getMatchedSubscribers());
+		assertTrue(fanOutThread.get(5, TimeUnit.SECONDS).getName().startsWith("fanout_thread_"));
+	}
+	
+	@Test
+	public void testPlatformFanOut() throws Exception {
+		assertTrue(getFanOutThread().getName().startsWith("fanout_thread_"));
+	}
+	
+	@Test
+	public void testVirtualFanOut() throws Exception {
+		assumeTrue(VirtualThreads.isSupported());
+		Properties properties = new Properties();
+		properties.setProperty("execution.mode", "virtual");
+		NotifierService.initialize(manager, new NotifierConfiguration(properties));
+		assertEquals("virtual_fanout_thread", getFanOutThread().getName());
+	}
+}
\ No newline at end of file
@@ -0,0 +1,115 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.protocol.Protocol;
+
+class AsyncSubscriberTest {
+	
+	/**
+	 * A subscriber that completes the writes immediately or only when {@link #completePendingWrite()} is called
+	 */
+	private static class TestSubscriber extends AsyncSubscriber {
+		
+		private final List<String> written = new ArrayList<String>();
+		private boolean completeImmediately;
+		private boolean writePending;
+		private boolean transportClosed;
+		
+		public TestSubscriber(String name, SubscriberManager manager, int queueCapacity, boolean completeImmediately) throws IOException {
+			super(name, Protocol.WEBSOCKET, manager, createConfiguration(queueCapacity));
+			this.completeImmediately = completeImmediately;
+		}
+		
+		private static NotifierConfiguration createConfiguration(int queueCapacity) {
+			Properties properties = new Properties();
+			properties.setProperty("subscriber.queue.capacity", Integer.toString(queueCapacity));
+			properties.setProperty("subscriber.queue.overflow_policy", "disconnect");
+			return new NotifierConfiguration(properties);
+		}
+		
+		@Override
+		protected void write(OutboundMessage message) {
+			assertFalse(writePending, "a message is written before the previous write was completed");
+			written.add(StandardCharsets.UTF_8.decode(message.getBuffers()[0]).toString());
+			if (completeImmediately) {
+				writeCompleted();
+			}
+			else {
+				writePending = true;
+			}
+		}
+		
+		private void completePendingWrite() {
+			writePending = false;
+			writeCompleted();
+		}
+		
+		@Override
+		protected void closeTransport() {
+			transportClosed = true;
+		}
+	}
+	
+	@Test
+	public void testWritesAreCompletedImmediately() throws IOException {
+		SubscriberManager manager = new SubscriberManager(false);
+		TestSubscriber subscriber = new TestSubscriber("user", manager, 100000, true);
+		manager.addSubscriber(subscriber);
+		
+		//writes that are completed before the write method returns mussn't recurse into the next write
+		for (int i = 0; i < 50000; i++) {
+			manager.sendNotification(new Notification("message " + i, "sender", "user"));
+		}
+		assertEquals(50000, subscriber.written.size());
+		assertEquals("message 49999", subscriber.written.get(49999));
+	}
+	
+	@Test
+	public void testAsynchronousWritesAreSequential() throws IOException {
+		SubscriberManager manager = new SubscriberManager(false);
+		TestSubscriber subscriber = new TestSubscriber("user", manager, 10, false);
+		manager.addSubscriber(subscriber);
+		
+		manager.sendNotification(new Notification("message 1", "sender", "user"));
+		manager.sendNotification(new Notification("message 2", "sender", "user"));
+		manager.sendNotification(new Notification("message 3", "sender", "user"));
+		assertEquals(Arrays.asList("message 1"), subscriber.written);
+		
+		subscriber.completePendingWrite();
+		subscriber.completePendingWrite();
+		assertEquals(Arrays.asList("message 1", "message 2", "message 3"), subscriber.written);
+		subscriber.completePendingWrite();
+		
+		manager.sendNotification(new Notification("message 4", "sender", "user"));
+		assertEquals("message 4", subscriber.written.get(3));
+	}
+	
+	@Test
+	public void testFullQueueClosesSubscriber() throws IOException {
+		SubscriberManager manager = new SubscriberManager(false);
+		TestSubscriber subscriber = new TestSubscriber("user", manager, 2, false);
+		manager.addSubscriber(subscriber);
+		
+		//the first message is written (not queued), so the fourth one overflows the queue
+		for (int i = 0; i < 4; i++) {
+			manager.sendNotification(new Notification("message " + i, "sender", "user"));
+		}
+		assertTrue(subscriber.isConnectionClosed());
+		assertTrue(subscriber.transportClosed);
+		assertEquals(0, manager.getSubscriberCount());
+	}
+}
\ No newline at end of file
@@ -0,0 +1,149 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+
+import net.jfabricationgames.notifier.config.NotifierConfiguration;
+
+/**
+ * A {@link SubscriberReceiver} that listens on a free local port, to test the subscribers and the clients with real socket connections.
+ */
+class LoopbackServer implements AutoCloseable {
+	
+	/**
+	 * The time to wait for the connections and the conditions of the tests
+	 */
+	private static final long TIMEOUT_MILLIS = 5000;
+	
+	private SubscriberManager manager;
+	private SubscriberReceiver receiver;
+	private int port;
+	
+	/**
+	 * Start a receiver with the given configuration (the socket port is set to a free port).
+	 */
+	public LoopbackServer(Properties configuration) throws IOException {
+		port = findFreePort();
+		configuration.setProperty("port.socket", Integer.toString(port));
+		manager = new SubscriberManager(false);
+		receiver = new SubscriberReceiver(manager, new NotifierConfiguration(configuration));
+	}
+	
+	private static int findFreePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+	
+	@Override
+	public void close() {
+		receiver.close();
+	}
+	
+	/**
+	 * Create the configuration of a {@link SubscriberClient} that connects to this server.
+	 */
+	public Properties createClientConfiguration(String username, String protocol) {
+		Properties configuration = new Properties();
+		configuration.setProperty("host", "localhost");
+		configuration.setProperty("port.rest", "5714");
+		configuration.setProperty("port.socket", Integer.toString(port));
+		configuration.setProperty("username", username);
+		configuration.setProperty("protocol", protocol);
+		return configuration;
+	}
+	
+	/**
+	 * Create a client that connects to this server (the connection is retried until the receiver accepts connections).
+	 */
+	public SubscriberClient connectClient(Properties configuration, NotificationListener listener, Executor listenerExecutor) throws IOException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (true) {
+			try {
+				return new SubscriberClient(configuration, listener, listenerExecutor);
+			}
+			catch (ConnectException ce) {
+				retryUntil(deadline, ce);
+			}
+		}
+	}
+	
+	/**
+	 * Open a socket to this server, whose reads time out after the timeout of the tests (the connection is retried until the receiver accepts
+	 * connections).
+	 */
+	public Socket connect() throws IOException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (true) {
+			try {
+				Socket socket = new Socket("localhost", port);
+				socket.setSoTimeout((int) TIMEOUT_MILLIS);
+				return socket;
+			}
+			catch (ConnectException ce) {
+				retryUntil(deadline, ce);
+			}
+		}
+	}
+	
+	private static void retryUntil(long deadline, ConnectException ce) throws IOException {
+		if (System.currentTimeMillis() > deadline) {
+			throw ce;
+		}
+		sleep(10);
+	}
+	
+	/**
+	 * Get the registered subscriber with the given name (null if there is none).
+	 */
+	public Subscriber getSubscriber(String name) {
+		for (Subscriber subscriber : manager.getSubscribers()) {
+			if (subscriber.getName().equals(name)) {
+				return subscriber;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Wait until the registered subscriber with the given name is not the previous one (null if a new subscriber is expected).
+	 */
+	public Subscriber waitForSubscriber(String name, Subscriber previous) {
+		waitFor(() -> getSubscriber(name) != null && getSubscriber(name) != previous, "the subscriber " + name + " was not registered");
+		return getSubscriber(name);
+	}
+	
+	/**
+	 * Wait until the condition is true (the test fails if it's not true within the timeout).
+	 */
+	public static void waitFor(BooleanSupplier condition, String message) {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline) {
+				fail(message);
+			}
+			sleep(10);
+		}
+	}
+	
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			fail("interrupted while waiting");
+		}
+	}
+	
+	public SubscriberManager getManager() {
+		return manager;
+	}
+}
\ No newline at end of file
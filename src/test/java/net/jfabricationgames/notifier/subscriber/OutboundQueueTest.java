@@ -0,0 +1,178 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import net.jfabricationgames.notifier.notification.DeliveryTracker;
+import net.jfabricationgames.notifier.notification.Priority;
+import net.jfabricationgames.notifier.protocol.EncodedMessage;
+
+class OutboundQueueTest {
+	
+	private OutboundMessage message1 = new OutboundMessage(ByteBuffer.wrap("message1".getBytes()));
+	private OutboundMessage message2 = new OutboundMessage(ByteBuffer.wrap("message2".getBytes()));
+	private OutboundMessage message3 = new OutboundMessage(ByteBuffer.wrap("message3".getBytes()));
+	
+	private static OutboundMessage notification(String message, Priority priority) {
+		return new OutboundMessage(0, priority, ByteBuffer.wrap(message.getBytes()));
+	}
+	
+	@Test
+	public void testDropOldest() {
+		OutboundQueue queue = new OutboundQueue(2, OverflowPolicy.DROP_OLDEST);
+		assertTrue(queue.offer(message1));
+		assertTrue(queue.offer(message2));
+		assertTrue(queue.offer(message3));
+		
+		assertEquals(1, queue.getDroppedMessages());
+		assertSame(message2, queue.poll());
+		assertSame(message3, queue.poll());
+		assertNull(queue.poll());
+	}
+	
+	@Test
+	public void testDropNewest() {
+		OutboundQueue queue = new OutboundQueue(2, OverflowPolicy.DROP_NEWEST);
+		assertTrue(queue.offer(message1));
+		assertTrue(queue.offer(message2));
+		assertTrue(queue.offer(message3));
+		
+		assertEquals(1, queue.getDroppedMessages());
+		assertSame(message1, queue.poll());
+		assertSame(message2, queue.poll());
+		assertNull(queue.poll());
+	}
+	
+	@Test
+	public void testDroppedMessagesReportedAsFailed() {
+		DeliveryTracker tracker = new DeliveryTracker(report -> {});
+		OutboundQueue queue = new OutboundQueue(1, OverflowPolicy.DROP_NEWEST);
+		EncodedMessage tracked = new EncodedMessage("tracked", null, null, tracker);
+		assertTrue(queue.offer(message1));
+		assertTrue(queue.offer(new OutboundMessage(tracked, ByteBuffer.wrap("tracked".getBytes()))));
+		
+		tracker.setMatched(1);
+		assertTrue(tracker.isCompleted());
+		assertEquals(1, tracker.getReport().getFailedSubscribers());
+	}
+	
+	@Test
+	public void testDisconnect() {
+		OutboundQueue queue = new OutboundQueue(2, OverflowPolicy.DISCONNECT);
+		assertTrue(queue.offer(message1));
+		assertTrue(queue.offer(message2));
+		assertFalse(queue.offer(message3));
+		
+		assertEquals(2, queue.size());
+	}
+	
+	@Test
+	public void testQueuedBytes() {
+		OutboundQueue queue = new OutboundQueue(2, OverflowPolicy.DROP_OLDEST);
+		queue.offer(message1);
+		queue.offer(new OutboundMessage(ByteBuffer.wrap("a".getBytes()), ByteBuffer.wrap("bc".getBytes())));
+		assertEquals(11, queue.getQueuedBytes());
+		
+		queue.offer(message3);
+		assertEquals(11, queue.getQueuedBytes());
+		
+		queue.poll();
+		assertEquals(8, queue.getQueuedBytes());
+		queue.clear();
+		assertEquals(0, queue.getQueuedBytes());
+	}
+	
+	@Test
+	public void testWeightedPriorityLanes() {
+		OutboundQueue queue = new OutboundQueue(10, OverflowPolicy.DROP_OLDEST, 2);
+		OutboundMessage low1 = notification("low1", Priority.LOW);
+		OutboundMessage low2 = notification("low2", Priority.LOW);
+		OutboundMessage high1 = notification("high1", Priority.HIGH);
+		OutboundMessage high2 = notification("high2", Priority.HIGH);
+		OutboundMessage high3 = notification("high3", Priority.HIGH);
+		queue.offer(low1);
+		queue.offer(low2);
+		queue.offer(high1);
+		queue.offer(high2);
+		queue.offer(high3);
+		assertTrue(queue.hasHighPriorityMessages());
+		
+		//two high priority messages, then one low priority message
+		assertSame(high1, queue.poll());
+		assertSame(high2, queue.poll());
+		assertSame(low1, queue.poll());
+		assertSame(high3, queue.poll());
+		assertFalse(queue.hasHighPriorityMessages());
+		
+		//a message that is put back is taken first again
+		OutboundMessage low = queue.poll();
+		queue.requeue(low);
+		assertEquals(4, queue.getQueuedBytes());
+		assertSame(low2, queue.poll());
+		assertNull(queue.poll());
+	}
+	
+	@Test
+	public void testCollapseKey() {
+		OutboundQueue queue = new OutboundQueue(10, OverflowPolicy.DROP_OLDEST);
+		EncodedMessage status1 = new EncodedMessage("status1", Priority.LOW, "status");
+		EncodedMessage status2 = new EncodedMessage("status2", Priority.LOW, "status");
+		OutboundMessage other = notification("other", Priority.LOW);
+		queue.offer(new OutboundMessage(status1, ByteBuffer.wrap("status1".getBytes())));
+		queue.offer(other);
+		OutboundMessage latest = new OutboundMessage(status2, ByteBuffer.wrap("status2".getBytes()));
+		queue.offer(latest);
+		
+		//the newer message replaced the older one
+		assertEquals(2, queue.size());
+		assertEquals(12, queue.getQueuedBytes());
+		assertSame(other, queue.poll());
+		OutboundMessage taken = queue.poll();
+		assertSame(latest, taken);
+		
+		//a message that is put back is replaced by a newer message that was added in the meantime
+		OutboundMessage newest = new OutboundMessage(status1, ByteBuffer.wrap("status3".getBytes()));
+		queue.offer(newest);
+		queue.requeue(taken);
+		assertEquals(1, queue.size());
+		assertSame(newest, queue.poll());
+		assertNull(queue.poll());
+	}
+	
+	@Test
+	public void testLowPriorityDroppedFirst() {
+		OutboundMessage low1 = notification("low1", Priority.LOW);
+		OutboundMessage low2 = notification("low2", Priority.LOW);
+		OutboundMessage high1 = notification("high1", Priority.HIGH);
+		OutboundMessage high2 = notification("high2", Priority.HIGH);
+		
+		OutboundQueue dropOldest = new OutboundQueue(2, OverflowPolicy.DROP_OLDEST);
+		dropOldest.offer(low1);
+		dropOldest.offer(low2);
+		dropOldest.offer(high1);
+		dropOldest.offer(high2);
+		assertEquals(2, dropOldest.getDroppedMessages());
+		assertEquals(10, dropOldest.getQueuedBytes());
+		//a low priority message is dropped if only high priority messages are queued
+		dropOldest.offer(notification("low3", Priority.LOW));
+		assertSame(high1, dropOldest.poll());
+		assertSame(high2, dropOldest.poll());
+		assertNull(dropOldest.poll());
+		
+		OutboundQueue dropNewest = new OutboundQueue(2, OverflowPolicy.DROP_NEWEST);
+		dropNewest.offer(low1);
+		dropNewest.offer(low2);
+		dropNewest.offer(high1);
+		assertEquals(1, dropNewest.getDroppedMessages());
+		assertSame(high1, dropNewest.poll());
+		assertSame(low1, dropNewest.poll());
+		assertNull(dropNewest.poll());
+	}
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ReceiverPatternTest {
+	
+	@Test
+	public void testReceiverTypes() {
+		assertEquals(ReceiverPattern.Type.LITERAL, ReceiverPattern.compile("user42").getType());
+		assertEquals(ReceiverPattern.Type.LITERAL, ReceiverPattern.compile("project_name/user42").getType());
+		assertEquals(ReceiverPattern.Type.LITERAL, ReceiverPattern.compile("project\\.user42").getType());
+		assertEquals(ReceiverPattern.Type.PREFIX, ReceiverPattern.compile("project_name/.*").getType());
+		assertEquals(ReceiverPattern.Type.PREFIX, ReceiverPattern.compile(".*").getType());
+		assertEquals(ReceiverPattern.Type.REGEX, ReceiverPattern.compile("project.user42").getType());
+		assertEquals(ReceiverPattern.Type.REGEX, ReceiverPattern.compile(".*user42.*").getType());
+		assertEquals(ReceiverPattern.Type.REGEX, ReceiverPattern.compile("project\\.*").getType());
+		assertEquals(ReceiverPattern.Type.REGEX, ReceiverPattern.compile("user\\d+").getType());
+		
+		assertEquals("project.user42", ReceiverPattern.compile("project\\.user42").getLiteral());
+		assertEquals("project_name/", ReceiverPattern.compile("project_name/.*").getLiteral());
+	}
+	
+	@Test
+	public void testMatchesLikeRegex() {
+		String[] receivers = {"user42", "project\\.user42", "project_name/.*", ".*", "project\\.*", "user\\d+"};
+		String[] names = {"user42", "user421", "project.user42", "projectXuser42", "project_name/", "project_name/user42", "project_name/a\nb",
+				"project...", "project", "a\nb"};
+		for (String receiver : receivers) {
+			for (String name : names) {
+				assertEquals(name.matches(receiver), ReceiverPattern.compile(receiver).matches(name), "receiver: " + receiver + " name: " + name);
+			}
+		}
+	}
+	
+	@Test
+	public void testCompiledReceiversAreCached() {
+		assertSame(ReceiverPattern.compile("cached_.*"), ReceiverPattern.compile("cached_.*"));
+		assertTrue(ReceiverPattern.compile("cached_.*").matches("cached_user"));
+		assertFalse(ReceiverPattern.compile("cached_.*").matches("not_cached_user"));
+	}
+}
\ No newline at end of file
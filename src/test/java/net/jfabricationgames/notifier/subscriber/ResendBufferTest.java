@@ -0,0 +1,64 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.jfabricationgames.notifier.protocol.EncodedMessage;
+
+class ResendBufferTest {
+	
+	private static List<String> messages(List<EncodedMessage> encoded) {
+		List<String> messages = new ArrayList<String>();
+		for (EncodedMessage message : encoded) {
+			messages.add(message.getMessage());
+		}
+		return messages;
+	}
+	
+	@Test
+	public void testCumulativeAcknowledge() {
+		ResendBuffer buffer = new ResendBuffer(100);
+		for (int i = 1; i <= 40; i++) {
+			assertEquals(i, buffer.add(new EncodedMessage("m" + i)));
+		}
+		buffer.acknowledge(37);
+		assertEquals(3, buffer.size());
+		//acknowledging an older sequence number again (or one that was not sent) has no effect
+		buffer.acknowledge(12);
+		buffer.acknowledge(1000);
+		assertEquals(0, buffer.size());
+		assertEquals(41, buffer.getFirstSequence());
+		assertEquals(41, buffer.add(new EncodedMessage("m41")));
+	}
+	
+	@Test
+	public void testOldestDroppedWhenFull() {
+		ResendBuffer buffer = new ResendBuffer(3);
+		for (int i = 1; i <= 5; i++) {
+			buffer.add(new EncodedMessage("m" + i));
+		}
+		assertEquals(3, buffer.getFirstSequence());
+		assertEquals(Arrays.asList("m3", "m4", "m5"), messages(buffer.removeUnacknowledged()));
+	}
+	
+	@Test
+	public void testResendAfterLastAck() {
+		ResendBuffer buffer = new ResendBuffer(10);
+		for (int i = 1; i <= 6; i++) {
+			buffer.add(new EncodedMessage("m" + i));
+		}
+		//a message that was put back into the queue gets its sequence number again
+		buffer.removeLast();
+		buffer.acknowledge(3);
+		
+		assertEquals(Arrays.asList("m4", "m5"), messages(buffer.removeUnacknowledged()));
+		//the resent messages continue after the last ack
+		assertEquals(4, buffer.getNextSequence());
+		assertEquals(4, buffer.add(new EncodedMessage("m4")));
+	}
+}
\ No newline at end of file
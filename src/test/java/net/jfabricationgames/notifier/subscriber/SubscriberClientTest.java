@@ -0,0 +1,168 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.protocol.Compression;
+import net.jfabricationgames.notifier.protocol.Protocol;
+
+class SubscriberClientTest {
+	
+	private LoopbackServer server;
+	private SubscriberClient client;
+	private BlockingQueue<String> received;
+	
+	@BeforeEach
+	public void startServer() throws IOException {
+		Properties configuration = new Properties();
+		configuration.setProperty("subscriber.writer.threads", "1");
+		configuration.setProperty("subscriber.heartbeat.interval.millis", "100");
+		configuration.setProperty("subscriber.heartbeat.timeout.millis", "400");
+		configuration.setProperty("subscriber.heartbeat.tick.millis", "20");
+		configuration.setProperty("subscriber.compression.threshold.bytes", "16");
+		server = new LoopbackServer(configuration);
+		received = new LinkedBlockingQueue<String>();
+	}
+	
+	@AfterEach
+	public void stopServer() throws IOException {
+		if (client != null) {
+			client.closeConnection();
+		}
+		server.close();
+	}
+	
+	private String takeReceived() throws InterruptedException {
+		String message = received.poll(5, TimeUnit.SECONDS);
+		if (message == null) {
+			throw new AssertionError("no notification was received");
+		}
+		return message;
+	}
+	
+	@Test
+	public void testLegacyClient() throws IOException, InterruptedException {
+		ExecutorService listenerExecutor = Executors.newSingleThreadExecutor(task -> new Thread(task, "listener_executor_thread"));
+		try {
+			client = server.connectClient(server.createClientConfiguration("legacy_user", "legacy"),
+					message -> received.add(Thread.currentThread().getName() + ": " + message), listenerExecutor);
+			Subscriber subscriber = server.waitForSubscriber("legacy_user", null);
+			assertEquals(Protocol.LEGACY, subscriber.getProtocol());
+			
+			server.getManager().sendNotification(new Notification("message 1", "sender", "legacy_user"));
+			server.getManager().sendNotification(new Notification("message 2", "sender", "legacy_user"));
+			
+			//the listener is called by the executor, not by the notification listener thread
+			assertEquals("listener_executor_thread: message 1", takeReceived());
+			assertEquals("listener_executor_thread: message 2", takeReceived());
+		}
+		finally {
+			listenerExecutor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testBinaryClientWithCompression() throws IOException, InterruptedException {
+		Properties configuration = server.createClientConfiguration("binary_user", "binary");
+		configuration.setProperty("compression", "deflate");
+		client = server.connectClient(configuration, received::add, Runnable::run);
+		Subscriber subscriber = server.waitForSubscriber("binary_user", null);
+		assertEquals(Protocol.BINARY, subscriber.getProtocol());
+		assertEquals(Compression.DEFLATE, subscriber.getCompression());
+		
+		//the long message is compressed (it exceeds the threshold), the short one is not
+		StringBuilder longMessage = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			longMessage.append("message ").append(i).append(' ');
+		}
+		server.getManager().sendNotification(new Notification(longMessage.toString(), "sender", "binary_user"));
+		server.getManager().sendNotification(new Notification("short", "sender", "binary_user"));
+		
+		assertEquals(longMessage.toString(), takeReceived());
+		assertEquals("short", takeReceived());
+	}
+	
+	@Test
+	public void testAcknowledgements() throws IOException, InterruptedException {
+		Properties configuration = server.createClientConfiguration("acking_user", "binary");
+		configuration.setProperty("acks", "true");
+		client = server.connectClient(configuration, received::add, Runnable::run);
+		Subscriber subscriber = server.waitForSubscriber("acking_user", null);
+		
+		for (int i = 1; i <= 3; i++) {
+			server.getManager().sendNotification(new Notification("message " + i, "sender", "acking_user"));
+		}
+		for (int i = 1; i <= 3; i++) {
+			assertEquals("message " + i, takeReceived());
+		}
+		assertEquals(3, client.getLastReceivedSequence());
+		
+		//the acks of the client remove the notifications from the resend buffer of the subscriber
+		ResendBuffer resendBuffer = subscriber.getResendBuffer();
+		LoopbackServer.waitFor(() -> resendBuffer.size() == 0, "the notifications were not acknowledged");
+		assertEquals(4, resendBuffer.getNextSequence());
+	}
+	
+	@Test
+	public void testPongKeepsConnectionAlive() throws IOException, InterruptedException {
+		client = server.connectClient(server.createClientConfiguration("idle_user", "binary"), received::add, Runnable::run);
+		Subscriber subscriber = server.waitForSubscriber("idle_user", null);
+		
+		//the client answers the pings, so it's not closed after the heartbeat timeout (400 ms) although it doesn't send anything else
+		Thread.sleep(1000);
+		assertTrue(subscriber.isConnected());
+		assertSame(subscriber, server.getSubscriber("idle_user"));
+		
+		server.getManager().sendNotification(new Notification("message", "sender", "idle_user"));
+		assertEquals("message", takeReceived());
+	}
+	
+	@Test
+	public void testReconnectResumesSession() throws IOException, InterruptedException {
+		Properties configuration = server.createClientConfiguration("reconnecting_user", "binary");
+		configuration.setProperty("acks", "true");
+		client = server.connectClient(configuration, received::add, Runnable::run);
+		Subscriber subscriber = server.waitForSubscriber("reconnecting_user", null);
+		
+		server.getManager().sendNotification(new Notification("message 1", "sender", "reconnecting_user"));
+		server.getManager().sendNotification(new Notification("message 2", "sender", "reconnecting_user"));
+		assertEquals("message 1", takeReceived());
+		assertEquals("message 2", takeReceived());
+		
+		client.reconnect();
+		Subscriber reconnected = server.waitForSubscriber("reconnecting_user", subscriber);
+		LoopbackServer.waitFor(() -> server.getManager().getSubscriberCount() == 1, "the previous subscriber was not removed");
+		assertTrue(subscriber.isConnectionClosed());
+		
+		//the session is resumed, so the sequence numbers continue after the last received notification
+		server.getManager().sendNotification(new Notification("message 3", "sender", "reconnecting_user"));
+		assertEquals("message 3", takeReceived());
+		assertEquals(3, client.getLastReceivedSequence());
+		assertTrue(received.isEmpty());
+		assertTrue(reconnected.isConnected());
+	}
+	
+	@Test
+	public void testOnlyLegacyAndBinaryProtocols() {
+		for (String protocol : new String[] {"websocket", "sse", "unknown"}) {
+			IOException exception = assertThrows(IOException.class,
+					() -> new SubscriberClient(server.createClientConfiguration("user", protocol), null, Runnable::run));
+			assertTrue(exception.getMessage().startsWith("protocol must be either legacy or binary"));
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,287 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.protocol.Frame;
+import net.jfabricationgames.notifier.protocol.FrameCodec;
+import net.jfabricationgames.notifier.protocol.FrameType;
+import net.jfabricationgames.notifier.protocol.Handshake;
+import net.jfabricationgames.notifier.protocol.Protocol;
+import net.jfabricationgames.notifier.protocol.SentinelCodec;
+
+class SubscriberEventLoopTest {
+	
+	/**
+	 * A client that reads and writes the raw bytes of the protocols (to test the handling of input that is split into multiple reads)
+	 */
+	private static class RawClient {
+		
+		private Socket socket;
+		private ByteBuffer input = ByteBuffer.allocate(8192);
+		private SentinelCodec sentinelDecoder = new SentinelCodec(StandardCharsets.UTF_8);
+		private FrameCodec frameDecoder = new FrameCodec();
+		
+		public RawClient(Socket socket) {
+			this.socket = socket;
+			((Buffer) input).flip();
+		}
+		
+		public String readMessage() throws IOException {
+			byte[] message;
+			while ((message = sentinelDecoder.decode(input)) == null) {
+				fillInput();
+			}
+			return new String(message, StandardCharsets.UTF_8);
+		}
+		
+		public Frame readFrame() throws IOException {
+			Frame frame;
+			while ((frame = frameDecoder.decode(input)) == null) {
+				fillInput();
+			}
+			return frame;
+		}
+		
+		private void fillInput() throws IOException {
+			input.compact();
+			int read = socket.getInputStream().read(input.array(), input.position(), input.remaining());
+			if (read == -1) {
+				throw new EOFException("the connection was closed by the service");
+			}
+			((Buffer) input).position(input.position() + read);
+			((Buffer) input).flip();
+		}
+		
+		public void write(String output) throws IOException {
+			write(output.getBytes(StandardCharsets.UTF_8));
+		}
+		public void write(byte[] output) throws IOException {
+			socket.getOutputStream().write(output);
+			socket.getOutputStream().flush();
+		}
+		
+		/**
+		 * Read the username request and answer it with a handshake for the binary protocol in the given version.
+		 * 
+		 * @return The handshake that was accepted by the service.
+		 */
+		public Handshake sendBinaryHandshake(String username, int version) throws IOException {
+			assertEquals(Handshake.USERNAME_REQUEST, readMessage());
+			write(createBinaryHandshake(username, version).encodeRequest());
+			return readAcceptedHandshake();
+		}
+		
+		public Handshake readAcceptedHandshake() throws IOException {
+			String accepted = readMessage();
+			assertTrue(accepted.startsWith(Handshake.HANDSHAKE_ACCEPTED));
+			return Handshake.parse(accepted.substring(Handshake.HANDSHAKE_ACCEPTED.length()));
+		}
+		
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+	
+	private LoopbackServer server;
+	
+	@BeforeEach
+	public void startServer() throws IOException {
+		Properties configuration = new Properties();
+		configuration.setProperty("subscriber.writer.threads", "2");
+		configuration.setProperty("subscriber.heartbeat.interval.millis", "100");
+		configuration.setProperty("subscriber.heartbeat.timeout.millis", "400");
+		configuration.setProperty("subscriber.heartbeat.tick.millis", "20");
+		server = new LoopbackServer(configuration);
+	}
+	
+	@AfterEach
+	public void stopServer() {
+		server.close();
+	}
+	
+	private static Handshake createBinaryHandshake(String username, int version) {
+		Handshake handshake = new Handshake();
+		handshake.setUsername(username);
+		handshake.setProtocol(Protocol.BINARY);
+		handshake.setProtocolVersion(version);
+		return handshake;
+	}
+	
+	@Test
+	public void testLegacyClient() throws IOException {
+		RawClient client = new RawClient(server.connect());
+		assertEquals(Handshake.USERNAME_REQUEST, client.readMessage());
+		client.write("legacy_user");
+		Subscriber subscriber = server.waitForSubscriber("legacy_user", null);
+		assertEquals(Protocol.LEGACY, subscriber.getProtocol());
+		
+		server.getManager().sendNotification(new Notification("message 1", "sender", "legacy_user"));
+		server.getManager().sendNotification(new Notification("message 2", "sender", "legacy_user"));
+		assertEquals("message 1", client.readMessage());
+		assertEquals("message 2", client.readMessage());
+		client.close();
+	}
+	
+	@Test
+	public void testBinaryClient() throws IOException {
+		RawClient client = new RawClient(server.connect());
+		Handshake accepted = client.sendBinaryHandshake("binary_user", FrameCodec.VERSION);
+		assertEquals(Protocol.BINARY, accepted.getProtocol());
+		assertEquals(FrameCodec.VERSION, accepted.getProtocolVersion());
+		assertEquals(100, accepted.getHeartbeatIntervalMillis());
+		Subscriber subscriber = server.waitForSubscriber("binary_user", null);
+		assertEquals(Protocol.BINARY, subscriber.getProtocol());
+		
+		server.getManager().sendNotification(new Notification("message", "sender", "binary_user"));
+		Frame frame = client.readFrame();
+		assertEquals(FrameType.DATA, frame.getType());
+		assertEquals("message", frame.getPayloadAsString());
+		client.close();
+	}
+	
+	@Test
+	public void testNewerBinaryVersionIsNegotiated() throws IOException {
+		RawClient client = new RawClient(server.connect());
+		Handshake accepted = client.sendBinaryHandshake("newer_user", FrameCodec.VERSION + 1);
+		assertEquals(Protocol.BINARY, accepted.getProtocol());
+		assertEquals(FrameCodec.VERSION, accepted.getProtocolVersion());
+		client.close();
+	}
+	
+	@Test
+	public void testUnsupportedBinaryVersionUsesLegacyProtocol() throws IOException {
+		RawClient client = new RawClient(server.connect());
+		Handshake accepted = client.sendBinaryHandshake("older_user", FrameCodec.MIN_VERSION - 1);
+		assertEquals(Protocol.LEGACY, accepted.getProtocol());
+		assertEquals(Protocol.LEGACY, server.waitForSubscriber("older_user", null).getProtocol());
+		
+		server.getManager().sendNotification(new Notification("message", "sender", "older_user"));
+		assertEquals("message", client.readMessage());
+		client.close();
+	}
+	
+	@Test
+	public void testHandshakeSplitAcrossReads() throws IOException, InterruptedException {
+		RawClient client = new RawClient(server.connect());
+		assertEquals(Handshake.USERNAME_REQUEST, client.readMessage());
+		
+		//the parts are split inside the start and end tags, and a ping directly follows the handshake (in the same read)
+		String handshake = createBinaryHandshake("split_user", FrameCodec.VERSION).encodeRequest();
+		int startSplit = Handshake.HANDSHAKE_START.length() / 2;
+		int endSplit = handshake.length() - Handshake.HANDSHAKE_END.length() / 2;
+		byte[] ping = FrameCodec.encode(FrameType.PING, (byte) 0, new byte[0]).array();
+		byte[] end = handshake.substring(endSplit).getBytes(StandardCharsets.UTF_8);
+		ByteBuffer endWithPing = ByteBuffer.allocate(end.length + ping.length).put(end).put(ping);
+		
+		client.write(handshake.substring(0, startSplit));
+		Thread.sleep(50);
+		client.write(handshake.substring(startSplit, endSplit));
+		Thread.sleep(50);
+		assertFalse(server.getManager().getSubscriberCount() > 0, "the subscriber was registered before the handshake was complete");
+		client.write(endWithPing.array());
+		
+		Handshake accepted = client.readAcceptedHandshake();
+		assertEquals(Protocol.BINARY, accepted.getProtocol());
+		assertEquals(FrameType.PONG, client.readFrame().getType());
+		assertEquals(Protocol.BINARY, server.waitForSubscriber("split_user", null).getProtocol());
+		client.close();
+	}
+	
+	@Test
+	public void testDisconnectRemovesSubscriber() throws IOException {
+		RawClient client = new RawClient(server.connect());
+		assertEquals(Handshake.USERNAME_REQUEST, client.readMessage());
+		client.write("leaving_user");
+		Subscriber subscriber = server.waitForSubscriber("leaving_user", null);
+		
+		client.close();
+		LoopbackServer.waitFor(() -> server.getManager().getSubscriberCount() == 0, "the disconnected subscriber was not removed");
+		assertTrue(subscriber.isConnectionClosed());
+	}
+	
+	@Test
+	public void testReconnectWhileHalfOpen() throws IOException {
+		//without heartbeats the previous connection is only closed by the reconnect
+		server.close();
+		Properties configuration = new Properties();
+		configuration.setProperty("subscriber.writer.threads", "2");
+		configuration.setProperty("subscriber.heartbeat.interval.millis", "0");
+		server = new LoopbackServer(configuration);
+		
+		Handshake handshake = createBinaryHandshake("reconnecting_user", FrameCodec.VERSION);
+		handshake.setAcks(true);
+		RawClient previousClient = new RawClient(server.connect());
+		assertEquals(Handshake.USERNAME_REQUEST, previousClient.readMessage());
+		previousClient.write(handshake.encodeRequest());
+		assertTrue(previousClient.readAcceptedHandshake().isAcks());
+		Subscriber previous = server.waitForSubscriber("reconnecting_user", null);
+		
+		for (int i = 1; i <= 3; i++) {
+			server.getManager().sendNotification(new Notification("message " + i, "sender", "reconnecting_user"));
+		}
+		for (int i = 1; i <= 3; i++) {
+			Frame frame = previousClient.readFrame();
+			assertEquals(i, frame.getSequence());
+			assertEquals("message " + i, frame.getPayloadAsString());
+		}
+		previousClient.write(FrameCodec.encode(FrameType.ACK, (byte) 0, ByteBuffer.allocate(8).putLong(1).array()).array());
+		LoopbackServer.waitFor(() -> previous.getResendBuffer().getFirstSequence() == 2, "the ack was not received");
+		
+		//the previous connection is still open (the service doesn't know that it's dead) when the subscriber reconnects (on the other event loop)
+		RawClient client = new RawClient(server.connect());
+		handshake.setLastAck(1);
+		assertEquals(Handshake.USERNAME_REQUEST, client.readMessage());
+		client.write(handshake.encodeRequest());
+		Handshake accepted = client.readAcceptedHandshake();
+		assertEquals(2, accepted.getNextSequence());
+		
+		//the notifications that were not acknowledged on the previous connection are resent, then the session continues
+		for (int i = 2; i <= 3; i++) {
+			Frame frame = client.readFrame();
+			assertEquals(i, frame.getSequence());
+			assertEquals("message " + i, frame.getPayloadAsString());
+		}
+		Subscriber reconnected = server.waitForSubscriber("reconnecting_user", previous);
+		assertTrue(previous.isConnectionClosed());
+		assertEquals(1, server.getManager().getSubscriberCount());
+		server.getManager().sendNotification(new Notification("message 4", "sender", "reconnecting_user"));
+		Frame frame = client.readFrame();
+		assertEquals(4, frame.getSequence());
+		assertEquals("message 4", frame.getPayloadAsString());
+		//the buffer of the previous connection is continued (the notifications 2 to 4 are not acknowledged yet)
+		assertEquals(3, reconnected.getResendBuffer().size());
+		
+		//the previous connection was closed by the service
+		assertThrows(EOFException.class, previousClient::readFrame);
+		previousClient.close();
+		client.close();
+	}
+	
+	@Test
+	public void testSilentBinaryClientIsClosed() throws IOException {
+		RawClient client = new RawClient(server.connect());
+		client.sendBinaryHandshake("silent_user", FrameCodec.VERSION);
+		server.waitForSubscriber("silent_user", null);
+		
+		//the client doesn't answer the pings, so it's closed after the heartbeat timeout
+		assertEquals(FrameType.PING, client.readFrame().getType());
+		LoopbackServer.waitFor(() -> server.getManager().getSubscriberCount() == 0, "the silent subscriber was not closed");
+		client.close();
+	}
+}
\ No newline at end of file
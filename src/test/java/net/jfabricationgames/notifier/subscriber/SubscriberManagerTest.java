@@ -1,21 +1,33 @@
 package net.jfabricationgames.notifier.subscriber;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Matchers.any;
-import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 
+import net.jfabricationgames.notifier.inbox.OfflineInbox;
 import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.protocol.EncodedMessage;
 
 class SubscriberManagerTest {
 	
@@ -59,17 +71,80 @@ class SubscriberManagerTest {
 		assertFalse(SubscriberManager.matchesAnyUsernameRegex(regex, notMatching4));
 	}
 	
+	@Test
+	public void testStoreForOfflineReceivers() throws IOException {
+		SubscriberManager manager = new SubscriberManager(false);
+		OfflineInbox inbox = mock(OfflineInbox.class);
+		manager.setInbox(inbox);
+		manager.addSubscriber(getMockedSubscriber("online_user"));
+		
+		manager.sendNotification(new Notification("a_message", "me", "online_user", "offline_user", "offline_user", "project_name/.*"));
+		
+		//only the literal receiver that is not connected is stored (and only once)
+		verify(inbox, times(1)).store("offline_user", "a_message");
+		verify(inbox, times(1)).store(anyString(), anyString());
+	}
+	
+	@Test
+	public void testReplayOfflineNotificationsBeforeAdding() throws IOException {
+		SubscriberManager manager = new SubscriberManager(false);
+		OfflineInbox inbox = mock(OfflineInbox.class);
+		List<String> replayThreads = new CopyOnWriteArrayList<String>();
+		when(inbox.replay("user")).thenAnswer(invocation -> {
+			replayThreads.add(Thread.currentThread().getName());
+			return replayThreads.size() == 1 ? Arrays.asList("stored 1", "stored 2") : Collections.emptyList();
+		});
+		manager.setInbox(inbox);
+		Subscriber subscriber = getMockedSubscriber("user");
+		List<Integer> subscriberCounts = new CopyOnWriteArrayList<Integer>();
+		doAnswer(invocation -> subscriberCounts.add(manager.getSubscriberCount())).when(subscriber).sendMessageToSubscriber(anyString());
+		
+		manager.addConnectedSubscriber(subscriber);
+		
+		//the inbox is replayed by the inbox replay thread (before and after adding the subscriber)
+		verify(subscriber, timeout(5000).times(2)).sendMessageToSubscriber(anyString());
+		LoopbackServer.waitFor(() -> replayThreads.size() == 2, "the inbox was not replayed again after adding the subscriber");
+		assertEquals(Arrays.asList("inbox_replay_thread", "inbox_replay_thread"), replayThreads);
+		InOrder inOrder = inOrder(subscriber);
+		inOrder.verify(subscriber).sendMessageToSubscriber("stored 1");
+		inOrder.verify(subscriber).sendMessageToSubscriber("stored 2");
+		//the stored notifications are queued before the subscriber is added
+		assertEquals(Arrays.asList(0, 0), subscriberCounts);
+		assertEquals(1, manager.getSubscriberCount());
+	}
+	
+	@Test
+	public void testSubscriberClosedDuringReplayIsNotAdded() throws IOException, InterruptedException {
+		SubscriberManager manager = new SubscriberManager(false);
+		OfflineInbox inbox = mock(OfflineInbox.class);
+		manager.setInbox(inbox);
+		Subscriber subscriber = getMockedSubscriber("user");
+		AtomicBoolean closed = new AtomicBoolean();
+		when(subscriber.isConnectionClosed()).thenAnswer(invocation -> closed.get());
+		when(inbox.replay("user")).thenAnswer(invocation -> {
+			//the subscriber disconnects (and is removed) before it's added
+			closed.set(true);
+			manager.removeSubscriber(subscriber);
+			return Collections.emptyList();
+		});
+		
+		manager.addConnectedSubscriber(subscriber);
+		
+		verify(inbox, timeout(5000).times(2)).replay("user");
+		Thread.sleep(50);
+		assertEquals(0, manager.getSubscriberCount());
+	}
+	
 	@Test
 	public void testSendNotification() throws IOException {
-		SubscriberManager manager = mock(SubscriberManager.class);
+		SubscriberManager manager = new SubscriberManager(false);
 		Subscriber subscriber1 = getMockedSubscriber("project_name/user42");
 		Subscriber subscriber2 = getMockedSubscriber("project_name/another_user");
 		Subscriber subscriber3 = getMockedSubscriber("project_name/unique_username_10564845138");
 		Subscriber subscriber4 = getMockedSubscriber("a_different_project/user42");
 		Subscriber subscriber5 = getMockedSubscriber("user42");
 		
-		doCallRealMethod().when(manager).sendNotification(any(Notification.class));
-		when(manager.getSubscribers()).thenReturn(Arrays.asList(subscriber1, subscriber2, subscriber3, subscriber4, subscriber5));
+		Arrays.asList(subscriber1, subscriber2, subscriber3, subscriber4, subscriber5).forEach(manager::addSubscriber);
 		
 		String message1 = "a_message";
 		String message2 = "a_different_message";
@@ -79,16 +154,148 @@ class SubscriberManagerTest {
 		manager.sendNotification(toAllProjectUsers);
 		manager.sendNotification(toUser42);
 		
-		verify(subscriber1, times(1)).sendMessageToSubscriber(message1);
-		verify(subscriber2, times(1)).sendMessageToSubscriber(message1);
-		verify(subscriber3, times(1)).sendMessageToSubscriber(message1);
-		verify(subscriber4, times(0)).sendMessageToSubscriber(any(String.class));
-		verify(subscriber5, times(1)).sendMessageToSubscriber(message2);
+		verify(subscriber1, times(1)).sendMessageToSubscriber(new EncodedMessage(message1));
+		verify(subscriber2, times(1)).sendMessageToSubscriber(new EncodedMessage(message1));
+		verify(subscriber3, times(1)).sendMessageToSubscriber(new EncodedMessage(message1));
+		verify(subscriber4, times(0)).sendMessageToSubscriber(any(EncodedMessage.class));
+		verify(subscriber5, times(1)).sendMessageToSubscriber(new EncodedMessage(message2));
+		
+		verify(subscriber1, times(1)).sendMessageToSubscriber(any(EncodedMessage.class));
+		verify(subscriber2, times(1)).sendMessageToSubscriber(any(EncodedMessage.class));
+		verify(subscriber3, times(1)).sendMessageToSubscriber(any(EncodedMessage.class));
+		verify(subscriber5, times(1)).sendMessageToSubscriber(any(EncodedMessage.class));
+	}
+	
+	@Test
+	public void testSendNotificationToMultipleReceivers() throws IOException {
+		SubscriberManager manager = new SubscriberManager(false);
+		Subscriber subscriber1 = getMockedSubscriber("project_name/user42");
+		Subscriber subscriber2 = getMockedSubscriber("project_name/another_user");
+		Subscriber subscriber3 = getMockedSubscriber("user42");
+		Subscriber subscriber4 = getMockedSubscriber("user42");
+		Subscriber subscriber5 = getMockedSubscriber("another_user");
+		
+		Arrays.asList(subscriber1, subscriber2, subscriber3, subscriber4, subscriber5).forEach(manager::addSubscriber);
+		manager.removeSubscriber(subscriber4);
+		
+		String message1 = "a_message";
+		String message2 = "a_different_message";
+		//literal and prefix receivers (looked up in the name index)
+		Notification indexed = new Notification(message1, "me", "project_name/.*", "user42", "project_name/user42");
+		//a regex receiver (all subscribers are tested)
+		Notification scanned = new Notification(message2, "me", ".*user42", "another_.*");
+		
+		manager.sendNotification(indexed);
+		manager.sendNotification(scanned);
+		
+		verify(subscriber1, times(1)).sendMessageToSubscriber(new EncodedMessage(message1));
+		verify(subscriber2, times(1)).sendMessageToSubscriber(new EncodedMessage(message1));
+		verify(subscriber3, times(1)).sendMessageToSubscriber(new EncodedMessage(message1));
+		verify(subscriber1, times(1)).sendMessageToSubscriber(new EncodedMessage(message2));
+		verify(subscriber3, times(1)).sendMessageToSubscriber(new EncodedMessage(message2));
+		verify(subscriber5, times(1)).sendMessageToSubscriber(new EncodedMessage(message2));
+		
+		verify(subscriber1, times(2)).sendMessageToSubscriber(any(EncodedMessage.class));
+		verify(subscriber2, times(1)).sendMessageToSubscriber(any(EncodedMessage.class));
+		verify(subscriber3, times(2)).sendMessageToSubscriber(any(EncodedMessage.class));
+		verify(subscriber4, times(0)).sendMessageToSubscriber(any(EncodedMessage.class));
+		verify(subscriber5, times(1)).sendMessageToSubscriber(any(EncodedMessage.class));
+	}
+	
+	@Test
+	public void testSendNotificationBatch() throws IOException {
+		SubscriberManager manager = new SubscriberManager(false);
+		Subscriber subscriber1 = getMockedSubscriber("project_name/user42");
+		Subscriber subscriber2 = getMockedSubscriber("project_name/another_user");
+		Subscriber subscriber3 = getMockedSubscriber("user42");
+		
+		Arrays.asList(subscriber1, subscriber2, subscriber3).forEach(manager::addSubscriber);
+		
+		List<Notification> batch = Arrays.asList(new Notification("direct", "me", "user42"), new Notification("broadcast", "me", ".*"),
+				new Notification("project", "me", "project_name/.*"), new Notification("regex", "me", ".*user42"),
+				new Notification("nobody", "me", "unknown_user"));
+		
+		int[] matched = manager.sendNotifications(batch);
+		
+		assertArrayEquals(new int[] {1, 3, 2, 2, 0}, matched);
+		verify(subscriber1, times(1)).sendMessageToSubscriber(new EncodedMessage("broadcast"));
+		verify(subscriber1, times(1)).sendMessageToSubscriber(new EncodedMessage("project"));
+		verify(subscriber1, times(1)).sendMessageToSubscriber(new EncodedMessage("regex"));
+		verify(subscriber2, times(1)).sendMessageToSubscriber(new EncodedMessage("broadcast"));
+		verify(subscriber2, times(1)).sendMessageToSubscriber(new EncodedMessage("project"));
+		verify(subscriber3, times(1)).sendMessageToSubscriber(new EncodedMessage("direct"));
+		verify(subscriber3, times(1)).sendMessageToSubscriber(new EncodedMessage("broadcast"));
+		verify(subscriber3, times(1)).sendMessageToSubscriber(new EncodedMessage("regex"));
+		
+		verify(subscriber1, times(3)).sendMessageToSubscriber(any(EncodedMessage.class));
+		verify(subscriber2, times(2)).sendMessageToSubscriber(any(EncodedMessage.class));
+		verify(subscriber3, times(3)).sendMessageToSubscriber(any(EncodedMessage.class));
+		
+		//every subscriber receives the notifications in the order of the batch (indexed and scanned notifications are mixed)
+		InOrder order1 = inOrder(subscriber1);
+		order1.verify(subscriber1).sendMessageToSubscriber(new EncodedMessage("broadcast"));
+		order1.verify(subscriber1).sendMessageToSubscriber(new EncodedMessage("project"));
+		order1.verify(subscriber1).sendMessageToSubscriber(new EncodedMessage("regex"));
+		InOrder order3 = inOrder(subscriber3);
+		order3.verify(subscriber3).sendMessageToSubscriber(new EncodedMessage("direct"));
+		order3.verify(subscriber3).sendMessageToSubscriber(new EncodedMessage("broadcast"));
+		order3.verify(subscriber3).sendMessageToSubscriber(new EncodedMessage("regex"));
+	}
+	
+	@Test
+	public void testSendNotificationBatchWithTopicsInOrder() throws IOException {
+		SubscriberManager manager = new SubscriberManager(false);
+		Subscriber subscriber = getMockedSubscriber("project_name/user42");
+		when(subscriber.getTopics()).thenReturn(new HashSet<String>(Arrays.asList("news")));
+		manager.addSubscriber(subscriber);
+		
+		Notification topicOnly = new Notification("news", "me", "unknown_.*");
+		topicOnly.setTopic("news");
+		List<Notification> batch = Arrays.asList(new Notification("regex", "me", ".*user42"), topicOnly,
+				new Notification("broadcast", "me", ".*"));
+		
+		assertArrayEquals(new int[] {1, 1, 1}, manager.sendNotifications(batch));
+		InOrder order = inOrder(subscriber);
+		order.verify(subscriber).sendMessageToSubscriber(new EncodedMessage("regex"));
+		order.verify(subscriber).sendMessageToSubscriber(new EncodedMessage("news"));
+		order.verify(subscriber).sendMessageToSubscriber(new EncodedMessage("broadcast"));
+	}
+	
+	@Test
+	public void testSendNotificationToTopic() throws IOException {
+		SubscriberManager manager = new SubscriberManager(false);
+		Subscriber subscriber1 = getMockedSubscriber("user42");
+		when(subscriber1.getTopics()).thenReturn(new HashSet<String>(Arrays.asList("news")));
+		Subscriber subscriber2 = getMockedSubscriber("another_user");
+		when(subscriber2.getTopics()).thenReturn(new HashSet<String>(Arrays.asList("news", "sports")));
+		Subscriber subscriber3 = getMockedSubscriber("user43");
+		
+		Arrays.asList(subscriber1, subscriber2, subscriber3).forEach(manager::addSubscriber);
+		
+		Notification onlyTopic = new Notification();
+		onlyTopic.setMessage("news_only");
+		onlyTopic.setTopic("news");
+		//the subscriber that matches a receiver and the topic receives the notification only once
+		Notification topicAndReceivers = new Notification("news_and_users", "me", "user4.*");
+		topicAndReceivers.setTopic("news");
+		
+		assertEquals(2, manager.sendNotification(onlyTopic));
+		assertEquals(3, manager.sendNotification(topicAndReceivers));
+		Notification inBatch = new Notification("sports", "me", "user42");
+		inBatch.setTopic("sports");
+		assertArrayEquals(new int[] {2}, manager.sendNotifications(Arrays.asList(inBatch)));
+		
+		verify(subscriber1, times(1)).sendMessageToSubscriber(new EncodedMessage("news_only"));
+		verify(subscriber1, times(1)).sendMessageToSubscriber(new EncodedMessage("news_and_users"));
+		verify(subscriber1, times(1)).sendMessageToSubscriber(new EncodedMessage("sports"));
+		verify(subscriber2, times(1)).sendMessageToSubscriber(new EncodedMessage("news_only"));
+		verify(subscriber2, times(1)).sendMessageToSubscriber(new EncodedMessage("news_and_users"));
+		verify(subscriber2, times(1)).sendMessageToSubscriber(new EncodedMessage("sports"));
+		verify(subscriber3, times(1)).sendMessageToSubscriber(new EncodedMessage("news_and_users"));
 		
-		verify(subscriber1, times(1)).sendMessageToSubscriber(any(String.class));
-		verify(subscriber2, times(1)).sendMessageToSubscriber(any(String.class));
-		verify(subscriber3, times(1)).sendMessageToSubscriber(any(String.class));
-		verify(subscriber5, times(1)).sendMessageToSubscriber(any(String.class));
+		verify(subscriber1, times(3)).sendMessageToSubscriber(any(EncodedMessage.class));
+		verify(subscriber2, times(3)).sendMessageToSubscriber(any(EncodedMessage.class));
+		verify(subscriber3, times(1)).sendMessageToSubscriber(any(EncodedMessage.class));
 	}
 	
 	private Subscriber getMockedSubscriber(String name) {
@@ -0,0 +1,119 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+class SubscriberRegistryTest {
+	
+	@Test
+	public void testSnapshotIsReusedUntilChanged() {
+		SubscriberRegistry registry = new SubscriberRegistry();
+		registry.add(getMockedSubscriber("user42"));
+		
+		List<Subscriber> snapshot = registry.snapshot();
+		assertSame(snapshot, registry.snapshot());
+		
+		Subscriber another = getMockedSubscriber("user42");
+		registry.add(another);
+		List<Subscriber> changed = registry.snapshot();
+		assertNotSame(snapshot, changed);
+		assertEquals(2, changed.size());
+		assertEquals(2, registry.get("user42").length);
+		
+		registry.remove(another);
+		assertEquals(1, registry.snapshot().size());
+		assertEquals(1, registry.get("user42").length);
+	}
+	
+	@Test
+	public void testPrefixLookup() {
+		SubscriberRegistry registry = new SubscriberRegistry();
+		registry.add(getMockedSubscriber("project/a"));
+		registry.add(getMockedSubscriber("project/b"));
+		registry.add(getMockedSubscriber("project0"));
+		registry.add(getMockedSubscriber("projec"));
+		
+		assertEquals(2, registry.getWithPrefix("project/").size());
+		assertEquals(3, registry.getWithPrefix("project").size());
+		assertEquals(4, registry.getWithPrefix("").size());
+	}
+	
+	@Test
+	public void testTopicIndex() {
+		SubscriberRegistry registry = new SubscriberRegistry();
+		Subscriber subscriber1 = getMockedSubscriber("user1");
+		when(subscriber1.getTopics()).thenReturn(new HashSet<String>(Arrays.asList("news", "sports")));
+		Subscriber subscriber2 = getMockedSubscriber("user2");
+		when(subscriber2.getTopics()).thenReturn(new HashSet<String>(Arrays.asList("news")));
+		registry.add(subscriber1);
+		registry.add(subscriber2);
+		registry.add(getMockedSubscriber("user3"));
+		
+		assertEquals(2, registry.getByTopic("news").length);
+		assertEquals(1, registry.getByTopic("sports").length);
+		assertEquals(0, registry.getByTopic("weather").length);
+		
+		registry.remove(subscriber1);
+		assertArrayEquals(new Subscriber[] {subscriber2}, registry.getByTopic("news"));
+		assertEquals(0, registry.getByTopic("sports").length);
+	}
+	
+	@Test
+	public void testConcurrentRegistrationsAreNotLost() throws InterruptedException {
+		SubscriberRegistry registry = new SubscriberRegistry();
+		int threads = 8;
+		int subscribersPerThread = 250;
+		List<List<Subscriber>> subscribers = new ArrayList<List<Subscriber>>();
+		for (int i = 0; i < threads; i++) {
+			List<Subscriber> threadSubscribers = new ArrayList<Subscriber>();
+			for (int j = 0; j < subscribersPerThread; j++) {
+				//the same names are used by every thread to make them update the same entries
+				threadSubscribers.add(getMockedSubscriber("user" + j));
+			}
+			subscribers.add(threadSubscribers);
+		}
+		
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> registeringThreads = new ArrayList<Thread>();
+		for (List<Subscriber> threadSubscribers : subscribers) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+				threadSubscribers.forEach(registry::add);
+				//iterating concurrently mussn't fail
+				registry.snapshot().forEach(Subscriber::getName);
+			});
+			thread.start();
+			registeringThreads.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : registeringThreads) {
+			thread.join();
+		}
+		
+		assertEquals(threads * subscribersPerThread, registry.snapshot().size());
+		assertEquals(threads, registry.get("user0").length);
+	}
+	
+	private Subscriber getMockedSubscriber(String name) {
+		Subscriber subscriber = mock(Subscriber.class);
+		when(subscriber.getName()).thenReturn(name);
+		return subscriber;
+	}
+}
\ No newline at end of file
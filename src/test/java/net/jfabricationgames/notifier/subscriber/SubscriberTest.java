@@ -0,0 +1,125 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.jfabricationgames.notifier.metrics.NotifierMetrics;
+import net.jfabricationgames.notifier.notification.Notification;
+import net.jfabricationgames.notifier.notification.Priority;
+
+class SubscriberTest {
+	
+	private static final long COALESCING_WINDOW_MILLIS = 500;
+	private static final int COALESCING_THRESHOLD_BYTES = 1000;
+	
+	private LoopbackServer server;
+	private SubscriberClient client;
+	private BlockingQueue<String> received;
+	
+	@BeforeEach
+	public void startServer() throws IOException, InterruptedException {
+		Properties configuration = new Properties();
+		configuration.setProperty("subscriber.writer.threads", "1");
+		configuration.setProperty("subscriber.write.coalescing.enabled", "true");
+		configuration.setProperty("subscriber.write.coalescing.window.millis", Long.toString(COALESCING_WINDOW_MILLIS));
+		configuration.setProperty("subscriber.write.coalescing.threshold.bytes", Integer.toString(COALESCING_THRESHOLD_BYTES));
+		//no pings, so the notifications are the only writes
+		configuration.setProperty("subscriber.heartbeat.interval.millis", "0");
+		server = new LoopbackServer(configuration);
+		
+		received = new LinkedBlockingQueue<String>();
+		client = server.connectClient(server.createClientConfiguration("user", "legacy"), received::add, Runnable::run);
+		server.waitForSubscriber("user", null);
+	}
+	
+	@AfterEach
+	public void stopServer() throws IOException {
+		client.closeConnection();
+		server.close();
+	}
+	
+	private String takeReceived() throws InterruptedException {
+		String message = received.poll(5, TimeUnit.SECONDS);
+		if (message == null) {
+			throw new AssertionError("no notification was received");
+		}
+		return message;
+	}
+	
+	private static String createMessage(int length) {
+		StringBuilder message = new StringBuilder(length);
+		while (message.length() < length) {
+			message.append('m');
+		}
+		return message.toString();
+	}
+	
+	/**
+	 * Wait until the writes of the received notifications were recorded and check that there were no more writes than expected.
+	 */
+	private static void assertWrites(long expected) throws InterruptedException {
+		LoopbackServer.waitFor(() -> NotifierMetrics.WRITE_TIME.getCount() >= expected, "the writes were not recorded");
+		Thread.sleep(50);
+		assertEquals(expected, NotifierMetrics.WRITE_TIME.getCount());
+	}
+	
+	@Test
+	public void testMessagesAreWrittenTogetherAfterWindow() throws InterruptedException {
+		long writes = NotifierMetrics.WRITE_TIME.getCount();
+		long start = System.nanoTime();
+		for (int i = 1; i <= 3; i++) {
+			server.getManager().sendNotification(new Notification("message " + i, "sender", "user"));
+		}
+		
+		//nothing is written before the window expires
+		Thread.sleep(COALESCING_WINDOW_MILLIS / 2);
+		assertEquals(writes, NotifierMetrics.WRITE_TIME.getCount());
+		assertTrue(received.isEmpty());
+		
+		for (int i = 1; i <= 3; i++) {
+			assertEquals("message " + i, takeReceived());
+		}
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= COALESCING_WINDOW_MILLIS);
+		//all messages are written in one (gathering) write
+		assertWrites(writes + 1);
+	}
+	
+	@Test
+	public void testThresholdFlushesImmediately() throws InterruptedException {
+		long writes = NotifierMetrics.WRITE_TIME.getCount();
+		long start = System.nanoTime();
+		//the small message waits for the window, but the large one reaches the threshold, so both are written immediately
+		server.getManager().sendNotification(new Notification("small", "sender", "user"));
+		String large = createMessage(COALESCING_THRESHOLD_BYTES);
+		server.getManager().sendNotification(new Notification(large, "sender", "user"));
+		
+		assertEquals("small", takeReceived());
+		assertEquals(large, takeReceived());
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < COALESCING_WINDOW_MILLIS);
+		assertWrites(writes + 1);
+	}
+	
+	@Test
+	public void testHighPriorityFlushesImmediately() throws InterruptedException {
+		long start = System.nanoTime();
+		server.getManager().sendNotification(new Notification("low", "sender", "user"));
+		Notification high = new Notification("high", "sender", "user");
+		high.setPriority(Priority.HIGH);
+		server.getManager().sendNotification(high);
+		
+		//the high priority message is written before the waiting low priority message
+		assertEquals("high", takeReceived());
+		assertEquals("low", takeReceived());
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < COALESCING_WINDOW_MILLIS);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+package net.jfabricationgames.notifier.subscriber;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class TimingWheelTest {
+	
+	private static final long START = 1000L;
+	
+	private static long millis(long millis) {
+		return START + TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+	
+	@Test
+	public void testNotExpiredBeforeDeadline() {
+		TimingWheel wheel = new TimingWheel(10, 8, START);
+		List<String> expired = new ArrayList<String>();
+		wheel.schedule(() -> expired.add("a"), 25, millis(0));
+		wheel.schedule(() -> expired.add("b"), 10, millis(0));
+		
+		assertEquals(0, wheel.expire(millis(9)));
+		assertEquals(1, wheel.expire(millis(10)));
+		assertEquals(0, wheel.expire(millis(29)));
+		assertEquals(1, wheel.expire(millis(30)));
+		assertEquals(Arrays.asList("b", "a"), expired);
+		assertTrue(wheel.isEmpty());
+	}
+	
+	@Test
+	public void testMultipleRounds() {
+		TimingWheel wheel = new TimingWheel(10, 4, START);
+		List<String> expired = new ArrayList<String>();
+		//more than two rounds of the wheel (four buckets of 10 ms)
+		wheel.schedule(() -> expired.add("a"), 95, millis(0));
+		
+		for (int i = 0; i < 100; i += 5) {
+			wheel.expire(millis(i));
+		}
+		assertEquals(0, expired.size());
+		assertEquals(1, wheel.expire(millis(100)));
+		assertEquals(1, expired.size());
+	}
+	
+	@Test
+	public void testRescheduleFromTask() {
+		TimingWheel wheel = new TimingWheel(10, 4, START);
+		List<Long> executions = new ArrayList<Long>();
+		//a task that schedules itself again (like a heartbeat check) with the duration of a whole round
+		Runnable[] task = new Runnable[1];
+		long[] now = new long[1];
+		task[0] = () -> {
+			executions.add(now[0]);
+			wheel.schedule(task[0], 40, now[0]);
+		};
+		wheel.schedule(task[0], 40, millis(0));
+		
+		for (long i = 0; i <= 120; i += 10) {
+			now[0] = millis(i);
+			wheel.expire(now[0]);
+		}
+		assertEquals(Arrays.asList(millis(40), millis(80), millis(120)), executions);
+		assertEquals(1, wheel.size());
+	}
+	
+	@Test
+	public void testNextTick() {
+		TimingWheel wheel = new TimingWheel(10, 8, START);
+		assertEquals(millis(0), wheel.getNextTickNanos());
+		wheel.expire(millis(15));
+		assertEquals(millis(20), wheel.getNextTickNanos());
+	}
+}
\ No newline at end of file